@@ -0,0 +1,149 @@
+package staxperf.misc;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.ri.typed.ValueDecoderFactory;
+
+import com.ctc.wstx.sr.TypedStreamReader;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Micro-benchmark that compares decoding of big numeric arrays using
+ * generic array decoders from {@link ValueDecoderFactory} with
+ * decoding into primitive arrays and direct NIO buffers using
+ * Woodstox-specific methods.
+ */
+public class TestArrayDecodeSpeed
+{
+    final int VALUES = 1000000;
+
+    final int CHUNK = 4000;
+
+    final int ROUNDS = 5;
+
+    final byte[] mDoc;
+
+    final WstxInputFactory mFactory = new WstxInputFactory();
+
+    final int[] mInts = new int[CHUNK];
+
+    final double[] mDoubles = new double[CHUNK];
+
+    final IntBuffer mIntBuffer = ByteBuffer.allocateDirect(CHUNK * 4).asIntBuffer();
+
+    final DoubleBuffer mDoubleBuffer = ByteBuffer.allocateDirect(CHUNK * 8).asDoubleBuffer();
+
+    /**
+     * Just to make sure parsing results are not optimized away
+     */
+    double mSink;
+
+    TestArrayDecodeSpeed()
+        throws IOException
+    {
+        Random r = new Random(123);
+        StringBuilder sb = new StringBuilder();
+        sb.append("<data>\n<ints>");
+        for (int i = 0; i < VALUES; ++i) {
+            sb.append(r.nextInt(2000000) - 1000000);
+            sb.append(((i & 15) == 15) ? '\n' : ' ');
+        }
+        sb.append("</ints>\n<doubles>");
+        for (int i = 0; i < VALUES; ++i) {
+            sb.append(r.nextInt(20000000) / 1000.0);
+            sb.append(((i & 15) == 15) ? '\n' : ' ');
+        }
+        sb.append("</doubles>\n</data>");
+        mDoc = sb.toString().getBytes("UTF-8");
+    }
+
+    void test()
+        throws Exception
+    {
+        System.out.println("Document: "+mDoc.length+" bytes, "+VALUES+" ints and doubles");
+        while (true) {
+            long genericTime = time(0);
+            long arrayTime = time(1);
+            long bufferTime = time(2);
+            System.out.println(" Decoding "+ROUNDS+" documents: generic "+(genericTime / 1000000L)
+                               +" ms; arrays "+(arrayTime / 1000000L)
+                               +" ms (-"+((100L * (genericTime - arrayTime)) / genericTime)
+                               +"%); direct buffers "+(bufferTime / 1000000L)
+                               +" ms (-"+((100L * (genericTime - bufferTime)) / genericTime)+"%)");
+
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+            System.gc();
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+        }
+    }
+
+    private long time(int mode)
+        throws XMLStreamException
+    {
+        long now = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            mSink += parse(mode);
+        }
+        return System.nanoTime() - now;
+    }
+
+    private double parse(int mode)
+        throws XMLStreamException
+    {
+        TypedStreamReader sr = (TypedStreamReader) mFactory.createXMLStreamReader(new ByteArrayInputStream(mDoc));
+        ValueDecoderFactory decoders = new ValueDecoderFactory();
+        double total = 0.0;
+        sr.nextTag();
+        sr.nextTag();
+        int count;
+        while (true) {
+            switch (mode) {
+            case 0:
+                count = sr.readElementAsArray(decoders.getIntArrayDecoder(mInts, 0, CHUNK));
+                break;
+            case 1:
+                count = sr.readElementAsIntArray(mInts, 0, CHUNK);
+                break;
+            default:
+                mIntBuffer.clear();
+                count = sr.readElementAsIntArray(mIntBuffer);
+            }
+            if (count < 0) {
+                break;
+            }
+            total += (mode < 2) ? mInts[count-1] : mIntBuffer.get(count-1);
+        }
+        sr.nextTag();
+        while (true) {
+            switch (mode) {
+            case 0:
+                count = sr.readElementAsArray(decoders.getDoubleArrayDecoder(mDoubles, 0, CHUNK));
+                break;
+            case 1:
+                count = sr.readElementAsDoubleArray(mDoubles, 0, CHUNK);
+                break;
+            default:
+                mDoubleBuffer.clear();
+                count = sr.readElementAsDoubleArray(mDoubleBuffer);
+            }
+            if (count < 0) {
+                break;
+            }
+            total += (mode < 2) ? mDoubles[count-1] : mDoubleBuffer.get(count-1);
+        }
+        sr.close();
+        return total;
+    }
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        new TestArrayDecodeSpeed().test();
+    }
+}
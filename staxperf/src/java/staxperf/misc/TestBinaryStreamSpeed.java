@@ -0,0 +1,99 @@
+package staxperf.misc;
+
+import java.io.*;
+import java.util.Random;
+
+import javax.xml.stream.*;
+
+import com.ctc.wstx.sr.TypedStreamReader;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Micro-benchmark that compares accessing big base64 encoded element
+ * content as a byte array, with streaming it to an output stream using
+ * Woodstox-specific method that decodes content directly from the
+ * input buffer.
+ */
+public class TestBinaryStreamSpeed
+{
+    final int BYTES = 8 * 1024 * 1024;
+
+    final int ROUNDS = 5;
+
+    final byte[] mDoc;
+
+    final WstxInputFactory mFactory = new WstxInputFactory();
+
+    /**
+     * Output stream that just counts bytes written; to make sure
+     * decoding is not optimized away
+     */
+    final static class CountingStream extends OutputStream
+    {
+        long mCount;
+
+        @Override
+        public void write(int b) { ++mCount; }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            mCount += len;
+        }
+    }
+
+    final CountingStream mSink = new CountingStream();
+
+    TestBinaryStreamSpeed()
+        throws IOException, XMLStreamException
+    {
+        byte[] data = new byte[BYTES];
+        new Random(123).nextBytes(data);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BYTES * 2);
+        XMLStreamWriter sw = XMLOutputFactory.newInstance().createXMLStreamWriter(bytes, "UTF-8");
+        sw.writeStartElement("data");
+        ((org.codehaus.stax2.XMLStreamWriter2) sw).writeBinary(data, 0, data.length);
+        sw.writeEndElement();
+        sw.close();
+        mDoc = bytes.toByteArray();
+    }
+
+    void test()
+        throws Exception
+    {
+        System.out.println("Document: "+mDoc.length+" bytes, "+BYTES+" bytes of binary data");
+        while (true) {
+            long arrayTime = time(false);
+            long streamTime = time(true);
+            System.out.println(" Decoding "+ROUNDS+" documents: byte array "+(arrayTime / 1000000L)
+                               +" ms; stream "+(streamTime / 1000000L)
+                               +" ms (-"+((100L * (arrayTime - streamTime)) / arrayTime)+"%)");
+
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+            System.gc();
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+        }
+    }
+
+    private long time(boolean stream)
+        throws XMLStreamException
+    {
+        long now = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            TypedStreamReader sr = (TypedStreamReader) mFactory.createXMLStreamReader(new ByteArrayInputStream(mDoc));
+            sr.nextTag();
+            if (stream) {
+                sr.readElementAsBinary(mSink);
+            } else {
+                mSink.write(sr.getElementAsBinary(), 0, BYTES);
+            }
+            sr.close();
+        }
+        return System.nanoTime() - now;
+    }
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        new TestBinaryStreamSpeed().test();
+    }
+}
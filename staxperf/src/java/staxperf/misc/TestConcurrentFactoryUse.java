@@ -0,0 +1,148 @@
+package staxperf.misc;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.*;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Multi-threaded micro-benchmark for verifying how well parsing of small
+ * documents scales when all threads share a single input factory (and
+ * thereby its symbol table). Runs rounds with 1, 2, 4, ... threads, up
+ * to given maximum (defaults to number of available processors), and
+ * reports throughput along with speedup relative to single thread;
+ * ideally speedup is close to number of threads, as long as there are
+ * as many cores.
+ *<p>
+ * Documents parsed use a rotating set of element names, so that readers
+ * keep adding symbols and merging them back to the factory, in addition
+ * to looking up already known ones.
+ */
+public class TestConcurrentFactoryUse
+{
+    final static int DOC_COUNT = 64;
+
+    final static long ROUND_MSECS = 3000L;
+
+    final WstxInputFactory mFactory = new WstxInputFactory();
+
+    final byte[][] mDocs;
+
+    /**
+     * Just to make sure parsing results are not optimized away
+     */
+    volatile int mSink;
+
+    private TestConcurrentFactoryUse()
+        throws IOException
+    {
+        mDocs = new byte[DOC_COUNT][];
+        for (int i = 0; i < DOC_COUNT; ++i) {
+            mDocs[i] = buildDoc(i).getBytes("UTF-8");
+        }
+    }
+
+    private static String buildDoc(int index)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version='1.0' encoding='UTF-8'?>\n<root xmlns:ns='urn:test'>");
+        for (int i = 0; i < 20; ++i) {
+            // mostly common names, some specific to this document
+            String name = ((i % 4) == 0) ? ("elem"+index+"_"+i) : ("common"+i);
+            sb.append("<ns:").append(name).append(" attr='").append(i).append("'>");
+            sb.append("text ").append(i);
+            sb.append("</ns:").append(name).append(">");
+        }
+        sb.append("</root>");
+        return sb.toString();
+    }
+
+    private int parse(byte[] doc)
+        throws XMLStreamException
+    {
+        XMLStreamReader sr = mFactory.createXMLStreamReader(new ByteArrayInputStream(doc));
+        int count = 0;
+        while (sr.hasNext()) {
+            count += sr.next();
+        }
+        sr.close();
+        return count;
+    }
+
+    /**
+     * @return Number of documents parsed per second
+     */
+    private double runRound(int threadCount)
+        throws Exception
+    {
+        final AtomicLong docs = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] endTime = new long[1];
+        ExecutorService exec = Executors.newFixedThreadPool(threadCount);
+        for (int t = 0; t < threadCount; ++t) {
+            final int offset = t;
+            exec.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            start.await();
+                            int i = offset;
+                            long count = 0;
+                            int sum = 0;
+                            while (System.currentTimeMillis() < endTime[0]) {
+                                for (int j = 0; j < 100; ++j) {
+                                    sum += parse(mDocs[i++ % DOC_COUNT]);
+                                }
+                                count += 100;
+                            }
+                            docs.addAndGet(count);
+                            mSink += sum;
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                });
+        }
+        long startTime = System.currentTimeMillis();
+        endTime[0] = startTime + ROUND_MSECS;
+        start.countDown();
+        exec.shutdown();
+        exec.awaitTermination(ROUND_MSECS * 10, TimeUnit.MILLISECONDS);
+        long time = System.currentTimeMillis() - startTime;
+        return (docs.get() * 1000.0) / time;
+    }
+
+    void test(int maxThreads)
+        throws Exception
+    {
+        // Warm up first
+        runRound(1);
+        runRound(maxThreads);
+
+        double single = 0.0;
+        for (int threads = 1; ; threads += threads) {
+            if (threads > maxThreads) {
+                threads = maxThreads;
+            }
+            double rate = runRound(threads);
+            if (threads == 1) {
+                single = rate;
+            }
+            System.out.println(threads+" thread(s): "+((long) rate)+" docs/sec; speedup "
+                               +String.format("%.2f", rate / single)+" (ideal "+threads+")");
+            if (threads == maxThreads) {
+                break;
+            }
+        }
+    }
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0])
+            : Runtime.getRuntime().availableProcessors();
+        new TestConcurrentFactoryUse().test(maxThreads);
+    }
+}
@@ -0,0 +1,104 @@
+package staxperf.misc;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLInputFactory2;
+
+import com.ctc.wstx.api.EventTypeFilter;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Micro-benchmark that compares generic filtering of comments and
+ * white space (with a custom <code>StreamFilter</code>) to
+ * filtering with an {@link EventTypeFilter}, which the reader
+ * handles internally.
+ */
+public class TestEventFilterSpeed
+{
+    final int ENTRIES = 2000;
+
+    final int ROUNDS = 50;
+
+    final byte[] mDoc;
+
+    /**
+     * Just to make sure parsing results are not optimized away
+     */
+    int mSink;
+
+    TestEventFilterSpeed()
+        throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<feed xmlns='http://www.w3.org/2005/Atom' xmlns:x='urn:x'>\n");
+        for (int i = 0; i < ENTRIES; ++i) {
+            sb.append("  <!-- Entry #").append(i).append(", with some more text in the comment -->\n");
+            sb.append("<entry id='").append(i).append("' x:type='item'>\n");
+            sb.append("  <title type='text'>Entry #").append(i).append("</title>\n");
+            sb.append("  <author><name>Some Author</name><email>author@example.com</email></author>\n");
+            sb.append("  <link rel='alternate' href='http://example.com/entries/").append(i).append("'/>\n");
+            sb.append("  <content type='html'><![CDATA[<p>Content &amp; more content</p>]]> and text &amp; entities</content>\n");
+            sb.append("  <!-- comment --><x:ext a='1' b='2'><x:v>1</x:v><x:v>2</x:v></x:ext>\n");
+            sb.append("</entry>\n");
+        }
+        sb.append("</feed>");
+        mDoc = sb.toString().getBytes("UTF-8");
+    }
+
+    void test()
+        throws Exception
+    {
+        final EventTypeFilter filter = EventTypeFilter.dataOnly();
+        StreamFilter generic = new StreamFilter() {
+            public boolean accept(XMLStreamReader r) {
+                return filter.accept(r);
+            }
+        };
+        WstxInputFactory f = new WstxInputFactory();
+        // non-lazy parsing is where generic filtering is most wasteful
+        f.setProperty(XMLInputFactory2.P_LAZY_PARSING, Boolean.FALSE);
+
+        System.out.println("Document: "+mDoc.length+" bytes, "+ENTRIES+" entries");
+        while (true) {
+            long now = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                mSink += parse(f, generic);
+            }
+            long regularTime = System.nanoTime() - now;
+
+            now = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                mSink += parse(f, filter);
+            }
+            long filterTime = System.nanoTime() - now;
+
+            long saved = (100L * (regularTime - filterTime)) / regularTime;
+            System.out.println(" Parsing "+ROUNDS+" documents: generic filter "+(regularTime / 1000000L)
+                               +" ms; type filter "+(filterTime / 1000000L)+" ms (-"+saved+"%)");
+
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+            System.gc();
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+        }
+    }
+
+    private int parse(XMLInputFactory f, StreamFilter filter)
+        throws XMLStreamException
+    {
+        XMLStreamReader sr = f.createFilteredReader(f.createXMLStreamReader(new ByteArrayInputStream(mDoc)), filter);
+        int count = 0;
+        while (sr.hasNext()) {
+            count += sr.next();
+        }
+        sr.close();
+        return count;
+    }
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        new TestEventFilterSpeed().test();
+    }
+}
@@ -1,46 +1,137 @@
 package staxperf.misc;
 
+import java.io.*;
+
 import javax.xml.stream.*;
 
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.api.ReaderConfig;
+import com.ctc.wstx.sr.BasicStreamReader;
+import com.ctc.wstx.stax.StreamReaderPool;
+import com.ctc.wstx.stax.WstxInputFactory;
+
 /**
- * Micro-benchmark that tests to see how costly is instantiation of 
- * XMLInputFactory instances via JAXP.
+ * Micro-benchmark that tests to see how costly is instantiation of
+ * XMLInputFactory instances via JAXP, as well as instantiation of
+ * stream readers for parsing small documents; and how much of the
+ * latter cost can be saved by resetting and reusing readers (either
+ * directly, or via a {@link StreamReaderPool}). Also measures cost of
+ * creating per-reader configuration objects from the snapshot factory
+ * keeps, compared to copying them from the mutable factory configuration.
  */
 public class TestInputFactoryCreation
 {
     final int ROUNDS = 1000;
 
-    TestInputFactoryCreation() { }
+    final int DOC_ROUNDS = 50000;
+
+    final int CONFIG_ROUNDS = 1000000;
+
+    final byte[] mDoc;
+
+    /**
+     * Just to make sure parsing results are not optimized away
+     */
+    int mSink;
+
+    TestInputFactoryCreation()
+        throws IOException
+    {
+        mDoc = ("<?xml version='1.0' encoding='UTF-8'?>"
+                +"<msg id='1'><header type='x'>value</header><body>Some text</body></msg>").getBytes("UTF-8");
+    }
 
     void test()
-        throws XMLStreamException, ClassNotFoundException,
-               InstantiationException, IllegalAccessException
+        throws Exception
     {
-        //final Class wCls = Class.forName("com.ctc.wstx.stax.WstxInputFactory");
+        WstxInputFactory f = new WstxInputFactory();
+        StreamReaderPool pool = f.createStreamReaderPool(StreamReaderPool.DEFAULT_MAX_POOLED);
+        BasicStreamReader resettable = (BasicStreamReader) f.createXMLStreamReader(new ByteArrayInputStream(mDoc));
 
         while (true) {
             long now = System.currentTimeMillis();
             // Let's do it first once to know class name:
             XMLInputFactory ifact = XMLInputFactory.newInstance();
-            Class cls = ifact.getClass();
+            Class<?> cls = ifact.getClass();
             for (int i = 1; i < ROUNDS; ++i) {
-                // ifact = XMLInputFactory.newInstance();
-                // ifact = new com.ctc.wstx.stax.WstxInputFactory();
-                //ifact = (XMLInputFactory) wCls.newInstance();
                 ifact = (XMLInputFactory) Class.forName("com.ctc.wstx.stax.WstxInputFactory").newInstance();
             }
             now = System.currentTimeMillis() - now;
             System.out.println("Took "+now+" ms to create "+ROUNDS+" instances of "+cls.getName()+".");
+
+            // Then: new reader for each document
+            now = System.nanoTime();
+            for (int i = 0; i < DOC_ROUNDS; ++i) {
+                XMLStreamReader sr = f.createXMLStreamReader(new ByteArrayInputStream(mDoc));
+                mSink += parse(sr);
+                sr.close();
+            }
+            long newTime = System.nanoTime() - now;
+
+            // vs. resetting the same reader
+            now = System.nanoTime();
+            for (int i = 0; i < DOC_ROUNDS; ++i) {
+                resettable.reset(mDoc, 0, mDoc.length);
+                mSink += parse(resettable);
+            }
+            long resetTime = System.nanoTime() - now;
+
+            // vs. using the pool
+            now = System.nanoTime();
+            for (int i = 0; i < DOC_ROUNDS; ++i) {
+                XMLStreamReader2 sr = pool.acquireReader(mDoc, 0, mDoc.length);
+                mSink += parse(sr);
+                pool.releaseReader(sr);
+            }
+            long poolTime = System.nanoTime() - now;
+
+            System.out.println(" Parsing "+DOC_ROUNDS+" documents: new readers "+(newTime / 1000000L)
+                               +" ms; reset reader "+(resetTime / 1000000L)
+                               +" ms ("+percent(newTime, resetTime)+"); pooled readers "
+                               +(poolTime / 1000000L)+" ms ("+percent(newTime, poolTime)+")");
+
+            // And finally, just reader configuration objects
+            ReaderConfig base = f.getConfig();
+            now = System.nanoTime();
+            for (int i = 0; i < CONFIG_ROUNDS; ++i) {
+                mSink += base.createNonShared(f.createSymbolTable()).getInputBufferLength();
+            }
+            long copyTime = System.nanoTime() - now;
+            now = System.nanoTime();
+            for (int i = 0; i < CONFIG_ROUNDS; ++i) {
+                mSink += f.createPrivateConfig().getInputBufferLength();
+            }
+            long snapshotTime = System.nanoTime() - now;
+            System.out.println(" Creating "+CONFIG_ROUNDS+" reader configs: copied "+(copyTime / 1000000L)
+                               +" ms; from snapshot "+(snapshotTime / 1000000L)
+                               +" ms ("+percent(copyTime, snapshotTime)+")");
+
             try { Thread.sleep(100L); } catch (InterruptedException ie) { }
             System.gc();
             try { Thread.sleep(100L); } catch (InterruptedException ie) { }
         }
     }
 
+    private static int parse(XMLStreamReader sr)
+        throws XMLStreamException
+    {
+        int count = 0;
+        while (sr.hasNext()) {
+            count += sr.next();
+        }
+        return count;
+    }
+
+    private static String percent(long base, long time)
+    {
+        long saved = (100L * (base - time)) / base;
+        return (saved >= 0) ? ("-"+saved+"%") : ("+"+(-saved)+"%");
+    }
+
     public static void main(String[] args)
         throws Exception
     {
         new TestInputFactoryCreation().test();
     }
 }
-
@@ -0,0 +1,99 @@
+package staxperf.misc;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Micro-benchmark that compares regular parsing of attribute values
+ * to lazy expansion, for documents with elements that have lots of
+ * (coordinate-like) attributes, only one of which is accessed.
+ */
+public class TestLazyAttributeSpeed
+{
+    final int ENTRIES = 2000;
+
+    final int ROUNDS = 50;
+
+    final byte[] mDoc;
+
+    /**
+     * Just to make sure parsing results are not optimized away
+     */
+    int mSink;
+
+    TestLazyAttributeSpeed()
+        throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<features xmlns:gml='http://www.opengis.net/gml'>\n");
+        for (int i = 0; i < ENTRIES; ++i) {
+            sb.append("<feature gml:id='f").append(i).append("'");
+            for (int j = 0; j < 20; ++j) {
+                sb.append(" attr").append(j).append("='").append(j).append(".5 12.345678 98.765432 12.345678 98.765432'");
+            }
+            sb.append(" srsName='urn:ogc:def:crs:EPSG::4326'/>\n");
+        }
+        sb.append("</features>");
+        mDoc = sb.toString().getBytes("UTF-8");
+    }
+
+    void test()
+        throws Exception
+    {
+        WstxInputFactory regular = new WstxInputFactory();
+        WstxInputFactory lazy = new WstxInputFactory();
+        lazy.setProperty(WstxInputProperties.P_LAZY_ATTRIBUTE_VALUES, Boolean.TRUE);
+
+        System.out.println("Document: "+mDoc.length+" bytes, "+ENTRIES+" entries");
+        while (true) {
+            long now = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                mSink += parse(regular);
+            }
+            long regularTime = System.nanoTime() - now;
+
+            now = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                mSink += parse(lazy);
+            }
+            long lazyTime = System.nanoTime() - now;
+
+            long saved = (100L * (regularTime - lazyTime)) / regularTime;
+            System.out.println(" Parsing "+ROUNDS+" documents: regular "+(regularTime / 1000000L)
+                               +" ms; lazy "+(lazyTime / 1000000L)+" ms (-"+saved+"%)");
+
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+            System.gc();
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+        }
+    }
+
+    private int parse(XMLInputFactory f)
+        throws XMLStreamException
+    {
+        XMLStreamReader2 sr = (XMLStreamReader2) f.createXMLStreamReader(new ByteArrayInputStream(mDoc));
+        int count = 0;
+        while (sr.hasNext()) {
+            if (sr.next() == XMLStreamConstants.START_ELEMENT) {
+                String value = sr.getAttributeValue(null, "attr7");
+                if (value != null) {
+                    count += value.length();
+                }
+            }
+        }
+        sr.close();
+        return count;
+    }
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        new TestLazyAttributeSpeed().test();
+    }
+}
@@ -0,0 +1,122 @@
+package staxperf.misc;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Micro-benchmark that compares skipping of uninteresting elements by
+ * the caller (via <code>skipElement()</code>) to projection by the
+ * reader, for documents where only titles of entries are read.
+ */
+public class TestProjectionSpeed
+{
+    final int ENTRIES = 2000;
+
+    final int ROUNDS = 50;
+
+    final byte[] mDoc;
+
+    /**
+     * Just to make sure parsing results are not optimized away
+     */
+    int mSink;
+
+    TestProjectionSpeed()
+        throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<feed xmlns='http://www.w3.org/2005/Atom' xmlns:x='urn:x'>\n");
+        for (int i = 0; i < ENTRIES; ++i) {
+            sb.append("<entry id='").append(i).append("' x:type='item'>\n");
+            sb.append("  <title type='text'>Entry #").append(i).append("</title>\n");
+            sb.append("  <author><name>Some Author</name><email>author@example.com</email></author>\n");
+            sb.append("  <link rel='alternate' href='http://example.com/entries/").append(i).append("'/>\n");
+            sb.append("  <content type='html'><![CDATA[<p>Content &amp; more content</p>]]> and text &amp; entities</content>\n");
+            sb.append("  <!-- comment --><x:ext a='1' b='2'><x:v>1</x:v><x:v>2</x:v></x:ext>\n");
+            sb.append("</entry>\n");
+        }
+        sb.append("</feed>");
+        mDoc = sb.toString().getBytes("UTF-8");
+    }
+
+    void test()
+        throws Exception
+    {
+        WstxInputFactory regular = new WstxInputFactory();
+        WstxInputFactory projected = new WstxInputFactory();
+        projected.setProperty(WstxInputProperties.P_PROJECTION_PATHS, "/feed/entry/title");
+
+        System.out.println("Document: "+mDoc.length+" bytes, "+ENTRIES+" entries");
+        while (true) {
+            long now = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                mSink += parseAndSkip(regular);
+            }
+            long regularTime = System.nanoTime() - now;
+
+            now = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                mSink += parseProjected(projected);
+            }
+            long projTime = System.nanoTime() - now;
+
+            long saved = (100L * (regularTime - projTime)) / regularTime;
+            System.out.println(" Parsing "+ROUNDS+" documents: skipElement() "+(regularTime / 1000000L)
+                               +" ms; projection "+(projTime / 1000000L)+" ms (-"+saved+"%)");
+
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+            System.gc();
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+        }
+    }
+
+    private int parseAndSkip(XMLInputFactory f)
+        throws XMLStreamException
+    {
+        XMLStreamReader2 sr = (XMLStreamReader2) f.createXMLStreamReader(new ByteArrayInputStream(mDoc));
+        int count = 0;
+        sr.nextTag(); // feed
+        while (sr.nextTag() == XMLStreamConstants.START_ELEMENT) { // entry
+            sr.nextTag(); // title
+            count += sr.getElementText().length();
+            // and the rest we don't care about
+            sr.nextTag();
+            sr.skipElement();
+            sr.nextTag();
+            sr.skipElement();
+            sr.nextTag();
+            sr.skipElement();
+            sr.nextTag();
+            sr.skipElement();
+            sr.nextTag(); // end of entry
+        }
+        sr.close();
+        return count;
+    }
+
+    private int parseProjected(XMLInputFactory f)
+        throws XMLStreamException
+    {
+        XMLStreamReader2 sr = (XMLStreamReader2) f.createXMLStreamReader(new ByteArrayInputStream(mDoc));
+        int count = 0;
+        while (sr.hasNext()) {
+            if (sr.next() == XMLStreamConstants.START_ELEMENT && sr.getDepth() == 3) {
+                count += sr.getElementText().length();
+            }
+        }
+        sr.close();
+        return count;
+    }
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        new TestProjectionSpeed().test();
+    }
+}
@@ -0,0 +1,109 @@
+package staxperf.misc;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Micro-benchmark that compares regular skipping of element contents
+ * (via <code>skipElement()</code>) to "raw" skipping, for documents
+ * where most of the content is skipped: one element out of five is
+ * read, others skipped.
+ */
+public class TestSkipElementSpeed
+{
+    final int ENTRIES = 2000;
+
+    final int ROUNDS = 50;
+
+    final byte[] mDoc;
+
+    /**
+     * Just to make sure parsing results are not optimized away
+     */
+    int mSink;
+
+    TestSkipElementSpeed()
+        throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<feed xmlns='http://www.w3.org/2005/Atom' xmlns:x='urn:x'>\n");
+        for (int i = 0; i < ENTRIES; ++i) {
+            sb.append("<entry id='").append(i).append("' x:type='item'>\n");
+            sb.append("  <title type='text'>Entry #").append(i).append("</title>\n");
+            sb.append("  <author><name>Some Author</name><email>author@example.com</email></author>\n");
+            sb.append("  <link rel='alternate' href='http://example.com/entries/").append(i).append("'/>\n");
+            sb.append("  <content type='html'><![CDATA[<p>Content &amp; more content</p>]]> and text &amp; entities</content>\n");
+            sb.append("  <!-- comment --><x:ext a='1' b='2'><x:v>1</x:v><x:v>2</x:v></x:ext>\n");
+            sb.append("</entry>\n");
+        }
+        sb.append("</feed>");
+        mDoc = sb.toString().getBytes("UTF-8");
+    }
+
+    void test()
+        throws Exception
+    {
+        WstxInputFactory regular = new WstxInputFactory();
+        WstxInputFactory raw = new WstxInputFactory();
+        raw.setProperty(WstxInputProperties.P_RAW_SKIP_ELEMENT, Boolean.TRUE);
+
+        System.out.println("Document: "+mDoc.length+" bytes, "+ENTRIES+" entries");
+        while (true) {
+            long now = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                mSink += parse(regular);
+            }
+            long regularTime = System.nanoTime() - now;
+
+            now = System.nanoTime();
+            for (int i = 0; i < ROUNDS; ++i) {
+                mSink += parse(raw);
+            }
+            long rawTime = System.nanoTime() - now;
+
+            long saved = (100L * (regularTime - rawTime)) / regularTime;
+            System.out.println(" Parsing "+ROUNDS+" documents: regular skip "+(regularTime / 1000000L)
+                               +" ms; raw skip "+(rawTime / 1000000L)+" ms (-"+saved+"%)");
+
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+            System.gc();
+            try { Thread.sleep(100L); } catch (InterruptedException ie) { }
+        }
+    }
+
+    private int parse(XMLInputFactory f)
+        throws XMLStreamException
+    {
+        XMLStreamReader2 sr = (XMLStreamReader2) f.createXMLStreamReader(new ByteArrayInputStream(mDoc));
+        int count = 0;
+        sr.nextTag(); // feed
+        while (sr.nextTag() == XMLStreamConstants.START_ELEMENT) { // entry
+            sr.nextTag(); // title
+            count += sr.getElementText().length();
+            // and the rest we don't care about
+            sr.nextTag();
+            sr.skipElement();
+            sr.nextTag();
+            sr.skipElement();
+            sr.nextTag();
+            sr.skipElement();
+            sr.nextTag();
+            sr.skipElement();
+            sr.nextTag(); // end of entry
+        }
+        sr.close();
+        return count;
+    }
+
+    public static void main(String[] args)
+        throws Exception
+    {
+        new TestSkipElementSpeed().test();
+    }
+}
@@ -0,0 +1,44 @@
+package staxperf.typed;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.*;
+import org.codehaus.stax2.typed.*;
+
+/**
+ * Test that measures speed of decoding int element values using Typed
+ * Access API; input is expected to contain a root element with a sequence
+ * of leaf elements (like <code>&lt;v>12&lt;/v></code>). Counterpart of
+ * {@link WstxTypedBooleanElem} for numeric values.
+ */
+public final class WstxTypedIntElem
+    extends BaseTypedTest
+{
+    @Override
+    protected XMLInputFactory2 getFactory()
+    {
+        return new com.ctc.wstx.stax.WstxInputFactory();
+    }
+
+    @Override
+    protected final int testExec2(XMLStreamReader2 sr) throws XMLStreamException
+    {
+        // Ok: we point to the root node now
+
+        int total = 0;
+        
+        while (sr.nextTag() == START_ELEMENT) {
+            if (sr.getElementAsInt() > 0) {
+                ++total;
+            }
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        new WstxTypedIntElem().test(args);
+    }
+}
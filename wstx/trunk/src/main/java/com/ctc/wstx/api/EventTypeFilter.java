@@ -0,0 +1,117 @@
+package com.ctc.wstx.api;
+
+import javax.xml.stream.StreamFilter;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Declarative {@link StreamFilter} that accepts events based on their
+ * type, and optionally rejects text events that only contain white space.
+ *<p>
+ * Unlike with arbitrary filters, when an instance is passed to
+ * {@link com.ctc.wstx.stax.WstxInputFactory#createFilteredReader(XMLStreamReader,StreamFilter)}
+ * along with a Woodstox stream reader, rejected comments, processing
+ * instructions and text events within the document tree are skipped by
+ * the reader itself, without fully parsing them or copying their contents.
+ * Note that this means that the underlying reader will also skip them
+ * when accessed directly.
+ *<p>
+ * Instances are immutable and can be shared.
+ *
+ * @since 5.0
+ */
+public final class EventTypeFilter
+    implements StreamFilter, XMLStreamConstants
+{
+    /**
+     * Mask that contains all event types
+     */
+    public final static int ALL_TYPES = 0xFFFFFFFE;
+
+    /**
+     * Mask with bits (<code>1 &lt;&lt; type</code>) of accepted event types
+     */
+    final int mAcceptedTypes;
+
+    /**
+     * Whether CHARACTERS, CDATA and SPACE events that contain only
+     * white space are rejected, regardless of the type mask
+     */
+    final boolean mSkipWhitespaceText;
+
+    /**
+     * @param acceptedTypes Bit mask of event types to accept; usually
+     *   constructed using {@link #maskOf} (for accepted types) or
+     *   <code>ALL_TYPES &amp; ~maskOf(...)</code> (for rejected ones)
+     * @param skipWhitespaceText Whether to also reject all text events
+     *   that only contain white space
+     */
+    public EventTypeFilter(int acceptedTypes, boolean skipWhitespaceText)
+    {
+        mAcceptedTypes = acceptedTypes;
+        mSkipWhitespaceText = skipWhitespaceText;
+    }
+
+    /**
+     * Factory method for constructing a filter that rejects comments,
+     * processing instructions and white space only text; that is,
+     * everything that can not affect the data content of a document.
+     */
+    public static EventTypeFilter dataOnly()
+    {
+        return new EventTypeFilter(ALL_TYPES & ~maskOf(COMMENT, PROCESSING_INSTRUCTION, SPACE), true);
+    }
+
+    /**
+     * Helper method for constructing type mask that contains given event
+     * types.
+     */
+    public static int maskOf(int... types)
+    {
+        int mask = 0;
+        for (int type : types) {
+            if (type <= 0 || type > 31) {
+                throw new IllegalArgumentException("Invalid event type: "+type);
+            }
+            mask |= (1 << type);
+        }
+        return mask;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Public API
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    public final boolean acceptsType(int type) {
+        return (mAcceptedTypes & (1 << type)) != 0;
+    }
+
+    public final boolean skipsWhitespaceText() {
+        return mSkipWhitespaceText;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // StreamFilter implementation
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    public boolean accept(XMLStreamReader r)
+    {
+        int type = r.getEventType();
+        if (!acceptsType(type)) {
+            return false;
+        }
+        if (mSkipWhitespaceText) {
+            switch (type) {
+            case CHARACTERS:
+            case CDATA:
+            case SPACE:
+                return !r.isWhiteSpace();
+            }
+        }
+        return true;
+    }
+}
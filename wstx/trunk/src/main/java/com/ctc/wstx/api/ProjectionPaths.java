@@ -0,0 +1,263 @@
+package com.ctc.wstx.api;
+
+import java.util.ArrayList;
+
+/**
+ * Compiled set of simple location paths, used for limiting events
+ * stream readers report to ones within matching sub-trees
+ * (see {@link WstxInputProperties#P_PROJECTION_PATHS}).
+ *<p>
+ * Paths consist of one or more element name steps, each preceded by
+ * either a single slash (child step) or double slash (descendant step);
+ * for example "/feed/entry/title", "//price" or "/catalog//item/name".
+ * Steps can be:
+ *<ul>
+ * <li>local names (like "entry"), which match elements with that local
+ *   name in any namespace (or, for non-namespace-aware readers, elements
+ *   with that exact name, prefix included)
+ *  </li>
+ * <li>qualified names in "James Clark" notation (like
+ *   "{http://www.w3.org/2005/Atom}entry"), which also have to match
+ *   namespace URI; "{}name" only matches elements in no namespace
+ *  </li>
+ * <li>"*", which matches any element
+ *  </li>
+ *</ul>
+ * Other XPath constructs (attributes, predicates, axes) are not supported.
+ * Total number of steps in all paths is limited to {@link #MAX_STEPS}.
+ *<p>
+ * Instances are immutable and can be shared between factories and readers.
+ * Matching state of an element is expressed as a <code>long</code>
+ * bit set of steps that children of the element may match next, so that
+ * readers need not allocate anything when tracking it.
+ *
+ * @since 5.0
+ */
+public final class ProjectionPaths
+{
+    /**
+     * Maximum number of steps in all paths of a single set.
+     */
+    public final static int MAX_STEPS = 62;
+
+    /**
+     * Bit set in matching state (see {@link #nextState}) if the element
+     * matched one of paths fully.
+     */
+    public final static long MATCH = Long.MIN_VALUE;
+
+    /**
+     * Bit set in matching state if the element matched a step of a path
+     * other than the last one (that is, it is an ancestor on the path of
+     * potential matches); as opposed to elements that may only contain
+     * matches due to descendant steps.
+     */
+    public final static long ON_PATH = (1L << 62);
+
+    final String[] mPaths;
+
+    /**
+     * Local names steps match, or null for wildcard steps
+     */
+    final String[] mLocalNames;
+
+    /**
+     * Namespace URIs steps match ("" for "no namespace"), or null if
+     * namespace is not to be checked
+     */
+    final String[] mNsURIs;
+
+    /**
+     * Flags for descendant steps: ones that can match at any depth below
+     * element that matched the previous step.
+     */
+    final boolean[] mDescendant;
+
+    /**
+     * Flags for last steps of paths
+     */
+    final boolean[] mLast;
+
+    final long mInitialState;
+
+    private ProjectionPaths(String[] paths, String[] localNames, String[] nsURIs,
+            boolean[] descendant, boolean[] last, long initialState)
+    {
+        mPaths = paths;
+        mLocalNames = localNames;
+        mNsURIs = nsURIs;
+        mDescendant = descendant;
+        mLast = last;
+        mInitialState = initialState;
+    }
+
+    /**
+     * Factory method for compiling given paths into a set.
+     *
+     * @throws IllegalArgumentException If any of paths is malformed, or
+     *   if there are more than {@link #MAX_STEPS} steps in total
+     */
+    public static ProjectionPaths compile(String... paths)
+    {
+        if (paths == null || paths.length == 0) {
+            throw new IllegalArgumentException("No paths to compile");
+        }
+        ArrayList<String> localNames = new ArrayList<String>();
+        ArrayList<String> nsURIs = new ArrayList<String>();
+        ArrayList<Boolean> descendant = new ArrayList<Boolean>();
+        ArrayList<Boolean> last = new ArrayList<Boolean>();
+        long initial = 0L;
+
+        for (String path : paths) {
+            if (path == null || !path.startsWith("/")) {
+                throw new IllegalArgumentException("Invalid path '"+path+"': has to start with '/' or '//'");
+            }
+            initial |= (1L << localNames.size());
+            int ix = 0;
+            final int len = path.length();
+            while (ix < len) {
+                // We are at slash; one or two?
+                boolean desc = (ix+1 < len) && path.charAt(ix+1) == '/';
+                ix += desc ? 2 : 1;
+                int end = path.indexOf('/', ix);
+                // Clark notation may have slashes in URI part
+                if (ix < len && path.charAt(ix) == '{') {
+                    int close = path.indexOf('}', ix);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("Invalid path '"+path+"': missing '}'");
+                    }
+                    end = path.indexOf('/', close);
+                }
+                if (end < 0) {
+                    end = len;
+                }
+                String step = path.substring(ix, end);
+                if (step.length() == 0) {
+                    throw new IllegalArgumentException("Invalid path '"+path+"': empty step at offset #"+ix);
+                }
+                if (localNames.size() >= MAX_STEPS) {
+                    throw new IllegalArgumentException("Too many steps in paths: can have at most "+MAX_STEPS);
+                }
+                String uri = null;
+                if (step.charAt(0) == '{') {
+                    int close = step.indexOf('}');
+                    uri = step.substring(1, close);
+                    step = step.substring(close+1);
+                    if (step.length() == 0) {
+                        throw new IllegalArgumentException("Invalid path '"+path+"': missing local name after namespace URI");
+                    }
+                }
+                localNames.add("*".equals(step) ? null : step);
+                nsURIs.add(uri);
+                descendant.add(Boolean.valueOf(desc));
+                last.add(Boolean.valueOf(end == len));
+                ix = end;
+            }
+        }
+        int count = localNames.size();
+        boolean[] descArr = new boolean[count];
+        boolean[] lastArr = new boolean[count];
+        for (int i = 0; i < count; ++i) {
+            descArr[i] = descendant.get(i).booleanValue();
+            lastArr[i] = last.get(i).booleanValue();
+        }
+        return new ProjectionPaths(paths.clone(),
+                localNames.toArray(new String[count]), nsURIs.toArray(new String[count]),
+                descArr, lastArr, initial);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Public API, matching
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Matching state to use for the root element (that is,
+     *   state of the "document node")
+     */
+    public long getInitialState() {
+        return mInitialState;
+    }
+
+    /**
+     * Method for calculating matching state of an element, given state
+     * of its parent element.
+     *
+     * @param state Matching state of the parent element
+     * @param localName Local name of the element
+     * @param nsURI Namespace URI of the element, if any (null or empty
+     *   String if none)
+     *
+     * @return Matching state of the element: if {@link #MATCH} bit is set,
+     *   element matched a path; otherwise if state is non-zero, descendants
+     *   of the element may still match (and if {@link #ON_PATH} is set,
+     *   element itself matched a step); and if zero, element can not
+     *   contain matches.
+     */
+    public long nextState(long state, String localName, String nsURI)
+    {
+        state &= ~(MATCH | ON_PATH);
+        long result = 0L;
+        while (state != 0L) {
+            int ix = Long.numberOfTrailingZeros(state);
+            long bit = (1L << ix);
+            state &= ~bit;
+            if (mDescendant[ix]) {
+                result |= bit;
+            }
+            if (stepMatches(ix, localName, nsURI)) {
+                result |= mLast[ix] ? MATCH : ((bit << 1) | ON_PATH);
+            }
+        }
+        return result;
+    }
+
+    public static boolean isMatch(long state) {
+        return (state & MATCH) != 0L;
+    }
+
+    public static boolean isOnPath(long state) {
+        return (state & ON_PATH) != 0L;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Std methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String path : mPaths) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(path);
+        }
+        return sb.toString();
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    private boolean stepMatches(int ix, String localName, String nsURI)
+    {
+        String name = mLocalNames[ix];
+        if (name != null && !name.equals(localName)) {
+            return false;
+        }
+        String uri = mNsURIs[ix];
+        if (uri != null) {
+            if (nsURI == null) {
+                nsURI = "";
+            }
+            return uri.equals(nsURI);
+        }
+        return true;
+    }
+}
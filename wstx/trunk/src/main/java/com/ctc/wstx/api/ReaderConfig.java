@@ -1,8 +1,8 @@
 package com.ctc.wstx.api;
 
-import java.lang.ref.SoftReference;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 import javax.xml.stream.*;
 
@@ -16,6 +16,8 @@ import com.ctc.wstx.dtd.DTDEventListener;
 import com.ctc.wstx.ent.IntEntity;
 import com.ctc.wstx.ent.EntityDecl;
 import com.ctc.wstx.io.BufferRecycler;
+import com.ctc.wstx.io.BufferRecyclerPool;
+import com.ctc.wstx.io.ThreadLocalBufferRecyclerPool;
 import com.ctc.wstx.util.ArgUtil;
 import com.ctc.wstx.util.DataUtil;
 import com.ctc.wstx.util.SymbolTable;
@@ -34,7 +36,7 @@ import com.ctc.wstx.util.SymbolTable;
  */
 public final class ReaderConfig
     extends CommonConfig
-    implements InputConfigFlags
+    implements InputConfigFlags, Cloneable
 {
     // Default limit values
     
@@ -102,6 +104,9 @@ public final class ReaderConfig
     final static int PROP_LAZY_PARSING = 44;
     final static int PROP_SUPPORT_DTDPP = 45;
     final static int PROP_TREAT_CHAR_REFS_AS_ENTS = 46;
+    final static int PROP_MEMORY_MAP_FILES = 47;
+    final static int PROP_READ_AHEAD = 48;
+    final static int PROP_RAW_SKIP_ELEMENT = 49;
 
     // Object type properties:
 
@@ -114,6 +119,12 @@ public final class ReaderConfig
     final static int PROP_UNDECLARED_ENTITY_RESOLVER = 56;
     final static int PROP_BASE_URL = 57;
     final static int PROP_INPUT_PARSING_MODE = 58;
+    final static int PROP_READ_AHEAD_EXECUTOR = 59;
+    final static int PROP_INPUT_COMPRESSION = 70;
+    final static int PROP_BUFFER_RECYCLER_POOL = 71;
+    final static int PROP_PROJECTION_PATHS = 72;
+    final static int PROP_LAZY_ATTRIBUTE_VALUES = 73;
+    final static int PROP_TRACK_BYTE_OFFSETS = 74;
 
     // Size limitation to prevent various DOS attacks
     final static int PROP_MAX_ATTRIBUTES_PER_ELEMENT = 60;
@@ -304,6 +315,16 @@ public final class ReaderConfig
                 DataUtil.Integer(PROP_TREAT_CHAR_REFS_AS_ENTS));
         sProperties.put(WstxInputProperties.P_NORMALIZE_LFS,
                 DataUtil.Integer(PROP_NORMALIZE_LFS));
+        sProperties.put(WstxInputProperties.P_MEMORY_MAP_FILES,
+                DataUtil.Integer(PROP_MEMORY_MAP_FILES));
+        sProperties.put(WstxInputProperties.P_READ_AHEAD,
+                DataUtil.Integer(PROP_READ_AHEAD));
+        sProperties.put(WstxInputProperties.P_RAW_SKIP_ELEMENT,
+                DataUtil.Integer(PROP_RAW_SKIP_ELEMENT));
+        sProperties.put(WstxInputProperties.P_LAZY_ATTRIBUTE_VALUES,
+                DataUtil.Integer(PROP_LAZY_ATTRIBUTE_VALUES));
+        sProperties.put(WstxInputProperties.P_TRACK_BYTE_OFFSETS,
+                DataUtil.Integer(PROP_TRACK_BYTE_OFFSETS));
         
 
         // Non-standard ones, non-flags:
@@ -344,8 +365,16 @@ public final class ReaderConfig
                         DataUtil.Integer(PROP_UNDECLARED_ENTITY_RESOLVER));
         sProperties.put(WstxInputProperties.P_BASE_URL,
                         DataUtil.Integer(PROP_BASE_URL));
+        sProperties.put(WstxInputProperties.P_READ_AHEAD_EXECUTOR,
+                        DataUtil.Integer(PROP_READ_AHEAD_EXECUTOR));
         sProperties.put(WstxInputProperties.P_INPUT_PARSING_MODE,
                         DataUtil.Integer(PROP_INPUT_PARSING_MODE));
+        sProperties.put(WstxInputProperties.P_INPUT_COMPRESSION,
+                        DataUtil.Integer(PROP_INPUT_COMPRESSION));
+        sProperties.put(WstxInputProperties.P_BUFFER_RECYCLER_POOL,
+                        DataUtil.Integer(PROP_BUFFER_RECYCLER_POOL));
+        sProperties.put(WstxInputProperties.P_PROJECTION_PATHS,
+                        DataUtil.Integer(PROP_PROJECTION_PATHS));
     }
 
     /*
@@ -356,7 +385,7 @@ public final class ReaderConfig
 
     final protected boolean mIsJ2MESubset;
 
-    final protected SymbolTable mSymbols;
+    protected SymbolTable mSymbols;
 
     /**
      * Bitset that contains state of on/off properties; initialized
@@ -407,6 +436,12 @@ public final class ReaderConfig
     protected WstxInputProperties.ParsingMode mParsingMode =
         WstxInputProperties.PARSING_MODE_DOCUMENT;
 
+    /**
+     * Whether and how compressed input is to be decompressed
+     */
+    protected WstxInputProperties.InputCompression mInputCompression =
+        WstxInputProperties.COMPRESSION_NONE;
+
     /**
      * This boolean flag is set if the input document requires
      * xml 1.1 (or above) compliant processing: default is xml 1.0
@@ -439,12 +474,22 @@ public final class ReaderConfig
 
     Object[] mSpecialProperties = null;
 
-    private final static int SPEC_PROC_COUNT = 4;
+    /**
+     * Flag that indicates that {@link #mSpecialProperties} is shared with
+     * the configuration snapshot this object was copied from, and has to
+     * be copied before being modified.
+     */
+    boolean mSpecialPropertiesShared = false;
+
+    private final static int SPEC_PROC_COUNT = 7;
 
     private final static int SP_IX_CUSTOM_ENTITIES = 0;
     private final static int SP_IX_UNDECL_ENT_RESOLVER = 1;
     private final static int SP_IX_DTD_EVENT_LISTENER = 2;
     private final static int SP_IX_DTD_OVERRIDE = 3;
+    private final static int SP_IX_READ_AHEAD_EXECUTOR = 4;
+    private final static int SP_IX_BUFFER_RECYCLER_POOL = 5;
+    private final static int SP_IX_PROJECTION_PATHS = 6;
 
     /*
     ///////////////////////////////////////////////////////////////////////
@@ -453,20 +498,41 @@ public final class ReaderConfig
      */
 
     /**
-     * This <code>ThreadLocal</code> contains a {@link SoftRerefence}
-     * to a {@link BufferRecycler} used to provide a low-cost
-     * buffer recycling between Reader instances.
+     * Pool used unless another one is configured: keeps a
+     * {@link BufferRecycler} per thread (separate from ones writers
+     * use), to provide a low-cost buffer recycling between Reader
+     * instances.
      */
-    final static ThreadLocal<SoftReference<BufferRecycler>> mRecyclerRef = new ThreadLocal<SoftReference<BufferRecycler>>();
+    final static BufferRecyclerPool sDefaultRecyclerPool = new ThreadLocalBufferRecyclerPool();
 
     /**
      * This is the actually container of the recyclable buffers. It
-     * is obtained via ThreadLocal/SoftReference combination, if one
-     * exists, when Config instance is created. If one does not
-     * exist, it will created first time a buffer is returned.
+     * is obtained from the buffer recycler pool first time a buffer
+     * is allocated or returned.
      */
     BufferRecycler mCurrRecycler = null;
 
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Snapshot support
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Number of modifications made to settings of this configuration
+     * object; used to detect whether a snapshot created earlier
+     * (see {@link #createSnapshot}) is still up to date. All mutators
+     * need to call {@link #modified} to update it.
+     */
+    protected int mModCount = 0;
+
+    /**
+     * For snapshots, value of {@link #mModCount} of the configuration
+     * object the snapshot was created from, at the time of creation;
+     * -1 for other configuration objects.
+     */
+    protected int mSnapshotOf = -1;
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Life-cycle
@@ -499,17 +565,6 @@ public final class ReaderConfig
             mMaxEntityDepth = base.mMaxEntityDepth;
             mMaxEntityCount = base.mMaxEntityCount;
         }
-
-        /* Ok, let's then see if we can find a buffer recycler. Since they
-         * are lazily constructed, and since GC may just flush them out
-         * on its whims, it's possible we might not find one. That's ok;
-         * we can reconstruct one if and when we are to return one or more
-         * buffers.
-         */
-        SoftReference<BufferRecycler> ref = mRecyclerRef.get();
-        if (ref != null) {
-            mCurrRecycler = ref.get();
-        }
     }
 
     public static ReaderConfig createJ2MEDefaults()
@@ -542,6 +597,9 @@ public final class ReaderConfig
     {
         // should we throw an exception?
         //if (sym == null) { }
+        if (mSnapshotOf >= 0) { // immutable, can just clone
+            return _copySnapshot(sym);
+        }
         ReaderConfig rc = new ReaderConfig(this,
                 mIsJ2MESubset, sym,
                 mConfigFlags, mConfigFlagMods,
@@ -552,6 +610,7 @@ public final class ReaderConfig
         rc.mEntityResolver = mEntityResolver;
         rc.mBaseURL = mBaseURL;
         rc.mParsingMode = mParsingMode;
+        rc.mInputCompression = mInputCompression;
         rc.mMaxAttributesPerElement = mMaxAttributesPerElement;
         rc.mMaxAttributeSize = mMaxAttributeSize;
         rc.mMaxChildrenPerElement = mMaxChildrenPerElement;
@@ -570,6 +629,68 @@ public final class ReaderConfig
         return rc;
     }
 
+    /**
+     * Method for creating a snapshot of current settings of this
+     * configuration object. Snapshot is not to be modified; instead,
+     * it is used for creating per-reader configuration objects
+     * (via {@link #createNonShared}) more efficiently than copying
+     * from a mutable configuration object: a snapshot is simply cloned,
+     * sharing its specialized configuration objects until the per-reader
+     * copy modifies them.
+     *<p>
+     * Snapshots are safe to share between threads as long as they
+     * are published safely (for example, via a volatile field).
+     *
+     * @since 5.0
+     */
+    public ReaderConfig createSnapshot()
+    {
+        ReaderConfig rc = createNonShared(null);
+        rc.mSnapshotOf = mModCount;
+        rc.mSpecialPropertiesShared = true;
+        return rc;
+    }
+
+    /**
+     * @return True if this object is a snapshot created from given
+     *   configuration object, and it has not been modified since
+     *
+     * @since 5.0
+     */
+    public boolean isSnapshotOf(ReaderConfig base) {
+        return (mSnapshotOf >= 0) && (mSnapshotOf == base.mModCount);
+    }
+
+    /**
+     * @return True if settings of this object have been modified since
+     *   it was created (or copied, see {@link #createNonShared})
+     *
+     * @since 5.0
+     */
+    public boolean isModified() {
+        return (mModCount != 0);
+    }
+
+    /**
+     * Method called to create a per-reader copy of a snapshot.
+     */
+    private ReaderConfig _copySnapshot(SymbolTable sym)
+    {
+        ReaderConfig rc;
+        try {
+            rc = (ReaderConfig) clone();
+        } catch (CloneNotSupportedException e) { // never gets here
+            throw new IllegalStateException(e);
+        }
+        rc.mSymbols = sym;
+        rc.mSnapshotOf = -1;
+        rc.mModCount = 0;
+        // these should be clear in a snapshot, but just in case
+        rc.mCurrRecycler = null;
+        rc.mXml11 = false;
+        return rc;
+    }
+
     /**
      * Unlike name suggests there is also some limited state information
      * associated with the config object. If these objects are reused,
@@ -697,6 +818,26 @@ public final class ReaderConfig
     public boolean willNormalizeLFs() {
         return _hasConfigFlag(CFG_NORMALIZE_LFS);
     }
+
+    public boolean willMemoryMapFiles() {
+        return _hasConfigFlag(CFG_MEMORY_MAP_FILES);
+    }
+
+    public boolean willReadAhead() {
+        return _hasConfigFlag(CFG_READ_AHEAD);
+    }
+
+    public boolean willSkipElementsRaw() {
+        return _hasConfigFlag(CFG_RAW_SKIP_ELEMENT);
+    }
+
+    public boolean willExpandAttributeValuesLazily() {
+        return _hasConfigFlag(CFG_LAZY_ATTRIBUTE_VALUES);
+    }
+
+    public boolean willTrackByteOffsets() {
+        return _hasConfigFlag(CFG_TRACK_BYTE_OFFSETS);
+    }
     
     public boolean willTreatCharRefsAsEnts() {
         return _hasConfigFlag(CFG_TREAT_CHAR_REFS_AS_ENTS);
@@ -761,6 +902,10 @@ public final class ReaderConfig
         return mParsingMode;
     }
 
+    public WstxInputProperties.InputCompression getInputCompression() {
+        return mInputCompression;
+    }
+
     public boolean inputParsingModeDocuments() {
         return mParsingMode == WstxInputProperties.PARSING_MODE_DOCUMENTS;
     }
@@ -786,6 +931,19 @@ public final class ReaderConfig
         return (DTDValidationSchema) _getSpecialProperty(SP_IX_DTD_OVERRIDE);
     }
 
+    public Executor getReadAheadExecutor() {
+        return (Executor) _getSpecialProperty(SP_IX_READ_AHEAD_EXECUTOR);
+    }
+
+    public BufferRecyclerPool getBufferRecyclerPool() {
+        BufferRecyclerPool pool = (BufferRecyclerPool) _getSpecialProperty(SP_IX_BUFFER_RECYCLER_POOL);
+        return (pool == null) ? sDefaultRecyclerPool : pool;
+    }
+
+    public ProjectionPaths getProjectionPaths() {
+        return (ProjectionPaths) _getSpecialProperty(SP_IX_PROJECTION_PATHS);
+    }
+
     /**
      * Special accessor to use to verify whether name interning has
      * explicitly been enabled; true if call was been made to set
@@ -806,13 +964,22 @@ public final class ReaderConfig
      */
 
     public void setConfigFlag(int flag) {
-        mConfigFlags |= flag;
-        mConfigFlagMods |= flag;
+        setConfigFlag(flag, true);
     }
 
     public void clearConfigFlag(int flag) {
-        mConfigFlags &= ~flag;
-        mConfigFlagMods |= flag;
+        setConfigFlag(flag, false);
+    }
+
+    /**
+     * Method called by a reader that is being reset for parsing a new
+     * document, to replace the symbol table of its (non-shared)
+     * configuration with one derived from the current shared table.
+     *
+     * @since 5.0
+     */
+    public void setSymbols(SymbolTable symbols) {
+        mSymbols = symbols;
     }
 
     // // // Mutators for standard StAX properties
@@ -899,8 +1066,29 @@ public final class ReaderConfig
         setConfigFlag(CFG_NORMALIZE_LFS, state);
     }
 
+    public void doMemoryMapFiles(boolean state) {
+        setConfigFlag(CFG_MEMORY_MAP_FILES, state);
+    }
+
+    public void doReadAhead(boolean state) {
+        setConfigFlag(CFG_READ_AHEAD, state);
+    }
+
+    public void doSkipElementsRaw(boolean state) {
+        setConfigFlag(CFG_RAW_SKIP_ELEMENT, state);
+    }
+
+    public void doExpandAttributeValuesLazily(boolean state) {
+        setConfigFlag(CFG_LAZY_ATTRIBUTE_VALUES, state);
+    }
+
+    public void doTrackByteOffsets(boolean state) {
+        setConfigFlag(CFG_TRACK_BYTE_OFFSETS, state);
+    }
+
     public void setInputBufferLength(int value)
     {
+        modified();
         /* Let's enforce minimum here; necessary to allow longest
          * consequtive text span to be available (xml decl, etc)
          */
@@ -911,33 +1099,43 @@ public final class ReaderConfig
     }
 
     public void setShortestReportedTextSegment(int value) {
+        modified();
         mMinTextSegmentLen = value;
     }
     public void setMaxAttributesPerElement(int value) {
+        modified();
         mMaxAttributesPerElement = value;
     }
     public void setMaxAttributeSize(int value) {
+        modified();
         mMaxAttributeSize = value;
     }
     public void setMaxChildrenPerElement(int value) {
+        modified();
         mMaxChildrenPerElement = value;
     }
     public void setMaxElementDepth(int value) {
+        modified();
         mMaxElementDepth = value;
     }
     public void setMaxElementCount(long value) {
+        modified();
         mMaxElementCount = value;
     }
     public void setMaxCharacters(long value) {
+        modified();
         mMaxCharacters = value;
     }
     public void setMaxTextLength(int value) {
+        modified();
         mMaxTextLength = value;
     }
     public void setMaxEntityDepth(int value) {
+        modified();
         mMaxEntityDepth = value;
     }
     public void setMaxEntityCount(long value) {
+        modified();
         mMaxEntityCount = value;
     }
 
@@ -969,6 +1167,7 @@ public final class ReaderConfig
     }
 
     public void setXMLReporter(XMLReporter r) {
+        modified();
         mReporter = r;
     }
 
@@ -977,15 +1176,18 @@ public final class ReaderConfig
      * and {@link #setDtdResolver} instead.
      */
     public void setXMLResolver(XMLResolver r) {
+        modified();
         mEntityResolver = r;
         mDtdResolver = r;
     }
 
     public void setDtdResolver(XMLResolver r) {
+        modified();
         mDtdResolver = r;
     }
 
     public void setEntityResolver(XMLResolver r) {
+        modified();
         mEntityResolver = r;
     }
 
@@ -993,12 +1195,21 @@ public final class ReaderConfig
         _setSpecialProperty(SP_IX_UNDECL_ENT_RESOLVER, r);
     }
 
-    public void setBaseURL(URL baseURL) { mBaseURL = baseURL; }
+    public void setBaseURL(URL baseURL) {
+        modified();
+        mBaseURL = baseURL;
+    }
 
     public void setInputParsingMode(WstxInputProperties.ParsingMode mode) {
+        modified();
         mParsingMode = mode;
     }
 
+    public void setInputCompression(WstxInputProperties.InputCompression comp) {
+        modified();
+        mInputCompression = (comp == null) ? WstxInputProperties.COMPRESSION_NONE : comp;
+    }
+
     /**
      * Method called to enable or disable 1.1 compliant processing; if
      * disabled, defaults to xml 1.0 compliant processing.
@@ -1015,6 +1226,27 @@ public final class ReaderConfig
         _setSpecialProperty(SP_IX_DTD_OVERRIDE, schema);
     }
 
+    public void setReadAheadExecutor(Executor executor) {
+        _setSpecialProperty(SP_IX_READ_AHEAD_EXECUTOR, executor);
+    }
+
+    /**
+     * @param pool Pool to get buffer recycler from; if null, default
+     *   (per-thread) pool is used
+     */
+    public void setBufferRecyclerPool(BufferRecyclerPool pool) {
+        _setSpecialProperty(SP_IX_BUFFER_RECYCLER_POOL, pool);
+        mCurrRecycler = null;
+    }
+
+    /**
+     * @param paths Paths that determine sub-trees readers report events
+     *   from; if null, all events are reported
+     */
+    public void setProjectionPaths(ProjectionPaths paths) {
+        _setSpecialProperty(SP_IX_PROJECTION_PATHS, paths);
+    }
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Profile mutators:
@@ -1235,89 +1467,56 @@ public final class ReaderConfig
 
     public char[] allocSmallCBuffer(int minSize)
     {
-        if (mCurrRecycler != null) {
-            char[] result = mCurrRecycler.getSmallCBuffer(minSize);
-            if (result != null) {
-                return result;
-            }
-        }
-        // Nope; no recycler, or it has no suitable buffers, let's create:
-        return new char[minSize];
+        char[] result = getRecycler().getSmallCBuffer(minSize);
+        // No suitable buffer recycled? Let's create:
+        return (result == null) ? new char[minSize] : result;
     }
 
     public void freeSmallCBuffer(char[] buffer)
     {
-        // Need to create (and assign) the buffer?
-        if (mCurrRecycler == null) {
-            mCurrRecycler = createRecycler();
-        }
-        mCurrRecycler.returnSmallCBuffer(buffer);
+        getRecycler().returnSmallCBuffer(buffer);
     }
 
     public char[] allocMediumCBuffer(int minSize)
     {
-        if (mCurrRecycler != null) {
-            char[] result = mCurrRecycler.getMediumCBuffer(minSize);
-            if (result != null) {
-                return result;
-            }
-        }
-        return new char[minSize];
+        char[] result = getRecycler().getMediumCBuffer(minSize);
+        return (result == null) ? new char[minSize] : result;
     }
 
     public void freeMediumCBuffer(char[] buffer)
     {
-        if (mCurrRecycler == null) {
-            mCurrRecycler = createRecycler();
-        }
-        mCurrRecycler.returnMediumCBuffer(buffer);
+        getRecycler().returnMediumCBuffer(buffer);
     }
 
     public char[] allocFullCBuffer(int minSize)
     {
-        if (mCurrRecycler != null) {
-            char[] result = mCurrRecycler.getFullCBuffer(minSize);
-            if (result != null) {
-                return result;
-            }
-        }
-        return new char[minSize];
+        char[] result = getRecycler().getFullCBuffer(minSize);
+        return (result == null) ? new char[minSize] : result;
     }
 
     public void freeFullCBuffer(char[] buffer)
     {
-        // Need to create (and assign) the buffer?
-        if (mCurrRecycler == null) {
-            mCurrRecycler = createRecycler();
-        }
-        mCurrRecycler.returnFullCBuffer(buffer);
+        getRecycler().returnFullCBuffer(buffer);
     }
 
     public byte[] allocFullBBuffer(int minSize)
     {
-        if (mCurrRecycler != null) {
-            byte[] result = mCurrRecycler.getFullBBuffer(minSize);
-            if (result != null) {
-                return result;
-            }
-        }
-        return new byte[minSize];
+        byte[] result = getRecycler().getFullBBuffer(minSize);
+        return (result == null) ? new byte[minSize] : result;
     }
 
     public void freeFullBBuffer(byte[] buffer)
     {
-        // Need to create (and assign) the buffer?
-        if (mCurrRecycler == null) {
-            mCurrRecycler = createRecycler();
-        }
-        mCurrRecycler.returnFullBBuffer(buffer);
+        getRecycler().returnFullBBuffer(buffer);
     }
 
-    private BufferRecycler createRecycler()
+    private BufferRecycler getRecycler()
     {
-        BufferRecycler recycler = new BufferRecycler();
-        // No way to reuse/reset SoftReference, have to create new always:
-        mRecyclerRef.set(new SoftReference<BufferRecycler>(recycler));
+        // Need to get (and assign) the recycler?
+        BufferRecycler recycler = mCurrRecycler;
+        if (recycler == null) {
+            mCurrRecycler = recycler = getBufferRecyclerPool().getRecycler();
+        }
         return recycler;
     }
 
@@ -1327,8 +1526,18 @@ public final class ReaderConfig
     ///////////////////////////////////////////////////////////////////////
      */
 
+    /**
+     * Method that all mutators call, to invalidate snapshots created
+     * from the current settings.
+     */
+    private void modified()
+    {
+        ++mModCount;
+    }
+
     private void setConfigFlag(int flag, boolean state)
     {
+        modified();
         if (state) {
             mConfigFlags |= flag;
         } else {
@@ -1410,6 +1619,18 @@ public final class ReaderConfig
         case PROP_NORMALIZE_LFS:
             return willNormalizeLFs() ? Boolean.TRUE : Boolean.FALSE;
 
+        case PROP_MEMORY_MAP_FILES:
+            return willMemoryMapFiles() ? Boolean.TRUE : Boolean.FALSE;
+
+        case PROP_READ_AHEAD:
+            return willReadAhead() ? Boolean.TRUE : Boolean.FALSE;
+        case PROP_RAW_SKIP_ELEMENT:
+            return willSkipElementsRaw() ? Boolean.TRUE : Boolean.FALSE;
+        case PROP_LAZY_ATTRIBUTE_VALUES:
+            return willExpandAttributeValuesLazily() ? Boolean.TRUE : Boolean.FALSE;
+        case PROP_TRACK_BYTE_OFFSETS:
+            return willTrackByteOffsets() ? Boolean.TRUE : Boolean.FALSE;
+
             // then object values:
         case PROP_INPUT_BUFFER_LENGTH:
             return DataUtil.Integer(getInputBufferLength());
@@ -1446,6 +1667,14 @@ public final class ReaderConfig
             return getBaseURL();
         case PROP_INPUT_PARSING_MODE:
             return getInputParsingMode();
+        case PROP_READ_AHEAD_EXECUTOR:
+            return getReadAheadExecutor();
+        case PROP_INPUT_COMPRESSION:
+            return getInputCompression();
+        case PROP_BUFFER_RECYCLER_POOL:
+            return getBufferRecyclerPool();
+        case PROP_PROJECTION_PATHS:
+            return getProjectionPaths();
 
         default: // sanity check, should never happen
             throw new IllegalStateException("Internal error: no handler for property with internal id "+id+".");
@@ -1573,6 +1802,26 @@ public final class ReaderConfig
         case PROP_NORMALIZE_LFS:
             doNormalizeLFs(ArgUtil.convertToBoolean(propName, value));
             break;
+
+        case PROP_MEMORY_MAP_FILES:
+            doMemoryMapFiles(ArgUtil.convertToBoolean(propName, value));
+            break;
+
+        case PROP_READ_AHEAD:
+            doReadAhead(ArgUtil.convertToBoolean(propName, value));
+            break;
+
+        case PROP_RAW_SKIP_ELEMENT:
+            doSkipElementsRaw(ArgUtil.convertToBoolean(propName, value));
+            break;
+
+        case PROP_LAZY_ATTRIBUTE_VALUES:
+            doExpandAttributeValuesLazily(ArgUtil.convertToBoolean(propName, value));
+            break;
+
+        case PROP_TRACK_BYTE_OFFSETS:
+            doTrackByteOffsets(ArgUtil.convertToBoolean(propName, value));
+            break;
             
         // // // And then Woodstox specific, enum/object:
 
@@ -1658,6 +1907,27 @@ public final class ReaderConfig
             setInputParsingMode((WstxInputProperties.ParsingMode) value);
             break;
 
+        case PROP_READ_AHEAD_EXECUTOR:
+            setReadAheadExecutor((Executor) value);
+            break;
+
+        case PROP_INPUT_COMPRESSION:
+            setInputCompression((WstxInputProperties.InputCompression) value);
+            break;
+
+        case PROP_BUFFER_RECYCLER_POOL:
+            setBufferRecyclerPool((BufferRecyclerPool) value);
+            break;
+
+        case PROP_PROJECTION_PATHS:
+            if (value instanceof String) {
+                value = ProjectionPaths.compile((String) value);
+            } else if (value instanceof String[]) {
+                value = ProjectionPaths.compile((String[]) value);
+            }
+            setProjectionPaths((ProjectionPaths) value);
+            break;
+
         default: // sanity check, should never happen
             throw new IllegalStateException("Internal error: no handler for property with internal id "+id+".");
         }
@@ -1665,6 +1935,13 @@ public final class ReaderConfig
         return true;
     }
 
+    @Override
+    protected boolean setStdProperty(String propName, int id, Object value)
+    {
+        modified();
+        return super.setStdProperty(propName, id, value);
+    }
+
     protected boolean _hasConfigFlag(int flag) {
         return (mConfigFlags & flag) != 0;
     }
@@ -1688,8 +1965,12 @@ public final class ReaderConfig
 
     private final void _setSpecialProperty(int ix, Object value)
     {
+        modified();
         if (mSpecialProperties == null) {
             mSpecialProperties = new Object[SPEC_PROC_COUNT];
+        } else if (mSpecialPropertiesShared) {
+            mSpecialProperties = mSpecialProperties.clone();
+            mSpecialPropertiesShared = false;
         }
         mSpecialProperties[ix] = value;
     }
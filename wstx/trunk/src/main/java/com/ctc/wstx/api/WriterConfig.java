@@ -1,6 +1,5 @@
 package com.ctc.wstx.api;
 
-import java.lang.ref.SoftReference;
 import java.util.HashMap;
 
 import javax.xml.stream.XMLOutputFactory;
@@ -12,6 +11,8 @@ import org.codehaus.stax2.io.EscapingWriterFactory;
 
 import com.ctc.wstx.cfg.OutputConfigFlags;
 import com.ctc.wstx.io.BufferRecycler;
+import com.ctc.wstx.io.BufferRecyclerPool;
+import com.ctc.wstx.io.ThreadLocalBufferRecyclerPool;
 import com.ctc.wstx.util.ArgUtil;
 import com.ctc.wstx.util.DataUtil;
 // for property consts
@@ -73,6 +74,7 @@ public final class WriterConfig
 
     final static int PROP_OUTPUT_INVALID_CHAR_HANDLER = 21;
     final static int PROP_OUTPUT_EMPTY_ELEMENT_HANDLER = 22;
+    final static int PROP_BUFFER_RECYCLER_POOL = 23;
 
     // Per-writer instance information
 
@@ -217,6 +219,8 @@ public final class WriterConfig
                         DataUtil.Integer(PROP_OUTPUT_INVALID_CHAR_HANDLER));
         sProperties.put(WstxOutputProperties.P_OUTPUT_EMPTY_ELEMENT_HANDLER,
                         DataUtil.Integer(PROP_OUTPUT_EMPTY_ELEMENT_HANDLER));
+        sProperties.put(WstxOutputProperties.P_BUFFER_RECYCLER_POOL,
+                        DataUtil.Integer(PROP_BUFFER_RECYCLER_POOL));
 
         // Validation settings:
         sProperties.put(WstxOutputProperties.P_OUTPUT_VALIDATE_STRUCTURE,
@@ -261,7 +265,7 @@ public final class WriterConfig
 
     Object[] mSpecialProperties = null;
 
-    private final static int SPEC_PROC_COUNT = 6;
+    private final static int SPEC_PROC_COUNT = 7;
 
     private final static int SP_IX_AUTO_NS_PREFIX = 0;
     private final static int SP_IX_TEXT_ESCAPER_FACTORY = 1;
@@ -269,6 +273,7 @@ public final class WriterConfig
     private final static int SP_IX_PROBLEM_REPORTER = 3;
     private final static int SP_IX_INVALID_CHAR_HANDLER = 4;
     private final static int SP_IX_EMPTY_ELEMENT_HANDLER = 5;
+    private final static int SP_IX_BUFFER_RECYCLER_POOL = 6;
 
     /*
     //////////////////////////////////////////////////////////
@@ -277,17 +282,17 @@ public final class WriterConfig
      */
 
     /**
-     * This <code>ThreadLocal</code> contains a {@link SoftRerefence}
-     * to a {@link BufferRecycler} used to provide a low-cost
-     * buffer recycling between Reader instances.
+     * Pool used unless another one is configured: keeps a
+     * {@link BufferRecycler} per thread (separate from ones readers
+     * use), to provide a low-cost buffer recycling between Writer
+     * instances.
      */
-    final static ThreadLocal<SoftReference<BufferRecycler>> mRecyclerRef = new ThreadLocal<SoftReference<BufferRecycler>>();
+    final static BufferRecyclerPool sDefaultRecyclerPool = new ThreadLocalBufferRecyclerPool();
 
     /**
      * This is the actually container of the recyclable buffers. It
-     * is obtained via ThreadLocal/SoftReference combination, if one
-     * exists, when Config instance is created. If one does not
-     * exists, it will created first time a buffer is returned.
+     * is obtained from the buffer recycler pool first time a buffer
+     * is allocated or returned.
      */
     BufferRecycler mCurrRecycler = null;
 
@@ -304,17 +309,6 @@ public final class WriterConfig
         mIsJ2MESubset = j2meSubset;
         mConfigFlags = flags;
         mSpecialProperties = specProps;
-
-        /* Ok, let's then see if we can find a buffer recycler. Since they
-         * are lazily constructed, and since GC may just flush them out
-         * on its whims, it's possible we might not find one. That's ok;
-         * we can reconstruct one if and when we are to return one or more
-         * buffers.
-         */
-        SoftReference<BufferRecycler> ref = mRecyclerRef.get();
-        if (ref != null) {
-            mCurrRecycler = ref.get();
-        }
     }
 
     public static WriterConfig createJ2MEDefaults()
@@ -418,6 +412,8 @@ public final class WriterConfig
             return getInvalidCharHandler();
         case PROP_OUTPUT_EMPTY_ELEMENT_HANDLER:
             return getEmptyElementHandler();
+        case PROP_BUFFER_RECYCLER_POOL:
+            return getBufferRecyclerPool();
 
             // And then per-instance properties: not valid via config object
         case PROP_UNDERLYING_STREAM:
@@ -512,6 +508,9 @@ public final class WriterConfig
         case PROP_OUTPUT_EMPTY_ELEMENT_HANDLER:
             setEmptyElementHandler((EmptyElementHandler) value);
             break;
+        case PROP_BUFFER_RECYCLER_POOL:
+            setBufferRecyclerPool((BufferRecyclerPool) value);
+            break;
 
         case PROP_UNDERLYING_STREAM:
         case PROP_UNDERLYING_WRITER:
@@ -635,6 +634,11 @@ public final class WriterConfig
         return (EmptyElementHandler) getSpecialProperty(SP_IX_EMPTY_ELEMENT_HANDLER);
     }
 
+    public BufferRecyclerPool getBufferRecyclerPool() {
+        BufferRecyclerPool pool = (BufferRecyclerPool) getSpecialProperty(SP_IX_BUFFER_RECYCLER_POOL);
+        return (pool == null) ? sDefaultRecyclerPool : pool;
+    }
+
     // // // Mutators:
 
     // Standard properies:
@@ -732,6 +736,15 @@ public final class WriterConfig
         setSpecialProperty(SP_IX_EMPTY_ELEMENT_HANDLER, h);
     }
 
+    /**
+     * @param pool Pool to get buffer recycler from; if null, default
+     *   (per-thread) pool is used
+     */
+    public void setBufferRecyclerPool(BufferRecyclerPool pool) {
+        setSpecialProperty(SP_IX_BUFFER_RECYCLER_POOL, pool);
+        mCurrRecycler = null;
+    }
+
     /*
     //////////////////////////////////////////////////////////
     // Extended Woodstox API, profiles
@@ -795,69 +808,44 @@ public final class WriterConfig
      */
     public char[] allocMediumCBuffer(int minSize)
     {
-        if (mCurrRecycler != null) {
-            char[] result = mCurrRecycler.getMediumCBuffer(minSize);
-            if (result != null) {
-                return result;
-            }
-        }
-        return new char[minSize];
+        char[] result = getRecycler().getMediumCBuffer(minSize);
+        return (result == null) ? new char[minSize] : result;
     }
 
     public void freeMediumCBuffer(char[] buffer)
     {
-        // Need to create (and assign) the buffer?
-        if (mCurrRecycler == null) {
-            mCurrRecycler = createRecycler();
-        }
-        mCurrRecycler.returnMediumCBuffer(buffer);
+        getRecycler().returnMediumCBuffer(buffer);
     }
 
     public char[] allocFullCBuffer(int minSize)
     {
-        if (mCurrRecycler != null) {
-            char[] result = mCurrRecycler.getFullCBuffer(minSize);
-            if (result != null) {
-                return result;
-            }
-        }
-        return new char[minSize];
+        char[] result = getRecycler().getFullCBuffer(minSize);
+        return (result == null) ? new char[minSize] : result;
     }
 
     public void freeFullCBuffer(char[] buffer)
     {
-        // Need to create (and assign) the buffer?
-        if (mCurrRecycler == null) {
-            mCurrRecycler = createRecycler();
-        }
-        mCurrRecycler.returnFullCBuffer(buffer);
+        getRecycler().returnFullCBuffer(buffer);
     }
 
     public byte[] allocFullBBuffer(int minSize)
     {
-        if (mCurrRecycler != null) {
-            byte[] result = mCurrRecycler.getFullBBuffer(minSize);
-            if (result != null) {
-                return result;
-            }
-        }
-        return new byte[minSize];
+        byte[] result = getRecycler().getFullBBuffer(minSize);
+        return (result == null) ? new byte[minSize] : result;
     }
 
     public void freeFullBBuffer(byte[] buffer)
     {
-        // Need to create (and assign) the buffer?
-        if (mCurrRecycler == null) {
-            mCurrRecycler = createRecycler();
-        }
-        mCurrRecycler.returnFullBBuffer(buffer);
+        getRecycler().returnFullBBuffer(buffer);
     }
 
-    private BufferRecycler createRecycler()
+    private BufferRecycler getRecycler()
     {
-        BufferRecycler recycler = new BufferRecycler();
-        // No way to reuse/reset SoftReference, have to create new always:
-        mRecyclerRef.set(new SoftReference<BufferRecycler>(recycler));
+        // Need to get (and assign) the recycler?
+        BufferRecycler recycler = mCurrRecycler;
+        if (recycler == null) {
+            mCurrRecycler = recycler = getBufferRecyclerPool().getRecycler();
+        }
         return recycler;
     }
 
@@ -277,6 +277,76 @@ public final class WstxInputProperties
      */
     public final static String P_BASE_URL = "com.ctc.wstx.baseURL";
 
+    /**
+     * Whether readers constructed for {@link java.io.File}s should
+     * access file contents by memory-mapping it (in windows, to allow
+     * files bigger than 2 gigabytes), instead of reading it via a
+     * {@link java.io.FileInputStream}. Default is false.
+     */
+    public final static String P_MEMORY_MAP_FILES = "com.ctc.wstx.memoryMapFiles";
+
+    /**
+     * Whether content of {@link java.io.InputStream}s (including ones
+     * opened for {@link java.io.File}s and {@link java.net.URL}s) should
+     * be read ahead by a background task, concurrently with parsing.
+     * This can help with slow streams (network, decompression), since
+     * I/O latency then overlaps with parsing. At most two input buffers
+     * are filled ahead. Default is false.
+     *<p>
+     * Note: stream readers created with this feature enabled should always
+     * be closed, to stop read-ahead; closing will not close streams
+     * passed by the caller, unless auto-closing is enabled.
+     */
+    public final static String P_READ_AHEAD = "com.ctc.wstx.readAhead";
+
+    /**
+     * Optional {@link java.util.concurrent.Executor} used for running
+     * read-ahead tasks (see {@link #P_READ_AHEAD}); if none set, a shared
+     * pool of daemon threads (threads created as needed, released when
+     * idle) is used. Executor needs to
+     * be able to run tasks concurrently with calling threads.
+     */
+    public final static String P_READ_AHEAD_EXECUTOR = "com.ctc.wstx.readAheadExecutor";
+
+    /**
+     * Whether {@link org.codehaus.stax2.XMLStreamReader2#skipElement} should
+     * skip contents of the current element by just scanning through
+     * markup and counting nesting depth, instead of parsing all nested
+     * events fully (resolving namespaces, collecting attributes and
+     * so on). Tag balance, structure of comments, CDATA sections and
+     * processing instructions, and basic validity of characters are still
+     * checked; but other well-formedness problems within skipped content
+     * (such as undeclared entities, malformed attributes or duplicate
+     * attributes) are not reported. Raw skipping is not used when content
+     * is being validated. Default is false.
+     */
+    public final static String P_RAW_SKIP_ELEMENT = "com.ctc.wstx.rawSkipElement";
+
+    /**
+     * Whether attribute values are to be expanded (entities replaced,
+     * white space normalized, Strings constructed) lazily, only when
+     * they are accessed, instead of copying all values when the start
+     * element is parsed. Well-formedness problems in values are still
+     * reported when the start element is parsed. This is beneficial
+     * for documents with many (or long) attributes, only some of which
+     * are read by the application. Values that contain general entities,
+     * or that do not fit in the input buffer, are parsed regularly; and
+     * values are expanded all at once when needed for validation or typed
+     * access, or when the input buffer is about to be reloaded.
+     * Default is false.
+     */
+    public final static String P_LAZY_ATTRIBUTE_VALUES = "com.ctc.wstx.lazyAttributeValues";
+
+    /**
+     * Whether byte offsets of events are to be tracked for byte-based
+     * input that the parser decodes itself. When enabled, the encoded
+     * length of characters still in the input buffer is recalculated
+     * whenever the buffer is reloaded, which adds a pass over decoded
+     * content; when disabled, methods that return byte offsets return -1.
+     * Default is false.
+     */
+    public final static String P_TRACK_BYTE_OFFSETS = "com.ctc.wstx.trackByteOffsets";
+
     // // // Alternate parsing modes
 
     /**
@@ -305,6 +375,60 @@ public final class WstxInputProperties
      */
     public final static String P_INPUT_PARSING_MODE = "com.ctc.wstx.fragmentMode";
 
+    // // // Compressed input
+
+    /**
+     * Property that defines how compressed input streams are handled;
+     * one of {@link #COMPRESSION_NONE} (default), {@link #COMPRESSION_AUTO},
+     * {@link #COMPRESSION_GZIP} or {@link #COMPRESSION_DEFLATE}.
+     * In auto-detect mode, gzip-compressed content is detected from its
+     * magic bytes (which can never start well-formed xml content), and
+     * decompressed transparently; since detection has to read the first
+     * bytes of every stream before decoding, it is not enabled by default.
+     * Explicit mode is needed for zlib-wrapped ("deflate") content.
+     *<p>
+     * Decompression uses pooled {@link java.util.zip.Inflater} instances,
+     * and decompresses directly into the input buffer of the decoder.
+     * Number of compressed and uncompressed bytes read can be accessed
+     * via {@link com.ctc.wstx.sr.BasicStreamReader#getCompressedBytesRead}
+     * and
+     * {@link com.ctc.wstx.sr.BasicStreamReader#getUncompressedBytesRead}.
+     */
+    public final static String P_INPUT_COMPRESSION = "com.ctc.wstx.inputCompression";
+
+    // // // Buffer recycling
+
+    /**
+     * Property that defines {@link com.ctc.wstx.io.BufferRecyclerPool}
+     * that readers get their recyclable buffers from. Default pool keeps
+     * buffers per thread ({@link com.ctc.wstx.io.ThreadLocalBufferRecyclerPool});
+     * {@link com.ctc.wstx.io.SharedBufferRecyclerPool} shares buffers
+     * globally, which works better with large numbers of short-lived
+     * threads (like virtual threads).
+     */
+    public final static String P_BUFFER_RECYCLER_POOL = "com.ctc.wstx.bufferRecyclerPool";
+
+    // // // Projection
+
+    /**
+     * Property that defines {@link ProjectionPaths} (set of simple location
+     * paths, like "/feed/entry/title" or "//price") used for limiting
+     * events readers report: if set, only events within sub-trees of
+     * elements that match one of paths are reported, plus start and end
+     * elements of their ancestors (or, with descendant steps like "//price",
+     * of all elements that might contain matches). All other sub-trees
+     * are skipped without fully parsing their contents (except where
+     * validation requires it), and text, comments and processing
+     * instructions directly within ancestors are not reported either.
+     * Prolog and epilog events are reported as usual.
+     *<p>
+     * In addition to {@link ProjectionPaths} instances, a single path
+     * (as a {@link String}) or multiple paths ({@link String}[]) may be
+     * passed, to be compiled. Default is null, meaning that all events
+     * are reported.
+     */
+    public final static String P_PROJECTION_PATHS = "com.ctc.wstx.projectionPaths";
+
     // // // DTD defaulting, overriding
 
     /*
@@ -324,4 +448,17 @@ public final class WstxInputProperties
     {
         ParsingMode() { }
     }
+
+    public final static InputCompression COMPRESSION_AUTO = new InputCompression();
+    public final static InputCompression COMPRESSION_NONE = new InputCompression();
+    public final static InputCompression COMPRESSION_GZIP = new InputCompression();
+    public final static InputCompression COMPRESSION_DEFLATE = new InputCompression();
+
+    /**
+     * Type-safe enumeration of values for {@link #P_INPUT_COMPRESSION}
+     */
+    public final static class InputCompression
+    {
+        InputCompression() { }
+    }
 }
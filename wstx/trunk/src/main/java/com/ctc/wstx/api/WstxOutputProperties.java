@@ -183,4 +183,13 @@ public final class WstxOutputProperties
      * flushing output.
      */
     public final static String P_OUTPUT_UNDERLYING_WRITER = "com.ctc.wstx.outputUnderlyingWriter";
+
+    // // // Buffer recycling
+
+    /**
+     * Property that defines {@link com.ctc.wstx.io.BufferRecyclerPool}
+     * that writers get their recyclable buffers from; same as
+     * {@link WstxInputProperties#P_BUFFER_RECYCLER_POOL} for readers.
+     */
+    public final static String P_BUFFER_RECYCLER_POOL = WstxInputProperties.P_BUFFER_RECYCLER_POOL;
 }
@@ -200,5 +200,37 @@ public interface InputConfigFlags
      * 
      */
     final static int CFG_TREAT_CHAR_REFS_AS_ENTS = 0x00800000;
-}
 
+    /**
+     * If true, readers constructed for {@link java.io.File}s will read
+     * content by memory-mapping the file, instead of using a
+     * {@link java.io.FileInputStream}.
+     */
+    final static int CFG_MEMORY_MAP_FILES = 0x01000000;
+
+    /**
+     * If true, input streams will be read ahead by a background task,
+     * to overlap I/O with parsing.
+     */
+    final static int CFG_READ_AHEAD = 0x02000000;
+
+    /**
+     * If true, <code>skipElement()</code> skips contents of the element
+     * by scanning raw markup, instead of fully parsing nested events.
+     */
+    final static int CFG_RAW_SKIP_ELEMENT = 0x04000000;
+
+    /**
+     * If true, attribute values are only located (and checked for
+     * well-formedness) when start elements are parsed, and
+     * expanded into Strings when accessed.
+     */
+    final static int CFG_LAZY_ATTRIBUTE_VALUES = 0x08000000;
+
+    /**
+     * If true, readers decoding their own input keep track of how many
+     * bytes the decoded characters took, so that byte offsets of events
+     * can be reported.
+     */
+    final static int CFG_TRACK_BYTE_OFFSETS = 0x10000000;
+}
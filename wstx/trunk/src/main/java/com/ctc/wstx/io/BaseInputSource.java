@@ -96,6 +96,10 @@ public abstract class BaseInputSource
 
     protected abstract void doInitInputLocation(WstxInputData reader);
 
+    public int getSavedInputPtr() {
+        return mSavedInputPtr;
+    }
+
     public abstract int readInto(WstxInputData reader)
         throws IOException, XMLStreamException;
     
@@ -55,6 +55,14 @@ abstract class BaseReader
      */
     private final boolean mRecycleBuffer;
 
+    /**
+     * Number of bytes of input that precede the first byte of
+     * <code>mByteBuffer</code>; includes bytes consumed before this
+     * reader was constructed (BOM, xml declaration), as long as
+     * bootstrapper has indicated their count.
+     */
+    private long mBytesBeforeBuffer = 0L;
+
     /*
     ////////////////////////////////////////
     // Life-cycle
@@ -97,6 +105,62 @@ abstract class BaseReader
 	return mRecycleBuffer;
     }
 
+    /**
+     * Method called by bootstrapper to indicate byte offset (from the
+     * beginning of the input) of the first byte of the buffer passed
+     * to the constructor. Needed to be able to report absolute byte
+     * offsets, since the bootstrapper may have already consumed and
+     * discarded some of the input.
+     */
+    protected final void setInputByteBase(long offset)
+    {
+        mBytesBeforeBuffer = offset;
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Byte offset access
+    ////////////////////////////////////////
+    */
+
+    /**
+     * Method for checking how many bytes of input have been decoded
+     * into characters returned by this reader so far. Offset is relative
+     * to the beginning of the input, not to the position at which this
+     * reader was constructed.
+     */
+    public final long getBytesConsumed()
+    {
+        return mBytesBeforeBuffer + mBytePtr;
+    }
+
+    /**
+     * Method for calculating how many bytes of input given characters,
+     * as returned by this reader, were decoded from. Base implementation
+     * works for all single-byte encodings; multi-byte ones need to
+     * override it.
+     *<p>
+     * Note: for surrogate pairs, full byte length is to be attributed
+     * to the first (high) surrogate, since that is when all of the bytes
+     * have been consumed.
+     *
+     * @param firstChar Index of the first char (<code>cbuf[start]</code>)
+     *   among all chars returned by this reader; needed by decoders for
+     *   which byte length can not be determined from chars alone
+     */
+    public int calcByteLength(char[] cbuf, int start, int end, long firstChar)
+    {
+        return end - start;
+    }
+
+    /**
+     * Method called to indicate that byte lengths will no longer be
+     * requested for chars before given index (among all chars returned
+     * by this reader), so that any information kept for calculating
+     * them can be discarded.
+     */
+    public void discardCharsBefore(long charIndex) { }
+
     /*
     ////////////////////////////////////////
     // Reader API
@@ -149,6 +213,7 @@ abstract class BaseReader
     protected final int readBytes()
         throws IOException
     {
+        mBytesBeforeBuffer += mByteBufferEnd;
         mBytePtr = 0;
         mByteBufferEnd = 0;
         if (mIn != null) {
@@ -182,6 +247,16 @@ abstract class BaseReader
         return -1;
     }
 
+    /**
+     * Method called by sub-classes when they are discarding bytes before
+     * current read pointer (by moving remaining bytes to the beginning
+     * of the buffer), to keep track of byte offsets.
+     */
+    protected final void markBytesDiscarded(int count)
+    {
+        mBytesBeforeBuffer += count;
+    }
+
     /**
      * This method should be called along with (or instead of) normal
      * close. After calling this method, no further reads should be tried.
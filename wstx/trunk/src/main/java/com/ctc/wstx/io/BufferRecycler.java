@@ -6,7 +6,9 @@ package com.ctc.wstx.io;
  * <code>ThreadLocal</code> member of the owning class pointing to
  * instance of this class through a <code>SoftReference</code>. The
  * end result is a low-overhead GC-cleanable recycling: hopefully
- * ideal for use by stream readers.
+ * ideal for use by stream readers. Instances are obtained from a
+ * {@link BufferRecyclerPool}; sub-classes may implement alternate
+ * recycling strategies (see {@link SharedBufferRecyclerPool}).
  *<p>
  * Regarding implementation: the key design goal is simplicity; and to
  * that end, different types of buffers are handled separately. While
@@ -16,7 +18,7 @@ package com.ctc.wstx.io;
  * as usage pattern is well known (which it is, for stream readers)
  * this should be highly optimal and robust implementation.
  */
-public final class BufferRecycler
+public class BufferRecycler
 {
     private char[] mSmallCBuffer = null; // temp buffers
     private char[] mMediumCBuffer = null; // text collector
@@ -0,0 +1,44 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.io;
+
+/**
+ * Strategy for providing {@link BufferRecycler}s to reader and writer
+ * configuration objects; configured using
+ * {@link com.ctc.wstx.api.WstxInputProperties#P_BUFFER_RECYCLER_POOL}
+ * (and its output counterpart).
+ *<p>
+ * Two implementations are included: {@link ThreadLocalBufferRecyclerPool}
+ * (the default), which keeps a single recycler per thread, and
+ * {@link SharedBufferRecyclerPool}, a global pool that works better
+ * when there are lots of short-lived threads (such as virtual threads).
+ *
+ * @since 5.0
+ */
+public abstract class BufferRecyclerPool
+{
+    protected BufferRecyclerPool() { }
+
+    /**
+     * Method called by a configuration object (that is, for a single
+     * stream reader or writer) when it first needs to allocate or
+     * release a buffer. Returned recycler is only used by the calling
+     * thread, unless it is thread-safe.
+     *
+     * @return Recycler to use; never null
+     */
+    public abstract BufferRecycler getRecycler();
+}
@@ -0,0 +1,96 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Simple {@link InputStream} implementation that reads content from a
+ * {@link ByteBuffer}; most useful with direct and memory-mapped buffers,
+ * since for heap buffers the backing array can be accessed directly.
+ * Reads are done using bulk <code>get</code> operations, so that content
+ * is copied straight into the (recycled) input buffer of the decoder,
+ * with no system calls.
+ *<p>
+ * Note: content is read using a duplicate of the buffer passed, so
+ * that position of the original buffer is not modified.
+ */
+public final class ByteBufferInputStream
+    extends InputStream
+{
+    ByteBuffer mBuffer;
+
+    public ByteBufferInputStream(ByteBuffer buf)
+    {
+        mBuffer = buf.duplicate();
+    }
+
+    @Override
+    public int available()
+    {
+        return (mBuffer == null) ? 0 : mBuffer.remaining();
+    }
+
+    @Override
+    public void close()
+    {
+        mBuffer = null;
+    }
+
+    @Override
+    public int read()
+    {
+        if (mBuffer == null || !mBuffer.hasRemaining()) {
+            return -1;
+        }
+        return mBuffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b)
+    {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+    {
+        if (mBuffer == null) {
+            return -1;
+        }
+        int avail = mBuffer.remaining();
+        if (avail <= 0) {
+            return -1;
+        }
+        if (len > avail) {
+            len = avail;
+        }
+        mBuffer.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n)
+    {
+        if (mBuffer == null || n <= 0L) {
+            return 0L;
+        }
+        int count = (int) Math.min(n, (long) mBuffer.remaining());
+        mBuffer.position(mBuffer.position() + count);
+        return count;
+    }
+}
@@ -185,6 +185,17 @@ public final class DefaultInputResolver
         } else if (normEnc.startsWith(CharsetNames.CS_UTF32)) {
             boolean isBE = (normEnc == CharsetNames.CS_UTF32BE);
             r = new UTF32Reader(cfg, in, cfg.allocFullBBuffer(inputBufLen), 0, 0, recycleBuffer, isBE);
+        } else if (normEnc == CharsetNames.CS_UTF16 || normEnc == CharsetNames.CS_UTF16BE
+                   || normEnc == CharsetNames.CS_UTF16LE) {
+            UTF16Reader r16 = new UTF16Reader(cfg, in, cfg.allocFullBBuffer(inputBufLen), 0, 0, recycleBuffer,
+                                              (normEnc != CharsetNames.CS_UTF16LE));
+            // Byte order only known if explicitly specified; if not, must check BOM
+            if (normEnc == CharsetNames.CS_UTF16) {
+                r16.checkForBOM();
+            }
+            r = r16;
+        } else if (SingleByteReader.canDecode(normEnc)) {
+            r = SingleByteReader.construct(cfg, in, cfg.allocFullBBuffer(inputBufLen), 0, 0, recycleBuffer, normEnc);
         } else {
             try {
                 return new InputStreamReader(in, encoding);
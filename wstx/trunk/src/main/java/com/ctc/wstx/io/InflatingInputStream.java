@@ -0,0 +1,532 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.io;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.zip.*;
+
+import com.ctc.wstx.api.ReaderConfig;
+import com.ctc.wstx.api.WstxInputProperties;
+
+/**
+ * Input stream that decompresses gzip or zlib ("deflate") compressed
+ * content read from the underlying stream. Compared to
+ * {@link GZIPInputStream}, this stream uses recyclable input buffers,
+ * reuses {@link Inflater} instances (which hold native memory) between
+ * documents, and inflates directly into the buffer passed by the
+ * caller (usually the recycled input buffer of the decoding Reader).
+ * It also keeps track of exact number of compressed and uncompressed
+ * bytes read.
+ *<p>
+ * For gzip, concatenated members are handled as a single stream; header
+ * and trailer (CRC-32, length) of each member are verified.
+ * For zlib, header and Adler-32 trailer are verified; preset
+ * dictionaries are not supported.
+ */
+public final class InflatingInputStream
+    extends InputStream
+{
+    /**
+     * Maximum number of inflaters kept for reuse; others are discarded
+     * (and their native resources released) when no longer needed
+     */
+    final static int MAX_POOLED_INFLATERS = 8;
+
+    final static ArrayList<Inflater> sInflaters = new ArrayList<Inflater>();
+
+    /**
+     * Number of bytes needed for detecting gzip content: magic bytes
+     * and compression method (deflate)
+     */
+    public final static int GZIP_MAGIC_LENGTH = 3;
+
+    // Gzip header flags
+    final static int FHCRC = 0x02;
+    final static int FEXTRA = 0x04;
+    final static int FNAME = 0x08;
+    final static int FCOMMENT = 0x10;
+
+    final ReaderConfig mConfig;
+
+    final InputStream mIn;
+
+    final boolean mGzip;
+
+    final Checksum mChecksum;
+
+    Inflater mInflater;
+
+    /**
+     * Buffer for compressed input; bytes from <code>mPtr</code> to
+     * <code>mEnd</code> have not yet been consumed.
+     */
+    byte[] mBuffer;
+
+    int mPtr;
+
+    int mEnd;
+
+    boolean mStarted = false;
+
+    boolean mEOF = false;
+
+    boolean mClosed = false;
+
+    /**
+     * Total number of bytes read from the underlying stream (including
+     * ones passed to the constructor)
+     */
+    long mBytesIn = 0L;
+
+    /**
+     * Total number of decompressed bytes returned
+     */
+    long mBytesOut = 0L;
+
+    /**
+     * Number of decompressed bytes for the current gzip member
+     */
+    long mMemberBytes = 0L;
+
+    /**
+     * Buffer used by single-byte {@link #read()}
+     */
+    final byte[] mSingleByte = new byte[1];
+
+    /*
+    ///////////////////////////////////////////////////
+    // Life-cycle
+    ///////////////////////////////////////////////////
+     */
+
+    /**
+     * @param buf Buffer that contains compressed bytes already read from
+     *   the stream (if any); contents are copied, so caller may reuse
+     *   the buffer
+     * @param start Offset of the first compressed byte in <code>buf</code>
+     * @param end Offset after the last compressed byte in <code>buf</code>
+     * @param gzip True if content is gzip-compressed; false if it is
+     *   zlib-compressed
+     */
+    public InflatingInputStream(ReaderConfig cfg, InputStream in,
+                                byte[] buf, int start, int end, boolean gzip)
+    {
+        mConfig = cfg;
+        mIn = in;
+        mGzip = gzip;
+        mChecksum = gzip ? (Checksum) new CRC32() : (Checksum) new Adler32();
+        int len = end - start;
+        mBuffer = cfg.allocFullBBuffer(Math.max(cfg.getInputBufferLength(), len));
+        if (len > 0) {
+            System.arraycopy(buf, start, mBuffer, 0, len);
+        }
+        mPtr = 0;
+        mEnd = len;
+        mBytesIn = len;
+    }
+
+    /**
+     * Factory method for checking whether content of given stream is
+     * to be decompressed, based on configured compression mode (see
+     * {@link WstxInputProperties#P_INPUT_COMPRESSION}) and, in auto-detect
+     * mode, the first bytes of content.
+     *
+     * @return Decompressing stream, if content is compressed; otherwise
+     *   a stream that returns all content of the given stream
+     */
+    public static InputStream construct(ReaderConfig cfg, InputStream in)
+        throws IOException
+    {
+        WstxInputProperties.InputCompression comp = cfg.getInputCompression();
+        if (comp == WstxInputProperties.COMPRESSION_NONE) {
+            return in;
+        }
+        if (comp != WstxInputProperties.COMPRESSION_AUTO) {
+            return new InflatingInputStream(cfg, in, null, 0, 0,
+                                            comp == WstxInputProperties.COMPRESSION_GZIP);
+        }
+        byte[] buf = new byte[GZIP_MAGIC_LENGTH];
+        int count = 0;
+        while (count < buf.length) {
+            int amount = in.read(buf, count, buf.length - count);
+            if (amount < 1) {
+                break;
+            }
+            count += amount;
+        }
+        if (isGzipHeader(buf, 0, count)) {
+            return new InflatingInputStream(cfg, in, buf, 0, count, true);
+        }
+        if (count == 0) {
+            return in;
+        }
+        // No config: small buffer is not to be recycled
+        return new MergedStream(null, in, buf, 0, count);
+    }
+
+    /**
+     * Method for checking whether given bytes start gzip-compressed content.
+     * Only gzip is auto-detected: its first byte (0x1F) can not start
+     * well-formed xml content in any encoding, whereas zlib headers can
+     * look like regular characters.
+     */
+    public static boolean isGzipHeader(byte[] buf, int ptr, int end)
+    {
+        return (end - ptr) >= GZIP_MAGIC_LENGTH
+            && buf[ptr] == (byte) 0x1F
+            && buf[ptr+1] == (byte) 0x8B
+            && buf[ptr+2] == (byte) 0x08;
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Public API
+    ///////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Number of compressed bytes consumed so far; does not include
+     *   bytes read from the underlying stream but not yet decompressed
+     */
+    public long getCompressedBytesRead()
+    {
+        /* While inflating, inflater has all unconsumed input (and
+         * 'mPtr' is only updated when needed)
+         */
+        long unused = (mInflater == null) ? (mEnd - mPtr) : mInflater.getRemaining();
+        return mBytesIn - unused;
+    }
+
+    /**
+     * @return Number of decompressed bytes returned so far
+     */
+    public long getUncompressedBytesRead()
+    {
+        return mBytesOut;
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // InputStream implementation
+    ///////////////////////////////////////////////////
+     */
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] b = mSingleByte;
+        return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len < 1) {
+            return 0;
+        }
+        if (mEOF) {
+            return -1;
+        }
+        if (mBuffer == null) { // closed, or resources released
+            throw new IOException("Stream closed");
+        }
+        if (!mStarted) {
+            mStarted = true;
+            readHeader();
+            mInflater = allocInflater();
+            mInflater.setInput(mBuffer, mPtr, mEnd - mPtr);
+        }
+        final Inflater inf = mInflater;
+
+        while (true) {
+            int count;
+            try {
+                count = inf.inflate(b, off, len);
+            } catch (DataFormatException dfe) {
+                throw new ZipException("Corrupt "+formatName()+" content: "+dfe.getMessage());
+            }
+            if (count > 0) {
+                mChecksum.update(b, off, count);
+                mMemberBytes += count;
+                mBytesOut += count;
+                return count;
+            }
+            if (inf.finished()) {
+                mPtr = mEnd - inf.getRemaining();
+                readTrailer();
+                if (!startNextMember()) {
+                    // All done: can release resources right away
+                    mEOF = true;
+                    releaseInflater();
+                    freeBuffer();
+                    return -1;
+                }
+                inf.setInput(mBuffer, mPtr, mEnd - mPtr);
+                continue;
+            }
+            if (inf.needsDictionary()) {
+                throw new ZipException("Preset dictionaries not supported for "+formatName()+" content");
+            }
+            if (inf.needsInput()) {
+                mPtr = mEnd;
+                if (!loadMore(1)) {
+                    reportEOF();
+                }
+                inf.setInput(mBuffer, mPtr, mEnd - mPtr);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!mClosed) {
+            mClosed = true;
+            releaseResources();
+            mIn.close();
+        }
+    }
+
+    /**
+     * Method for releasing the inflater and the input buffer, without
+     * closing the underlying stream; needs to be called when the stream
+     * will not be read any further but is not closed (stream readers
+     * only close their input if auto-closing is enabled). No content
+     * can be read after calling this method, but byte counts are still
+     * available.
+     */
+    public void releaseResources()
+    {
+        if (mInflater != null) {
+            mPtr = mEnd - mInflater.getRemaining();
+            releaseInflater();
+        }
+        freeBuffer();
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Internal methods, header/trailer handling
+    ///////////////////////////////////////////////////
+     */
+
+    private void readHeader() throws IOException
+    {
+        if (mGzip) {
+            if (readUByte() != 0x1F || readUByte() != 0x8B) {
+                throw new ZipException("Not in gzip format");
+            }
+            int method = readUByte();
+            if (method != 8) {
+                throw new ZipException("Unsupported gzip compression method ("+method+")");
+            }
+            int flags = readUByte();
+            skipBytes(6); // MTIME, XFL, OS
+            if ((flags & FEXTRA) != 0) {
+                skipBytes(readUByte() | (readUByte() << 8));
+            }
+            if ((flags & FNAME) != 0) {
+                while (readUByte() != 0) { }
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (readUByte() != 0) { }
+            }
+            if ((flags & FHCRC) != 0) {
+                skipBytes(2);
+            }
+        } else {
+            int cmf = readUByte();
+            int flg = readUByte();
+            if ((cmf & 0x0F) != 8 || (((cmf << 8) | flg) % 31) != 0) {
+                throw new ZipException("Not in zlib (deflate) format");
+            }
+            if ((flg & 0x20) != 0) {
+                throw new ZipException("Preset dictionaries not supported for "+formatName()+" content");
+            }
+        }
+    }
+
+    private void readTrailer() throws IOException
+    {
+        long expCheck;
+        if (mGzip) { // CRC-32, uncompressed size; both little-endian
+            expCheck = readUInt(false);
+            long expSize = readUInt(false);
+            if (expSize != (mMemberBytes & 0xFFFFFFFFL)) {
+                throw new ZipException("Corrupt gzip content: uncompressed size mismatch (expected "
+                                       +expSize+", got "+(mMemberBytes & 0xFFFFFFFFL)+")");
+            }
+        } else { // Adler-32, big-endian
+            expCheck = readUInt(true);
+        }
+        long check = mChecksum.getValue();
+        if (check != expCheck) {
+            throw new ZipException("Corrupt "+formatName()+" content: checksum mismatch (expected 0x"
+                                   +Long.toHexString(expCheck)+", got 0x"+Long.toHexString(check)+")");
+        }
+    }
+
+    /**
+     * @return True if another gzip member follows; false if end of
+     *   content was reached
+     */
+    private boolean startNextMember() throws IOException
+    {
+        /* Like with GZIPInputStream, anything other than a gzip header
+         * after a member is ignored (some tools pad output)
+         */
+        if (!mGzip || !loadMore(2)
+            || (mBuffer[mPtr] & 0xFF) != 0x1F || (mBuffer[mPtr+1] & 0xFF) != 0x8B) {
+            return false;
+        }
+        readHeader();
+        mInflater.reset();
+        mChecksum.reset();
+        mMemberBytes = 0L;
+        return true;
+    }
+
+    private String formatName()
+    {
+        return mGzip ? "gzip" : "zlib (deflate)";
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Internal methods, input access
+    ///////////////////////////////////////////////////
+     */
+
+    private int readUByte() throws IOException
+    {
+        if (mPtr >= mEnd) {
+            if (!loadMore(1)) {
+                reportEOF();
+            }
+        }
+        return mBuffer[mPtr++] & 0xFF;
+    }
+
+    private long readUInt(boolean bigEndian) throws IOException
+    {
+        long b0 = readUByte();
+        long b1 = readUByte();
+        long b2 = readUByte();
+        long b3 = readUByte();
+        if (bigEndian) {
+            return (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+        }
+        return (b3 << 24) | (b2 << 16) | (b1 << 8) | b0;
+    }
+
+    private void skipBytes(int count) throws IOException
+    {
+        while (count > 0) {
+            if (mPtr >= mEnd) {
+                if (!loadMore(1)) {
+                    reportEOF();
+                }
+            }
+            int amount = Math.min(count, mEnd - mPtr);
+            mPtr += amount;
+            count -= amount;
+        }
+    }
+
+    /**
+     * Method that tries to ensure that at least specified number of
+     * unconsumed bytes are in the buffer, moving existing unconsumed
+     * bytes to the beginning of the buffer if necessary.
+     *
+     * @return True if enough bytes are available; false if end of input
+     *   was reached
+     */
+    private boolean loadMore(int minimum) throws IOException
+    {
+        int avail = mEnd - mPtr;
+        if (avail >= minimum) {
+            return true;
+        }
+        if (mPtr > 0) {
+            if (avail > 0) {
+                System.arraycopy(mBuffer, mPtr, mBuffer, 0, avail);
+            }
+            mPtr = 0;
+            mEnd = avail;
+        }
+        while (mEnd - mPtr < minimum) {
+            int count = mIn.read(mBuffer, mEnd, mBuffer.length - mEnd);
+            if (count < 0) {
+                return false;
+            }
+            if (count == 0) {
+                throw new IOException("Strange I/O stream, returned 0 bytes on read");
+            }
+            mEnd += count;
+            mBytesIn += count;
+        }
+        return true;
+    }
+
+    private void freeBuffer()
+    {
+        byte[] buf = mBuffer;
+        if (buf != null) {
+            mBuffer = null;
+            mConfig.freeFullBBuffer(buf);
+        }
+    }
+
+    private void reportEOF() throws IOException
+    {
+        throw new EOFException("Unexpected end of "+formatName()+" content");
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Internal methods, inflater pooling
+    ///////////////////////////////////////////////////
+     */
+
+    private static Inflater allocInflater()
+    {
+        synchronized (sInflaters) {
+            int count = sInflaters.size();
+            if (count > 0) {
+                return sInflaters.remove(count-1);
+            }
+        }
+        // Raw mode; headers and trailers are handled by this class
+        return new Inflater(true);
+    }
+
+    private void releaseInflater()
+    {
+        Inflater inf = mInflater;
+        if (inf != null) {
+            mInflater = null;
+            inf.reset();
+            synchronized (sInflaters) {
+                if (sInflaters.size() < MAX_POOLED_INFLATERS) {
+                    sInflaters.add(inf);
+                    return;
+                }
+            }
+            inf.end();
+        }
+    }
+}
@@ -63,6 +63,12 @@ public abstract class InputBootstrapper
 
     protected final SystemId mSystemId;
 
+    /**
+     * Decompressing stream through which input is read, if input is
+     * compressed; null otherwise.
+     */
+    protected InflatingInputStream mDecompressor;
+
     /*
     ////////////////////////////////////////////////////////////
     // Input location data (similar to one in WstxInputData)
@@ -179,6 +185,20 @@ public abstract class InputBootstrapper
 
     public SystemId getSystemId() { return mSystemId; }
 
+    /**
+     * @return Decompressing stream used for reading input, if input
+     *   is compressed; null if not (or if input has not yet been
+     *   bootstrapped)
+     */
+    public InflatingInputStream getDecompressor() { return mDecompressor; }
+
+    /**
+     * Method called by the factory to indicate that content is read via
+     * given decompressing stream, when it was set up before bootstrapping
+     * (that is, for Reader-based sources created for streams).
+     */
+    public void setDecompressor(InflatingInputStream in) { mDecompressor = in; }
+
     // // // XML declaration data:
 
     public int getDeclaredVersion()
@@ -0,0 +1,188 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.io;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link InputStream} implementation that reads content of a file
+ * by memory-mapping it, instead of using <code>read()</code> system calls.
+ * Since a single mapping is limited to 2 gigabytes, longer files are
+ * mapped one window at a time, remapping as content is consumed.
+ *<p>
+ * Note: there is no way to explicitly unmap a mapped region in JDK;
+ * regions are released when they get garbage collected.
+ */
+public final class MappedFileInputStream
+    extends InputStream
+{
+    /**
+     * Default size of a single mapped window: big enough to make
+     * remapping costs negligible, but small enough to not exhaust
+     * address space on 32-bit platforms.
+     */
+    public final static int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    final RandomAccessFile mFile;
+
+    final FileChannel mChannel;
+
+    final long mFileLength;
+
+    final int mWindowSize;
+
+    /**
+     * File offset of the start of the current window
+     */
+    long mWindowStart = 0L;
+
+    /**
+     * Currently mapped window; null before first read, and after
+     * closing
+     */
+    MappedByteBuffer mWindow;
+
+    boolean mClosed = false;
+
+    public MappedFileInputStream(File f)
+        throws IOException
+    {
+        this(f, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileInputStream(File f, int windowSize)
+        throws IOException
+    {
+        mFile = new RandomAccessFile(f, "r");
+        mChannel = mFile.getChannel();
+        mFileLength = mChannel.size();
+        mWindowSize = windowSize;
+    }
+
+    @Override
+    public int available()
+    {
+        if (mClosed) {
+            return 0;
+        }
+        long left = mFileLength - currentOffset();
+        return (left > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) left;
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if (!mClosed) {
+            mClosed = true;
+            mWindow = null;
+            mFile.close();
+        }
+    }
+
+    @Override
+    public int read()
+        throws IOException
+    {
+        if (!ensureWindow()) {
+            return -1;
+        }
+        return mWindow.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b)
+        throws IOException
+    {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+        throws IOException
+    {
+        if (len <= 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+        int avail = mWindow.remaining();
+        if (len > avail) {
+            len = avail;
+        }
+        mWindow.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n)
+        throws IOException
+    {
+        if (mClosed || n <= 0L) {
+            return 0L;
+        }
+        long offset = currentOffset();
+        long count = Math.min(n, mFileLength - offset);
+        if (mWindow != null && count < mWindow.remaining()) {
+            mWindow.position(mWindow.position() + (int) count);
+        } else { // will need to remap on next read
+            mWindowStart = offset + count;
+            mWindow = null;
+        }
+        return count;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private long currentOffset()
+    {
+        return (mWindow == null) ? mWindowStart : (mWindowStart + mWindow.position());
+    }
+
+    /**
+     * @return True if there is content to read in the current window
+     *   (possibly after mapping the next window); false if end of file
+     *   has been reached
+     */
+    private boolean ensureWindow()
+        throws IOException
+    {
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+        if (mWindow != null) {
+            if (mWindow.hasRemaining()) {
+                return true;
+            }
+            mWindowStart += mWindow.limit();
+            mWindow = null;
+        }
+        long left = mFileLength - mWindowStart;
+        if (left <= 0L) {
+            return false;
+        }
+        int size = (int) Math.min(left, (long) mWindowSize);
+        mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, mWindowStart, size);
+        return true;
+    }
+}
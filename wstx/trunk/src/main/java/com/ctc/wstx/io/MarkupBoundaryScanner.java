@@ -0,0 +1,426 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.io;
+
+/**
+ * Light-weight incremental scanner that finds boundaries of markup
+ * constructs (tags, comments, processing instructions, CDATA sections,
+ * DOCTYPE declaration) from raw bytes of an xml document, without
+ * decoding or validating anything. It works for all encodings that
+ * are ASCII-compatible for markup characters (UTF-8, ISO-8859-x,
+ * US-ASCII and most other single-byte encodings).
+ *<p>
+ * Scanner can be fed content in arbitrary chunks; state is retained
+ * between calls to {@link #scan}. It keeps track of:
+ *<ul>
+ * <li>Offset just after the last complete markup construct
+ *  ({@link #getLastBoundary}); except that offsets right after
+ *  CDATA sections are not reported, since textual content may
+ *  continue after them (when coalescing).
+ *  </li>
+ * <li>Element nesting depth ({@link #getDepth}), and whether the
+ *   root element of the current document has been closed.
+ *  </li>
+ *</ul>
+ * All offsets are absolute, relative to the first byte ever passed to
+ * the scanner (since construction or the last call to {@link #reset}).
+ */
+public final class MarkupBoundaryScanner
+{
+    private final static int STATE_TEXT = 0;
+
+    /**
+     * State after '&lt;' but before knowing what kind of markup it is
+     */
+    private final static int STATE_LT = 1;
+
+    /**
+     * State within start or end tag
+     */
+    private final static int STATE_TAG = 2;
+
+    private final static int STATE_PI = 3;
+
+    /**
+     * State after '&lt;!'
+     */
+    private final static int STATE_BANG = 4;
+
+    /**
+     * State after '&lt;!-'
+     */
+    private final static int STATE_BANG_DASH = 5;
+
+    private final static int STATE_COMMENT = 6;
+
+    /**
+     * State after '&lt;![', skipping the rest of "CDATA[" marker
+     */
+    private final static int STATE_CDATA_START = 7;
+
+    private final static int STATE_CDATA = 8;
+
+    /**
+     * State within DOCTYPE declaration (including internal subset)
+     */
+    private final static int STATE_DECL = 9;
+
+    // Sub-states for internal subset of DOCTYPE declaration
+
+    private final static int SUBSET_NONE = 0;
+    private final static int SUBSET_CONTENT = 1;
+    private final static int SUBSET_COMMENT = 2;
+    private final static int SUBSET_PI = 3;
+
+    /*
+    ////////////////////////////////////////////////////
+    // State
+    ////////////////////////////////////////////////////
+     */
+
+    private int mState = STATE_TEXT;
+
+    /**
+     * Quote character of the attribute value or literal we are in,
+     * if any; 0 if not within quoted content.
+     */
+    private int mQuote = 0;
+
+    /**
+     * Last bytes seen within current construct; needed for detecting
+     * multi-byte end markers.
+     */
+    private int mPrev1, mPrev2, mPrev3;
+
+    /**
+     * For tags: whether current tag is an end tag; for CDATA start
+     * marker: number of marker bytes left to skip
+     */
+    private int mTagInfo;
+
+    private int mSubsetState = SUBSET_NONE;
+
+    /**
+     * Current element nesting depth
+     */
+    private int mDepth = 0;
+
+    /**
+     * Absolute offset of the first byte of the buffer being scanned
+     */
+    private long mBufferOffset = 0L;
+
+    /**
+     * Absolute offset just after the last complete markup construct
+     * (other than CDATA section); 0 if none yet seen.
+     */
+    private long mLastBoundary = 0L;
+
+    /**
+     * Absolute offset of the '&lt;' that started the current (or last)
+     * markup construct
+     */
+    private long mMarkupStart = -1L;
+
+    /**
+     * Absolute offset just after the end tag (or empty tag) that closed
+     * the last root element; -1 if no root element has been closed yet.
+     */
+    private long mRootEnd = -1L;
+
+    public MarkupBoundaryScanner() { }
+
+    /**
+     * Method for resetting scanner to its initial state, with offsets
+     * starting from 0 again.
+     */
+    public void reset()
+    {
+        mState = STATE_TEXT;
+        mQuote = 0;
+        mPrev1 = mPrev2 = mPrev3 = 0;
+        mTagInfo = 0;
+        mSubsetState = SUBSET_NONE;
+        mDepth = 0;
+        mBufferOffset = 0L;
+        mLastBoundary = 0L;
+        mMarkupStart = -1L;
+        mRootEnd = -1L;
+    }
+
+    /**
+     * Method for resetting scanner to state where it is outside of
+     * markup, within content of an element at given nesting depth;
+     * used when scanning starts from the middle of a document.
+     */
+    public void reset(int depth)
+    {
+        reset();
+        mDepth = depth;
+    }
+
+    /*
+    ////////////////////////////////////////////////////
+    // Accessors
+    ////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Absolute offset of the byte right after the last complete
+     *   markup construct (other than a CDATA section) scanned so far
+     */
+    public long getLastBoundary() { return mLastBoundary; }
+
+    /**
+     * @return Absolute offset of the byte right after the end of the
+     *   root element that was closed last; -1 if none yet
+     */
+    public long getRootEnd() { return mRootEnd; }
+
+    /**
+     * @return Absolute offset of the '&lt;' character that started the
+     *   markup construct scanned last (possibly still incomplete);
+     *   -1 if none yet seen
+     */
+    public long getMarkupStart() { return mMarkupStart; }
+
+    /**
+     * @return Current element nesting depth
+     */
+    public int getDepth() { return mDepth; }
+
+    /**
+     * @return Absolute offset of the byte following the last byte
+     *   scanned
+     */
+    public long getOffset() { return mBufferOffset; }
+
+    /**
+     * @return True if scanner is outside of any markup construct
+     *   (that is, at main level, or within textual content)
+     */
+    public boolean inText() { return mState == STATE_TEXT; }
+
+    /*
+    ////////////////////////////////////////////////////
+    // Scanning
+    ////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for scanning given bytes, which are expected to directly
+     * follow bytes scanned during previous call (if any). Scanning stops
+     * either at the end of given content, or right after the end of an
+     * element that closes the root element.
+     *
+     * @return Pointer to the byte following the last byte scanned; either
+     *   <code>end</code>, or pointer right after the root element end.
+     */
+    public int scan(byte[] buf, int start, int end)
+    {
+        int ptr = start;
+        // absolute offset of buf[0]
+        final long base = mBufferOffset - start;
+        int state = mState;
+
+        try {
+            while (ptr < end) {
+                int b = buf[ptr++] & 0xFF;
+
+                switch (state) {
+                case STATE_TEXT:
+                    // Let's quickly skip textual content
+                    if (b != '<') {
+                        while (ptr < end) {
+                            if (buf[ptr++] == '<') {
+                                b = '<';
+                                break;
+                            }
+                        }
+                        if (b != '<') {
+                            continue;
+                        }
+                    }
+                    mMarkupStart = base + ptr - 1;
+                    state = STATE_LT;
+                    continue;
+
+                case STATE_LT:
+                    mPrev1 = mPrev2 = mPrev3 = 0;
+                    mQuote = 0;
+                    if (b == '?') {
+                        state = STATE_PI;
+                    } else if (b == '!') {
+                        state = STATE_BANG;
+                    } else {
+                        state = STATE_TAG;
+                        mTagInfo = (b == '/') ? 1 : 0;
+                    }
+                    continue;
+
+                case STATE_TAG:
+                    if (mQuote != 0) {
+                        if (b == mQuote) {
+                            mQuote = 0;
+                        }
+                    } else if (b == '"' || b == '\'') {
+                        mQuote = b;
+                    } else if (b == '>') {
+                        state = STATE_TEXT;
+                        mLastBoundary = base + ptr;
+                        if (mTagInfo != 0) { // end tag
+                            if (--mDepth <= 0) {
+                                mDepth = 0;
+                                mRootEnd = mLastBoundary;
+                                return ptr;
+                            }
+                        } else if (mPrev1 == '/') { // empty element
+                            if (mDepth == 0) {
+                                mRootEnd = mLastBoundary;
+                                return ptr;
+                            }
+                        } else {
+                            ++mDepth;
+                        }
+                        continue;
+                    }
+                    mPrev1 = b;
+                    continue;
+
+                case STATE_PI:
+                    if (b == '>' && mPrev1 == '?') {
+                        state = STATE_TEXT;
+                        mLastBoundary = base + ptr;
+                        continue;
+                    }
+                    mPrev1 = b;
+                    continue;
+
+                case STATE_BANG:
+                    if (b == '-') {
+                        state = STATE_BANG_DASH;
+                    } else if (b == '[') {
+                        state = STATE_CDATA_START;
+                        mTagInfo = 6; // "CDATA["
+                    } else {
+                        state = STATE_DECL;
+                        mSubsetState = SUBSET_NONE;
+                        mQuote = 0;
+                        mPrev1 = b;
+                    }
+                    continue;
+
+                case STATE_BANG_DASH:
+                    // should get second dash; if not, not well-formed, but
+                    // that is for the real parser to report
+                    state = STATE_COMMENT;
+                    continue;
+
+                case STATE_COMMENT:
+                    if (b == '>' && mPrev1 == '-' && mPrev2 == '-') {
+                        state = STATE_TEXT;
+                        mLastBoundary = base + ptr;
+                        continue;
+                    }
+                    mPrev2 = mPrev1;
+                    mPrev1 = b;
+                    continue;
+
+                case STATE_CDATA_START:
+                    if (--mTagInfo <= 0) {
+                        state = STATE_CDATA;
+                    }
+                    continue;
+
+                case STATE_CDATA:
+                    if (b == '>' && mPrev1 == ']' && mPrev2 == ']') {
+                        // Note: not a boundary, text may continue
+                        state = STATE_TEXT;
+                        continue;
+                    }
+                    mPrev2 = mPrev1;
+                    mPrev1 = b;
+                    continue;
+
+                case STATE_DECL:
+                    if (handleDeclByte(b)) {
+                        state = STATE_TEXT;
+                        mLastBoundary = base + ptr;
+                    }
+                    continue;
+                }
+            }
+        } finally {
+            mState = state;
+            mBufferOffset = base + ptr;
+        }
+        return ptr;
+    }
+
+    /**
+     * @return True if the byte closed the declaration
+     */
+    private boolean handleDeclByte(int b)
+    {
+        int prev1 = mPrev1, prev2 = mPrev2, prev3 = mPrev3;
+        mPrev3 = prev2;
+        mPrev2 = prev1;
+        mPrev1 = b;
+
+        if (mQuote != 0) {
+            if (b == mQuote) {
+                mQuote = 0;
+            }
+            return false;
+        }
+        switch (mSubsetState) {
+        case SUBSET_NONE:
+            if (b == '"' || b == '\'') {
+                mQuote = b;
+            } else if (b == '[') {
+                mSubsetState = SUBSET_CONTENT;
+            } else if (b == '>') {
+                return true;
+            }
+            return false;
+        case SUBSET_COMMENT:
+            if (b == '>' && prev1 == '-' && prev2 == '-') {
+                mSubsetState = SUBSET_CONTENT;
+                mPrev1 = mPrev2 = 0;
+            }
+            return false;
+        case SUBSET_PI:
+            if (b == '>' && prev1 == '?') {
+                mSubsetState = SUBSET_CONTENT;
+                mPrev1 = 0;
+            }
+            return false;
+        }
+        // SUBSET_CONTENT:
+        if (b == '"' || b == '\'') {
+            mQuote = b;
+        } else if (b == ']') {
+            mSubsetState = SUBSET_NONE;
+        } else if (b == '?' && prev1 == '<') {
+            mSubsetState = SUBSET_PI;
+            mPrev1 = 0;
+        } else if (b == '-' && prev1 == '-' && prev2 == '!' && prev3 == '<') {
+            mSubsetState = SUBSET_COMMENT;
+            mPrev1 = mPrev2 = 0;
+        }
+        return false;
+    }
+}
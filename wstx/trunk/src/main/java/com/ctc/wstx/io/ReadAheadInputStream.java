@@ -0,0 +1,369 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.io;
+
+import java.io.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.ctc.wstx.api.ReaderConfig;
+
+/**
+ * Input stream wrapper that reads content of the underlying stream
+ * ahead, using a background task, so that reading (I/O, decompression)
+ * can overlap with parsing. Double-buffering is used: the background
+ * task fills one buffer while the other one is being consumed, so
+ * memory usage is bounded to two input buffers (which are recycled
+ * if the stream is read up to its end).
+ *<p>
+ * Exceptions thrown by the underlying stream are passed to the reading
+ * thread, in the order they occurred relative to content. Closing this
+ * stream stops the background task: task is interrupted, and close waits
+ * for it to finish, so that the underlying stream is no longer read, and
+ * buffers can be recycled. Underlying stream is only closed if so
+ * indicated when constructing this stream; if so, it is closed before
+ * waiting, to unblock reads that do not react to interrupts.
+ */
+public final class ReadAheadInputStream
+    extends InputStream
+    implements Runnable
+{
+    final ReaderConfig mConfig;
+
+    final InputStream mIn;
+
+    final boolean mCloseSource;
+
+    /**
+     * Executor used if none is specified: shared by all streams, creates
+     * (daemon) threads as needed, and releases threads that have been
+     * idle for a minute.
+     */
+    private static ExecutorService sDefaultExecutor;
+
+    /**
+     * The two buffers used: one being filled while the other one is
+     * being read from
+     */
+    final byte[][] mBuffers;
+
+    /*
+    ///////////////////////////////////////////////////
+    // State shared between threads; guarded by 'this'
+    ///////////////////////////////////////////////////
+     */
+
+    /**
+     * Number of bytes in each buffer, if it has been filled but not
+     * yet fully consumed; 0 for buffers available for filling.
+     */
+    final int[] mFilled = new int[2];
+
+    /**
+     * Index of the buffer background task fills next
+     */
+    int mFillIndex = 0;
+
+    IOException mIOException;
+
+    RuntimeException mRuntimeException;
+
+    boolean mClosed = false;
+
+    /**
+     * Set when the background task has finished, due to end of input,
+     * an exception or closing of this stream; after this it will no
+     * longer touch buffers.
+     */
+    boolean mTaskDone = false;
+
+    /**
+     * Thread running the background task, while it is running
+     */
+    Thread mTaskThread;
+
+    /*
+    ///////////////////////////////////////////////////
+    // State for the reading thread
+    ///////////////////////////////////////////////////
+     */
+
+    /**
+     * Index of the buffer being read from
+     */
+    int mReadIndex = 0;
+
+    int mPtr = 0;
+
+    int mEnd = 0;
+
+    /*
+    ///////////////////////////////////////////////////
+    // Life-cycle
+    ///////////////////////////////////////////////////
+     */
+
+    /**
+     * @param executor Executor to use for running the background task;
+     *   if null, a shared default executor is used
+     */
+    public ReadAheadInputStream(ReaderConfig cfg, InputStream in, boolean closeSource,
+                                Executor executor)
+    {
+        mConfig = cfg;
+        mIn = in;
+        mCloseSource = closeSource;
+        int len = cfg.getInputBufferLength();
+        mBuffers = new byte[][] { cfg.allocFullBBuffer(len), cfg.allocFullBBuffer(len) };
+        if (executor == null) {
+            executor = defaultExecutor();
+        }
+        executor.execute(this);
+    }
+
+    private static synchronized Executor defaultExecutor()
+    {
+        if (sDefaultExecutor == null) {
+            sDefaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Woodstox-read-ahead");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+        return sDefaultExecutor;
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Background task
+    ///////////////////////////////////////////////////
+     */
+
+    public void run()
+    {
+        synchronized (this) {
+            // Closed before task got to run? If so, buffers already freed
+            if (mClosed) {
+                mTaskDone = true;
+                notifyAll();
+                return;
+            }
+            mTaskThread = Thread.currentThread();
+        }
+        try {
+            while (true) {
+                int ix;
+                synchronized (this) {
+                    ix = mFillIndex;
+                    while (mFilled[ix] != 0 && !mClosed) {
+                        wait();
+                    }
+                    if (mClosed) {
+                        break;
+                    }
+                }
+                byte[] buf = mBuffers[ix];
+                int count = mIn.read(buf, 0, buf.length);
+                if (count < 0) {
+                    break;
+                }
+                synchronized (this) {
+                    if (count > 0) {
+                        mFilled[ix] = count;
+                        mFillIndex = ix ^ 1;
+                        notifyAll();
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            synchronized (this) {
+                mIOException = ioe;
+            }
+        } catch (RuntimeException re) {
+            synchronized (this) {
+                mRuntimeException = re;
+            }
+        } catch (InterruptedException ie) {
+            synchronized (this) {
+                mIOException = new InterruptedIOException("Read-ahead interrupted");
+            }
+        } finally {
+            synchronized (this) {
+                mTaskDone = true;
+                mTaskThread = null;
+                notifyAll();
+            }
+            /* Close may have interrupted us: must clear the status, since
+             * the thread may be pooled and reused for other tasks
+             */
+            Thread.interrupted();
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // InputStream implementation
+    ///////////////////////////////////////////////////
+     */
+
+    @Override
+    public int available() throws IOException
+    {
+        return mEnd - mPtr;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (mPtr >= mEnd) {
+            if (!loadMore()) {
+                return -1;
+            }
+        }
+        return mBuffers[mReadIndex][mPtr++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len < 1) {
+            return 0;
+        }
+        if (mPtr >= mEnd) {
+            if (!loadMore()) {
+                return -1;
+            }
+        }
+        int avail = mEnd - mPtr;
+        if (len > avail) {
+            len = avail;
+        }
+        System.arraycopy(mBuffers[mReadIndex], mPtr, b, off, len);
+        mPtr += len;
+        return len;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        boolean started;
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            // If the task has not yet started, it will not touch buffers
+            started = (mTaskThread != null) || mTaskDone;
+            if (mTaskThread != null) {
+                mTaskThread.interrupt();
+            }
+            notifyAll();
+        }
+        IOException closeFail = null;
+        if (mCloseSource) {
+            try {
+                mIn.close();
+            } catch (IOException ioe) {
+                closeFail = ioe;
+            }
+        }
+        // Buffers can only be recycled once background task is done with them
+        if (started) {
+            boolean interrupted = false;
+            synchronized (this) {
+                while (!mTaskDone) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ie) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        freeBuffers();
+        if (closeFail != null) {
+            throw closeFail;
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////
+     */
+
+    /**
+     * @return True if more content was made available; false if end
+     *   of input was reached
+     */
+    private boolean loadMore() throws IOException
+    {
+        synchronized (this) {
+            if (mClosed) {
+                throw new IOException("Stream closed");
+            }
+            // First: release the buffer we have consumed, if any
+            if (mEnd > 0) {
+                mFilled[mReadIndex] = 0;
+                mReadIndex ^= 1;
+                mPtr = mEnd = 0;
+                notifyAll();
+            }
+            while (mFilled[mReadIndex] == 0 && !mTaskDone) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    throw new InterruptedIOException("Interrupted while waiting for read-ahead content");
+                }
+            }
+            int count = mFilled[mReadIndex];
+            if (count > 0) {
+                mEnd = count;
+                return true;
+            }
+            // Nothing more; was it due to a problem?
+            if (mIOException != null) {
+                throw mIOException;
+            }
+            if (mRuntimeException != null) {
+                throw mRuntimeException;
+            }
+        }
+        // All content read; buffers are no longer needed
+        freeBuffers();
+        return false;
+    }
+
+    private void freeBuffers()
+    {
+        byte[][] bufs = mBuffers;
+        synchronized (this) {
+            if (bufs[0] == null) {
+                return;
+            }
+            mConfig.freeFullBBuffer(bufs[0]);
+            mConfig.freeFullBBuffer(bufs[1]);
+            bufs[0] = bufs[1] = null;
+        }
+    }
+}
@@ -31,6 +31,38 @@ public class ReaderSource
     int mInputRow = 1;
     int mInputRowStart = 0;
 
+    /**
+     * Reader, if it is one that can report byte offsets (which is the
+     * case with all our own decoders) and byte offsets are to be tracked;
+     * null otherwise
+     */
+    final BaseReader mByteReader;
+
+    /**
+     * Byte offset of the first character in the current buffer, if
+     * known; -1 if not.
+     */
+    long mBufferByteOffset = -1L;
+
+    /**
+     * Character position within the current buffer for which the
+     * byte offset was last calculated: since offsets are usually
+     * requested in increasing order, this allows for incremental
+     * calculation.
+     */
+    int mLastOffsetPtr = 0;
+
+    /**
+     * Byte offset that matches <code>mLastOffsetPtr</code>
+     */
+    long mLastByteOffset = -1L;
+
+    /**
+     * Index of the first character in the current buffer, among all
+     * characters returned by the reader
+     */
+    long mBufferCharIndex = 0L;
+
     public ReaderSource(ReaderConfig cfg, WstxInputSource parent, String fromEntity,
                         String pubId, SystemId sysId,
                         Reader r, boolean realClose)
@@ -39,8 +71,13 @@ public class ReaderSource
         mConfig = cfg;
         mReader = r;
         mDoRealClose = realClose;
+        mByteReader = (cfg.willTrackByteOffsets() && (r instanceof BaseReader))
+            ? (BaseReader) r : null;
         int bufSize = cfg.getInputBufferLength();
         mBuffer = cfg.allocFullCBuffer(bufSize);
+        if (mByteReader != null) {
+            resetByteOffset(mByteReader.getBytesConsumed());
+        }
     }
 
     /**
@@ -83,6 +120,11 @@ public class ReaderSource
         if (mBuffer == null) {
             return -1;
         }
+        // all of the previous buffer has been consumed
+        mBufferCharIndex += mInputLast;
+        if (mByteReader != null) {
+            resetByteOffset(mByteReader.getBytesConsumed());
+        }
         int count = mReader.read(mBuffer, 0, mBuffer.length);
         if (count < 1) {
             /* Let's prevent caller from accidentally being able to access
@@ -129,6 +171,13 @@ public class ReaderSource
         reader.mCurrInputProcessed += ptr;
         reader.mCurrInputRowStart -= ptr;
 
+        mBufferCharIndex += ptr;
+        if (mByteReader != null) {
+            // chars retained were decoded from the last bytes consumed
+            resetByteOffset(mByteReader.getBytesConsumed()
+                            - mByteReader.calcByteLength(mBuffer, ptr, mInputLast, mBufferCharIndex));
+        }
+
         // Existing data to move?
         if (currAmount > 0) {
             System.arraycopy(mBuffer, ptr, mBuffer, 0, currAmount);
@@ -155,6 +204,41 @@ public class ReaderSource
         return true;
     }
 
+    public long getInputByteOffset(int bufferPtr)
+    {
+        if (mBufferByteOffset < 0L || mBuffer == null) {
+            return -1L;
+        }
+        if (bufferPtr < mLastOffsetPtr) { // need to start from the beginning
+            mLastOffsetPtr = 0;
+            mLastByteOffset = mBufferByteOffset;
+        }
+        if (bufferPtr > mLastOffsetPtr) {
+            mLastByteOffset += mByteReader.calcByteLength(mBuffer, mLastOffsetPtr, bufferPtr,
+                                                          mBufferCharIndex + mLastOffsetPtr);
+            mLastOffsetPtr = bufferPtr;
+        }
+        return mLastByteOffset;
+    }
+
+    @Override
+    public boolean hasUnconsumedInput(int bufferPtr)
+        throws IOException
+    {
+        if (mBuffer == null) {
+            return false;
+        }
+        return (bufferPtr < mInputLast) || mReader.ready();
+    }
+
+    private void resetByteOffset(long offset)
+    {
+        mBufferByteOffset = offset;
+        mLastOffsetPtr = 0;
+        mLastByteOffset = offset;
+        mByteReader.discardCharsBefore(mBufferCharIndex);
+    }
+
     public void close()
         throws IOException
     {
@@ -0,0 +1,391 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link BufferRecyclerPool} implementation that shares buffers between
+ * all threads, instead of keeping them per thread. This is preferable
+ * when documents are processed by lots of short-lived threads (such as
+ * virtual threads, or big thread-per-request pools), in which case
+ * per-thread recyclers give little reuse.
+ *<p>
+ * Buffers are divided in size classes (powers of two, from 64 to 1M
+ * elements; larger buffers are not pooled), separately for
+ * <code>char[]</code> and <code>byte[]</code> buffers. Each class has a
+ * fixed number of slots, accessed using atomic compare-and-set operations
+ * only: there is no locking, and no allocation is needed for pooling.
+ * Total size of pooled buffers is limited by a memory cap; buffers
+ * released when pool is full are simply left for GC to collect.
+ *<p>
+ * Number of buffers reused (hits), allocated (misses) and dropped, as
+ * well as amount of memory pooled, can be accessed for sizing the pool.
+ *<p>
+ * Callers must release each buffer at most once, and not use it after
+ * releasing it. Pool only catches a buffer being released again while
+ * it is still pooled; a buffer released after it has been handed out
+ * again would end up being used by two callers.
+ *
+ * @since 5.0
+ */
+public final class SharedBufferRecyclerPool
+    extends BufferRecyclerPool
+{
+    /**
+     * Size of the smallest buffers pooled is 2^6 (64 elements); smaller
+     * requests are rounded up.
+     */
+    private final static int MIN_CLASS_BITS = 6;
+
+    /**
+     * Size of the largest buffers pooled is 2^20 (1M elements)
+     */
+    private final static int MAX_CLASS_BITS = 20;
+
+    private final static int CLASS_COUNT = MAX_CLASS_BITS - MIN_CLASS_BITS + 1;
+
+    public final static int DEFAULT_SLOTS_PER_CLASS = 64;
+
+    /**
+     * By default, let's limit pooled buffers to 16 megs
+     */
+    public final static long DEFAULT_MAX_POOLED_BYTES = 16L * 1024L * 1024L;
+
+    private final static SharedBufferRecyclerPool sInstance = new SharedBufferRecyclerPool();
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Configuration, state
+    ///////////////////////////////////////////////////////////
+     */
+
+    private final long mMaxPooledBytes;
+
+    private final int mSlotMask;
+
+    private final AtomicReferenceArray<char[]>[] mCharSlots;
+
+    private final AtomicReferenceArray<byte[]>[] mByteSlots;
+
+    private final AtomicLong mPooledBytes = new AtomicLong();
+
+    private final AtomicLong mHits = new AtomicLong();
+
+    private final AtomicLong mMisses = new AtomicLong();
+
+    private final AtomicLong mDrops = new AtomicLong();
+
+    /**
+     * Recycler instance handed to configuration objects; since it has
+     * no state of its own, it can be shared.
+     */
+    private final BufferRecycler mRecycler = new Recycler();
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Life-cycle
+    ///////////////////////////////////////////////////////////
+     */
+
+    public SharedBufferRecyclerPool() {
+        this(DEFAULT_SLOTS_PER_CLASS, DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    /**
+     * @param slotsPerClass Maximum number of buffers to pool per size
+     *   class and buffer type; will be rounded up to a power of two.
+     *   Should usually be at least as high as number of concurrently
+     *   active readers and writers.
+     * @param maxPooledBytes Maximum total size of pooled buffers, in bytes
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public SharedBufferRecyclerPool(int slotsPerClass, long maxPooledBytes)
+    {
+        if (slotsPerClass < 1) {
+            throw new IllegalArgumentException("Illegal slot count ("+slotsPerClass+"): has to be positive");
+        }
+        int slots = Integer.highestOneBit(slotsPerClass);
+        if (slots < slotsPerClass) {
+            slots += slots;
+        }
+        mSlotMask = slots - 1;
+        mMaxPooledBytes = maxPooledBytes;
+        mCharSlots = new AtomicReferenceArray[CLASS_COUNT];
+        mByteSlots = new AtomicReferenceArray[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; ++i) {
+            mCharSlots[i] = new AtomicReferenceArray<char[]>(slots);
+            mByteSlots[i] = new AtomicReferenceArray<byte[]>(slots);
+        }
+    }
+
+    /**
+     * @return Globally shared instance with default settings
+     */
+    public static SharedBufferRecyclerPool getInstance() {
+        return sInstance;
+    }
+
+    @Override
+    public BufferRecycler getRecycler() {
+        return mRecycler;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Public API: buffer access
+    ///////////////////////////////////////////////////////////
+     */
+
+    public char[] allocCharBuffer(int minSize)
+    {
+        int cls = allocClass(minSize);
+        if (cls < CLASS_COUNT) {
+            char[] buf = take(mCharSlots[cls]);
+            if (buf != null) {
+                mPooledBytes.addAndGet(-2L * buf.length);
+                mHits.incrementAndGet();
+                return buf;
+            }
+            minSize = 1 << (cls + MIN_CLASS_BITS);
+        }
+        mMisses.incrementAndGet();
+        return new char[minSize];
+    }
+
+    public void releaseCharBuffer(char[] buf)
+    {
+        int cls = releaseClass(buf.length);
+        if (cls < 0 || !reserve(2L * buf.length)) {
+            mDrops.incrementAndGet();
+            return;
+        }
+        if (!offer(mCharSlots[cls], buf)) {
+            mPooledBytes.addAndGet(-2L * buf.length);
+            mDrops.incrementAndGet();
+        }
+    }
+
+    public byte[] allocByteBuffer(int minSize)
+    {
+        int cls = allocClass(minSize);
+        if (cls < CLASS_COUNT) {
+            byte[] buf = take(mByteSlots[cls]);
+            if (buf != null) {
+                mPooledBytes.addAndGet(-buf.length);
+                mHits.incrementAndGet();
+                return buf;
+            }
+            minSize = 1 << (cls + MIN_CLASS_BITS);
+        }
+        mMisses.incrementAndGet();
+        return new byte[minSize];
+    }
+
+    public void releaseByteBuffer(byte[] buf)
+    {
+        int cls = releaseClass(buf.length);
+        if (cls < 0 || !reserve(buf.length)) {
+            mDrops.incrementAndGet();
+            return;
+        }
+        if (!offer(mByteSlots[cls], buf)) {
+            mPooledBytes.addAndGet(-buf.length);
+            mDrops.incrementAndGet();
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Public API: statistics
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Number of buffer allocations satisfied from the pool
+     */
+    public long getHitCount() { return mHits.get(); }
+
+    /**
+     * @return Number of buffer allocations that required a new buffer
+     */
+    public long getMissCount() { return mMisses.get(); }
+
+    /**
+     * @return Number of released buffers that were not pooled (due to
+     *   their size, memory cap, or all slots being taken)
+     */
+    public long getDropCount() { return mDrops.get(); }
+
+    /**
+     * @return Total size of buffers currently pooled, in bytes
+     */
+    public long getPooledBytes() { return mPooledBytes.get(); }
+
+    public long getMaxPooledBytes() { return mMaxPooledBytes; }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @return Smallest size class whose buffers are all at least of
+     *   given size; or <code>CLASS_COUNT</code> if no class is big enough
+     */
+    private static int allocClass(int minSize)
+    {
+        if (minSize <= (1 << MIN_CLASS_BITS)) {
+            return 0;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(minSize - 1);
+        return Math.min(bits - MIN_CLASS_BITS, CLASS_COUNT);
+    }
+
+    /**
+     * @return Size class to add a buffer of given size to (one with
+     *   largest size not exceeding it); or -1 if buffer is not to
+     *   be pooled
+     */
+    private static int releaseClass(int size)
+    {
+        int bits = 31 - Integer.numberOfLeadingZeros(size);
+        if (bits < MIN_CLASS_BITS || bits > MAX_CLASS_BITS) {
+            return -1;
+        }
+        return bits - MIN_CLASS_BITS;
+    }
+
+    private boolean reserve(long bytes)
+    {
+        while (true) {
+            long curr = mPooledBytes.get();
+            if (curr + bytes > mMaxPooledBytes) {
+                return false;
+            }
+            if (mPooledBytes.compareAndSet(curr, curr + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Let's start probing from a thread-specific slot, to reduce
+     * contention between threads.
+     */
+    private int probeStart()
+    {
+        long id = Thread.currentThread().getId();
+        return ((int) id ^ (int) (id >>> 32)) * 0x9E3779B9;
+    }
+
+    private <T> T take(AtomicReferenceArray<T> slots)
+    {
+        final int mask = mSlotMask;
+        int ix = probeStart();
+        for (int i = 0; i <= mask; ++i, ++ix) {
+            T buf = slots.get(ix & mask);
+            if (buf != null && slots.compareAndSet(ix & mask, buf, null)) {
+                return buf;
+            }
+        }
+        return null;
+    }
+
+    private <T> boolean offer(AtomicReferenceArray<T> slots, T buf)
+    {
+        final int mask = mSlotMask;
+        int ix = probeStart();
+        int free = -1;
+        /* Let's go through all slots, to catch a buffer being released
+         * twice in a row (while still pooled), which would otherwise
+         * get it handed to two readers. This is just a sanity check:
+         * a release after the buffer has been taken from the pool again,
+         * or concurrent releases of the same buffer, are not detected.
+         */
+        for (int i = 0; i <= mask; ++i, ++ix) {
+            T curr = slots.get(ix & mask);
+            if (curr == buf) {
+                return false;
+            }
+            if (curr == null && free < 0) {
+                free = ix & mask;
+            }
+        }
+        if (free >= 0) {
+            if (slots.compareAndSet(free, null, buf)) {
+                return true;
+            }
+            // Lost a race; let's try any other free slot
+            ix = probeStart();
+            for (int i = 0; i <= mask; ++i, ++ix) {
+                if (slots.compareAndSet(ix & mask, null, buf)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stateless recycler that just delegates to the pool: all buffer
+     * kinds of {@link BufferRecycler} are pooled by size only.
+     */
+    final class Recycler extends BufferRecycler
+    {
+        @Override
+        public char[] getSmallCBuffer(int minSize) {
+            return allocCharBuffer(minSize);
+        }
+
+        @Override
+        public void returnSmallCBuffer(char[] buffer) {
+            releaseCharBuffer(buffer);
+        }
+
+        @Override
+        public char[] getMediumCBuffer(int minSize) {
+            return allocCharBuffer(minSize);
+        }
+
+        @Override
+        public void returnMediumCBuffer(char[] buffer) {
+            releaseCharBuffer(buffer);
+        }
+
+        @Override
+        public char[] getFullCBuffer(int minSize) {
+            return allocCharBuffer(minSize);
+        }
+
+        @Override
+        public void returnFullCBuffer(char[] buffer) {
+            releaseCharBuffer(buffer);
+        }
+
+        @Override
+        public byte[] getFullBBuffer(int minSize) {
+            return allocByteBuffer(minSize);
+        }
+
+        @Override
+        public void returnFullBBuffer(byte[] buffer) {
+            releaseByteBuffer(buffer);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
+import java.util.HashMap;
+
+import com.ctc.wstx.api.ReaderConfig;
+import com.ctc.wstx.cfg.XmlConsts;
+
+/**
+ * Generic table-driven Reader for decoding content that uses any
+ * single-byte encoding (windows-125x, ISO-8859-x other than Latin-1,
+ * EBCDIC variants and so on): each byte is decoded by looking up
+ * the character from a 256-entry table. Tables are built (using the
+ * JDK decoder for the charset) only once per charset, and shared
+ * between readers.
+ *<p>
+ * Note that ISO-8859-1 and US-ASCII have their own specialized
+ * readers, and are not handled by this class.
+ */
+public final class SingleByteReader
+    extends BaseReader
+{
+    /**
+     * Marker used in tables for bytes that (in xml 1.1 mode) decode to
+     * characters that are not allowed as is. Since U+FFFF is not a valid
+     * xml character, it can never be a legal decoded value.
+     */
+    final static char CHAR_INVALID = (char) 0xFFFF;
+
+    /**
+     * Character that bytes with no mapping in the encoding decode to;
+     * same as what JDK decoders use by default.
+     */
+    final static char CHAR_REPLACEMENT = (char) 0xFFFD;
+
+    /**
+     * Marker for charsets that have been checked, and found not to be
+     * single-byte encodings
+     */
+    final static char[][] NO_TABLES = new char[0][];
+
+    /**
+     * Shared cache of decoding tables, keyed by normalized encoding name;
+     * each entry has tables for xml 1.0 and xml 1.1.
+     */
+    final static HashMap<String,char[][]> sTables = new HashMap<String,char[][]>();
+
+    final String mEncoding;
+
+    final char[][] mTables;
+
+    char[] mTable;
+
+    /**
+     * Total read byte (and char) count; used for error reporting purposes
+     */
+    int mByteCount = 0;
+
+    /*
+    ////////////////////////////////////////
+    // Life-cycle
+    ////////////////////////////////////////
+    */
+
+    private SingleByteReader(ReaderConfig cfg, InputStream in, byte[] buf, int ptr, int len,
+                             boolean recycleBuffer, String encoding, char[][] tables)
+    {
+        super(cfg, in, buf, ptr, len, recycleBuffer);
+        mEncoding = encoding;
+        mTables = tables;
+        mTable = tables[0];
+    }
+
+    /**
+     * @param normEnc Normalized (see {@link CharsetNames#normalize})
+     *   name of the encoding
+     *
+     * @return True if the encoding is a single-byte encoding supported
+     *   by the JDK (and so can be decoded by this reader); false if not
+     */
+    public static boolean canDecode(String normEnc)
+    {
+        return findTables(normEnc) != null;
+    }
+
+    /**
+     * Factory method for constructing a reader for given encoding, if
+     * it is a single-byte encoding supported by the JDK.
+     *
+     * @param normEnc Normalized (see {@link CharsetNames#normalize})
+     *   name of the encoding
+     *
+     * @return Reader constructed, if encoding is a single-byte encoding;
+     *   null if not (in which case caller needs to use some other
+     *   decoding method)
+     */
+    public static SingleByteReader construct(ReaderConfig cfg, InputStream in,
+                                             byte[] buf, int ptr, int len,
+                                             boolean recycleBuffer, String normEnc)
+    {
+        char[][] tables = findTables(normEnc);
+        if (tables == null) {
+            return null;
+        }
+        return new SingleByteReader(cfg, in, buf, ptr, len, recycleBuffer, normEnc, tables);
+    }
+
+    public void setXmlCompliancy(int xmlVersion)
+    {
+        mTable = mTables[(xmlVersion == XmlConsts.XML_V_11) ? 1 : 0];
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Public API
+    ////////////////////////////////////////
+    */
+
+    public int read(char[] cbuf, int start, int len)
+        throws IOException
+    {
+        // Let's then ensure there's enough room...
+        if (start < 0 || (start+len) > cbuf.length) {
+            reportBounds(cbuf, start, len);
+        }
+        // Already EOF?
+        if (mByteBuffer == null) {
+            return -1;
+        }
+        if (len < 1) { // dummy call?
+            return 0;
+        }
+
+        // Need to load more data?
+        int avail = mByteBufferEnd - mBytePtr;
+        if (avail <= 0) {
+            mByteCount += mByteBufferEnd;
+            // Let's always (try to) read full buffers
+            int count = readBytes();
+            if (count <= 0) {
+                if (count == 0) {
+                    reportStrangeStream();
+                }
+                freeBuffers(); // to help GC?
+                return -1;
+            }
+            avail = count;
+        }
+
+        if (len > avail) {
+            len = avail;
+        }
+        final byte[] buf = mByteBuffer;
+        final char[] table = mTable;
+        int i = mBytePtr;
+        int last = i + len;
+
+        for (; i < last; ++i) {
+            char c = table[buf[i] & 0xFF];
+            if (c == CHAR_INVALID) {
+                reportInvalid(buf[i] & 0xFF, mByteCount + i);
+            }
+            cbuf[start++] = c;
+        }
+
+        mBytePtr = last;
+        return len;
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Internal methods
+    ////////////////////////////////////////
+    */
+
+    /**
+     * @return Decoding tables for the encoding, if it is a single-byte
+     *   encoding; null if not (or if encoding is not known)
+     */
+    static char[][] findTables(String normEnc)
+    {
+        char[][] tables;
+        synchronized (sTables) {
+            tables = sTables.get(normEnc);
+        }
+        if (tables == null) {
+            tables = buildTables(normEnc);
+            /* Unknown encodings are not cached, to keep the cache bounded
+             * (names come from documents); JDK will report them anyway
+             */
+            if (tables == null) {
+                return null;
+            }
+            synchronized (sTables) {
+                sTables.put(normEnc, tables);
+            }
+        }
+        return (tables == NO_TABLES) ? null : tables;
+    }
+
+    /**
+     * @return Decoding tables, if encoding is a single-byte one;
+     *   {@link #NO_TABLES} if it is some other kind of encoding, and
+     *   null if encoding is not supported by the JDK
+     */
+    private static char[][] buildTables(String normEnc)
+    {
+        CharsetDecoder dec;
+        try {
+            Charset cs = Charset.forName(normEnc);
+            // Must be able to check that all chars are single bytes
+            if (!cs.canEncode() || cs.newEncoder().maxBytesPerChar() != 1.0f) {
+                return NO_TABLES;
+            }
+            dec = cs.newDecoder();
+        } catch (IllegalArgumentException iae) { // illegal/unsupported name
+            return null;
+        }
+        if (dec.maxCharsPerByte() != 1.0f) {
+            return NO_TABLES;
+        }
+        dec.onMalformedInput(CodingErrorAction.REPORT);
+        dec.onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        char[] table = new char[256];
+        byte[] b = new byte[1];
+        ByteBuffer in = ByteBuffer.wrap(b);
+        CharBuffer out = CharBuffer.allocate(2);
+
+        for (int i = 0; i < 256; ++i) {
+            b[0] = (byte) i;
+            in.clear();
+            out.clear();
+            dec.reset();
+            CoderResult result = dec.decode(in, out, true);
+            if (!result.isError()) {
+                result = dec.flush(out);
+            }
+            if (result.isError() || out.position() != 1) {
+                table[i] = CHAR_REPLACEMENT;
+            } else {
+                table[i] = out.get(0);
+            }
+        }
+
+        // Then a variant for xml 1.1, which has different linefeed and ctrl char rules
+        char[] table11 = new char[256];
+        for (int i = 0; i < 256; ++i) {
+            char c = table[i];
+            if (c == 0x85) { // NEL
+                c = CONVERT_NEL_TO;
+            } else if (c == 0x2028) { // LSEP
+                c = CONVERT_LSEP_TO;
+            } else if (c >= 0x7F && c <= 0x9F) { // DEL, ctrl chars
+                c = CHAR_INVALID;
+            }
+            table11[i] = c;
+        }
+        return new char[][] { table, table11 };
+    }
+
+    private void reportInvalid(int b, int pos)
+        throws IOException
+    {
+        throw new CharConversionException("Invalid byte 0x"+Integer.toHexString(b)
+                                          +" for encoding '"+mEncoding+"': not allowed as is in xml 1.1 (at char #"
+                                          +pos+", byte #"+pos+")");
+    }
+}
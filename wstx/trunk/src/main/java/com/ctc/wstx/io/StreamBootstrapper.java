@@ -6,6 +6,7 @@ import javax.xml.stream.Location;
 import javax.xml.stream.XMLStreamException;
 
 import com.ctc.wstx.api.ReaderConfig;
+import com.ctc.wstx.api.WstxInputProperties;
 import com.ctc.wstx.cfg.ParsingErrorMsgs;
 import com.ctc.wstx.cfg.XmlConsts;
 import com.ctc.wstx.exc.*;
@@ -41,8 +42,10 @@ public final class StreamBootstrapper
     /**
      * Underlying InputStream to use for reading content. May be null
      * if the actual data source is not stream-based but a block source.
+     * If input is compressed, will be replaced by the decompressing
+     * stream during bootstrapping.
      */
-    final InputStream mIn;
+    InputStream mIn;
 
     /*
     ///////////////////////////////////////////////////////////////
@@ -55,10 +58,18 @@ public final class StreamBootstrapper
     /**
      * Whether byte buffer is recyclable or not
      */
-    private final boolean mRecycleBuffer;
+    private boolean mRecycleBuffer;
 
     private int mInputPtr;
     private int mInputEnd;
+
+    /**
+     * Byte offset (relative to the start of input) of the first byte
+     * in the input buffer; needed to be able to report byte offsets
+     * once the actual Reader has been constructed.
+     */
+    private long mBufferByteOffset;
+
     /*
     ///////////////////////////////////////////////////////////////
     // Physical encoding properties found so far
@@ -121,6 +132,7 @@ public final class StreamBootstrapper
         mByteBuffer = data;
         mInputPtr = start;
         mInputEnd = end;
+        mBufferByteOffset = -start;
     }
 
     /*
@@ -163,6 +175,11 @@ public final class StreamBootstrapper
 	    mByteBuffer = cfg.allocFullBBuffer(bufSize);
 	}
 
+        WstxInputProperties.InputCompression comp = cfg.getInputCompression();
+        if (comp != WstxInputProperties.COMPRESSION_NONE) {
+            checkForCompression(cfg, comp, bufSize);
+        }
+
         resolveStreamEncoding();
 
         if (hasXmlDecl()) {
@@ -227,6 +244,18 @@ public final class StreamBootstrapper
             }
             r = new UTF32Reader(cfg, mIn, mByteBuffer, mInputPtr, mInputEnd,
 				mRecycleBuffer, mBigEndian);
+        } else if (normEnc == CharsetNames.CS_UTF16 || normEnc == CharsetNames.CS_UTF16BE
+                   || normEnc == CharsetNames.CS_UTF16LE) {
+            // BOM (if any) has been skipped, and byte order is known
+            if (normEnc == CharsetNames.CS_UTF16) {
+                mInputEncoding = mBigEndian ? CharsetNames.CS_UTF16BE : CharsetNames.CS_UTF16LE;
+            }
+            r = new UTF16Reader(cfg, mIn, mByteBuffer, mInputPtr, mInputEnd,
+                                mRecycleBuffer, mBigEndian);
+        } else if (SingleByteReader.canDecode(normEnc)) {
+            // Some other single-byte encoding (including EBCDIC variants)
+            r = SingleByteReader.construct(cfg, mIn, mByteBuffer, mInputPtr, mInputEnd,
+                                           mRecycleBuffer, normEnc);
         } else {
             // Nah, JDK needs to try it
             // Ok; first, do we need to merge stuff back?
@@ -234,13 +263,6 @@ public final class StreamBootstrapper
             if (mInputPtr < mInputEnd) {
                 in = new MergedStream(cfg, in, mByteBuffer, mInputPtr, mInputEnd);
             }
-            /* 20-Jan-2006, TSa: Ok; although it is possible to declare
-             *   stream as 'UTF-16', JDK may need help in figuring out
-             *   the right order, so let's be explicit:
-             */
-            if (normEnc == CharsetNames.CS_UTF16) {
-                mInputEncoding = normEnc = mBigEndian ? CharsetNames.CS_UTF16BE : CharsetNames.CS_UTF16LE;
-            }
             try {
                 return new InputStreamReader(in, normEnc);
             } catch (UnsupportedEncodingException usex) {
@@ -248,6 +270,7 @@ public final class StreamBootstrapper
             }
         }
 
+        r.setInputByteBase(mBufferByteOffset);
         if (mXml11Handling) {
             r.setXmlCompliancy(XmlConsts.XML_V_11);
         }
@@ -461,6 +484,46 @@ public final class StreamBootstrapper
         return enc;
     }
 
+    /*
+    /////////////////////////////////////////////////////
+    // Internal methods, compressed input
+    /////////////////////////////////////////////////////
+    */
+
+    /**
+     * Method called to check whether input is compressed (either by
+     * detecting gzip magic bytes, or due to explicit configuration),
+     * and if so, to change input to be read via decompressing stream.
+     */
+    private void checkForCompression(ReaderConfig cfg, WstxInputProperties.InputCompression comp,
+                                     int bufSize)
+        throws IOException
+    {
+        boolean gzip;
+        if (comp == WstxInputProperties.COMPRESSION_AUTO) {
+            ensureLoaded(InflatingInputStream.GZIP_MAGIC_LENGTH);
+            if (!InflatingInputStream.isGzipHeader(mByteBuffer, mInputPtr, mInputEnd)) {
+                return;
+            }
+            gzip = true;
+        } else {
+            gzip = (comp == WstxInputProperties.COMPRESSION_GZIP);
+        }
+        if (mIn == null) { // block source: need a buffer of our own to decompress to
+            mDecompressor = new InflatingInputStream(cfg,
+                new ByteArrayInputStream(mByteBuffer, mInputPtr, mInputEnd - mInputPtr),
+                null, 0, 0, gzip);
+            mByteBuffer = cfg.allocFullBBuffer(bufSize);
+            mRecycleBuffer = true;
+        } else {
+            mDecompressor = new InflatingInputStream(cfg, mIn, mByteBuffer, mInputPtr, mInputEnd, gzip);
+        }
+        mIn = mDecompressor;
+        // Offsets are to refer to uncompressed content
+        mInputPtr = mInputEnd = 0;
+        mBufferByteOffset = 0L;
+    }
+
     /*
     /////////////////////////////////////////////////////
     // Internal methods, loading input data
@@ -497,6 +560,7 @@ public final class StreamBootstrapper
          */
         mInputProcessed += mInputEnd;
         mInputRowStart -= mInputEnd;
+        mBufferByteOffset += mInputEnd;
 
         mInputPtr = 0;
         mInputEnd = (mIn == null) ? -1 : mIn.read(mByteBuffer, 0, mByteBuffer.length);
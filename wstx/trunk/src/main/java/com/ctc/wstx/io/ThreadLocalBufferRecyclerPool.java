@@ -0,0 +1,61 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.io;
+
+import java.lang.ref.SoftReference;
+
+/**
+ * Default {@link BufferRecyclerPool} implementation, which keeps a
+ * {@link BufferRecycler} per thread, referenced through a
+ * <code>SoftReference</code> (so that GC can flush recyclers if memory
+ * gets low). This works well with a limited number of long-lived threads
+ * that parse (or write) documents one after another; but it will give
+ * little reuse if threads are short-lived, or very numerous.
+ *<p>
+ * Separate instances are used by readers and writers, so that they
+ * do not compete for the same buffers.
+ *
+ * @since 5.0
+ */
+public final class ThreadLocalBufferRecyclerPool
+    extends BufferRecyclerPool
+{
+    /**
+     * This <code>ThreadLocal</code> contains a {@link SoftReference}
+     * to a {@link BufferRecycler} used to provide a low-cost
+     * buffer recycling between Reader (or Writer) instances.
+     */
+    final ThreadLocal<SoftReference<BufferRecycler>> mRecyclerRef = new ThreadLocal<SoftReference<BufferRecycler>>();
+
+    public ThreadLocalBufferRecyclerPool() { }
+
+    @Override
+    public BufferRecycler getRecycler()
+    {
+        /* Since recyclers are lazily constructed, and since GC may just
+         * flush them out on its whims, it's possible we might not find one.
+         * That's ok; we'll just create a new one.
+         */
+        SoftReference<BufferRecycler> ref = mRecyclerRef.get();
+        BufferRecycler recycler = (ref == null) ? null : ref.get();
+        if (recycler == null) {
+            recycler = new BufferRecycler();
+            // No way to reuse/reset SoftReference, have to create new always:
+            mRecyclerRef.set(new SoftReference<BufferRecycler>(recycler));
+        }
+        return recycler;
+    }
+}
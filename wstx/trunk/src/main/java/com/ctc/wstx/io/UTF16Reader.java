@@ -0,0 +1,313 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.io;
+
+import java.io.*;
+
+import com.ctc.wstx.api.ReaderConfig;
+import com.ctc.wstx.cfg.XmlConsts;
+
+/**
+ * Optimized Reader that reads UTF-16 (big or little endian) encoded
+ * content from an input stream. Compared to using JDK-provided
+ * decoder (via {@link InputStreamReader}), this one is unsynchronized,
+ * uses recyclable input buffers, and verifies validity of surrogate
+ * pairs as well as handles xml 1.1 specific linefeed conversions.
+ */
+public final class UTF16Reader
+    extends BaseReader
+{
+    boolean mBigEndian;
+
+    /**
+     * Flag that indicates whether the byte order is still to be
+     * determined from a BOM (if any) at the start of the content.
+     */
+    boolean mCheckBOM = false;
+
+    boolean mXml11;
+
+    /**
+     * Second half of a surrogate pair that could not be returned
+     * during previous call, due to lack of room in the output buffer.
+     */
+    char mSurrogate = NULL_CHAR;
+
+    /**
+     * Total read character count; used for error reporting purposes
+     */
+    int mCharCount = 0;
+
+    /**
+     * Total read byte count; used for error reporting purposes
+     */
+    int mByteCount = 0;
+
+    /*
+    ////////////////////////////////////////
+    // Life-cycle
+    ////////////////////////////////////////
+    */
+
+    public UTF16Reader(ReaderConfig cfg, InputStream in, byte[] buf, int ptr, int len,
+                       boolean recycleBuffer,
+                       boolean isBigEndian)
+    {
+        super(cfg, in, buf, ptr, len, recycleBuffer);
+        mBigEndian = isBigEndian;
+    }
+
+    public void setXmlCompliancy(int xmlVersion)
+    {
+        mXml11 = (xmlVersion == XmlConsts.XML_V_11);
+    }
+
+    /**
+     * Method called when the byte order is not known when reader is
+     * constructed (encoding given as just "UTF-16"): if so, the first
+     * two bytes are checked for a BOM, which is skipped if found.
+     * If not found, big endian byte order is used.
+     */
+    void checkForBOM()
+    {
+        mCheckBOM = true;
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Public API
+    ////////////////////////////////////////
+    */
+
+    public int read(char[] cbuf, int start, int len)
+        throws IOException
+    {
+        // Let's first ensure there's enough room...
+        if (start < 0 || (start+len) > cbuf.length) {
+            reportBounds(cbuf, start, len);
+        }
+        // Already EOF?
+        if (mByteBuffer == null) {
+            return -1;
+        }
+        if (len < 1) {
+            return 0;
+        }
+
+        len += start;
+        int outPtr = start;
+
+        // Ok, first; do we have a surrogate from last round?
+        if (mSurrogate != NULL_CHAR) {
+            cbuf[outPtr++] = mSurrogate;
+            mSurrogate = NULL_CHAR;
+            // No need to load more, already got one char
+        } else {
+            // Only need a single 2-byte unit, to avoid blocking
+            int left = (mByteBufferEnd - mBytePtr);
+            if (left < 2) {
+                if (!loadMore(left, 2)) { // (legal) EOF?
+                    return -1;
+                }
+            }
+        }
+
+        byte[] buf = mByteBuffer;
+        int ptr = mBytePtr;
+        // last index at which a full 2-byte unit starts
+        int last = mByteBufferEnd - 2;
+        final boolean bigEndian = mBigEndian;
+
+        main_loop:
+        while (outPtr < len && ptr <= last) {
+            int ch = bigEndian
+                ? (((buf[ptr] & 0xFF) << 8) | (buf[ptr+1] & 0xFF))
+                : ((buf[ptr] & 0xFF) | ((buf[ptr+1] & 0xFF) << 8));
+            ptr += 2;
+
+            if (ch >= 0x7F) {
+                if (ch <= 0x9F) {
+                    if (mXml11) { // high-order ctrl char detection...
+                        if (ch != 0x85) {
+                            mBytePtr = ptr;
+                            reportInvalid(ch, outPtr-start, "(can only be included via entity in xml 1.1)");
+                        }
+                        ch = CONVERT_NEL_TO;
+                    }
+                } else if (ch >= 0xD800) {
+                    if (ch < 0xDC00) { // high surrogate; need the low one
+                        if (ptr > last) { // not yet in buffer
+                            if (outPtr > start) { // can return what we got
+                                ptr -= 2;
+                                break main_loop;
+                            }
+                            mBytePtr = ptr - 2;
+                            if (!loadMore(mByteBufferEnd - mBytePtr, 4)) {
+                                // should never get here; EOF is reported as error
+                                return -1;
+                            }
+                            buf = mByteBuffer;
+                            ptr = mBytePtr + 2;
+                            last = mByteBufferEnd - 2;
+                        }
+                        int low = bigEndian
+                            ? (((buf[ptr] & 0xFF) << 8) | (buf[ptr+1] & 0xFF))
+                            : ((buf[ptr] & 0xFF) | ((buf[ptr+1] & 0xFF) << 8));
+                        ptr += 2;
+                        if (low < 0xDC00 || low >= 0xE000) {
+                            mBytePtr = ptr;
+                            reportInvalid(low, outPtr-start, "(expected a low surrogate to follow high surrogate 0x"
+                                          +Integer.toHexString(ch)+") ");
+                        }
+                        cbuf[outPtr++] = (char) ch;
+                        // Room for second part?
+                        if (outPtr >= len) { // nope
+                            mSurrogate = (char) low;
+                            break main_loop;
+                        }
+                        ch = low;
+                    } else if (ch < 0xE000) {
+                        mBytePtr = ptr;
+                        reportInvalid(ch, outPtr-start, "(a low surrogate without preceding high surrogate) ");
+                    } else if (ch >= 0xFFFE) {
+                        mBytePtr = ptr;
+                        reportInvalid(ch, outPtr-start, "");
+                    }
+                } else if (ch == 0x2028 && mXml11) { // LSEP
+                    /* As with UTF8Reader: preceding \r must not combine
+                     * with the converted LSEP into a single linefeed
+                     */
+                    if (outPtr > start && cbuf[outPtr-1] == '\r') {
+                        cbuf[outPtr-1] = '\n';
+                    }
+                    ch = CONVERT_LSEP_TO;
+                }
+            }
+            cbuf[outPtr++] = (char) ch;
+        }
+        mBytePtr = ptr;
+
+        len = outPtr - start;
+        mCharCount += len;
+        return len;
+    }
+
+    @Override
+    public int calcByteLength(char[] cbuf, int start, int end, long firstChar)
+    {
+        // Every char (including either half of a surrogate pair) is 2 bytes
+        return (end - start) << 1;
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Internal methods
+    ////////////////////////////////////////
+    */
+
+    private void reportUnexpectedEOF(int gotBytes, int needed)
+        throws IOException
+    {
+        int bytePos = mByteCount + gotBytes;
+        int charPos = mCharCount;
+
+        throw new CharConversionException("Unexpected EOF in the middle of a UTF-16 char: got "
+                                          +gotBytes+", needed "+needed
+                                          +", at char #"+charPos+", byte #"+bytePos+")");
+    }
+
+    private void reportInvalid(int value, int offset, String msg)
+        throws IOException
+    {
+        int bytePos = mByteCount + mBytePtr - 2;
+        int charPos = mCharCount + offset;
+
+        throw new CharConversionException("Invalid UTF-16 character 0x"
+                                          +Integer.toHexString(value)
+                                          +msg+" at char #"+charPos+", byte #"+bytePos+")");
+    }
+
+    /**
+     * @param available Number of "unused" bytes in the input buffer
+     * @param needed Number of bytes needed to decode the next character
+     *   (2, or 4 for a surrogate pair)
+     *
+     * @return True, if enough bytes were read to allow decoding of at least
+     *   one full character; false if EOF was encountered instead.
+     */
+    private boolean loadMore(int available, int needed)
+        throws IOException
+    {
+        mByteCount += (mByteBufferEnd - available);
+
+        // Bytes that need to be moved to the beginning of buffer?
+        if (available > 0) {
+            // can only move if we own the buffer
+            if (mBytePtr > 0 && canModifyBuffer()) {
+                for (int i = 0; i < available; ++i) {
+                    mByteBuffer[i] = mByteBuffer[mBytePtr+i];
+                }
+                markBytesDiscarded(mBytePtr);
+                mBytePtr = 0;
+                mByteBufferEnd = available;
+            }
+        } else {
+            /* Ok; here we can actually reasonably expect an EOF,
+             * so let's do a separate read right away:
+             */
+            int count = readBytes();
+            if (count < 1) {
+                if (count < 0) { // -1
+                    freeBuffers(); // to help GC?
+                    return false;
+                }
+                // 0 count is no good; let's err out
+                reportStrangeStream();
+            }
+        }
+
+        // And then load enough bytes to decode the char; if not, error
+        while ((mBytePtr + needed) > mByteBufferEnd) {
+            int count = readBytesAt(mByteBufferEnd);
+            if (count < 1) {
+                if (count < 0) { // -1, EOF... no good!
+                    int got = mByteBufferEnd - mBytePtr;
+                    freeBuffers(); // to help GC?
+                    reportUnexpectedEOF(got, needed);
+                }
+                // 0 count is no good; let's err out
+                reportStrangeStream();
+            }
+        }
+
+        // Need to figure out the byte order?
+        if (mCheckBOM) {
+            mCheckBOM = false;
+            int bom = ((mByteBuffer[mBytePtr] & 0xFF) << 8) | (mByteBuffer[mBytePtr+1] & 0xFF);
+            if (bom == 0xFEFF) {
+                mBigEndian = true;
+            } else if (bom == 0xFFFE) {
+                mBigEndian = false;
+            } else {
+                mBigEndian = true;
+                return true;
+            }
+            mBytePtr += 2;
+            return loadMore(mByteBufferEnd - mBytePtr, needed);
+        }
+        return true;
+    }
+}
@@ -172,6 +172,20 @@ public final class UTF32Reader
         return len;
     }
 
+    @Override
+    public int calcByteLength(char[] cbuf, int start, int end, long firstChar)
+    {
+        int count = 0;
+        for (int i = start; i < end; ++i) {
+            char c = cbuf[i];
+            // low surrogates have no bytes; all were counted for high one
+            if (c < 0xDC00 || c >= 0xE000) {
+                count += 4;
+            }
+        }
+        return count;
+    }
+
     /*
     ////////////////////////////////////////
     // Internal methods
@@ -220,6 +234,7 @@ public final class UTF32Reader
                 for (int i = 0; i < available; ++i) {
                     mByteBuffer[i] = mByteBuffer[mBytePtr+i];
                 }
+                markBytesDiscarded(mBytePtr);
                 mBytePtr = 0;
 		mByteBufferEnd = available;
             }
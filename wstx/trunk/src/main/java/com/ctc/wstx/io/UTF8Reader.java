@@ -43,6 +43,24 @@ public final class UTF8Reader
      */
     int mByteCount = 0;
 
+    /**
+     * Total number of chars returned; unlike {@link #mCharCount}, used
+     * for locating converted xml 1.1 linefeeds
+     */
+    long mCharsReturned = 0L;
+
+    /**
+     * Char indexes (see {@link #mCharsReturned}) of xml 1.1 linefeeds
+     * (NEL, LSEP) that have been converted to '\n', shifted left by 2
+     * bits; the lowest 2 bits contain the number of bytes the linefeed
+     * took in addition to one byte '\n' itself would take. Only kept
+     * until {@link #discardCharsBefore} indicates they are no longer
+     * needed for calculating byte lengths.
+     */
+    long[] mConvertedLfs = null;
+
+    int mConvertedLfCount = 0;
+
     /*
     ////////////////////////////////////////
     // Life-cycle
@@ -261,6 +279,7 @@ public final class UTF8Reader
                             cbuf[outPtr-1] = '\n';
                         }
                         c = CONVERT_LSEP_TO;
+                        markConvertedLf(mCharsReturned + (outPtr - start), 2);
                     }
                 }
             } else { // (needed == 1)
@@ -268,6 +287,7 @@ public final class UTF8Reader
                     if (c <= 0x9F) {
                         if (c == 0x85) { // NEL, let's convert?
                             c = CONVERT_NEL_TO;
+                            markConvertedLf(mCharsReturned + (outPtr - start), 1);
                         } else if (c >= 0x7F) { // DEL, ctrl chars
                             int bytePos = mByteCount + inPtr - 1;
                             int charPos = mCharCount + (outPtr-start);
@@ -285,15 +305,77 @@ public final class UTF8Reader
         mBytePtr = inPtr;
         len = outPtr - start;
         mCharCount += len;
+        mCharsReturned += len;
         return len;
     }
 
+    /**
+     * Since decoding maps each code point to one char (or a surrogate
+     * pair), byte length is easy to calculate from decoded chars.
+     * The only exception are xml 1.1 linefeeds (NEL, LSEP), which are
+     * converted to '\n': their positions are recorded during decoding,
+     * to add the extra bytes.
+     */
+    @Override
+    public int calcByteLength(char[] cbuf, int start, int end, long firstChar)
+    {
+        int count = end - start;
+        for (int i = start; i < end; ++i) {
+            char c = cbuf[i];
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    count += 1;
+                } else if (c < 0xD800 || c >= 0xE000) {
+                    count += 2;
+                } else if (c < 0xDC00) { // high surrogate; gets all 4 bytes
+                    count += 3;
+                } else { // low surrogate, no bytes
+                    count -= 1;
+                }
+            }
+        }
+        if (mConvertedLfCount > 0) {
+            long lastChar = firstChar + (end - start);
+            for (int i = 0; i < mConvertedLfCount; ++i) {
+                long index = mConvertedLfs[i] >> 2;
+                if (index >= firstChar && index < lastChar) {
+                    count += (int) (mConvertedLfs[i] & 0x3);
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void discardCharsBefore(long charIndex)
+    {
+        int count = 0;
+        for (int i = 0; i < mConvertedLfCount; ++i) {
+            if ((mConvertedLfs[i] >> 2) >= charIndex) {
+                mConvertedLfs[count++] = mConvertedLfs[i];
+            }
+        }
+        mConvertedLfCount = count;
+    }
+
     /*
     ////////////////////////////////////////
     // Internal methods
     ////////////////////////////////////////
     */
 
+    private void markConvertedLf(long charIndex, int extraBytes)
+    {
+        if (mConvertedLfs == null) {
+            mConvertedLfs = new long[16];
+        } else if (mConvertedLfCount >= mConvertedLfs.length) {
+            long[] old = mConvertedLfs;
+            mConvertedLfs = new long[old.length << 1];
+            System.arraycopy(old, 0, mConvertedLfs, 0, old.length);
+        }
+        mConvertedLfs[mConvertedLfCount++] = (charIndex << 2) | extraBytes;
+    }
+
     private void reportInvalidInitial(int mask, int offset)
         throws IOException
     {
@@ -359,6 +441,7 @@ public final class UTF8Reader
                 for (int i = 0; i < available; ++i) {
                     mByteBuffer[i] = mByteBuffer[mBytePtr+i];
                 }
+                markBytesDiscarded(mBytePtr);
                 mBytePtr = 0;
 		mByteBufferEnd = available;
             }
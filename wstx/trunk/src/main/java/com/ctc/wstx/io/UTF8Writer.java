@@ -27,11 +27,11 @@ public final class UTF8Writer
 
     final boolean mAutoCloseOutput;
 
-    final OutputStream mOut;
+    OutputStream mOut;
 
     byte[] mOutBuffer;
 
-    final int mOutBufferLast;
+    int mOutBufferLast;
 
     int mOutPtr;
 
@@ -56,6 +56,24 @@ public final class UTF8Writer
         mOutPtr = 0;
     }
 
+    /**
+     * Method for making this writer output to a new stream, after
+     * output to the previous one has been flushed. Output buffer is
+     * reused, unless it was released when closing the writer.
+     *
+     * @since 5.0
+     */
+    public void reset(OutputStream out)
+    {
+        mOut = out;
+        if (mOutBuffer == null) {
+            mOutBuffer = (mConfig == null) ? new byte[DEFAULT_BUF_LEN] : mConfig.allocFullBBuffer(DEFAULT_BUF_LEN);
+            mOutBufferLast = mOutBuffer.length - 4;
+        }
+        mOutPtr = 0;
+        mSurrogate = 0;
+    }
+
     /*
     ////////////////////////////////////////////////////////
     // CompletelyCloseable impl
@@ -192,6 +192,36 @@ public abstract class WstxInputSource
     public abstract boolean readMore(WstxInputData reader, int minAmount)
         throws IOException, XMLStreamException;
 
+    /**
+     * Method reader can call to find out byte offset (relative to the
+     * beginning of the input) of the character at specified position
+     * within the current input buffer of this source.
+     *
+     * @return Byte offset, if known; -1 if not (input came as characters,
+     *   or was decoded by a Reader that does not keep track of bytes)
+     */
+    public long getInputByteOffset(int bufferPtr) {
+        return -1L;
+    }
+
+    /**
+     * Method reader can call to find out whether this source has content
+     * that has been read from the underlying input, but not yet consumed:
+     * either characters in the buffer at or after specified position,
+     * or content buffered by the underlying Reader.
+     */
+    public boolean hasUnconsumedInput(int bufferPtr)
+        throws IOException
+    {
+        return false;
+    }
+
+    /**
+     * @return Position within the input buffer saved by the last call
+     *   to {@link #saveContext}
+     */
+    public abstract int getSavedInputPtr();
+
     /**
      * Method Reader calls when this input source is being stored, when
      * a nested input source gets used instead (due to entity expansion).
@@ -0,0 +1,435 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.sr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.util.StreamReader2Delegate;
+
+import com.ctc.wstx.api.ReaderConfig;
+import com.ctc.wstx.cfg.ErrorConsts;
+import com.ctc.wstx.cfg.XmlConsts;
+import com.ctc.wstx.exc.WstxIOException;
+import com.ctc.wstx.io.BranchingReaderSource;
+import com.ctc.wstx.io.InputSourceFactory;
+import com.ctc.wstx.io.MarkupBoundaryScanner;
+import com.ctc.wstx.io.StreamBootstrapper;
+
+/**
+ * Non-blocking ("feeder-based") stream reader: instead of reading content
+ * from an {@link InputStream}, caller feeds content in chunks as it
+ * becomes available (using {@link #feedInput}), and indicates end of
+ * content by calling {@link #endOfInput}. If there is not enough content
+ * to return the next event, {@link #next} returns {@link #EVENT_INCOMPLETE}
+ * instead of blocking.
+ *<p>
+ * Implementation uses a regular {@link BasicStreamReader} (with all its
+ * configuration, limits and validation) for actual parsing: fed content is
+ * scanned for boundaries of complete markup constructs (see
+ * {@link MarkupBoundaryScanner}), and the underlying reader is only
+ * advanced when the next event is known to be completely available.
+ * This means that events are exactly the same as with blocking parsing.
+ *<p>
+ * Limitations:
+ *<ul>
+ * <li>Incremental parsing is only possible for encodings that are
+ *   ASCII-compatible for markup (UTF-8, ISO-8859-x, US-ASCII and
+ *   similar, as well as multi-byte charsets like GBK that the JDK
+ *   decodes); for other encodings (UTF-16, UTF-32, EBCDIC) no events
+ *   are returned until {@link #endOfInput} has been called.
+ *  </li>
+ * <li>Methods that read more than a single event (<code>getElementText()</code>,
+ *   <code>skipElement()</code>, typed access methods) may only be called if
+ *   all the content they need has been fed; otherwise they throw an
+ *   exception.
+ *  </li>
+ * <li>External entities and DTD subsets are still read using blocking
+ *   I/O, if they are to be resolved.
+ *  </li>
+ *</ul>
+ */
+public class AsyncStreamReader
+    extends StreamReader2Delegate
+{
+    /**
+     * Event type returned by {@link #next} to indicate that not enough
+     * content is yet available to return the next actual event.
+     */
+    public final static int EVENT_INCOMPLETE = 257;
+
+    /**
+     * Minimum number of bytes needed before underlying reader is
+     * constructed (unless all input has been fed): needs to be enough
+     * for bootstrapper to detect BOM and the start of xml declaration.
+     */
+    final static int MIN_BOOTSTRAP_BYTES = 16;
+
+    final static int INITIAL_FEED_BUFFER = 4000;
+
+    final ReaderCreator mOwner;
+
+    final ReaderConfig mConfig;
+
+    final MarkupBoundaryScanner mScanner = new MarkupBoundaryScanner();
+
+    final FeedStream mFeed = new FeedStream();
+
+    /**
+     * Actual stream reader, once constructed
+     */
+    protected BasicStreamReader mReader;
+
+    /**
+     * Whether the last call to {@link #next} returned
+     * {@link #EVENT_INCOMPLETE}.
+     */
+    protected boolean mIncomplete = false;
+
+    /**
+     * Whether fed content uses an encoding that the boundary scanner
+     * can handle; false if not, or not yet known.
+     */
+    protected boolean mScannable;
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Life-cycle
+    ///////////////////////////////////////////////////////////
+     */
+
+    public AsyncStreamReader(ReaderCreator owner, ReaderConfig cfg)
+    {
+        super(null);
+        mOwner = owner;
+        mConfig = cfg;
+        // Byte offsets are needed to know how much of the fed input is consumed
+        cfg.doTrackByteOffsets(true);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Feeding API
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for feeding more content to parse. Content is copied, so
+     * caller is free to reuse the buffer once method returns.
+     */
+    public void feedInput(byte[] buf, int start, int len)
+        throws XMLStreamException
+    {
+        if (mFeed.mEnded) {
+            throw new IllegalStateException("Can not feed more input after endOfInput() has been called");
+        }
+        if (len <= 0) {
+            return;
+        }
+        int ptr = mFeed.append(buf, start, len);
+        if (mFeed.mOffset == 0L && ptr == 0) {
+            mScannable = isAsciiCompatible(buf[start]);
+        }
+        if (mScannable) {
+            int end = mFeed.mEnd;
+            byte[] data = mFeed.mData;
+            while (ptr < end) {
+                ptr = mScanner.scan(data, ptr, end);
+            }
+            mFeed.mReleased = mScanner.getLastBoundary();
+        }
+    }
+
+    /**
+     * Method for indicating that all content has been fed.
+     */
+    public void endOfInput()
+    {
+        mFeed.mEnded = true;
+        mFeed.mReleased = mFeed.mOffset + mFeed.mEnd;
+    }
+
+    /**
+     * Method for checking whether the reader needs more input to return
+     * the next event. This is the case if all content up to the end of
+     * the last complete markup construct fed has been consumed. When
+     * exact byte offsets are available (content decoded by Woodstox'
+     * own decoders), they are used for checking this; otherwise (for
+     * charsets decoded by JDK decoders, like GBK or Shift_JIS) the check
+     * is whether all released content has been read and decoded, and
+     * all decoded characters consumed.
+     *
+     * @return True if the reader needs more input to return the next
+     *   event (that is, {@link #next} would return
+     *   {@link #EVENT_INCOMPLETE}); false if not.
+     */
+    public boolean needMoreInput()
+        throws XMLStreamException
+    {
+        if (mFeed.mEnded) {
+            return false;
+        }
+        if (mReader == null) {
+            return (mFeed.mReleased < MIN_BOOTSTRAP_BYTES);
+        }
+        // Note: also completes the current event, if need be
+        long pos = mReader.getEndingByteOffset();
+        if (pos < 0L) { // expanding an entity?
+            pos = mReader.getRootByteOffset();
+        }
+        if (pos >= 0L) {
+            return (pos >= mFeed.mReleased);
+        }
+        return !mReader.hasUnconsumedRootInput();
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Overridden XMLStreamReader methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    @Override
+    public int next()
+        throws XMLStreamException
+    {
+        if (needMoreInput()) {
+            mIncomplete = true;
+            return EVENT_INCOMPLETE;
+        }
+        if (mReader == null) {
+            constructReader();
+            /* Need to re-check: underlying reader now knows how much
+             * was consumed by xml declaration
+             */
+            if (needMoreInput()) {
+                mIncomplete = true;
+                return EVENT_INCOMPLETE;
+            }
+        }
+        mIncomplete = false;
+        return mReader.next();
+    }
+
+    @Override
+    public int nextTag()
+        throws XMLStreamException
+    {
+        while (true) {
+            int type = next();
+            switch (type) {
+            case EVENT_INCOMPLETE:
+            case START_ELEMENT:
+            case END_ELEMENT:
+                return type;
+            case SPACE:
+            case COMMENT:
+            case PROCESSING_INSTRUCTION:
+                continue;
+            case CDATA:
+            case CHARACTERS:
+                if (mReader.isWhiteSpace()) {
+                    continue;
+                }
+            }
+            mReader.throwParseError("Received event "+ErrorConsts.tokenTypeDesc(type)
+                                    +", instead of START_ELEMENT or END_ELEMENT.");
+        }
+    }
+
+    @Override
+    public int getEventType()
+    {
+        if (mIncomplete) {
+            return EVENT_INCOMPLETE;
+        }
+        return (mReader == null) ? START_DOCUMENT : mReader.getEventType();
+    }
+
+    @Override
+    public boolean hasNext()
+        throws XMLStreamException
+    {
+        return (mReader == null) || mIncomplete || mReader.hasNext();
+    }
+
+    @Override
+    public void close()
+        throws XMLStreamException
+    {
+        if (mReader != null) {
+            mReader.close();
+        }
+        mFeed.mEnded = true;
+        mFeed.mData = null;
+    }
+
+    @Override
+    public void closeCompletely()
+        throws XMLStreamException
+    {
+        close();
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    protected void constructReader()
+        throws XMLStreamException
+    {
+        StreamBootstrapper bs = StreamBootstrapper.getInstance(null, null, mFeed);
+        ReaderConfig cfg = mConfig;
+        Reader r;
+        try {
+            r = bs.bootstrapInput(cfg, true, XmlConsts.XML_V_UNKNOWN);
+            if (bs.declaredXml11()) {
+                cfg.enableXml11(true);
+            }
+        } catch (IOException ie) {
+            throw new WstxIOException(ie);
+        }
+        // false -> no need to close feed stream when done
+        BranchingReaderSource input = InputSourceFactory.constructDocumentSource
+            (cfg, bs, null, null, r, false);
+        mReader = ValidatingStreamReader.createValidatingStreamReader(input, mOwner, cfg, bs, false);
+        setParent(mReader);
+    }
+
+    /**
+     * Method for checking whether the first byte of content indicates
+     * an encoding where markup characters are encoded same as in ASCII.
+     */
+    private static boolean isAsciiCompatible(byte b)
+    {
+        switch (b & 0xFF) {
+        case 0x00: // UTF-16 or UTF-32 without BOM
+        case 0xFE: // UTF-16/32 BOM
+        case 0xFF:
+        case 0x4C: // EBCDIC '<'
+            return false;
+        }
+        return true;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper classes
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Input stream through which the underlying reader reads content
+     * that has been fed: only content up to the current release
+     * boundary is made available.
+     */
+    final class FeedStream
+        extends InputStream
+    {
+        byte[] mData = new byte[INITIAL_FEED_BUFFER];
+
+        /**
+         * Absolute offset of the first byte in the buffer
+         */
+        long mOffset = 0L;
+
+        /**
+         * Pointer to the next byte to return
+         */
+        int mPtr = 0;
+
+        /**
+         * Pointer after the last byte fed
+         */
+        int mEnd = 0;
+
+        /**
+         * Absolute offset up to which content may be read
+         */
+        long mReleased = 0L;
+
+        boolean mEnded = false;
+
+        /**
+         * Buffer used by single-byte {@link #read()}
+         */
+        final byte[] mSingleByte = new byte[1];
+
+        /**
+         * @return Pointer in buffer to the first byte appended
+         */
+        int append(byte[] buf, int start, int len)
+        {
+            // First: discard content already read, if any
+            if (mPtr > 0) {
+                int remaining = mEnd - mPtr;
+                if (remaining > 0) {
+                    System.arraycopy(mData, mPtr, mData, 0, remaining);
+                }
+                mOffset += mPtr;
+                mPtr = 0;
+                mEnd = remaining;
+            }
+            if (mEnd + len > mData.length) {
+                int newLen = Math.max(mData.length + (mData.length >> 1), mEnd + len);
+                byte[] old = mData;
+                mData = new byte[newLen];
+                System.arraycopy(old, 0, mData, 0, mEnd);
+            }
+            int ptr = mEnd;
+            System.arraycopy(buf, start, mData, ptr, len);
+            mEnd += len;
+            return ptr;
+        }
+
+        @Override
+        public int available()
+        {
+            return (mData == null) ? 0 : (int) (mReleased - mOffset - mPtr);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = mSingleByte;
+            int count = read(b, 0, 1);
+            return (count < 1) ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] buf, int start, int len) throws IOException
+        {
+            int avail = available();
+            if (avail <= 0) {
+                if (mEnded) {
+                    return -1;
+                }
+                throw new IOException("Not enough input fed to parse the next event: need to call feedInput() or endOfInput() first");
+            }
+            if (len > avail) {
+                len = avail;
+            }
+            System.arraycopy(mData, mPtr, buf, start, len);
+            mPtr += len;
+            return len;
+        }
+    }
+}
@@ -56,6 +56,24 @@ final class Attribute
      */
     protected String mReusableValue;
 
+    /**
+     * For values that have not yet been expanded into the text builder
+     * (see {@link AttributeCollector#addRawAttribute}), start offset
+     * of the raw value within input buffer
+     */
+    protected int mRawStart;
+
+    /**
+     * End offset (exclusive) of the raw value within input buffer
+     */
+    protected int mRawEnd;
+
+    /**
+     * Whether raw value contains entities or white space that need to
+     * be expanded or normalized, or can be used as is
+     */
+    protected boolean mRawNeedsExpansion;
+
     /*
     //////////////////////////////////////////////////
     // Life-cycle
@@ -155,6 +155,25 @@ public final class AttributeCollector
      */
     private final TextBuilder mNamespaceBuilder = new TextBuilder(EXP_NS_COUNT);
 
+    /*
+    ///////////////////////////////////////////////////////////
+    // Raw (not yet expanded) values
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Input buffer that contains raw values of attributes added using
+     * {@link #addRawAttribute}, if any are yet to be expanded into
+     * {@link #mValueBuilder}; null if there are none.
+     */
+    protected char[] mRawBuffer = null;
+
+    /**
+     * If {@link #mRawBuffer} is not null, index of the first attribute
+     * that has a raw value; all attributes after it have raw values too.
+     */
+    protected int mRawIndex;
+
     /*
     //////////////////////////////////////////////////////////////
     // Information that defines "Map-like" data structure used for
@@ -244,6 +263,7 @@ public final class AttributeCollector
                 mXmlIdAttrIndex = XMLID_IX_NONE;
             }
         }
+        mRawBuffer = null;
         /* Note: attribute values will be cleared later on, when validating
          * namespaces. This so that we know how much to clean up; and
          * occasionally can also just avoid clean up (when resizing)
@@ -259,6 +279,9 @@ public final class AttributeCollector
      */
     public void normalizeSpacesInValue(int index)
     {
+        if (mRawBuffer != null) {
+            expandRawValues();
+        }
         // StringUtil has a method, but it works on char arrays...
         char[] attrCB = mValueBuilder.getCharBuffer();
         String normValue = StringUtil.normalizeSpaces
@@ -359,10 +382,17 @@ public final class AttributeCollector
         if (index < 0 || index >= mAttrCount) {
             throwIndex(index);
         }
-        String full = mValueBuilder.getAllValues();
         Attribute attr = mAttributes[index];
+        int valueCount = mAttrCount;
+        if (mRawBuffer != null) {
+            if (index >= mRawIndex) {
+                return getRawValue(attr);
+            }
+            valueCount = mRawIndex;
+        }
+        String full = mValueBuilder.getAllValues();
         ++index;
-        if (index < mAttrCount) { // not last
+        if (index < valueCount) { // not last
             int endOffset = mAttributes[index].mValueStartOffset;
             return attr.getValue(full, endOffset);
         }
@@ -505,10 +535,29 @@ public final class AttributeCollector
         /* Should be faster to pass the char array even if we might
          * have a String
          */
+        char[] buf;
+        int start, end;
+        Attribute attr = mAttributes[index];
+        if (mRawBuffer != null) {
+            /* Raw values that need no expansion can be decoded directly
+             * from the input buffer
+             */
+            if (index >= mRawIndex && !attr.mRawNeedsExpansion) {
+                buf = mRawBuffer;
+                start = attr.mRawStart;
+                end = attr.mRawEnd;
+            } else {
+                expandRawValues();
+                buf = mValueBuilder.getCharBuffer();
+                start = attr.mValueStartOffset;
+                end = getValueStartOffset(index+1);
+            }
+        } else {
+            buf = mValueBuilder.getCharBuffer();
+            start = attr.mValueStartOffset;
+            end = getValueStartOffset(index+1);
+        }
         // Either way, need to trim before passing:
-        char[] buf = mValueBuilder.getCharBuffer();
-        int start = mAttributes[index].mValueStartOffset;
-        int end = getValueStartOffset(index+1);
 
         while (true) {
             if (start >= end) {
@@ -538,6 +587,9 @@ public final class AttributeCollector
         if (index < 0 || index >= mAttrCount) {
             throwIndex(index);
         }
+        if (mRawBuffer != null) {
+            expandRawValues();
+        }
         // Char[] faster than String... and no need to trim here:
         return decodeValues(tad, rep,
                             mValueBuilder.getCharBuffer(),
@@ -552,6 +604,9 @@ public final class AttributeCollector
         if (index < 0 || index >= mAttrCount) {
             throwIndex(index);
         }
+        if (mRawBuffer != null) {
+            expandRawValues();
+        }
         /* No point in trying to use String representation, even if one
          * available, faster to process from char[]
          */
@@ -640,6 +695,9 @@ public final class AttributeCollector
      */
     protected int getValueStartOffset(int index)
     {
+        if (mRawBuffer != null) {
+            expandRawValues();
+        }
         if (index < mAttrCount) {
             return mAttributes[index].mValueStartOffset;
         }
@@ -648,6 +706,9 @@ public final class AttributeCollector
 
     protected char[] getSharedValueBuffer()
     {
+        if (mRawBuffer != null) {
+            expandRawValues();
+        }
         return mValueBuilder.getCharBuffer();
     }
 
@@ -725,6 +786,9 @@ public final class AttributeCollector
     protected void validateAttribute(int index, XMLValidator vld)
         throws XMLStreamException
     {
+        if (mRawBuffer != null) {
+            expandRawValues();
+        }
         Attribute attr = mAttributes[index];
         String normValue = vld.validateAttribute
             (attr.mLocalName, attr.mNamespaceURI, attr.mPrefix,
@@ -750,6 +814,92 @@ public final class AttributeCollector
      * for direct access.
      */
     public final TextBuilder getAttrBuilder(String attrPrefix, String attrLocalName) throws XMLStreamException
+    {
+        // Values must be in builder in order, so raw ones need to go first
+        if (mRawBuffer != null) {
+            expandRawValues();
+        }
+        addAttribute(attrPrefix, attrLocalName);
+        return mValueBuilder;
+    }
+
+    /**
+     * Method called by stream reader to add an attribute, the value of
+     * which is still in the input buffer, and is only to be expanded
+     * (entities replaced, white space normalized) when accessed.
+     * Value must have been checked for well-formedness by the caller;
+     * and caller has to call {@link #expandRawValues} before contents
+     * of the buffer are changed.
+     *
+     * @param buf Input buffer that contains the raw value
+     * @param start Start offset of the raw value (after opening quote)
+     * @param end End offset of the raw value (offset of closing quote)
+     * @param needsExpansion Whether value contains entities or white
+     *   space to normalize
+     *
+     * @since 5.0
+     */
+    public final void addRawAttribute(String attrPrefix, String attrLocalName,
+            char[] buf, int start, int end, boolean needsExpansion)
+        throws XMLStreamException
+    {
+        if (mRawBuffer != buf) {
+            if (mRawBuffer != null) { // should never happen, but just in case
+                expandRawValues();
+            }
+            mRawBuffer = buf;
+            mRawIndex = mAttrCount;
+        }
+        addAttribute(attrPrefix, attrLocalName);
+        Attribute attr = mAttributes[mAttrCount-1];
+        attr.mRawStart = start;
+        attr.mRawEnd = end;
+        attr.mRawNeedsExpansion = needsExpansion;
+    }
+
+    /**
+     * @return True if some of the attribute values have been added
+     *   using {@link #addRawAttribute}, and have not yet been expanded
+     *
+     * @since 5.0
+     */
+    public final boolean hasRawValues() {
+        return (mRawBuffer != null);
+    }
+
+    /**
+     * Method called to expand all raw attribute values (see
+     * {@link #addRawAttribute}) into the value builder; either when
+     * contents of the input buffer are about to change, or when
+     * values are needed in the builder.
+     *
+     * @since 5.0
+     */
+    public final void expandRawValues()
+    {
+        final char[] buf = mRawBuffer;
+        mRawBuffer = null;
+        TextBuilder tb = mValueBuilder;
+        for (int i = mRawIndex, count = mAttrCount; i < count; ++i) {
+            Attribute attr = mAttributes[i];
+            int start = attr.mRawStart;
+            int len = attr.mRawEnd - start;
+            int outPtr = tb.getCharSize();
+            attr.mValueStartOffset = outPtr;
+            if (!attr.mRawNeedsExpansion) {
+                tb.append(buf, start, len);
+                continue;
+            }
+            char[] out = tb.getCharBuffer();
+            // expanded value can not be longer than the raw one
+            if ((out.length - outPtr) < len) {
+                out = tb.bufferFull(len);
+            }
+            tb.setBufferSize(expandRaw(buf, start, attr.mRawEnd, out, outPtr));
+        }
+    }
+
+    private final void addAttribute(String attrPrefix, String attrLocalName) throws XMLStreamException
     {
         /* Ok: we have parsed prefixed-name of a regular
          * attribute. So let's initialize the instance...
@@ -786,7 +936,6 @@ public final class AttributeCollector
         /* Can't yet create attribute map by name, since we only know
          * name prefix, not necessarily matching URI.
          */ 
-        return mValueBuilder;
     }
 
     /**
@@ -1142,6 +1291,83 @@ public final class AttributeCollector
         allocBuffers();
     }
 
+    /**
+     * Method for constructing (and caching) value of an attribute that
+     * has not yet been expanded into the value builder.
+     */
+    private String getRawValue(Attribute attr)
+    {
+        if (attr.mReusableValue == null) {
+            int start = attr.mRawStart;
+            int len = attr.mRawEnd - start;
+            if (attr.mRawNeedsExpansion) {
+                char[] out = new char[len];
+                len = expandRaw(mRawBuffer, start, attr.mRawEnd, out, 0);
+                attr.mReusableValue = new String(out, 0, len);
+            } else {
+                attr.mReusableValue = new String(mRawBuffer, start, len);
+            }
+        }
+        return attr.mReusableValue;
+    }
+
+    /**
+     * Method that expands well-formed raw attribute value into given
+     * output buffer: replaces character entities and pre-defined
+     * entities, and normalizes white space (linefeeds, tabs) into
+     * spaces, the same way stream reader does when parsing values.
+     *
+     * @return Output pointer after expanded value
+     */
+    private static int expandRaw(char[] buf, int ptr, int end, char[] out, int outPtr)
+    {
+        while (ptr < end) {
+            char c = buf[ptr++];
+            if (c == '&') {
+                c = buf[ptr++];
+                if (c == '#') { // char entity
+                    int value = 0;
+                    c = buf[ptr++];
+                    if (c == 'x') {
+                        while ((c = buf[ptr++]) != ';') {
+                            value = (value << 4) + Character.digit(c, 16);
+                        }
+                    } else {
+                        do {
+                            value = (value * 10) + (c - '0');
+                        } while ((c = buf[ptr++]) != ';');
+                    }
+                    if (value > 0xFFFF) {
+                        value -= 0x10000;
+                        out[outPtr++] = (char) ((value >> 10) + 0xD800);
+                        c = (char) ((value & 0x3FF) + 0xDC00);
+                    } else {
+                        c = (char) value;
+                    }
+                } else { // one of pre-defined entities
+                    char c2 = buf[ptr];
+                    while (buf[ptr++] != ';') { }
+                    if (c == 'l') {
+                        c = '<';
+                    } else if (c == 'g') {
+                        c = '>';
+                    } else if (c == 'q') {
+                        c = '"';
+                    } else { // amp or apos
+                        c = (c2 == 'm') ? '&' : '\'';
+                    }
+                }
+            } else if (c < INT_SPACE) { // linefeed or tab
+                if (c == '\r' && ptr < end && buf[ptr] == '\n') {
+                    ++ptr;
+                }
+                c = ' ';
+            }
+            out[outPtr++] = c;
+        }
+        return outPtr;
+    }
+
     /**
      * Method that can be used to get the specified attribute value,
      * by getting it written using Writer passed in. Can potentially
@@ -38,6 +38,8 @@ import org.codehaus.stax2.XMLStreamReader2;
 import org.codehaus.stax2.typed.TypedXMLStreamException;
 import org.codehaus.stax2.validation.*;
 
+import com.ctc.wstx.api.EventTypeFilter;
+import com.ctc.wstx.api.ProjectionPaths;
 import com.ctc.wstx.api.ReaderConfig;
 import com.ctc.wstx.api.WstxInputProperties;
 import com.ctc.wstx.cfg.ErrorConsts;
@@ -46,6 +48,7 @@ import com.ctc.wstx.dtd.MinimalDTDReader;
 import com.ctc.wstx.ent.EntityDecl;
 import com.ctc.wstx.exc.WstxException;
 import com.ctc.wstx.io.*;
+import com.ctc.wstx.util.DataUtil;
 import com.ctc.wstx.util.DefaultXmlSymbolTable;
 import com.ctc.wstx.util.TextBuffer;
 import com.ctc.wstx.util.TextBuilder;
@@ -157,6 +160,20 @@ public abstract class BasicStreamReader
 
     private final static int INDENT_CHECK_MAX = 40;
 
+    /**
+     * Characters at which the tight loop that skips text content in
+     * {@link #skipElementRaw} has to stop: start of markup, and control
+     * characters other than tab (linefeeds need to be counted, others
+     * are invalid). Other characters need no checks when skipping.
+     */
+    private final static boolean[] sSkipStopChars = new boolean['<' + 1];
+    static {
+        for (int i = 0; i < CHAR_SPACE; ++i) {
+            sSkipStopChars[i] = (i != '\t');
+        }
+        sSkipStopChars['<'] = true;
+    }
+
     // // // Shared namespace symbols
 
     final protected static String sPrefixXml = DefaultXmlSymbolTable.getXmlSymbol();
@@ -183,6 +200,12 @@ public abstract class BasicStreamReader
     protected final boolean mCfgReportTextAsChars;
     protected final boolean mCfgLazyParsing;
 
+    /**
+     * Whether attribute values are expanded lazily, when accessed
+     * (see {@link WstxInputProperties#P_LAZY_ATTRIBUTE_VALUES})
+     */
+    protected final boolean mCfgLazyAttrValues;
+
     /**
      * Minimum number of characters parser can return as partial text
      * segment, IF it's not required to coalesce adjacent text
@@ -216,6 +239,12 @@ public abstract class BasicStreamReader
      */
     protected int mDocStandalone = DOC_STANDALONE_UNKNOWN;
 
+    /**
+     * Decompressing stream used for reading the main document, if it
+     * is compressed; null otherwise.
+     */
+    protected InflatingInputStream mDecompressor;
+
     /*
     ///////////////////////////////////////////////////////////
     // DOCTYPE information from document type declaration
@@ -351,6 +380,50 @@ public abstract class BasicStreamReader
      */
     protected XMLStreamException mPendingException = null;
 
+    /**
+     * Stack of hash codes of names of nested elements, used by
+     * {@link #skipElementRaw} for verifying that start and end tags
+     * match; allocated when first needed, and reused.
+     */
+    protected int[] mSkipNameHashes = null;
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Projection
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Paths that determine which sub-trees events are reported from,
+     * if projection is used; null if not.
+     */
+    protected final ProjectionPaths mProjection;
+
+    /**
+     * Matching states (see {@link ProjectionPaths#nextState}) of open
+     * elements that are ancestors of potential matches, indexed by depth;
+     * only used with projection.
+     */
+    protected long[] mProjStates;
+
+    /**
+     * Depth of the element that matched a projection path, if we are
+     * within its sub-tree; 0 if not.
+     */
+    protected int mProjMatchDepth = 0;
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Event type filtering
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Filter used for skipping events of unwanted types within the
+     * document tree, if any (see {@link #setEventTypeFilter}).
+     */
+    protected EventTypeFilter mEventFilter = null;
+
     /*
     ///////////////////////////////////////////////////////////
     // DTD information (entities, content spec stub)
@@ -427,6 +500,13 @@ public abstract class BasicStreamReader
          *   not catching all exceptions as expected)
          */
         mCfgLazyParsing = !forER && ((mConfigFlags & CFG_LAZY_PARSING) != 0);
+        // and same applies to lazy attribute values
+        mCfgLazyAttrValues = !forER && ((mConfigFlags & CFG_LAZY_ATTRIBUTE_VALUES) != 0);
+
+        mProjection = cfg.getProjectionPaths();
+        if (mProjection != null) {
+            mProjStates = new long[16];
+        }
 
         /* There are a few derived settings used during tokenization that
          * need to be initialized now...
@@ -450,20 +530,7 @@ public abstract class BasicStreamReader
 
         // // // Then handling of xml declaration data:
 
-        mDocXmlVersion = bs.getDeclaredVersion();
-        mDocInputEncoding = bs.getInputEncoding();
-        mDocXmlEncoding = bs.getDeclaredEncoding();
-
-        String sa = bs.getStandalone();
-        if (sa == null) {
-            mDocStandalone = DOC_STANDALONE_UNKNOWN;
-        } else {
-            if (XmlConsts.XML_SA_YES.equals(sa)) {
-                mDocStandalone = DOC_STANDALONE_YES;
-            } else {
-                mDocStandalone = DOC_STANDALONE_NO;
-            }
-        }
+        initDocumentInfo(bs);
 
         /* Ok; either we got declaration or not, but in either case we can
          * now initialize prolog parsing settings, without having to really
@@ -492,6 +559,165 @@ public abstract class BasicStreamReader
         return new InputElementStack(cfg, cfg.willSupportNamespaces());
     }
 
+    private void initDocumentInfo(InputBootstrapper bs)
+    {
+        mDocXmlVersion = bs.getDeclaredVersion();
+        mDecompressor = bs.getDecompressor();
+        mDocInputEncoding = bs.getInputEncoding();
+        mDocXmlEncoding = bs.getDeclaredEncoding();
+
+        String sa = bs.getStandalone();
+        if (sa == null) {
+            mDocStandalone = DOC_STANDALONE_UNKNOWN;
+        } else {
+            if (XmlConsts.XML_SA_YES.equals(sa)) {
+                mDocStandalone = DOC_STANDALONE_YES;
+            } else {
+                mDocStandalone = DOC_STANDALONE_NO;
+            }
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Life-cycle, resetting for reuse
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for resetting this reader so that it can be used for
+     * parsing a new document, read from given input stream. Current
+     * document (if any) is first closed, as if {@link #close} had been
+     * called; after which the reader is in the same state as a newly
+     * constructed one would be, except that all internal structures
+     * (element stack, attribute collector, text buffer and so on) are
+     * reused, instead of having to be re-created.
+     *<p>
+     * Configuration settings of the reader (including ones changed via
+     * {@link #setProperty}) are retained; but validators added for the
+     * previous document are not.
+     *
+     * @since 5.0
+     */
+    public void reset(InputStream in)
+        throws XMLStreamException
+    {
+        if (in == null) {
+            throw new IllegalArgumentException("Null InputStream is not a valid argument");
+        }
+        boolean autoClose = mConfig.willAutoCloseInput();
+        if (mConfig.willReadAhead()) {
+            in = new ReadAheadInputStream(mConfig, in, autoClose, mConfig.getReadAheadExecutor());
+            autoClose = true;
+        }
+        resetInput(StreamBootstrapper.getInstance(null, null, in), autoClose);
+    }
+
+    /**
+     * Method for resetting this reader so that it can be used for
+     * parsing a new document, contained in given byte array.
+     * See {@link #reset(InputStream)} for details.
+     *
+     * @since 5.0
+     */
+    public void reset(byte[] data, int offset, int len)
+        throws XMLStreamException
+    {
+        resetInput(StreamBootstrapper.getInstance(null, null, data, offset, offset+len),
+                   mConfig.willAutoCloseInput());
+    }
+
+    /**
+     * Method for resetting this reader so that it can be used for
+     * parsing a new document, read using given reader.
+     * See {@link #reset(InputStream)} for details.
+     *
+     * @since 5.0
+     */
+    public void reset(Reader r)
+        throws XMLStreamException
+    {
+        if (r == null) {
+            throw new IllegalArgumentException("Null Reader is not a valid argument");
+        }
+        resetInput(ReaderBootstrapper.getInstance(null, null, r, null),
+                   mConfig.willAutoCloseInput());
+    }
+
+    /**
+     * @return True if settings of this reader have been changed (via
+     *   {@link #setProperty}) since it was constructed; such readers
+     *   are not to be reused for documents of other callers, as reset
+     *   does not revert settings
+     *
+     * @since 5.0
+     */
+    public boolean hasModifiedConfig() {
+        return mConfig.isModified();
+    }
+
+    /**
+     * Bottleneck method called by public reset methods, to close
+     * the current document, bootstrap the new input and re-initialize
+     * parsing state.
+     */
+    protected void resetInput(InputBootstrapper bs, boolean autoCloseInput)
+        throws XMLStreamException
+    {
+        close();
+
+        // Symbol table has to be derived from the current shared one
+        mConfig.setSymbols(mOwner.createSymbolTable());
+        mConfig.enableXml11(false);
+        Reader r;
+        try {
+            r = bs.bootstrapInput(mConfig, true, XmlConsts.XML_V_UNKNOWN);
+            if (bs.declaredXml11()) {
+                mConfig.enableXml11(true);
+            }
+        } catch (IOException ie) {
+            throw constructFromIOE(ie);
+        }
+        BranchingReaderSource input = InputSourceFactory.constructDocumentSource
+            (mConfig, bs, null, null, r, autoCloseInput);
+        resetState(bs, input);
+    }
+
+    /**
+     * Method called to clear all document-specific state, once the new
+     * input source has been constructed; sub-classes that add such
+     * state need to override it (and call this implementation).
+     */
+    protected void resetState(InputBootstrapper bs, BranchingReaderSource input)
+        throws XMLStreamException
+    {
+        resetScanner(input);
+        initDocumentInfo(bs);
+
+        mRootPrefix = mRootLName = null;
+        mDtdPublicId = mDtdSystemId = null;
+        mStDoctypeFound = false;
+
+        mTokenState = TOKEN_FULL_COALESCED;
+        mCurrTextLength = 0;
+        mStEmptyElem = false;
+        mParseState = mConfig.inputParsingModeFragment() ?
+            STATE_TREE : STATE_PROLOG;
+        mCurrToken = mSecondaryToken = START_DOCUMENT;
+        mWsStatus = ALL_WS_UNKNOWN;
+        mValidateText = false;
+        mCheckIndentation = mNormalizeLFs ? INDENT_CHECK_START : 0;
+        mPendingException = null;
+        mGeneralEntities = null;
+        mVldContent = XMLValidator.CONTENT_ALLOW_ANY_TEXT;
+        mProjMatchDepth = 0;
+        mEventFilter = null;
+
+        mTextBuffer.resetWithEmpty();
+        mElementStack.reset();
+        input.initInputLocation(this, mCurrDepth, 0);
+    }
+
     /*
     ///////////////////////////////////////////////////////////
     // XMLStreamReader, document info
@@ -571,6 +797,28 @@ public abstract class BasicStreamReader
         return mConfig.safeGetProperty(name);
     }
 
+    /**
+     * Method for specifying filter that determines which comments,
+     * processing instructions and text events within the document
+     * tree are skipped by this reader, instead of being returned:
+     * rejected events are skipped without being fully parsed.
+     * Other events (including all events in prolog and epilog, as well
+     * as text that has to be validated) are always returned, so callers
+     * still need to apply the filter to returned events; usually
+     * this is done by using
+     * {@link com.ctc.wstx.stax.WstxInputFactory#createFilteredReader(javax.xml.stream.XMLStreamReader,javax.xml.stream.StreamFilter)}
+     * which calls this method.
+     *<p>
+     * Filter is cleared when the reader is reset.
+     *
+     * @param f Filter to use; null to remove filter
+     *
+     * @since 5.0
+     */
+    public void setEventTypeFilter(EventTypeFilter f) {
+        mEventFilter = f;
+    }
+
     /*
     ///////////////////////////////////////////////////////////
     // XMLStreamReader, current state
@@ -1112,65 +1360,16 @@ public abstract class BasicStreamReader
          * previous event might not yet be completely finished...
          */
         if (mParseState == STATE_TREE) {
-            int type = nextFromTree();
-            mCurrToken = type;
-            if (mTokenState < mStTextThreshold) { // incomplete?
-                /* Can remain incomplete if lazy parsing is enabled,
-                 * and this is not a validatable text segment; otherwise
-                 * must finish
-                 */
-                if (!mCfgLazyParsing ||
-                    (mValidateText && (type == CHARACTERS || type == CDATA))) {
-                    finishToken(false);
-                }
-            }
-
-            /* Special cases -- sometimes (when coalescing text, or
-             * when specifically configured to do so), CDATA and SPACE are
-             * to be reported as CHARACTERS, although we still will
-             * internally keep track of the real type.
-             */
-            if (type == CDATA) {
-                if (mValidateText) {
-                    mElementStack.validateText(mTextBuffer, false);
-                }
-                if (mCfgCoalesceText || mCfgReportTextAsChars) {
-                    return CHARACTERS;
-                }
-                /*
-                  } else if (type == SPACE) {
-                  //if (mValidateText) { throw new IllegalStateException("Internal error: trying to validate SPACE event"); }
-                  */
-                mCurrTextLength += mTextBuffer.size();
-                verifyLimit("Text size", mConfig.getMaxTextLength(), mCurrTextLength);
-            } else if (type == CHARACTERS) {
-                if (mValidateText) {
-                    /* We may be able to determine that there will be
-                     * no more text coming for this element: but only
-                     * seeing the end tag marker ("</") is certain
-                     * (PIs and comments won't do, nor CDATA; start
-                     * element possibly... but that indicates mixed
-                     * content that's generally non-validatable)
-                         */
-                    if ((mInputPtr+1) < mInputEnd
-                        && mInputBuffer[mInputPtr] == '<'
-                        && mInputBuffer[mInputPtr+1] == '/') {
-                        // yup, it's all there is
-                        mElementStack.validateText(mTextBuffer, true);
-                    } else {
-                        mElementStack.validateText(mTextBuffer, false);
-                    }
-                }
-                mCurrTextLength += mTextBuffer.size();
-                verifyLimit("Text size", mConfig.getMaxTextLength(), mCurrTextLength);
-            } else if (type == START_ELEMENT || type == END_ELEMENT) {
-                this.mCurrTextLength = 0;
-            }
-            return type;
+            return (mProjection == null) ? nextInTree() : nextProjected();
         }
 
         if (mParseState == STATE_PROLOG) {
             nextFromProlog(true);
+            if (mProjection != null && mCurrToken == START_ELEMENT
+                && !projectStartElement()) {
+                // root element itself was skipped; will just close the tree
+                return nextProjected();
+            }
         } else if (mParseState == STATE_EPILOG) {
             if (nextFromProlog(false)) {
                 // We'll return END_DOCUMENT, need to mark it 'as consumed'
@@ -1317,6 +1516,12 @@ public abstract class BasicStreamReader
         if (mCurrToken != START_ELEMENT) {
             throw new IllegalStateException(ErrorConsts.ERR_STATE_NOT_STELEM);
         }
+        if (!mStEmptyElem && mConfig.willSkipElementsRaw()
+            && mInput == mRootInput && mPendingException == null
+            && mElementStack.canSkipUnvalidated()) {
+            skipElementRaw();
+            return;
+        }
         int nesting = 1; // need one more end elements than start elements
 
         while (true) {
@@ -1534,6 +1739,19 @@ public abstract class BasicStreamReader
         closeAllInput(true);
     }
 
+    @Override
+    protected void closeAllInput(boolean force)
+        throws XMLStreamException
+    {
+        super.closeAllInput(force);
+        /* Decompressor is not closed unless input is auto-closed, but
+         * its inflater (and buffer) need to be released regardless
+         */
+        if (mDecompressor != null) {
+            mDecompressor.releaseResources();
+        }
+    }
+
     /*
     ///////////////////////////////////////////////////////////
     // DTDInfo implementation (StAX 2)
@@ -1610,11 +1828,12 @@ public abstract class BasicStreamReader
 
     @Override
     public long getStartingByteOffset() {
-        /* 15-Apr-2005, TSa: No way to reliably keep track of byte offsets,
-         *   at least for variable-length encodings... so let's just
-         *   return -1 for now
+        /* Byte offsets are known if they are being tracked (see
+         *   {@link WstxInputProperties#P_TRACK_BYTE_OFFSETS}), as long as
+         *   the main input is decoded by one of our own Readers (not for
+         *   Reader-based input, or when JDK decoders are used)
          */
-        return -1L;
+        return getTokenByteOffset();
     }
 
     @Override
@@ -1625,11 +1844,11 @@ public abstract class BasicStreamReader
     @Override
     public long getEndingByteOffset() throws XMLStreamException
     {
-        /* 15-Apr-2005, TSa: No way to reliably keep track of byte offsets,
-         *   at least for variable-length encodings... so let's just
-         *   return -1 for now
-         */
-        return -1;
+        // Need to get to the end of the token, if not there yet
+        if (mTokenState < mStTextThreshold) {
+            finishToken(false);
+        }
+        return getCurrentByteOffset();
     }
 
     @Override
@@ -1642,6 +1861,35 @@ public abstract class BasicStreamReader
         return mCurrInputProcessed + mInputPtr;
     }
 
+    // // // Woodstox-specific: compressed input statistics
+
+    /**
+     * Method for checking how many bytes of compressed input have been
+     * consumed so far, if the main document is compressed (see
+     * {@link WstxInputProperties#P_INPUT_COMPRESSION}).
+     * Note that byte offsets reported via other methods refer to
+     * the uncompressed content.
+     *
+     * @return Number of compressed bytes decompressed so far, if input
+     *   is compressed; -1 if not
+     */
+    public long getCompressedBytesRead() {
+        return (mDecompressor == null) ? -1L : mDecompressor.getCompressedBytesRead();
+    }
+
+    /**
+     * Method for checking how many bytes of uncompressed content have
+     * been produced from compressed input so far. Since content is
+     * decompressed a buffer at a time, this is usually ahead of the
+     * current parsing position.
+     *
+     * @return Number of uncompressed bytes produced so far, if input
+     *   is compressed; -1 if not
+     */
+    public long getUncompressedBytesRead() {
+        return (mDecompressor == null) ? -1L : mDecompressor.getUncompressedBytesRead();
+    }
+
     // // // and then the object-based access methods:
 
     @Override
@@ -2041,6 +2289,80 @@ public abstract class BasicStreamReader
         // Fine; let's tell TextBuild we're done:
         tb.setBufferSize(outPtr);
     }
+
+    /**
+     * Method called instead of {@link #parseAttrValue} when attribute
+     * values are to be expanded lazily: if the whole value is within
+     * current input buffer, and contains no entities other than character
+     * entities and pre-defined ones, it is checked for well-formedness
+     * and located, but not expanded or copied. Otherwise nothing is
+     * consumed, and caller has to parse the value regularly.
+     *
+     * @return True if the value was added to the attribute collector as
+     *   a raw value; false if caller needs to parse it
+     */
+    private final boolean parseRawAttrValue(char openingQuote, String prefix, String localName)
+        throws XMLStreamException
+    {
+        // Raw values are only kept for the main-level input buffer
+        if (mInput != mRootInput || !mNormalizeLFs) {
+            return false;
+        }
+        final char[] buf = mInputBuffer;
+        final int start = mInputPtr;
+        final int end = mInputEnd;
+        final int origRow = mCurrInputRow;
+        final int origRowStart = mCurrInputRowStart;
+        boolean needsExpansion = false;
+        int ptr = start;
+
+        while (ptr < end) {
+            char c = buf[ptr++];
+            if (c > '<') { // most value chars
+                continue;
+            }
+            if (c == openingQuote) {
+                mInputPtr = ptr;
+                verifyLimit("Maximum attribute size", mConfig.getMaxAttributeSize(), ptr-1-start);
+                mAttrCollector.addRawAttribute(prefix, localName, buf, start, ptr-1, needsExpansion);
+                return true;
+            }
+            if (c < CHAR_SPACE) {
+                if (c == '\r') {
+                    if (ptr >= end) { // can't see if it's a 2-char linefeed
+                        break;
+                    }
+                    if (buf[ptr] == '\n') {
+                        ++ptr;
+                    }
+                } else if (c != '\n') {
+                    if (c != '\t') {
+                        mInputPtr = ptr;
+                        throwInvalidSpace(c);
+                    }
+                    needsExpansion = true;
+                    continue;
+                }
+                markLF(ptr);
+                needsExpansion = true;
+            } else if (c == '&') {
+                mInputPtr = ptr;
+                if (inputInBuffer() < 3 || resolveSimpleEntity(true) == 0) {
+                    break; // general entity, or not enough input to resolve
+                }
+                ptr = mInputPtr;
+                needsExpansion = true;
+            } else if (c == '<') {
+                mInputPtr = ptr;
+                throwParseError("Unexpected '<' "+SUFFIX_IN_ATTR_VALUE);
+            }
+        }
+        // Need to parse regularly; but first undo what we did
+        mInputPtr = start;
+        mCurrInputRow = origRow;
+        mCurrInputRowStart = origRowStart;
+        return false;
+    }
     
     /*
     ///////////////////////////////////////////////////////////
@@ -2672,6 +2994,217 @@ public abstract class BasicStreamReader
         }
     }
 
+    /*
+    ///////////////////////////////////////////////////////////
+    // Internal methods, iterating within tree
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method called by {@link #next} to get the next event within the
+     * document tree, when no projection is used.
+     */
+    private final int nextInTree()
+        throws XMLStreamException
+    {
+        int type = nextFromTree();
+        mCurrToken = type;
+        if (mEventFilter != null) {
+            // Rejected events will be skipped by nextFromTree()
+            while (mParseState == STATE_TREE && isFilteredOut(type)) {
+                type = nextFromTree();
+                mCurrToken = type;
+            }
+        }
+        if (mTokenState < mStTextThreshold) { // incomplete?
+            /* Can remain incomplete if lazy parsing is enabled,
+             * and this is not a validatable text segment; otherwise
+             * must finish
+             */
+            if (!mCfgLazyParsing ||
+                (mValidateText && (type == CHARACTERS || type == CDATA))) {
+                finishToken(false);
+            }
+        }
+
+        /* Special cases -- sometimes (when coalescing text, or
+         * when specifically configured to do so), CDATA and SPACE are
+         * to be reported as CHARACTERS, although we still will
+         * internally keep track of the real type.
+         */
+        if (type == CDATA) {
+            if (mValidateText) {
+                mElementStack.validateText(mTextBuffer, false);
+            }
+            if (mCfgCoalesceText || mCfgReportTextAsChars) {
+                return CHARACTERS;
+            }
+            /*
+              } else if (type == SPACE) {
+              //if (mValidateText) { throw new IllegalStateException("Internal error: trying to validate SPACE event"); }
+              */
+            mCurrTextLength += mTextBuffer.size();
+            verifyLimit("Text size", mConfig.getMaxTextLength(), mCurrTextLength);
+        } else if (type == CHARACTERS) {
+            if (mValidateText) {
+                /* We may be able to determine that there will be
+                 * no more text coming for this element: but only
+                 * seeing the end tag marker ("</") is certain
+                 * (PIs and comments won't do, nor CDATA; start
+                 * element possibly... but that indicates mixed
+                 * content that's generally non-validatable)
+                     */
+                if ((mInputPtr+1) < mInputEnd
+                    && mInputBuffer[mInputPtr] == '<'
+                    && mInputBuffer[mInputPtr+1] == '/') {
+                    // yup, it's all there is
+                    mElementStack.validateText(mTextBuffer, true);
+                } else {
+                    mElementStack.validateText(mTextBuffer, false);
+                }
+            }
+            mCurrTextLength += mTextBuffer.size();
+            verifyLimit("Text size", mConfig.getMaxTextLength(), mCurrTextLength);
+        } else if (type == START_ELEMENT || type == END_ELEMENT) {
+            this.mCurrTextLength = 0;
+        }
+        return type;
+    }
+
+    /**
+     * Method called to check whether given event, just parsed by
+     * {@link #nextFromTree}, is rejected by the event type filter
+     * and is to be skipped. Rejected events are left unfinished if
+     * possible, so that they can be skipped without copying contents.
+     */
+    private boolean isFilteredOut(int type)
+        throws XMLStreamException
+    {
+        final EventTypeFilter f = mEventFilter;
+        switch (type) {
+        case COMMENT:
+        case PROCESSING_INSTRUCTION:
+            return !f.acceptsType(type);
+        case SPACE:
+            return !f.acceptsType(SPACE) || f.skipsWhitespaceText();
+        case CDATA:
+        case CHARACTERS:
+            // Validators need to see all text
+            if (mValidateText) {
+                return false;
+            }
+            if (!f.acceptsType((type == CDATA && (mCfgCoalesceText || mCfgReportTextAsChars))
+                               ? CHARACTERS : type)) {
+                return true;
+            }
+            if (!f.skipsWhitespaceText()) {
+                return false;
+            }
+            // Do we need rest of the text to know? Not if we already have non-ws
+            if (!mTextBuffer.isAllWhitespace()) {
+                mWsStatus = ALL_WS_NO;
+                return false;
+            }
+            if (mTokenState < mStTextThreshold) {
+                finishToken(false);
+                if (!mTextBuffer.isAllWhitespace()) {
+                    mWsStatus = ALL_WS_NO;
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Method called by {@link #next} to get the next event within the
+     * document tree when projection (see {@link WstxInputProperties#P_PROJECTION_PATHS})
+     * is used: events are only returned from within matching sub-trees,
+     * plus start and end elements of their ancestors. Elements that can
+     * not contain matches are skipped as whole.
+     */
+    private final int nextProjected()
+        throws XMLStreamException
+    {
+        while (true) {
+            // Leaving matching sub-tree? (note: end element may have been
+            // reached via getElementText(), not just next())
+            if (mProjMatchDepth > 0 && mCurrToken == END_ELEMENT
+                && mElementStack.getDepth() == mProjMatchDepth) {
+                mProjMatchDepth = 0;
+            }
+            int type = nextInTree();
+            if (mParseState != STATE_TREE // root element closed
+                || mProjMatchDepth > 0) { // within matching sub-tree
+                return type;
+            }
+            if (type == END_ELEMENT) { // of an ancestor, or element that might have been one
+                if (ProjectionPaths.isOnPath(mProjStates[mElementStack.getDepth()])) {
+                    return type;
+                }
+                continue;
+            }
+            if (type != START_ELEMENT) { // text, comments etc. within ancestors
+                continue;
+            }
+            if (projectStartElement()) {
+                return type;
+            }
+        }
+    }
+
+    /**
+     * Method called when projection is used, and a start element
+     * (outside of matching sub-trees) has been parsed, to determine
+     * whether it is to be reported. If the element can not contain
+     * matches, its whole sub-tree, including the end tag, is skipped.
+     *
+     * @return True if the start element is to be reported, as it either
+     *   matched a path or is an ancestor of potential matches; false if
+     *   it was skipped, or may only contain matches due to descendant
+     *   steps (in which case its contents are still processed)
+     */
+    private boolean projectStartElement()
+        throws XMLStreamException
+    {
+        int depth = mElementStack.getDepth();
+        long[] states = mProjStates;
+        long state = mProjection.nextState((depth == 1) ? mProjection.getInitialState() : states[depth-1],
+                mElementStack.getLocalName(), mElementStack.getNsURI());
+        if (ProjectionPaths.isMatch(state)) {
+            mProjMatchDepth = depth;
+            return true;
+        }
+        if (state != 0L) { // may contain matches
+            if (depth >= states.length) {
+                long[] old = states;
+                mProjStates = states = new long[old.length + (old.length >> 1) + 16];
+                System.arraycopy(old, 0, states, 0, old.length);
+            }
+            states[depth] = state;
+            return ProjectionPaths.isOnPath(state);
+        }
+        // Not interesting: skip the whole sub-tree, including end tag
+        if (mStEmptyElem) {
+            nextInTree();
+        } else if (mInput == mRootInput && mPendingException == null
+                   && mElementStack.canSkipUnvalidated()) {
+            skipElementRaw();
+        } else {
+            int nesting = 1;
+            while (nesting > 0) {
+                int t = nextInTree();
+                if (t == START_ELEMENT) {
+                    ++nesting;
+                } else if (t == END_ELEMENT) {
+                    --nesting;
+                }
+            }
+        }
+        return false;
+    }
+
     /*
     ///////////////////////////////////////////////////////////
     // Internal methods, main parsing (inside root)
@@ -3132,10 +3665,14 @@ public abstract class BasicStreamReader
                 if (null == tb) {
                     throwParseError("Duplicate default namespace declaration.");
                 }
+            } else if (mCfgLazyAttrValues && parseRawAttrValue(c, prefix, localName)) {
+                tb = null;
             } else {
                 tb = ac.getAttrBuilder(prefix, localName);
             }
-            parseAttrValue(c, tb);
+            if (tb != null) {
+                parseAttrValue(c, tb);
+            }
 
             /* 19-Jul-2004, TSa: Need to check that non-default namespace
              *     URI is NOT empty, as per XML namespace specs, #2,
@@ -3188,7 +3725,6 @@ public abstract class BasicStreamReader
             }
 
             String name = parseFullName(c);
-            TextBuilder tb = ac.getAttrBuilder(null, name);
             c = (mInputPtr < mInputEnd) ?
                 mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_ELEMENT);
             if (c <= CHAR_SPACE) {
@@ -3209,7 +3745,9 @@ public abstract class BasicStreamReader
             }
 
             // And then the actual value
-            parseAttrValue(c, tb);
+            if (!mCfgLazyAttrValues || !parseRawAttrValue(c, null, name)) {
+                parseAttrValue(c, ac.getAttrBuilder(null, name));
+            }
             // and then we need to iterate some more
             c = (mInputPtr < mInputEnd) ?
                 mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_ELEMENT);
@@ -3453,28 +3991,9 @@ public abstract class BasicStreamReader
             break;
 
         case PROCESSING_INSTRUCTION:
-            while (true) {
-                char c = (mInputPtr < mInputEnd)
-                    ? mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_PROC_INSTR);
-                if (c == '?') {
-                    do {
-                        c = (mInputPtr < mInputEnd)
-                            ? mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_PROC_INSTR);
-                    } while (c == '?');
-                    if (c == '>') {
-                        result = 0;
-                        break main_switch;
-                    }
-                }
-                if (c < CHAR_SPACE) {
-                    if (c == '\n' || c == '\r') {
-                        skipCRLF(c);
-                    } else if (c != '\t') {
-                        throwInvalidSpace(c);
-                    }
-                }
-            }
-            // never gets in here
+            skipPI();
+            result = 0;
+            break;
 
         case SPACE:
 
@@ -3545,6 +4064,194 @@ public abstract class BasicStreamReader
         return result;
     }
 
+    /**
+     * Method called to skip the rest of a processing instruction, up to
+     * and including the closing '?>' marker.
+     */
+    private void skipPI()
+        throws XMLStreamException
+    {
+        while (true) {
+            char c = (mInputPtr < mInputEnd)
+                ? mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_PROC_INSTR);
+            if (c == '?') {
+                do {
+                    c = (mInputPtr < mInputEnd)
+                        ? mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_PROC_INSTR);
+                } while (c == '?');
+                if (c == '>') {
+                    return;
+                }
+            }
+            if (c < CHAR_SPACE) {
+                if (c == '\n' || c == '\r') {
+                    skipCRLF(c);
+                } else if (c != '\t') {
+                    throwInvalidSpace(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method called by {@link #skipElement} to skip all content of the
+     * current start element, as well as its end tag, without parsing
+     * nested events: nested start and end tags are only scanned for
+     * their names (which are hashed to verify that tags are balanced)
+     * and the end of the tag, comments, CDATA sections and processing
+     * instructions are skipped as whole, and character data is only
+     * checked for invalid control characters. No symbols are looked up,
+     * and no namespaces or attributes are processed.
+     *<p>
+     * End tag of the current element is parsed normally, so that the
+     * reader is left in the same state as if all nested events had
+     * been iterated over.
+     */
+    private void skipElementRaw()
+        throws XMLStreamException
+    {
+        int[] hashes = mSkipNameHashes;
+        if (hashes == null) {
+            mSkipNameHashes = hashes = new int[16];
+        }
+        int depth = 0; // number of open nested elements
+
+        while (true) {
+            char c;
+            // First, text content, up until the next markup:
+            while (true) {
+                // Tight loop for the common case of plain text in buffer
+                final char[] buf = mInputBuffer;
+                final int end = mInputEnd;
+                final boolean[] stops = sSkipStopChars;
+                int ptr = mInputPtr;
+                while (ptr < end) {
+                    char ch = buf[ptr];
+                    if (ch < stops.length && stops[ch]) {
+                        break;
+                    }
+                    ++ptr;
+                }
+                mInputPtr = ptr;
+                c = (ptr < end) ? buf[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_DOC);
+                if (c == '<') {
+                    break;
+                }
+                if (c < CHAR_SPACE) {
+                    if (c == '\n' || c == '\r') {
+                        skipCRLF(c);
+                    } else if (c != '\t') {
+                        throwInvalidSpace(c);
+                    }
+                }
+            }
+            // Location of markup is needed if it is the end tag we are to stop at
+            long tokenTotal = mCurrInputProcessed + mInputPtr - 1;
+            int tokenRow = mCurrInputRow;
+            int tokenCol = mInputPtr - mCurrInputRowStart - 1;
+
+            c = (mInputPtr < mInputEnd)
+                ? mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_ELEMENT);
+            if (c == '/') {
+                if (depth == 0) { // end tag of the element being skipped
+                    mTokenInputTotal = tokenTotal;
+                    mTokenInputRow = tokenRow;
+                    mTokenInputCol = tokenCol;
+                    readEndElem();
+                    mCurrToken = END_ELEMENT;
+                    mCurrTextLength = 0;
+                    return;
+                }
+                c = (mInputPtr < mInputEnd)
+                    ? mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_CLOSE_ELEMENT);
+                if (!isNameStartChar(c) && c != ':') {
+                    throwUnexpectedChar(c, "; expected an element name.");
+                }
+                int hash = c;
+                while (true) {
+                    c = (mInputPtr < mInputEnd)
+                        ? mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_CLOSE_ELEMENT);
+                    if (c <= CHAR_SPACE || c == '>') {
+                        break;
+                    }
+                    hash = (hash * 31) + c;
+                }
+                if (c != '>') {
+                    c = getNextInCurrAfterWS(SUFFIX_IN_CLOSE_ELEMENT, c);
+                    if (c != '>') {
+                        throwUnexpectedChar(c, SUFFIX_IN_CLOSE_ELEMENT+" Expected '>'.");
+                    }
+                }
+                if (hashes[--depth] != hash) {
+                    throwParseError("Unexpected close tag within skipped content: does not match the open start tag");
+                }
+            } else if (c == '!') {
+                c = getNextCharFromCurrent(SUFFIX_IN_DOC);
+                if (c == '[') {
+                    checkCData();
+                    skipCommentOrCData(SUFFIX_IN_CDATA, ']', false);
+                } else if (c == '-' && getNextCharFromCurrent(SUFFIX_IN_DOC) == '-') {
+                    skipCommentOrCData(SUFFIX_IN_COMMENT, '-', true);
+                } else {
+                    throwParseError("Unrecognized XML directive; expected CDATA or comment ('<![CDATA[' or '<!--').");
+                }
+            } else if (c == '?') {
+                skipPI();
+            } else {
+                if (!isNameStartChar(c) && c != ':') {
+                    throwUnexpectedChar(c, " in content after '<' (malformed start element?).");
+                }
+                int hash = c;
+                while (true) {
+                    c = (mInputPtr < mInputEnd)
+                        ? mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_ELEMENT);
+                    if (c <= CHAR_SPACE || c == '>' || c == '/') {
+                        break;
+                    }
+                    hash = (hash * 31) + c;
+                }
+                // Then attributes, if any: only need to find the end of the tag
+                char prev = c;
+                while (c != '>') {
+                    if (c == '"' || c == '\'') {
+                        char quote = c;
+                        while (true) {
+                            c = (mInputPtr < mInputEnd)
+                                ? mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_ATTR_VALUE);
+                            if (c == quote) {
+                                break;
+                            }
+                            if (c == '<') {
+                                throwUnexpectedChar(c, SUFFIX_IN_ATTR_VALUE);
+                            }
+                            if (c < CHAR_SPACE) {
+                                if (c == '\n' || c == '\r') {
+                                    skipCRLF(c);
+                                } else if (c != '\t') {
+                                    throwInvalidSpace(c);
+                                }
+                            }
+                        }
+                    } else if (c == '<') {
+                        throwUnexpectedChar(c, SUFFIX_IN_ELEMENT);
+                    } else if (c == '\n' || c == '\r') {
+                        skipCRLF(c);
+                    }
+                    prev = c;
+                    c = (mInputPtr < mInputEnd)
+                        ? mInputBuffer[mInputPtr++] : getNextCharFromCurrent(SUFFIX_IN_ELEMENT);
+                }
+                mElementStack.verifySkippedElement(depth+1);
+                if (prev != '/') { // non-empty, need to match end tag
+                    if (depth >= hashes.length) {
+                        mSkipNameHashes = hashes = DataUtil.growArrayBy(hashes, hashes.length);
+                    }
+                    hashes[depth++] = hash;
+                }
+            }
+        }
+    }
+
     private void skipCommentOrCData(String errorMsg, char endChar, boolean preventDoubles)
         throws XMLStreamException
     {
@@ -5558,6 +6265,22 @@ public abstract class BasicStreamReader
                         closing.getEntityId(), top);
     }
 
+    /*
+    ///////////////////////////////////////////////////////////////////////
+    // Overridden input handling methods
+    ///////////////////////////////////////////////////////////////////////
+     */
+
+    @Override
+    protected void releaseRootBuffer()
+    {
+        super.releaseRootBuffer();
+        // Raw attribute values are only valid as long as buffer is
+        if (mAttrCollector.hasRawValues()) {
+            mAttrCollector.expandRawValues();
+        }
+    }
+
     /*
     ///////////////////////////////////////////////////////////
     // Internal methods, validation, error handling and reporting
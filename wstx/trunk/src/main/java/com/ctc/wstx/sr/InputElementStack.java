@@ -168,6 +168,35 @@ public final class InputElementStack
         mAttrCollector = new AttributeCollector(cfg, nsAware);
     }
 
+    /**
+     * Method called when the owning reader is reset to parse a new
+     * document: clears all element, namespace and validation state, but
+     * retains recycled {@link Element} instances (including ones that
+     * were still open) for reuse.
+     *
+     * @since 5.0
+     */
+    protected void reset()
+    {
+        while (mCurrElement != null) {
+            Element child = mCurrElement;
+            mCurrElement = child.mParent;
+            child.relink(mFreeElement);
+            mFreeElement = child;
+        }
+        mDepth = 0;
+        mTotalElements = 0L;
+        mNamespaces.clear(true);
+        mMayHaveNsDefaults = false;
+        mNsDefaultProvider = null;
+        mValidator = null;
+        mIdAttrIndex = ID_ATTR_NONE;
+        mLastLocalName = mLastPrefix = mLastNsURI = null;
+        mLastName = null;
+        mLastNsContext = null;
+        mAttrCollector.reset();
+    }
+
     protected void connectReporter(InputProblemReporter rep)
     {
         mReporter = rep;
@@ -273,6 +302,20 @@ public final class InputElementStack
         return ((DTDValidatorBase) mValidator).reallyValidating();
     }
 
+    /**
+     * Method called by the stream reader to check whether content of
+     * the current element may be skipped without passing nested elements
+     * and text through validators: this is the case if there are no
+     * validators, or if none of them really validates (such as DTD
+     * handlers that only add default attribute values).
+     *
+     * @since 5.0
+     */
+    public boolean canSkipUnvalidated()
+    {
+        return (mValidator == null) || !reallyValidating();
+    }
+
     /**
      * Method called by {@link BasicStreamReader}, to retrieve the
      * attribute collector it needs for some direct access.
@@ -358,6 +401,34 @@ public final class InputElementStack
         }
     }
 
+    /**
+     * Method called by the stream reader when it skips a start tag nested
+     * within the current element without pushing it in the stack (see
+     * {@link BasicStreamReader#skipElement}), to enforce the same limits
+     * as {@link #push} would.
+     *
+     * @param relDepth Depth of the skipped element relative to the current
+     *   element: 1 for a child element, 2 for a grandchild and so on.
+     *
+     * @since 5.0
+     */
+    public final void verifySkippedElement(int relDepth) throws XMLStreamException
+    {
+        if ((mDepth + relDepth) > mConfig.getMaxElementDepth()) {
+            throw new XMLStreamException("Maximum Element Depth limit ("+mConfig.getMaxElementDepth()+") Exceeded");
+        }
+        if (++mTotalElements > mConfig.getMaxElementCount()) {
+            throw new XMLStreamException("Maximum Element Count limit ("+mConfig.getMaxElementCount()+") Exceeded");
+        }
+        if (relDepth == 1 && mCurrElement != null) {
+            ++mCurrElement.mChildCount;
+            final int max = mConfig.getMaxChildrenPerElement();
+            if (max > 0 && mCurrElement.mChildCount > max) {
+                throw new XMLStreamException("Maximum Number of Child Elements limit ("+max+") Exceeded");
+            }
+        }
+    }
+
     /**
      * Method called by the stream reader to remove the topmost (start)
      * element from the stack;
@@ -0,0 +1,348 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.sr;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+import org.codehaus.stax2.ri.typed.ValueDecoderFactory;
+import org.codehaus.stax2.typed.TypedArrayDecoder;
+
+/**
+ * Base class for reusable array decoders that {@link TypedStreamReader}
+ * uses for decoding numeric element content into primitive arrays
+ * or NIO buffers. Compared to generic decoders from
+ * {@link ValueDecoderFactory}, values in the common fixed format
+ * (optional sign, up to 9 digits for ints; up to 18 significant digits,
+ * optional fraction and small exponent for doubles) are parsed inline,
+ * and only other values are passed to the generic value decoders.
+ *<p>
+ * Values are always decoded into an array: for buffers either the
+ * backing array, or (for direct and read-only buffers) a chunk array,
+ * contents of which are copied to the buffer by {@link #flush}.
+ *<p>
+ * This class is not exposed outside of the package and is considered
+ * part of internal implementation.
+ *
+ * @since 5.0
+ */
+abstract class NumberArrayDecoder
+    extends TypedArrayDecoder
+{
+    /**
+     * Maximum number of values decoded at a time into buffers that
+     * do not have an accessible backing array.
+     */
+    final static int BUFFER_CHUNK_SIZE = 1024;
+
+    /**
+     * Offset in the target array of the first value to decode
+     */
+    protected int mStart;
+
+    /**
+     * Offset in the target array for the next value to decode
+     */
+    protected int mPtr;
+
+    /**
+     * Offset in the target array after the last value that can be
+     * decoded
+     */
+    protected int mEnd;
+
+    protected NumberArrayDecoder() { }
+
+    public final int getCount() { return mPtr - mStart; }
+
+    public final boolean hasRoom() { return mPtr < mEnd; }
+
+    /**
+     * Method that has to be called after decoding values into a buffer,
+     * to copy them into the buffer if necessary, and to advance its
+     * position.
+     */
+    public abstract void flush();
+
+    /*
+    ////////////////////////////////////////////////////
+    // Implementations
+    ////////////////////////////////////////////////////
+     */
+
+    final static class Ints
+        extends NumberArrayDecoder
+    {
+        final ValueDecoderFactory.IntDecoder mDecoder = new ValueDecoderFactory.IntDecoder();
+
+        int[] mValues;
+
+        /**
+         * Buffer values are being decoded for, if any
+         */
+        IntBuffer mBuffer;
+
+        int[] mChunk;
+
+        public void init(int[] values, int from, int length)
+        {
+            mValues = values;
+            mBuffer = null;
+            mStart = mPtr = from;
+            mEnd = from+length;
+        }
+
+        public void init(IntBuffer buffer)
+        {
+            mBuffer = buffer;
+            if (buffer.hasArray()) {
+                mValues = buffer.array();
+                mStart = buffer.arrayOffset() + buffer.position();
+                mEnd = mStart + buffer.remaining();
+            } else {
+                if (mChunk == null) {
+                    mChunk = new int[BUFFER_CHUNK_SIZE];
+                }
+                mValues = mChunk;
+                mStart = 0;
+                mEnd = Math.min(BUFFER_CHUNK_SIZE, buffer.remaining());
+            }
+            mPtr = mStart;
+        }
+
+        public void flush()
+        {
+            IntBuffer buffer = mBuffer;
+            if (buffer != null) {
+                mBuffer = null;
+                if (mValues == mChunk) {
+                    buffer.put(mChunk, 0, getCount());
+                } else {
+                    buffer.position(buffer.position() + getCount());
+                }
+            }
+        }
+
+        public boolean decodeValue(String input)
+            throws IllegalArgumentException
+        {
+            mDecoder.decode(input);
+            mValues[mPtr++] = mDecoder.getValue();
+            return (mPtr >= mEnd);
+        }
+
+        public boolean decodeValue(char[] buf, int start, int end)
+            throws IllegalArgumentException
+        {
+            int ptr = start;
+            char c = buf[ptr];
+            boolean neg = (c == '-');
+            if (neg || c == '+') {
+                ++ptr;
+            }
+            int len = end-ptr;
+            // With at most 9 digits, can not overflow
+            if (len > 0 && len <= 9) {
+                int value = 0;
+                for (; ptr < end; ++ptr) {
+                    int digit = buf[ptr] - '0';
+                    if (digit < 0 || digit > 9) {
+                        return decodeValueSlow(buf, start, end);
+                    }
+                    value = (value * 10) + digit;
+                }
+                mValues[mPtr++] = neg ? -value : value;
+                return (mPtr >= mEnd);
+            }
+            return decodeValueSlow(buf, start, end);
+        }
+
+        private boolean decodeValueSlow(char[] buf, int start, int end)
+        {
+            mDecoder.decode(buf, start, end);
+            mValues[mPtr++] = mDecoder.getValue();
+            return (mPtr >= mEnd);
+        }
+    }
+
+    final static class Doubles
+        extends NumberArrayDecoder
+    {
+        /**
+         * Largest mantissa that can be converted to double exactly
+         */
+        final static long MAX_EXACT_MANTISSA = (1L << 53);
+
+        /**
+         * Powers of ten that can be represented exactly as doubles
+         */
+        final static double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+            1e21, 1e22
+        };
+
+        final ValueDecoderFactory.DoubleDecoder mDecoder = new ValueDecoderFactory.DoubleDecoder();
+
+        double[] mValues;
+
+        /**
+         * Buffer values are being decoded for, if any
+         */
+        DoubleBuffer mBuffer;
+
+        double[] mChunk;
+
+        public void init(double[] values, int from, int length)
+        {
+            mValues = values;
+            mBuffer = null;
+            mStart = mPtr = from;
+            mEnd = from+length;
+        }
+
+        public void init(DoubleBuffer buffer)
+        {
+            mBuffer = buffer;
+            if (buffer.hasArray()) {
+                mValues = buffer.array();
+                mStart = buffer.arrayOffset() + buffer.position();
+                mEnd = mStart + buffer.remaining();
+            } else {
+                if (mChunk == null) {
+                    mChunk = new double[BUFFER_CHUNK_SIZE];
+                }
+                mValues = mChunk;
+                mStart = 0;
+                mEnd = Math.min(BUFFER_CHUNK_SIZE, buffer.remaining());
+            }
+            mPtr = mStart;
+        }
+
+        public void flush()
+        {
+            DoubleBuffer buffer = mBuffer;
+            if (buffer != null) {
+                mBuffer = null;
+                if (mValues == mChunk) {
+                    buffer.put(mChunk, 0, getCount());
+                } else {
+                    buffer.position(buffer.position() + getCount());
+                }
+            }
+        }
+
+        public boolean decodeValue(String input)
+            throws IllegalArgumentException
+        {
+            mDecoder.decode(input);
+            mValues[mPtr++] = mDecoder.getValue();
+            return (mPtr >= mEnd);
+        }
+
+        /**
+         * Values with at most 18 digits (so that mantissa fits in a long)
+         * and small enough mantissa and exponent are calculated as a
+         * single multiplication or division of two exactly representable
+         * doubles, which gives correctly rounded result. Everything else
+         * (bigger values, INF, NaN, malformed values) is passed to the
+         * generic decoder.
+         */
+        public boolean decodeValue(char[] buf, int start, int end)
+            throws IllegalArgumentException
+        {
+            int ptr = start;
+            char c = buf[ptr];
+            boolean neg = (c == '-');
+            if (neg || c == '+') {
+                ++ptr;
+            }
+            long mantissa = 0L;
+            int digits = 0;
+            int scale = 0;
+
+            for (; ptr < end; ++ptr) {
+                c = buf[ptr];
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                mantissa = (mantissa * 10) + (c - '0');
+                ++digits;
+            }
+            if (ptr < end && c == '.') {
+                while (++ptr < end) {
+                    c = buf[ptr];
+                    if (c < '0' || c > '9') {
+                        break;
+                    }
+                    mantissa = (mantissa * 10) + (c - '0');
+                    ++scale;
+                }
+                digits += scale;
+            }
+            if (digits == 0 || digits > 18) {
+                return decodeValueSlow(buf, start, end);
+            }
+            int exp = 0;
+            if (ptr < end && (c == 'e' || c == 'E')) {
+                if (++ptr >= end) {
+                    return decodeValueSlow(buf, start, end);
+                }
+                c = buf[ptr];
+                boolean negExp = (c == '-');
+                if (negExp || c == '+') {
+                    ++ptr;
+                }
+                // Only need to handle small exponents here
+                if (ptr >= end || (end - ptr) > 2) {
+                    return decodeValueSlow(buf, start, end);
+                }
+                for (; ptr < end; ++ptr) {
+                    int digit = buf[ptr] - '0';
+                    if (digit < 0 || digit > 9) {
+                        return decodeValueSlow(buf, start, end);
+                    }
+                    exp = (exp * 10) + digit;
+                }
+                if (negExp) {
+                    exp = -exp;
+                }
+            }
+            if (ptr < end) {
+                return decodeValueSlow(buf, start, end);
+            }
+            exp -= scale;
+            if (mantissa > MAX_EXACT_MANTISSA || exp < -22 || exp > 22) {
+                return decodeValueSlow(buf, start, end);
+            }
+            double value = (double) mantissa;
+            if (exp < 0) {
+                value /= EXACT_POWERS_OF_TEN[-exp];
+            } else if (exp > 0) {
+                value *= EXACT_POWERS_OF_TEN[exp];
+            }
+            mValues[mPtr++] = neg ? -value : value;
+            return (mPtr >= mEnd);
+        }
+
+        private boolean decodeValueSlow(char[] buf, int start, int end)
+        {
+            mDecoder.decode(buf, start, end);
+            mValues[mPtr++] = mDecoder.getValue();
+            return (mPtr >= mEnd);
+        }
+    }
+}
@@ -22,6 +22,15 @@ public interface ReaderCreator
 
     public DTDSubset findCachedDTD(DTDId id);
 
+    /**
+     * Method called by a reader when it is reset to parse a new document,
+     * to get a symbol table that is derived from the current shared
+     * symbol table.
+     *
+     * @since 5.0
+     */
+    public SymbolTable createSymbolTable();
+
     /*
     ///////////////////////////////////////////////////////
     // Methods for updating information factory has
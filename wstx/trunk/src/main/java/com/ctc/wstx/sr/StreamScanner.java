@@ -209,7 +209,7 @@ public abstract class StreamScanner
     ///////////////////////////////////////////////////////////
      */
 
-    final SymbolTable mSymbols;
+    SymbolTable mSymbols;
 
     /**
      * Local full name for the event, if it has one (note: element events
@@ -242,7 +242,7 @@ public abstract class StreamScanner
      * external DTD subset reader's root input still has original document
      * input as its parent.
      */
-    protected final WstxInputSource mRootInput;
+    protected WstxInputSource mRootInput;
 
     /**
      * Custom resolver used to handle external entities that are to be expanded
@@ -323,6 +323,20 @@ public abstract class StreamScanner
      */
     protected int mTokenInputCol = 0;
 
+    /**
+     * Byte offset of the start of current token, if it had to be
+     * resolved before input buffer contents were discarded (token
+     * spanning buffer boundary); only valid if
+     * <code>mTokenByteOffsetFor</code> equals <code>mTokenInputTotal</code>.
+     */
+    protected long mTokenInputByteTotal = -1L;
+
+    /**
+     * Character offset of the token for which
+     * <code>mTokenInputByteTotal</code> was resolved
+     */
+    protected long mTokenByteOffsetFor = -1L;
+
     /*
     ///////////////////////////////////////////////////////////
     // XML document information (from doc decl if one
@@ -401,6 +415,48 @@ public abstract class StreamScanner
         }
     }
 
+    /**
+     * Method called when a reader is reset to parse a new document,
+     * to clear all state related to the previous document, and to
+     * start reading from the specified root input source. Configuration
+     * settings are retained (except for the symbol table, which is
+     * re-read from configuration object).
+     *
+     * @since 5.0
+     */
+    protected void resetScanner(WstxInputSource input)
+    {
+        mInput = mRootInput = input;
+        mSymbols = mConfig.getSymbols();
+        mXml11 = mConfig.isXml11();
+        mNormalizeLFs = mConfig.willNormalizeLFs();
+
+        mCurrName = null;
+        mCurrDepth = 0;
+        mInputTopDepth = 0;
+        mEntityExpansionCount = 0;
+        mCurrEntity = null;
+        if (mCfgTreatCharRefsAsEntities) {
+            mCachedEntities.clear();
+        }
+
+        mInputBuffer = null;
+        mInputPtr = mInputEnd = 0;
+        mCurrInputProcessed = 0L;
+        mCurrInputRow = 1;
+        mCurrInputRowStart = 0;
+
+        mTokenInputTotal = 0L;
+        mTokenInputRow = 1;
+        mTokenInputCol = 0;
+        mTokenInputByteTotal = -1L;
+        mTokenByteOffsetFor = -1L;
+
+        mDocInputEncoding = null;
+        mDocXmlEncoding = null;
+        mDocXmlVersion = XmlConsts.XML_V_UNKNOWN;
+    }
+
     /*
     ///////////////////////////////////////////////////////////
     // Package API
@@ -998,6 +1054,9 @@ public abstract class StreamScanner
              * reporting purposes, and do this now while previous amounts
              * are still known.
              */
+            if (input == mRootInput) {
+                releaseRootBuffer();
+            }
             mCurrInputProcessed += mInputEnd;
             verifyLimit("Maximum document characters", mConfig.getMaxCharacters(), mCurrInputProcessed);
             mCurrInputRowStart -= mInputEnd;
@@ -1057,6 +1116,9 @@ public abstract class StreamScanner
     protected boolean loadMoreFromCurrent()
         throws XMLStreamException
     {
+        if (mInput == mRootInput) {
+            releaseRootBuffer();
+        }
         // Need to update offsets properly
         mCurrInputProcessed += mInputEnd;
         mCurrInputRowStart -= mInputEnd;
@@ -1099,6 +1161,9 @@ public abstract class StreamScanner
         if (currAmount >= minAmount) {
             return true;
         }
+        if (mInput == mRootInput) {
+            releaseRootBuffer();
+        }
         try {
             return mInput.readMore(this, minAmount);
         } catch (IOException ie) {
@@ -1106,6 +1171,92 @@ public abstract class StreamScanner
         }
     }
 
+    /**
+     * Method called before contents of the main-level input buffer
+     * get discarded (or moved). Sub-classes that keep references to
+     * contents of the buffer need to override this method to copy
+     * what they need, and call this implementation.
+     */
+    protected void releaseRootBuffer()
+    {
+        cacheTokenByteOffset();
+    }
+
+    /**
+     * Method called before contents of the main-level input buffer
+     * get discarded, to resolve byte offset of the current token while
+     * its starting position is still within the buffer.
+     */
+    protected final void cacheTokenByteOffset()
+    {
+        long ptr = mTokenInputTotal - mCurrInputProcessed;
+        if (ptr >= 0L && ptr <= mInputEnd && mTokenByteOffsetFor != mTokenInputTotal) {
+            long offset = mRootInput.getInputByteOffset((int) ptr);
+            if (offset >= 0L) {
+                mTokenInputByteTotal = offset;
+                mTokenByteOffsetFor = mTokenInputTotal;
+            }
+        }
+    }
+
+    /**
+     * @return Byte offset (relative to the beginning of the input) of
+     *   the start of the current token, if known; -1 if not.
+     */
+    protected long getTokenByteOffset()
+    {
+        if (mTokenByteOffsetFor == mTokenInputTotal) {
+            return mTokenInputByteTotal;
+        }
+        if (mInput == mRootInput) {
+            long ptr = mTokenInputTotal - mCurrInputProcessed;
+            if (ptr >= 0L && ptr <= mInputEnd) {
+                return mRootInput.getInputByteOffset((int) ptr);
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * @return Byte offset (relative to the beginning of the input) of
+     *   the current input position, if known; -1 if not.
+     */
+    protected long getCurrentByteOffset()
+    {
+        if (mInput == mRootInput) {
+            return mRootInput.getInputByteOffset(mInputPtr);
+        }
+        return -1L;
+    }
+
+    /**
+     * @return Byte offset (relative to the beginning of the input) of
+     *   the current position within the main-level input, if known;
+     *   -1 if not. When expanding entities, this is the position after
+     *   the entity reference.
+     */
+    protected long getRootByteOffset()
+    {
+        int ptr = (mInput == mRootInput) ? mInputPtr : mRootInput.getSavedInputPtr();
+        return mRootInput.getInputByteOffset(ptr);
+    }
+
+    /**
+     * @return True if main-level input has content that has been read
+     *   from the underlying stream but not yet consumed (including content
+     *   buffered by the Reader that decodes it); false if not.
+     */
+    protected boolean hasUnconsumedRootInput()
+        throws XMLStreamException
+    {
+        int ptr = (mInput == mRootInput) ? mInputPtr : mRootInput.getSavedInputPtr();
+        try {
+            return mRootInput.hasUnconsumedInput(ptr);
+        } catch (IOException ioe) {
+            throw constructFromIOE(ioe);
+        }
+    }
+
     protected void closeAllInput(boolean force)
         throws XMLStreamException
     {
@@ -15,8 +15,14 @@
 
 package com.ctc.wstx.sr;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
@@ -26,6 +32,7 @@ import org.codehaus.stax2.typed.Base64Variants;
 import org.codehaus.stax2.typed.TypedArrayDecoder;
 import org.codehaus.stax2.typed.TypedValueDecoder;
 import org.codehaus.stax2.typed.TypedXMLStreamException;
+import org.codehaus.stax2.validation.XMLValidator;
 
 import org.codehaus.stax2.ri.Stax2Util;
 import org.codehaus.stax2.ri.typed.ValueDecoderFactory;
@@ -69,6 +76,19 @@ public class TypedStreamReader
      */
     final static int MIN_BINARY_CHUNK = 2000;
 
+    /**
+     * Size of the reusable buffer used for decoded binary content that
+     * is written to a stream or channel.
+     */
+    final static int BINARY_OUTPUT_CHUNK = 8000;
+
+    /**
+     * Maximum length of element text to try to decode directly from
+     * the input buffer. Longer values are unlikely to be scalar values,
+     * and scanning them twice would cost more than is saved.
+     */
+    final static int MAX_DIRECT_DECODE_LENGTH = 64;
+
     /**
      * Factory used for constructing decoders we need for typed access
      */
@@ -80,6 +100,26 @@ public class TypedStreamReader
      */
     protected CharArrayBase64Decoder _base64Decoder = null;
 
+    /**
+     * Lazily-constructed buffer for binary content decoded for streams
+     * and channels.
+     */
+    protected byte[] _binaryChunk = null;
+
+    /**
+     * Lazily-constructed reusable decoders for int and double arrays
+     */
+    protected NumberArrayDecoder.Ints _intArrayDecoder = null;
+
+    protected NumberArrayDecoder.Doubles _doubleArrayDecoder = null;
+
+    /**
+     * Buffer used for collecting characters of array values that
+     * span input buffer boundaries, when decoding directly from the
+     * input buffer.
+     */
+    protected char[] _tokenBuffer = null;
+
     /*
     ////////////////////////////////////////////////////
     // Instance construction
@@ -234,7 +274,11 @@ public class TypedStreamReader
             _handleEmptyValue(tvd);
             return;
         }
-        // First need to find a textual event
+        // Common case of short simple value can be decoded from input buffer
+        if (_decodeDirectly(tvd)) {
+            return;
+        }
+        // Otherwise need to find a textual event
         while (true) {
             int type = next();
             if (type == END_ELEMENT) {
@@ -307,6 +351,81 @@ public class TypedStreamReader
         }
     }
 
+    /**
+     * Method called to try to decode textual content of the current
+     * START_ELEMENT straight from the input buffer, without copying it
+     * into the text buffer or constructing a String. This can only be
+     * done if the whole content, followed by the end tag, is within the
+     * current input buffer, and it contains nothing that would need to
+     * be expanded, normalized or validated: so only ASCII characters
+     * other than markup and entity delimiters, and no linefeeds; and
+     * text events are not being filtered out.
+     *
+     * @return True if content was decoded, and the end tag read;
+     *   false if nothing was done and regular processing is needed
+     */
+    private boolean _decodeDirectly(TypedValueDecoder tvd)
+        throws XMLStreamException
+    {
+        if (mVldContent != XMLValidator.CONTENT_ALLOW_ANY_TEXT || mProjection != null
+            || (mEventFilter != null && !mEventFilter.acceptsType(CHARACTERS))) {
+            return false;
+        }
+        final char[] buf = mInputBuffer;
+        final int start = mInputPtr;
+        int end = start + MAX_DIRECT_DECODE_LENGTH;
+        if (end > mInputEnd - 1) { // need room for "</" too
+            end = mInputEnd - 1;
+        }
+        int ptr = start;
+        while (true) {
+            if (ptr >= end) {
+                return false;
+            }
+            char c = buf[ptr];
+            if (c == '<') {
+                if (buf[ptr+1] != '/') {
+                    return false;
+                }
+                break;
+            }
+            if (c == '&' || c == ']' || c > 0x7E
+                || (c < CHAR_SPACE && c != '\t')) {
+                return false;
+            }
+            ++ptr;
+        }
+        // Ok, can decode; but need to trim surrounding white space first
+        int first = start;
+        int last = ptr;
+        while (first < last && buf[first] <= CHAR_SPACE) {
+            ++first;
+        }
+        while (last > first && buf[last-1] <= CHAR_SPACE) {
+            --last;
+        }
+        if (first == last) {
+            _handleEmptyValue(tvd);
+        } else {
+            try {
+                tvd.decode(buf, first, last);
+            } catch (IllegalArgumentException iae) {
+                throw _constructTypeException(iae, new String(buf, start, ptr-start));
+            }
+        }
+        /* Decoding must be done before reading the end tag, since that
+         * may reload the input buffer. And as with next(), location
+         * needs to point to the end tag
+         */
+        mTokenInputTotal = mCurrInputProcessed + ptr;
+        mTokenInputRow = mCurrInputRow;
+        mTokenInputCol = ptr - mCurrInputRowStart;
+        mInputPtr = ptr+2;
+        mCurrToken = END_ELEMENT;
+        readEndElem();
+        return true;
+    }
+
     /*
     ////////////////////////////////////////////////////////
     // TypedXMLStreamReader2 implementation, array elements
@@ -316,7 +435,9 @@ public class TypedStreamReader
     @Override
     public int readElementAsIntArray(int[] value, int from, int length) throws XMLStreamException
     {
-        return readElementAsArray(_decoderFactory().getIntArrayDecoder(value, from, length));
+        NumberArrayDecoder.Ints dec = _intArrayDecoder();
+        dec.init(value, from, length);
+        return readElementAsArray(dec);
     }
 
     @Override
@@ -334,17 +455,88 @@ public class TypedStreamReader
     @Override
     public int readElementAsDoubleArray(double[] value, int from, int length) throws XMLStreamException
     {
-        return readElementAsArray(_decoderFactory().getDoubleArrayDecoder(value, from, length));
+        NumberArrayDecoder.Doubles dec = _doubleArrayDecoder();
+        dec.init(value, from, length);
+        return readElementAsArray(dec);
+    }
+
+    /**
+     * Method for reading int values of the current element into given
+     * buffer, which may also be a direct buffer. Works like
+     * {@link #readElementAsIntArray(int[],int,int)}, except that values
+     * are decoded until either the buffer is full or the element ends,
+     * and that the buffer position is advanced past decoded values.
+     *
+     * @return Number of values decoded, if any; 0 if buffer had no room
+     *   for values, and -1 to indicate that no more values can be decoded
+     *
+     * @since 5.0
+     */
+    public int readElementAsIntArray(IntBuffer buffer) throws XMLStreamException
+    {
+        NumberArrayDecoder.Ints dec = _intArrayDecoder();
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            dec.init(buffer);
+            int count;
+            try {
+                count = readElementAsArray(dec);
+            } finally {
+                dec.flush();
+            }
+            if (count < 0) {
+                return (total > 0) ? total : -1;
+            }
+            total += count;
+            if (dec.hasRoom()) { // end element reached
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Method for reading double values of the current element into given
+     * buffer, which may also be a direct buffer. Works like
+     * {@link #readElementAsDoubleArray(double[],int,int)}, except that
+     * values are decoded until either the buffer is full or the element
+     * ends, and that the buffer position is advanced past decoded values.
+     *
+     * @return Number of values decoded, if any; 0 if buffer had no room
+     *   for values, and -1 to indicate that no more values can be decoded
+     *
+     * @since 5.0
+     */
+    public int readElementAsDoubleArray(DoubleBuffer buffer) throws XMLStreamException
+    {
+        NumberArrayDecoder.Doubles dec = _doubleArrayDecoder();
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            dec.init(buffer);
+            int count;
+            try {
+                count = readElementAsArray(dec);
+            } finally {
+                dec.flush();
+            }
+            if (count < 0) {
+                return (total > 0) ? total : -1;
+            }
+            total += count;
+            if (dec.hasRoom()) { // end element reached
+                break;
+            }
+        }
+        return total;
     }
 
     /**
      * Method called to parse array of primitives.
      *<p>
-     * !!! 05-Sep-2008, tatu: Current implementation is not optimal
-     *   either performance-wise, or from getting accurate Location
-     *   for decoding problems. But it works otherwise, and we need
-     *   to get Woodstox 4.0 out by the end of the year... so it'll
-     *   do, for now.
+     * Plain text content (no entities, CDATA sections or non-ASCII
+     * characters) is decoded directly from the input buffer, value by
+     * value; anything else is first collected into the text buffer
+     * like with regular text access.
      *
      * @return Number of elements decoded (if any were decoded), or
      *   -1 to indicate that no more values can be decoded.
@@ -367,21 +559,26 @@ public class TypedStreamReader
                 mCurrToken = END_ELEMENT;
                 return -1;
             }
-            // Otherwise let's just find the first text segment
-            while (true) {
-                type = next();
-                if (type == END_ELEMENT) {
-                    // Simple... no textul content
-                    return -1;
-                }
-                if (type == COMMENT || type == PROCESSING_INSTRUCTION) {
-                    continue;
-                }
-                if (type == CHARACTERS || type == CDATA) {
-                    break;
+            // Plain text can be decoded directly from the input buffer
+            if (_startDirectText()) {
+                type = CHARACTERS;
+            } else {
+                // Otherwise let's just find the first text segment
+                while (true) {
+                    type = next();
+                    if (type == END_ELEMENT) {
+                        // Simple... no textul content
+                        return -1;
+                    }
+                    if (type == COMMENT || type == PROCESSING_INSTRUCTION) {
+                        continue;
+                    }
+                    if (type == CHARACTERS || type == CDATA) {
+                        break;
+                    }
+                    // otherwise just not legal (how about SPACE, unexpanded entities?)
+                    throw _constructUnexpectedInTyped(type);
                 }
-                // otherwise just not legal (how about SPACE, unexpanded entities?)
-                throw _constructUnexpectedInTyped(type);
             }
         }
 
@@ -394,6 +591,14 @@ public class TypedStreamReader
              */
             if (type == CHARACTERS || type == CDATA || type == SPACE) {
                 if (mTokenState < TOKEN_FULL_SINGLE) {
+                    // Unfinished text not yet collected can be decoded directly
+                    if (type == CHARACTERS && mTextBuffer.size() == 0
+                        && mVldContent == XMLValidator.CONTENT_ALLOW_ANY_TEXT) {
+                        count += _decodeArrayDirectly(dec);
+                        if (!dec.hasRoom()) {
+                            break;
+                        }
+                    }
                     readCoalescedText(type, false);
                 }
             } else if (type == COMMENT || type == PROCESSING_INSTRUCTION) {
@@ -413,6 +618,189 @@ public class TypedStreamReader
         return (count > 0) ? count : -1;
     }
 
+    /**
+     * Method called at START_ELEMENT to check whether element content
+     * starts with plain text that can be decoded directly from the input
+     * buffer; and if so, to start an unfinished CHARACTERS event for it,
+     * without reading any of the text yet.
+     */
+    private boolean _startDirectText()
+    {
+        if (mVldContent != XMLValidator.CONTENT_ALLOW_ANY_TEXT || mProjection != null
+            || (mEventFilter != null && !mEventFilter.acceptsType(CHARACTERS))
+            || mInputPtr >= mInputEnd) {
+            return false;
+        }
+        char c = mInputBuffer[mInputPtr];
+        if (c == '<' || c == '&') {
+            return false;
+        }
+        mTokenInputTotal = mCurrInputProcessed + mInputPtr;
+        mTokenInputRow = mCurrInputRow;
+        mTokenInputCol = mInputPtr - mCurrInputRowStart;
+        mCurrToken = CHARACTERS;
+        mTokenState = TOKEN_STARTED;
+        mWsStatus = ALL_WS_UNKNOWN;
+        mTextBuffer.resetInitialized();
+        return true;
+    }
+
+    /**
+     * Method called to decode values of an unfinished CHARACTERS event,
+     * none of which has been collected in the text buffer, straight from
+     * the input buffer, loading more input as necessary.
+     * Decoding stops when the decoder is full, in which case the event
+     * remains unfinished and text buffer empty; or when encountering
+     * anything other than white space and printable ASCII characters
+     * (markup, entities), in which case the partially read value, if
+     * any, is moved to the text buffer, so that the rest of the event
+     * can be read using regular text handling.
+     *
+     * @return Number of values decoded
+     */
+    private int _decodeArrayDirectly(TypedArrayDecoder dec)
+        throws XMLStreamException
+    {
+        char[] buf = mInputBuffer;
+        int ptr = mInputPtr;
+        int end = mInputEnd;
+        int count = 0;
+        // Start of the current value in input buffer
+        int start;
+        // Length of the current value collected in token buffer, if any
+        int partial = 0;
+
+        main_loop:
+        while (true) {
+            // First, skip white space
+            char c;
+            while (true) {
+                if (ptr >= end) {
+                    mInputPtr = ptr;
+                    _verifyDirectTextLength();
+                    if (!loadMore()) {
+                        start = ptr = mInputPtr;
+                        break main_loop;
+                    }
+                    buf = mInputBuffer;
+                    ptr = mInputPtr;
+                    end = mInputEnd;
+                }
+                c = buf[ptr];
+                if (c > CHAR_SPACE) {
+                    if (c > '9' || c == '&') {
+                        if (c == '<' || c == '&' || c == '>' || c > 0x7E) {
+                            start = ptr;
+                            break main_loop;
+                        }
+                    }
+                    break;
+                }
+                if (c == '\n') {
+                    markLF(++ptr);
+                } else if (c == '\r') {
+                    mInputPtr = ptr+1;
+                    skipCRLF(c);
+                    buf = mInputBuffer;
+                    ptr = mInputPtr;
+                    end = mInputEnd;
+                } else if (c == CHAR_SPACE || c == '\t') {
+                    ++ptr;
+                } else { // invalid, let regular handling report
+                    start = ptr;
+                    break main_loop;
+                }
+            }
+            // Then find the end of the value, which may be in a later buffer
+            start = ptr;
+            while (true) {
+                while (++ptr < end) {
+                    c = buf[ptr];
+                    if (c <= CHAR_SPACE) {
+                        break;
+                    }
+                    if (c > '9' || c == '&') {
+                        if (c == '<' || c == '&' || c == '>' || c > 0x7E) {
+                            break main_loop;
+                        }
+                    }
+                }
+                if (ptr < end) {
+                    break;
+                }
+                partial = _appendToToken(partial, buf, start, ptr);
+                mInputPtr = ptr;
+                _verifyDirectTextLength();
+                if (!loadMore()) {
+                    start = ptr = mInputPtr;
+                    break main_loop;
+                }
+                buf = mInputBuffer;
+                start = mInputPtr;
+                ptr = start-1;
+                end = mInputEnd;
+            }
+            // Got the value
+            mInputPtr = ptr;
+            ++count;
+            boolean full;
+            try {
+                if (partial == 0) {
+                    full = dec.decodeValue(buf, start, ptr);
+                } else {
+                    partial = _appendToToken(partial, buf, start, ptr);
+                    full = dec.decodeValue(_tokenBuffer, 0, partial);
+                }
+            } catch (IllegalArgumentException iae) {
+                String lexical = (partial == 0) ? new String(buf, start, ptr-start)
+                    : new String(_tokenBuffer, 0, partial);
+                throw new TypedXMLStreamException(lexical, iae.getMessage(), getLocation(), iae);
+            }
+            if (full) {
+                _verifyDirectTextLength();
+                return count;
+            }
+            partial = 0;
+        }
+        mInputPtr = ptr;
+        _verifyDirectTextLength();
+        if (partial > 0) {
+            mTextBuffer.append(_tokenBuffer, 0, partial);
+        }
+        if (ptr > start) {
+            mTextBuffer.append(buf, start, ptr-start);
+        }
+        return count;
+    }
+
+    private int _appendToToken(int len, char[] buf, int start, int end)
+        throws XMLStreamException
+    {
+        int newLen = len + (end-start);
+        verifyLimit("Text size", mConfig.getMaxTextLength(), newLen);
+        if (_tokenBuffer == null) {
+            _tokenBuffer = new char[Math.max(64, newLen)];
+        } else if (newLen > _tokenBuffer.length) {
+            char[] old = _tokenBuffer;
+            _tokenBuffer = new char[Math.max(newLen, old.length << 1)];
+            System.arraycopy(old, 0, _tokenBuffer, 0, len);
+        }
+        System.arraycopy(buf, start, _tokenBuffer, len, end-start);
+        return newLen;
+    }
+
+    /**
+     * Method called to check that text of the current element, including
+     * that of the current event read directly from the input buffer up to
+     * the current input position, does not exceed maximum text length.
+     */
+    private void _verifyDirectTextLength()
+        throws XMLStreamException
+    {
+        long len = mCurrInputProcessed + mInputPtr - mTokenInputTotal;
+        verifyLimit("Text size", mConfig.getMaxTextLength(), mCurrTextLength + len);
+    }
+
     /*
     ////////////////////////////////////////////////////////
     // TypedXMLStreamReader2 implementation, binary data
@@ -542,6 +930,215 @@ public class TypedStreamReader
         return (totalCount > 0) ? totalCount : -1;
     }
 
+    /**
+     * Method for decoding all base64 encoded content of the current
+     * START_ELEMENT, and writing resulting bytes to given stream,
+     * using the default base64 variant.
+     * See {@link #readElementAsBinary(OutputStream,Base64Variant)} for
+     * details.
+     *
+     * @since 5.0
+     */
+    public final long readElementAsBinary(OutputStream out)
+        throws XMLStreamException
+    {
+        return readElementAsBinary(out, Base64Variants.getDefaultVariant());
+    }
+
+    /**
+     * Method for decoding all base64 encoded content of the current
+     * START_ELEMENT, and writing resulting bytes to given stream.
+     * Unlike with {@link #getElementAsBinary}, memory usage does not
+     * depend on the length of content: plain text content is decoded
+     * directly from the input buffer, and bytes are written in chunks
+     * using a reusable buffer. Content that has CDATA sections, entities,
+     * comments or processing instructions is decoded in segments, like
+     * with {@link #readElementAsBinary(byte[],int,int,Base64Variant)}.
+     *<p>
+     * After the call, the reader points to the matching END_ELEMENT.
+     * Stream is neither flushed nor closed.
+     *
+     * @return Number of bytes written
+     *
+     * @throws IllegalStateException If reader is not positioned at
+     *   START_ELEMENT
+     *
+     * @since 5.0
+     */
+    public long readElementAsBinary(OutputStream out, Base64Variant v)
+        throws XMLStreamException
+    {
+        if (mCurrToken != START_ELEMENT) {
+            throw new IllegalStateException(ErrorConsts.ERR_STATE_NOT_STELEM);
+        }
+        if (mStEmptyElem) {
+            mStEmptyElem = false;
+            mCurrToken = END_ELEMENT;
+            return 0L;
+        }
+        final CharArrayBase64Decoder dec = _base64Decoder();
+        final byte[] chunk = _binaryChunk();
+        long total = 0L;
+        try {
+            // Plain text can be decoded directly from the input buffer
+            if (_startDirectText()) {
+                total = _decodeBinaryDirectly(out, v, dec, chunk);
+                if (mCurrToken == END_ELEMENT) {
+                    return total;
+                }
+                // Otherwise rest of the current event needs regular handling
+                _initBinaryChunks(v, dec, CHARACTERS, false);
+            }
+            int count;
+            while ((count = readElementAsBinary(chunk, 0, chunk.length, v)) > 0) {
+                out.write(chunk, 0, count);
+                total += count;
+            }
+        } catch (IOException ioe) {
+            throw constructFromIOE(ioe);
+        }
+        return total;
+    }
+
+    /**
+     * Method for decoding all base64 encoded content of the current
+     * START_ELEMENT, and writing resulting bytes to given channel,
+     * using the default base64 variant.
+     * See {@link #readElementAsBinary(OutputStream,Base64Variant)} for
+     * details.
+     *
+     * @since 5.0
+     */
+    public final long readElementAsBinary(WritableByteChannel channel)
+        throws XMLStreamException
+    {
+        return readElementAsBinary(channel, Base64Variants.getDefaultVariant());
+    }
+
+    /**
+     * Method for decoding all base64 encoded content of the current
+     * START_ELEMENT, and writing resulting bytes to given channel,
+     * which should be in blocking mode.
+     * See {@link #readElementAsBinary(OutputStream,Base64Variant)} for
+     * details.
+     *
+     * @return Number of bytes written
+     *
+     * @since 5.0
+     */
+    public long readElementAsBinary(WritableByteChannel channel, Base64Variant v)
+        throws XMLStreamException
+    {
+        return readElementAsBinary(Channels.newOutputStream(channel), v);
+    }
+
+    /**
+     * Method called to decode base64 content of an unfinished CHARACTERS
+     * event, none of which has been collected in the text buffer,
+     * straight from the input buffer, loading more input as necessary.
+     * Decoding stops at the end tag, in which case the end tag is also
+     * read; or when encountering anything other than plain text (markup,
+     * entities, non-ASCII characters), in which case the event remains
+     * unfinished, and has to be read using regular text handling.
+     *
+     * @return Number of bytes written
+     */
+    private long _decodeBinaryDirectly(OutputStream out, Base64Variant v,
+                                       CharArrayBase64Decoder dec, byte[] chunk)
+        throws IOException, XMLStreamException
+    {
+        char[] buf = mInputBuffer;
+        int ptr = mInputPtr;
+        int end = mInputEnd;
+        long total = 0L;
+
+        dec.init(v, true, buf, ptr, 0, null);
+        while (true) {
+            if (ptr >= end) {
+                mInputPtr = ptr;
+                if (!loadMore()) { // let regular handling report EOF
+                    return total;
+                }
+                buf = mInputBuffer;
+                ptr = mInputPtr;
+                end = mInputEnd;
+            }
+            // Find the longest run of plain text, and decode it
+            int start = ptr;
+            for (; ptr < end; ++ptr) {
+                char c = buf[ptr];
+                if (c > '>') {
+                    if (c > 0x7E) {
+                        break;
+                    }
+                } else if (c == '<' || c == '&' || c == '>' || c == '\r') {
+                    break;
+                } else if (c < CHAR_SPACE) {
+                    if (c == '\n') {
+                        markLF(ptr+1);
+                    } else if (c != '\t') {
+                        break;
+                    }
+                }
+            }
+            if (ptr > start) {
+                dec.init(v, false, buf, start, ptr-start, null);
+                total += _writeDecoded(out, dec, chunk);
+            }
+            if (ptr >= end) {
+                continue;
+            }
+            char c = buf[ptr];
+            if (c == '\r') {
+                mInputPtr = ptr+1;
+                skipCRLF(c);
+                buf = mInputBuffer;
+                ptr = mInputPtr;
+                end = mInputEnd;
+                continue;
+            }
+            mInputPtr = ptr;
+            if (c != '<' || (ptr+1) >= end || buf[ptr+1] != '/') {
+                return total;
+            }
+            // End tag: let regular handling read it
+            mTextBuffer.resetWithEmpty();
+            mTokenState = TOKEN_FULL_COALESCED;
+            next();
+            /* Just need to verify we don't have partial stuff (missing
+             * one to three characters of a full quartet); or, for
+             * non-padding variants, 1 or 2 more bytes to flush
+             */
+            int left = dec.endOfContent();
+            if (left < 0) {
+                throw _constructTypeException("Incomplete base64 triplet at the end of decoded content", "");
+            }
+            if (left > 0) {
+                total += _writeDecoded(out, dec, chunk);
+            }
+            return total;
+        }
+    }
+
+    private int _writeDecoded(OutputStream out, CharArrayBase64Decoder dec, byte[] chunk)
+        throws IOException, XMLStreamException
+    {
+        int total = 0;
+        while (true) {
+            int count;
+            try {
+                count = dec.decode(chunk, 0, chunk.length);
+            } catch (IllegalArgumentException iae) {
+                throw _constructTypeException(iae.getMessage(), "");
+            }
+            if (count <= 0) {
+                return total;
+            }
+            out.write(chunk, 0, count);
+            total += count;
+        }
+    }
+
     private final void _initBinaryChunks(Base64Variant v, CharArrayBase64Decoder dec, int type, boolean isFirst)
         throws XMLStreamException
     {
@@ -732,6 +1329,30 @@ public class TypedStreamReader
         return _decoderFactory;
     }
 
+    protected NumberArrayDecoder.Ints _intArrayDecoder()
+    {
+        if (_intArrayDecoder == null) {
+            _intArrayDecoder = new NumberArrayDecoder.Ints();
+        }
+        return _intArrayDecoder;
+    }
+
+    protected NumberArrayDecoder.Doubles _doubleArrayDecoder()
+    {
+        if (_doubleArrayDecoder == null) {
+            _doubleArrayDecoder = new NumberArrayDecoder.Doubles();
+        }
+        return _doubleArrayDecoder;
+    }
+
+    protected byte[] _binaryChunk()
+    {
+        if (_binaryChunk == null) {
+            _binaryChunk = new byte[BINARY_OUTPUT_CHUNK];
+        }
+        return _binaryChunk;
+    }
+
     protected CharArrayBase64Decoder _base64Decoder()
     {
         if (_base64Decoder == null) {
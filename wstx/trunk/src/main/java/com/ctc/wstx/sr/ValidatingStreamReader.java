@@ -129,6 +129,16 @@ public class ValidatingStreamReader
         return sr;
     }
 
+    @Override
+    protected void resetState(InputBootstrapper bs, BranchingReaderSource input)
+        throws XMLStreamException
+    {
+        super.resetState(bs, input);
+        mDTD = null;
+        mAutoDtdValidator = null;
+        mDtdValidatorSet = false;
+    }
+
     /*
     ///////////////////////////////////////////////////////////////////////
     // Public API, configuration
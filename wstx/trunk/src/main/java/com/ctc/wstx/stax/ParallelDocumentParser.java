@@ -0,0 +1,641 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.stax;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.exc.WstxIOException;
+import com.ctc.wstx.io.MarkupBoundaryScanner;
+
+/**
+ * Driver for parsing a stream that consists of a sequence of concatenated
+ * xml documents (like log files or message feeds; see also
+ * {@link com.ctc.wstx.api.WstxInputProperties#PARSING_MODE_DOCUMENTS})
+ * using multiple threads. The calling thread reads input and finds
+ * document boundaries from raw bytes (see {@link MarkupBoundaryScanner}),
+ * without decoding or parsing content; each document is then parsed
+ * by a stream reader, using a task submitted to an
+ * {@link ExecutorService}; readers are reused between documents (see
+ * {@link StreamReaderPool}). Results are passed to a callback, either in
+ * document order, or in the order parsing completes.
+ *<p>
+ * Callback methods are never called concurrently, so callbacks need not
+ * be thread-safe; handlers on the other hand are called concurrently,
+ * from the executor's threads. Callbacks are called from the executor's
+ * threads too, but without holding any locks, so a slow callback does
+ * not prevent other documents from being parsed. To bound memory usage,
+ * number of documents read but not yet delivered is limited (see
+ * {@link #setMaxPendingDocuments}).
+ *<p>
+ * Parser can be used for multiple parsing runs concurrently: each call
+ * to {@link #parse} keeps its own state, and uses the settings in effect
+ * when it was called.
+ *<p>
+ * If a callback throws an exception, parsing is aborted: documents not
+ * yet parsed are skipped, results not yet delivered are discarded, and
+ * the exception is rethrown by {@link #parse} once all tasks that were
+ * already running have completed.
+ *<p>
+ * Limitations: input must use an encoding that is ASCII-compatible
+ * for markup characters (UTF-8, ISO-8859-x and such); each document
+ * may have its own xml declaration (comments and processing instructions
+ * between documents are considered part of the preceding document if
+ * the next one starts with an xml declaration, and are not reported to
+ * handlers in that case). Since documents are parsed
+ * independently, a problem in one document does not prevent parsing
+ * of the following documents: it is reported via
+ * {@link ResultCallback#documentFailed}.
+ */
+public class ParallelDocumentParser
+{
+    final static int READ_BUFFER_SIZE = 16000;
+
+    /**
+     * Interface for objects that process a single document, using the
+     * stream reader given; called from the worker threads.
+     */
+    public interface DocumentHandler<T>
+    {
+        /**
+         * @param sr Reader positioned at the start of document
+         *   (<code>START_DOCUMENT</code>); will be closed by caller
+         *   after method returns
+         * @param index Index of the document within input (0-based)
+         *
+         * @return Result value to pass to the callback
+         */
+        public T handleDocument(XMLStreamReader2 sr, long index)
+            throws XMLStreamException;
+    }
+
+    /**
+     * Interface for objects that are given the results of processing
+     * documents. Methods are never called concurrently.
+     */
+    public interface ResultCallback<T>
+    {
+        public void documentParsed(long index, T result);
+
+        public void documentFailed(long index, XMLStreamException e);
+    }
+
+    final WstxInputFactory mFactory;
+
+    final ExecutorService mExecutor;
+
+    boolean mOrdered = true;
+
+    int mMaxPending;
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Life-cycle, configuration
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @param exec Executor to use for parsing documents; if null, a
+     *   fixed-size pool with one thread per available processor is
+     *   created (and shut down when parsing completes)
+     */
+    public ParallelDocumentParser(WstxInputFactory f, ExecutorService exec)
+    {
+        mFactory = f;
+        mExecutor = exec;
+        mMaxPending = 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Method for defining whether results are to be delivered in
+     * document order (default), or as soon as they are available.
+     * Ordered delivery may need to retain results of documents completed
+     * out of order.
+     */
+    public void setOrdered(boolean state) {
+        mOrdered = state;
+    }
+
+    public boolean isOrdered() { return mOrdered; }
+
+    /**
+     * Method for defining maximum number of documents that may have been
+     * read but not yet delivered; when reached, reading of input is
+     * paused. Defaults to 4 times number of available processors.
+     */
+    public void setMaxPendingDocuments(int max) {
+        mMaxPending = Math.max(1, max);
+    }
+
+    public int getMaxPendingDocuments() { return mMaxPending; }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Public API
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for parsing all documents from given input stream, and
+     * waiting until all of them have been processed and delivered to
+     * the callback. Input stream is not closed by this method.
+     *
+     * @return Number of documents found
+     */
+    public <T> long parse(InputStream in, DocumentHandler<T> handler,
+                          ResultCallback<? super T> callback)
+        throws XMLStreamException
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService exec = mExecutor;
+        if (exec == null) {
+            exec = Executors.newFixedThreadPool(threads);
+        }
+        // Readers are pooled per run, so that current settings of the factory are used
+        StreamReaderPool pool = mFactory.createStreamReaderPool(Math.max(threads, StreamReaderPool.DEFAULT_MAX_POOLED));
+        try {
+            return parseDocuments(new ParsingRun<T>(exec, pool, handler, callback,
+                                                    mOrdered, mMaxPending), in);
+        } finally {
+            if (exec != mExecutor) {
+                exec.shutdown();
+            }
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Internal methods, splitting input
+    ///////////////////////////////////////////////////////////
+     */
+
+    private <T> long parseDocuments(ParsingRun<T> run, InputStream in)
+        throws XMLStreamException
+    {
+        MarkupBoundaryScanner scanner = new MarkupBoundaryScanner();
+        byte[] buf = new byte[READ_BUFFER_SIZE];
+        // Start of the current document within buffer, and end of content
+        int docStart = 0;
+        int end = 0;
+        // Pointer to the next byte to scan
+        int ptr = 0;
+        long docIndex = 0L;
+
+        try {
+            try {
+                while (true) {
+                    if (ptr >= end) {
+                        // Need more room? Discard delivered content, or expand
+                        if (end == buf.length) {
+                            if (docStart > 0) {
+                                System.arraycopy(buf, docStart, buf, 0, end - docStart);
+                                end -= docStart;
+                                ptr -= docStart;
+                                docStart = 0;
+                            } else {
+                                byte[] old = buf;
+                                buf = new byte[old.length << 1];
+                                System.arraycopy(old, 0, buf, 0, end);
+                            }
+                        }
+                        int count = in.read(buf, end, buf.length - end);
+                        if (count < 0) {
+                            break;
+                        }
+                        if (docIndex == 0L && end == 0 && count > 0) {
+                            verifyEncoding(buf, 0, count);
+                        }
+                        end += count;
+                        continue;
+                    }
+                    long startOffset = scanner.getOffset();
+                    int newPtr = scanner.scan(buf, ptr, end);
+                    long rootEnd = scanner.getRootEnd();
+                    ptr = newPtr;
+                    if (rootEnd > startOffset) { // got a full document
+                        int docEnd = ptr;
+                        run.submit(copyDocument(buf, docStart, docEnd), docIndex++);
+                        docStart = docEnd;
+                    }
+                }
+            } catch (IOException ioe) {
+                throw new WstxIOException(ioe);
+            }
+
+            /* Anything after the last root element: fine if it's just white
+             * space or comments/PIs; otherwise let the reader report the problem
+             */
+            if (docStart < end && !isMiscOnly(buf, docStart, end)) {
+                run.submit(copyDocument(buf, docStart, end), docIndex++);
+            }
+        } finally {
+            run.waitForCompletion();
+        }
+        return docIndex;
+    }
+
+    /**
+     * Method called to ensure that input starts with a byte the boundary
+     * scanner can handle: that is, encoding is ASCII-compatible.
+     */
+    private void verifyEncoding(byte[] buf, int ptr, int end)
+        throws XMLStreamException
+    {
+        int b = buf[ptr] & 0xFF;
+        if (b == '<' || b == 0xEF // UTF-8 BOM
+            || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+            return;
+        }
+        throw new XMLStreamException("Can not split input into documents: content does not start with '<' (0x3C) but 0x"
+                                     +Integer.toHexString(b)+"; only ASCII-compatible encodings (UTF-8, ISO-8859-x) are supported");
+    }
+
+    /**
+     * @return Copy of content of the document, without leading white space
+     *   (since xml declaration, if any, has to start the document)
+     */
+    private static byte[] copyDocument(byte[] buf, int start, int end)
+    {
+        start = findDocumentStart(buf, start, end);
+        byte[] doc = new byte[end - start];
+        System.arraycopy(buf, start, doc, 0, doc.length);
+        return doc;
+    }
+
+    /**
+     * Method for finding where the document actually starts: leading white
+     * space is skipped; and if comments or processing instructions that
+     * precede the document are followed by an xml declaration, they are
+     * considered to belong to the epilog of the preceding document (and
+     * skipped), since declaration has to start the document.
+     */
+    private static int findDocumentStart(byte[] buf, int start, int end)
+    {
+        while (start < end && isSpace(buf[start])) {
+            ++start;
+        }
+        int ptr = start;
+        while (true) {
+            while (ptr < end && isSpace(buf[ptr])) {
+                ++ptr;
+            }
+            int close;
+            if (matches(buf, ptr, end, "<?xml") && (ptr+5) < end && isSpace(buf[ptr+5])) {
+                return ptr;
+            }
+            if (matches(buf, ptr, end, "<!--")) {
+                close = indexOf(buf, ptr+4, end, "-->");
+            } else if (matches(buf, ptr, end, "<?")) {
+                close = indexOf(buf, ptr+2, end, "?>");
+            } else { // anything else starts the document
+                return start;
+            }
+            if (close < 0) {
+                return start;
+            }
+            ptr = close;
+        }
+    }
+
+    private static boolean matches(byte[] buf, int ptr, int end, String str)
+    {
+        int len = str.length();
+        if ((ptr + len) > end) {
+            return false;
+        }
+        for (int i = 0; i < len; ++i) {
+            if (buf[ptr+i] != (byte) str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Pointer right after the first occurence of given marker;
+     *   -1 if not found
+     */
+    private static int indexOf(byte[] buf, int ptr, int end, String marker)
+    {
+        for (; ptr < end; ++ptr) {
+            if (matches(buf, ptr, end, marker)) {
+                return ptr + marker.length();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return True if content consists of only white space, comments
+     *   and processing instructions
+     */
+    private static boolean isMiscOnly(byte[] buf, int start, int end)
+    {
+        MarkupBoundaryScanner scanner = new MarkupBoundaryScanner();
+        for (int i = start; i < end; ++i) {
+            if (scanner.inText() && !isSpace(buf[i]) && buf[i] != '<') {
+                return false;
+            }
+            scanner.scan(buf, i, i+1);
+            if (scanner.getDepth() > 0 || scanner.getRootEnd() >= 0L) {
+                return false;
+            }
+        }
+        // Also must not end in the middle of something
+        return scanner.inText();
+    }
+
+    private static boolean isSpace(byte b)
+    {
+        return (b == ' ' || b == '\t' || b == '\r' || b == '\n');
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper classes
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * State of a single call to {@link #parse}: tasks of the run, and
+     * results not yet delivered. Kept separate from the parser, so that
+     * concurrent calls do not interfere with each other. All mutable
+     * state is guarded by {@link #mLock}.
+     */
+    final static class ParsingRun<T>
+    {
+        final ExecutorService mExecutor;
+
+        final StreamReaderPool mReaderPool;
+
+        final DocumentHandler<T> mHandler;
+
+        final ResultCallback<? super T> mCallback;
+
+        final boolean mOrdered;
+
+        final int mMaxPending;
+
+        final Object mLock = new Object();
+
+        /**
+         * Number of documents submitted but not yet delivered
+         */
+        int mPending;
+
+        /**
+         * Number of documents submitted but not yet parsed (or skipped, if
+         * parsing was aborted)
+         */
+        int mActive;
+
+        /**
+         * Whether one of worker threads is currently delivering results
+         * to the callback; if so, others just add their results to
+         * {@link #mCompleted}, for that thread to deliver.
+         */
+        boolean mDelivering;
+
+        /**
+         * For ordered delivery: index of the next document to deliver
+         */
+        long mNextToDeliver;
+
+        /**
+         * Results (or {@link Failure}s) completed but not yet delivered
+         */
+        final HashMap<Long,Object> mCompleted = new HashMap<Long,Object>();
+
+        /**
+         * Unexpected problem thrown by a callback, if any; will be rethrown
+         * by the parsing thread
+         */
+        RuntimeException mCallbackException;
+
+        ParsingRun(ExecutorService exec, StreamReaderPool pool,
+                   DocumentHandler<T> handler, ResultCallback<? super T> callback,
+                   boolean ordered, int maxPending)
+        {
+            mExecutor = exec;
+            mReaderPool = pool;
+            mHandler = handler;
+            mCallback = callback;
+            mOrdered = ordered;
+            mMaxPending = maxPending;
+        }
+
+        void submit(final byte[] doc, final long index)
+            throws XMLStreamException
+        {
+            synchronized (mLock) {
+                while (mPending >= mMaxPending && mCallbackException == null) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new XMLStreamException("Interrupted while waiting for documents to be parsed");
+                    }
+                }
+                if (mCallbackException != null) {
+                    throw mCallbackException;
+                }
+                ++mPending;
+                ++mActive;
+            }
+            try {
+                mExecutor.execute(new Runnable() {
+                        public void run() {
+                            Object result = null;
+                            // No point in parsing if results are to be discarded
+                            if (!isAborted()) {
+                                try {
+                                    result = parseDocument(doc, index);
+                                } catch (XMLStreamException e) {
+                                    result = new Failure(e);
+                                } catch (RuntimeException e) {
+                                    result = new Failure(new XMLStreamException(e));
+                                }
+                            }
+                            completed(index, result);
+                        }
+                    });
+            } catch (RejectedExecutionException ree) {
+                synchronized (mLock) {
+                    --mPending;
+                    --mActive;
+                }
+                throw new XMLStreamException("Executor rejected document parsing task: "+ree.getMessage());
+            }
+        }
+
+        T parseDocument(byte[] doc, long index)
+            throws XMLStreamException
+        {
+            XMLStreamReader2 sr = mReaderPool.acquireReader(doc, 0, doc.length);
+            try {
+                return mHandler.handleDocument(sr, index);
+            } finally {
+                mReaderPool.releaseReader(sr);
+            }
+        }
+
+        boolean isAborted()
+        {
+            synchronized (mLock) {
+                return (mCallbackException != null);
+            }
+        }
+
+        /**
+         * Method called by a worker thread when it has parsed a document.
+         * Result is added to the set of completed results; and unless
+         * another thread is already delivering results, this thread
+         * delivers all results that can be delivered.
+         */
+        void completed(long index, Object result)
+        {
+            synchronized (mLock) {
+                --mActive;
+                // If a callback failed, parsing was aborted: nothing more to deliver
+                if (mCallbackException != null) {
+                    mLock.notifyAll();
+                    return;
+                }
+                mCompleted.put(Long.valueOf(index), result);
+                if (mDelivering) {
+                    return;
+                }
+                mDelivering = true;
+            }
+            deliverCompleted();
+        }
+
+        /**
+         * Method that delivers completed results, as long as there are
+         * some that can be delivered. Callback is called without holding
+         * the lock; {@link #mDelivering} ensures that only one thread
+         * calls it at any given time.
+         */
+        private void deliverCompleted()
+        {
+            boolean delivered = false;
+            while (true) {
+                long index;
+                Object result;
+                synchronized (mLock) {
+                    if (delivered) {
+                        --mPending;
+                        if (mOrdered) {
+                            ++mNextToDeliver;
+                        }
+                        mLock.notifyAll();
+                    }
+                    Long next = findDeliverable();
+                    if (next == null) {
+                        mDelivering = false;
+                        mLock.notifyAll();
+                        return;
+                    }
+                    index = next.longValue();
+                    result = mCompleted.remove(next);
+                }
+                try {
+                    deliver(index, result);
+                } catch (RuntimeException re) {
+                    synchronized (mLock) {
+                        mCallbackException = re;
+                        mCompleted.clear();
+                        mDelivering = false;
+                        mLock.notifyAll();
+                    }
+                    return;
+                }
+                delivered = true;
+            }
+        }
+
+        /**
+         * @return Index of the completed result to deliver next, if any;
+         *   null if none can be delivered yet
+         */
+        private Long findDeliverable()
+        {
+            if (mOrdered) {
+                Long next = Long.valueOf(mNextToDeliver);
+                return mCompleted.containsKey(next) ? next : null;
+            }
+            Iterator<Long> it = mCompleted.keySet().iterator();
+            return it.hasNext() ? it.next() : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliver(long index, Object result)
+        {
+            if (result instanceof Failure) {
+                mCallback.documentFailed(index, ((Failure) result).mException);
+            } else {
+                mCallback.documentParsed(index, (T) result);
+            }
+        }
+
+        /**
+         * Method called by the parsing thread to wait until all submitted
+         * documents have been delivered; or, if a callback failed, until
+         * all tasks have completed, so that none are running when parsing
+         * returns.
+         */
+        void waitForCompletion()
+            throws XMLStreamException
+        {
+            synchronized (mLock) {
+                while (mActive > 0 || mDelivering
+                       || (mPending > 0 && mCallbackException == null)) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new XMLStreamException("Interrupted while waiting for documents to be parsed");
+                    }
+                }
+                if (mCallbackException != null) {
+                    throw mCallbackException;
+                }
+            }
+        }
+    }
+
+    /**
+     * Container for problems encountered when parsing a document, to
+     * separate them from results returned by handlers
+     */
+    final static class Failure
+    {
+        final XMLStreamException mException;
+
+        Failure(XMLStreamException e) {
+            mException = e;
+        }
+    }
+}
@@ -0,0 +1,925 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.stax;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.*;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.api.ReaderConfig;
+import com.ctc.wstx.exc.WstxIOException;
+import com.ctc.wstx.io.ByteBufferInputStream;
+import com.ctc.wstx.io.MarkupBoundaryScanner;
+import com.ctc.wstx.io.StreamBootstrapper;
+
+/**
+ * Driver for parsing a single large "record-oriented" document, one
+ * where root element contains a long sequence of similar child elements
+ * ("records"), using multiple threads. Content of the root element is
+ * split into chunks at candidate start tags of records; each chunk is
+ * then parsed by a separate stream reader, using tasks submitted to an
+ * {@link ExecutorService}. Results of handling records are passed to a
+ * callback in document order, from the calling thread.
+ *<p>
+ * Splitting is speculative: a split point is just a byte sequence that
+ * looks like a start tag of a record, and may actually be within a
+ * comment, CDATA section, processing instruction or attribute value, or
+ * start a nested element with the same name. So before parsing, all
+ * chunks are scanned (in parallel) with a {@link MarkupBoundaryScanner},
+ * assuming that they start with a child element of the root; since the
+ * first chunk starts at a known position, a split point is verified to
+ * be valid if the preceding chunk ends outside of markup, directly
+ * within the root element. After an invalid split point, preceding chunk
+ * is continued by scanning sequentially up to the next valid split point
+ * (if any, within the chunk that followed the invalid split point);
+ * and if structure of the document can not be determined, the whole
+ * document is parsed sequentially. Either way results are the same as
+ * with sequential parsing.
+ *<p>
+ * Each chunk reader gets the prolog and the start tag of the root element
+ * before content of the chunk (and a matching end tag after it), so that
+ * namespace bindings (and DTD, if any) of the root element are in effect
+ * just as when parsing the whole document.
+ *<p>
+ * If DTD validation is enabled for the factory, documents are always
+ * parsed sequentially: each chunk reader would validate its chunk as a
+ * separate document, which would not catch problems that span chunks
+ * (like duplicate ids) and would report bogus ones (like root element
+ * content model not matching the records of a single chunk).
+ *<p>
+ * Limitations: input must use an encoding that is ASCII-compatible
+ * for markup characters (UTF-8, ISO-8859-x and such); other documents are
+ * parsed sequentially. Only child elements of the root are considered
+ * records; other children are skipped, as are comments and processing
+ * instructions outside of records. Locations of problems reported by
+ * chunk readers are relative to the chunk, not the whole document.
+ */
+public class ParallelRecordParser
+{
+    final static int SCAN_BUFFER_SIZE = 16000;
+
+    /**
+     * Size of the block read from the end of input, when locating the
+     * end tag of the root element.
+     */
+    final static int TAIL_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Maximum size of a chunk, before merging: chunks of files are
+     * memory-mapped, so they need to be reasonably small.
+     */
+    final static int MAX_CHUNK_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * Interface for objects that process a single record, using the
+     * stream reader given; called from the worker threads.
+     */
+    public interface RecordHandler<T>
+    {
+        /**
+         * @param sr Reader positioned at the start tag of the record
+         *   (<code>START_ELEMENT</code>); handler may advance it, but not
+         *   past the matching end tag. Anything handler leaves unread
+         *   within the record is skipped.
+         *
+         * @return Result value to pass to the callback
+         */
+        public T handleRecord(XMLStreamReader2 sr)
+            throws XMLStreamException;
+    }
+
+    /**
+     * Interface for objects that are given the results of processing
+     * records, in document order. Methods are called from the thread
+     * that called {@link ParallelRecordParser#parse}.
+     */
+    public interface RecordCallback<T>
+    {
+        /**
+         * @param index Index of the record within document (0-based)
+         */
+        public void recordParsed(long index, T result);
+    }
+
+    final WstxInputFactory mFactory;
+
+    final ExecutorService mExecutor;
+
+    int mMinChunkSize = 1024 * 1024;
+
+    int mMaxPending;
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Life-cycle, configuration
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @param exec Executor to use for parsing chunks; if null, a
+     *   fixed-size pool with one thread per available processor is
+     *   created (and shut down when parsing completes)
+     */
+    public ParallelRecordParser(WstxInputFactory f, ExecutorService exec)
+    {
+        mFactory = f;
+        mExecutor = exec;
+        mMaxPending = 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Method for defining the minimum size of content (in bytes) to
+     * handle as a separate chunk. Documents whose root element content
+     * is shorter than twice the minimum size are parsed sequentially.
+     * Defaults to 1 megabyte.
+     */
+    public void setMinChunkSize(int size) {
+        mMinChunkSize = Math.max(1, size);
+    }
+
+    public int getMinChunkSize() { return mMinChunkSize; }
+
+    /**
+     * Method for defining maximum number of chunks that may have been
+     * parsed (or be in process of being parsed) but whose results are
+     * not yet delivered. Defaults to 2 times number of available
+     * processors.
+     */
+    public void setMaxPendingChunks(int max) {
+        mMaxPending = Math.max(1, max);
+    }
+
+    public int getMaxPendingChunks() { return mMaxPending; }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Public API
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for parsing the document contained in given buffer (from its
+     * position up to its limit; position of the buffer is not modified),
+     * and waiting until all records have been processed and delivered
+     * to the callback.
+     *
+     * @param recordName Qualified name of record elements, as it appears
+     *   in the document (that is, including prefix, if any)
+     *
+     * @return Number of records found
+     */
+    public <T> long parse(ByteBuffer input, String recordName,
+                          RecordHandler<T> handler, RecordCallback<? super T> callback)
+        throws XMLStreamException
+    {
+        return parse(new BufferInput(input), recordName, handler, callback);
+    }
+
+    /**
+     * Method for parsing the document contained in given file, and
+     * waiting until all records have been processed and delivered to
+     * the callback. Chunks of the file are memory-mapped for parsing.
+     *
+     * @param recordName Qualified name of record elements, as it appears
+     *   in the document (that is, including prefix, if any)
+     *
+     * @return Number of records found
+     */
+    public <T> long parse(File input, String recordName,
+                          RecordHandler<T> handler, RecordCallback<? super T> callback)
+        throws XMLStreamException
+    {
+        FileInput in;
+        try {
+            in = new FileInput(input);
+        } catch (IOException ioe) {
+            throw new WstxIOException(ioe);
+        }
+        try {
+            return parse(in, recordName, handler, callback);
+        } finally {
+            in.close();
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Internal methods, splitting input
+    ///////////////////////////////////////////////////////////
+     */
+
+    private <T> long parse(Input in, String recordName,
+                           RecordHandler<T> handler, RecordCallback<? super T> callback)
+        throws XMLStreamException
+    {
+        // Chunks can not be validated separately, see class description
+        if (mFactory.getConfig().willValidateWithDTD()) {
+            return parseSequentially(in, recordName, handler, callback);
+        }
+        ExecutorService exec = mExecutor;
+        if (exec == null) {
+            exec = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+        try {
+            long[] chunks = null;
+            byte[] prolog = null;
+            byte[] rootEnd = null;
+            try {
+                prolog = readProlog(in);
+                if (prolog != null) {
+                    byte[] rootName = getRootName(prolog);
+                    long contentEnd = findRootEnd(in, prolog.length, rootName);
+                    if (contentEnd >= 0L) {
+                        byte[] marker = toBytes("<"+recordName);
+                        chunks = findChunks(exec, in, prolog.length, contentEnd, marker);
+                        rootEnd = new byte[rootName.length + 3];
+                        rootEnd[0] = '<';
+                        rootEnd[1] = '/';
+                        System.arraycopy(rootName, 0, rootEnd, 2, rootName.length);
+                        rootEnd[rootEnd.length-1] = '>';
+                    }
+                }
+            } catch (IOException ioe) {
+                throw new WstxIOException(ioe);
+            }
+            if (chunks == null) {
+                return parseSequentially(in, recordName, handler, callback);
+            }
+            return parseChunks(exec, in, prolog, rootEnd, chunks, recordName, handler, callback);
+        } finally {
+            if (exec != mExecutor) {
+                exec.shutdown();
+            }
+        }
+    }
+
+    private <T> long parseSequentially(Input in, String recordName,
+                                       RecordHandler<T> handler, RecordCallback<? super T> callback)
+        throws XMLStreamException
+    {
+        XMLStreamReader2 sr = in.createReader(mFactory);
+        try {
+            return processRecords(sr, recordName, handler, callback);
+        } finally {
+            sr.closeCompletely();
+        }
+    }
+
+    /**
+     * Method for reading the prolog and the start tag of the root element.
+     *
+     * @return Content up to and including the root start tag; or null if
+     *   the document can not be split (root element is empty, or encoding
+     *   is not ASCII-compatible)
+     */
+    private byte[] readProlog(Input in)
+        throws IOException
+    {
+        long len = in.length();
+        if (len == 0L) {
+            return null;
+        }
+        MarkupBoundaryScanner scanner = new MarkupBoundaryScanner();
+        byte[] buf = new byte[SCAN_BUFFER_SIZE];
+        ByteArrayOutputStream prolog = new ByteArrayOutputStream();
+
+        for (long pos = 0L; pos < len; ) {
+            int count = (int) Math.min(buf.length, len - pos);
+            in.read(pos, buf, 0, count);
+            if (pos == 0L && !isAsciiCompatible(buf[0])) {
+                return null;
+            }
+            // Need to check depth after every byte, root start tag may end anywhere
+            for (int i = 0; i < count; ++i) {
+                scanner.scan(buf, i, i+1);
+                if (scanner.getRootEnd() >= 0L) { // empty root
+                    return null;
+                }
+                if (scanner.getDepth() > 0) {
+                    prolog.write(buf, 0, i+1);
+                    return prolog.toByteArray();
+                }
+            }
+            prolog.write(buf, 0, count);
+            pos += count;
+        }
+        return null;
+    }
+
+    private static boolean isAsciiCompatible(byte b)
+    {
+        return (b == '<' || (b & 0xFF) == 0xEF // UTF-8 BOM
+                || isSpace(b));
+    }
+
+    /**
+     * @return Qualified name of the root element, as raw bytes
+     */
+    private static byte[] getRootName(byte[] prolog)
+    {
+        int start = prolog.length;
+        while (prolog[--start] != '<') { }
+        ++start;
+        int end = start;
+        while (end < prolog.length) {
+            byte b = prolog[end];
+            if (isSpace(b) || b == '/' || b == '>') {
+                break;
+            }
+            ++end;
+        }
+        byte[] name = new byte[end - start];
+        System.arraycopy(prolog, start, name, 0, name.length);
+        return name;
+    }
+
+    /**
+     * Method for finding the end tag of the root element, by skipping
+     * white space, comments and processing instructions at the end of
+     * input.
+     *
+     * @return Offset of the root end tag, or -1 if it could not be found
+     */
+    private static long findRootEnd(Input in, long contentStart, byte[] rootName)
+        throws IOException
+    {
+        long blockStart = Math.max(contentStart, in.length() - TAIL_BLOCK_SIZE);
+        byte[] buf = new byte[(int) (in.length() - blockStart)];
+        in.read(blockStart, buf, 0, buf.length);
+
+        int i = buf.length;
+        while (true) {
+            while (i > 0 && isSpace(buf[i-1])) {
+                --i;
+            }
+            int start;
+            if (endsWith(buf, i, "-->")) {
+                start = lastIndexOf(buf, i-3, "<!--");
+            } else if (endsWith(buf, i, "?>")) {
+                start = lastIndexOf(buf, i-2, "<?");
+            } else {
+                break;
+            }
+            if (start < 0) {
+                return -1L;
+            }
+            i = start;
+        }
+        if (i == 0 || buf[--i] != '>') {
+            return -1L;
+        }
+        while (i > 0 && isSpace(buf[i-1])) {
+            --i;
+        }
+        int nameStart = i - rootName.length;
+        if (nameStart < 2 || buf[nameStart-2] != '<' || buf[nameStart-1] != '/'
+            || !matches(buf, nameStart, i, rootName)) {
+            return -1L;
+        }
+        return blockStart + nameStart - 2;
+    }
+
+    /**
+     * Method for splitting content of the root element into chunks, and
+     * verifying that split points are valid, merging chunks where they
+     * are not.
+     *
+     * @return Offsets of chunk boundaries (first one being start of content,
+     *   last one end of content); or null if content is to be parsed
+     *   sequentially
+     */
+    private long[] findChunks(ExecutorService exec, Input in, long contentStart, long contentEnd,
+                              byte[] marker)
+        throws IOException, XMLStreamException
+    {
+        long contentLen = contentEnd - contentStart;
+        long count = contentLen / mMinChunkSize;
+        if (count < 2) {
+            return null;
+        }
+        count = Math.min(count, 4 * Runtime.getRuntime().availableProcessors());
+        count = Math.max(count, (contentLen + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+
+        // First, candidate split points: start tags of records
+        ArrayList<Long> bounds = new ArrayList<Long>();
+        bounds.add(Long.valueOf(contentStart));
+        byte[] buf = new byte[SCAN_BUFFER_SIZE];
+        long prev = contentStart;
+        for (long i = 1; i < count; ++i) {
+            long from = Math.max(prev+1, contentStart + (contentLen * i / count));
+            long to = contentStart + (contentLen * (i+1) / count);
+            long split = findRecordStart(in, from, to, contentEnd, marker, buf);
+            if (split >= 0L) {
+                bounds.add(Long.valueOf(split));
+                prev = split;
+            }
+        }
+        bounds.add(Long.valueOf(contentEnd));
+        if (bounds.size() < 3) {
+            return null;
+        }
+
+        // Then speculatively scan all chunks in parallel
+        int chunkCount = bounds.size() - 1;
+        ArrayList<Future<MarkupBoundaryScanner>> scans = new ArrayList<Future<MarkupBoundaryScanner>>(chunkCount);
+        try {
+            for (int i = 0; i < chunkCount; ++i) {
+                final Input input = in;
+                final long start = bounds.get(i).longValue();
+                final long end = bounds.get(i+1).longValue();
+                scans.add(exec.submit(new Callable<MarkupBoundaryScanner>() {
+                        public MarkupBoundaryScanner call() throws IOException {
+                            MarkupBoundaryScanner scanner = new MarkupBoundaryScanner();
+                            scanner.reset(1);
+                            return scanRange(input, scanner, start, end, new byte[SCAN_BUFFER_SIZE])
+                                ? scanner : null;
+                        }
+                    }));
+            }
+        } catch (RejectedExecutionException ree) {
+            throw new XMLStreamException("Executor rejected chunk scanning task: "+ree.getMessage());
+        }
+
+        /* And finally verify split points in order: first chunk starts
+         * at a known state, so each split point is valid if the preceding
+         * (possibly merged) chunk ends outside markup, within root.
+         */
+        ArrayList<Long> result = new ArrayList<Long>(bounds.size());
+        result.add(bounds.get(0));
+        try {
+            MarkupBoundaryScanner curr = getScan(scans.get(0));
+            for (int i = 1; curr != null && i < chunkCount; ++i) {
+                if (curr.inText() && curr.getDepth() == 1) {
+                    result.add(bounds.get(i));
+                    curr = getScan(scans.get(i));
+                } else {
+                    /* Invalid split point: continue previous chunk,
+                     * scanning sequentially up to the next valid one
+                     */
+                    scans.get(i).cancel(false);
+                    long pos = bounds.get(i).longValue();
+                    long end = bounds.get(i+1).longValue();
+                    while (curr != null && pos < end) {
+                        long split = findRecordStart(in, pos+1, end, contentEnd, marker, buf);
+                        long scanEnd = (split < 0L) ? end : split;
+                        if (!scanRange(in, curr, pos, scanEnd, buf)) {
+                            curr = null;
+                        } else if (split >= 0L && curr.inText() && curr.getDepth() == 1) {
+                            result.add(Long.valueOf(split));
+                            if (!scanRange(in, curr, split, end, buf)) {
+                                curr = null;
+                            }
+                            break;
+                        }
+                        pos = scanEnd;
+                    }
+                    if ((end - result.get(result.size()-1).longValue()) > Integer.MAX_VALUE) {
+                        curr = null;
+                    }
+                }
+            }
+            // Last chunk must end right before the root end tag
+            if (curr == null || !curr.inText() || curr.getDepth() != 1) {
+                return null;
+            }
+        } finally {
+            for (Future<MarkupBoundaryScanner> f : scans) {
+                f.cancel(false);
+            }
+        }
+        result.add(bounds.get(chunkCount));
+        if (result.size() < 3) {
+            return null;
+        }
+        long[] chunks = new long[result.size()];
+        for (int i = 0; i < chunks.length; ++i) {
+            chunks[i] = result.get(i).longValue();
+        }
+        return chunks;
+    }
+
+    private static MarkupBoundaryScanner getScan(Future<MarkupBoundaryScanner> f)
+        throws IOException, XMLStreamException
+    {
+        try {
+            return f.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException("Interrupted while waiting for chunks to be scanned");
+        } catch (ExecutionException ee) {
+            Throwable t = ee.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new XMLStreamException(String.valueOf(t));
+        }
+    }
+
+    /**
+     * @return True if the whole range was scanned; false if scanning
+     *   stopped because root element was closed
+     */
+    private static boolean scanRange(Input in, MarkupBoundaryScanner scanner,
+                                     long start, long end, byte[] buf)
+        throws IOException
+    {
+        for (long pos = start; pos < end; ) {
+            int count = (int) Math.min(buf.length, end - pos);
+            in.read(pos, buf, 0, count);
+            if (scanner.scan(buf, 0, count) < count) {
+                return false;
+            }
+            pos += count;
+        }
+        return scanner.getRootEnd() < 0L;
+    }
+
+    /**
+     * @return Offset of the first record start tag that starts within
+     *   given range, or -1 if none
+     */
+    private static long findRecordStart(Input in, long from, long to, long contentEnd,
+                                        byte[] marker, byte[] buf)
+        throws IOException
+    {
+        final int mlen = marker.length;
+        long pos = from;
+        while (pos < to) {
+            int count = (int) Math.min(buf.length, contentEnd - pos);
+            // need marker plus one byte after it
+            if (count <= mlen) {
+                break;
+            }
+            in.read(pos, buf, 0, count);
+            int last = count - mlen - 1;
+            for (int i = 0; i <= last; ++i) {
+                if ((pos + i) >= to) {
+                    return -1L;
+                }
+                if (buf[i] == '<' && matches(buf, i, i+mlen, marker)) {
+                    byte b = buf[i+mlen];
+                    if (isSpace(b) || b == '>' || b == '/') {
+                        return pos + i;
+                    }
+                }
+            }
+            pos += last + 1;
+        }
+        return -1L;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Internal methods, parsing
+    ///////////////////////////////////////////////////////////
+     */
+
+    private <T> long parseChunks(ExecutorService exec, Input in, byte[] prolog, byte[] rootEnd,
+                                 long[] chunks, String recordName,
+                                 RecordHandler<T> handler, RecordCallback<? super T> callback)
+        throws XMLStreamException
+    {
+        LinkedList<Future<ChunkResult>> pending = new LinkedList<Future<ChunkResult>>();
+        int next = 0;
+        long index = 0L;
+        final int chunkCount = chunks.length - 1;
+
+        try {
+            while (next < chunkCount || !pending.isEmpty()) {
+                while (next < chunkCount && pending.size() < mMaxPending) {
+                    pending.add(submit(exec, in, prolog, rootEnd, chunks[next], chunks[next+1],
+                                       recordName, handler));
+                    ++next;
+                }
+                ChunkResult result;
+                try {
+                    result = pending.removeFirst().get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new XMLStreamException("Interrupted while waiting for chunks to be parsed");
+                } catch (ExecutionException ee) {
+                    throw new XMLStreamException(String.valueOf(ee.getCause()));
+                }
+                index = result.deliver(index, callback);
+            }
+        } finally {
+            for (Future<ChunkResult> f : pending) {
+                f.cancel(true);
+            }
+        }
+        return index;
+    }
+
+    private <T> Future<ChunkResult> submit(ExecutorService exec, final Input in,
+                                           final byte[] prolog, final byte[] rootEnd,
+                                           final long start, final long end, final String recordName,
+                                           final RecordHandler<T> handler)
+        throws XMLStreamException
+    {
+        try {
+            return exec.submit(new Callable<ChunkResult>() {
+                    public ChunkResult call() {
+                        ChunkResult result = new ChunkResult();
+                        try {
+                            InputStream chunk = new SequenceInputStream
+                                (new SequenceInputStream(new ByteArrayInputStream(prolog),
+                                                         new ByteBufferInputStream(in.slice(start, end))),
+                                 new ByteArrayInputStream(rootEnd));
+                            ReaderConfig cfg = mFactory.createPrivateConfig();
+                            XMLStreamReader2 sr = mFactory.createSR(cfg, (String) null,
+                                                                    StreamBootstrapper.getInstance(null, null, chunk),
+                                                                    false, true);
+                            try {
+                                processRecords(sr, recordName, handler, result);
+                            } finally {
+                                sr.closeCompletely();
+                            }
+                        } catch (XMLStreamException e) {
+                            result.mProblem = e;
+                        } catch (IOException e) {
+                            result.mProblem = new WstxIOException(e);
+                        } catch (RuntimeException e) {
+                            result.mProblem = new XMLStreamException(e);
+                        }
+                        return result;
+                    }
+                });
+        } catch (RejectedExecutionException ree) {
+            throw new XMLStreamException("Executor rejected chunk parsing task: "+ree.getMessage());
+        }
+    }
+
+    /**
+     * Method that goes through the document (or chunk) reader is reading,
+     * passing records to the handler, and results to the callback.
+     *
+     * @return Number of records found
+     */
+    <T> long processRecords(XMLStreamReader2 sr, String recordName,
+                            RecordHandler<T> handler, RecordCallback<? super T> callback)
+        throws XMLStreamException
+    {
+        long count = 0L;
+        while (sr.hasNext()) {
+            if (sr.next() != XMLStreamConstants.START_ELEMENT || sr.getDepth() != 2) {
+                continue;
+            }
+            if (!recordName.equals(sr.getPrefixedName())) {
+                sr.skipElement();
+                continue;
+            }
+            callback.recordParsed(count++, handler.handleRecord(sr));
+            // Skip whatever handler left unread
+            if (sr.getEventType() == XMLStreamConstants.START_ELEMENT && sr.getDepth() == 2) {
+                sr.skipElement();
+            } else {
+                while (sr.getEventType() != XMLStreamConstants.END_ELEMENT || sr.getDepth() != 2) {
+                    sr.next();
+                }
+            }
+        }
+        return count;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Internal methods, other
+    ///////////////////////////////////////////////////////////
+     */
+
+    private static byte[] toBytes(String str)
+    {
+        try {
+            return str.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) { // never happens
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean matches(byte[] buf, int ptr, int end, byte[] str)
+    {
+        if ((end - ptr) != str.length) {
+            return false;
+        }
+        for (int i = 0; i < str.length; ++i) {
+            if (buf[ptr+i] != str[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean endsWith(byte[] buf, int end, String str)
+    {
+        int start = end - str.length();
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); ++i) {
+            if (buf[start+i] != (byte) str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Start of the last occurence of given marker that ends at or
+     *   before given end offset; -1 if none
+     */
+    private static int lastIndexOf(byte[] buf, int end, String marker)
+    {
+        for (int ptr = end - marker.length(); ptr >= 0; --ptr) {
+            if (endsWith(buf, ptr + marker.length(), marker)) {
+                return ptr;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSpace(byte b)
+    {
+        return (b == ' ' || b == '\t' || b == '\r' || b == '\n');
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper classes
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Container for results of parsing a chunk: results of handling
+     * records, in document order, followed by the problem that stopped
+     * parsing, if any.
+     */
+    final static class ChunkResult
+        implements RecordCallback<Object>
+    {
+        final ArrayList<Object> mResults = new ArrayList<Object>();
+
+        XMLStreamException mProblem;
+
+        public void recordParsed(long index, Object result) {
+            mResults.add(result);
+        }
+
+        /**
+         * @return Index of the record following the last record of this chunk
+         */
+        @SuppressWarnings("unchecked")
+        <T> long deliver(long index, RecordCallback<? super T> callback)
+            throws XMLStreamException
+        {
+            for (Object result : mResults) {
+                callback.recordParsed(index++, (T) result);
+            }
+            if (mProblem != null) {
+                throw mProblem;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Abstraction for random access input
+     */
+    abstract static class Input
+    {
+        public abstract long length();
+
+        /**
+         * Method for reading exactly given number of bytes starting
+         * at given offset.
+         */
+        public abstract void read(long pos, byte[] buf, int offset, int len)
+            throws IOException;
+
+        /**
+         * @return Buffer that contains content between given offsets
+         */
+        public abstract ByteBuffer slice(long start, long end)
+            throws IOException;
+
+        /**
+         * @return Reader for parsing the whole input sequentially
+         */
+        public abstract XMLStreamReader2 createReader(WstxInputFactory f)
+            throws XMLStreamException;
+    }
+
+    final static class BufferInput
+        extends Input
+    {
+        final ByteBuffer mBuffer;
+
+        final int mStart;
+
+        BufferInput(ByteBuffer buf) {
+            mBuffer = buf.duplicate();
+            mStart = buf.position();
+        }
+
+        public long length() {
+            return mBuffer.limit() - mStart;
+        }
+
+        public void read(long pos, byte[] buf, int offset, int len) {
+            ByteBuffer bb = mBuffer.duplicate();
+            bb.position(mStart + (int) pos);
+            bb.get(buf, offset, len);
+        }
+
+        public ByteBuffer slice(long start, long end) {
+            ByteBuffer bb = mBuffer.duplicate();
+            bb.limit(mStart + (int) end);
+            bb.position(mStart + (int) start);
+            return bb.slice();
+        }
+
+        public XMLStreamReader2 createReader(WstxInputFactory f)
+            throws XMLStreamException
+        {
+            return f.createXMLStreamReader(mBuffer);
+        }
+    }
+
+    final static class FileInput
+        extends Input
+    {
+        final File mFile;
+
+        final RandomAccessFile mRAFile;
+
+        final FileChannel mChannel;
+
+        final long mLength;
+
+        FileInput(File f)
+            throws IOException
+        {
+            mFile = f;
+            mRAFile = new RandomAccessFile(f, "r");
+            mChannel = mRAFile.getChannel();
+            mLength = mChannel.size();
+        }
+
+        public long length() {
+            return mLength;
+        }
+
+        public void read(long pos, byte[] buf, int offset, int len)
+            throws IOException
+        {
+            ByteBuffer bb = ByteBuffer.wrap(buf, offset, len);
+            while (bb.hasRemaining()) {
+                if (mChannel.read(bb, pos + bb.position() - offset) < 0) {
+                    throw new EOFException("Unexpected end of file '"+mFile+"'");
+                }
+            }
+        }
+
+        public ByteBuffer slice(long start, long end)
+            throws IOException
+        {
+            return mChannel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+
+        public XMLStreamReader2 createReader(WstxInputFactory f)
+            throws XMLStreamException
+        {
+            return f.createXMLStreamReader(mFile);
+        }
+
+        void close()
+        {
+            try {
+                mRAFile.close();
+            } catch (IOException ioe) { }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.stax;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.io.StreamBootstrapper;
+import com.ctc.wstx.io.SystemId;
+import com.ctc.wstx.sr.BasicStreamReader;
+
+/**
+ * Pool of stream readers created by a {@link WstxInputFactory}: instead
+ * of constructing a new reader for each document, readers released
+ * back to the pool are reset (see {@link BasicStreamReader#reset(InputStream)})
+ * and handed out again. This avoids re-creating reader objects and their
+ * internal structures (element stack, attribute collector, text buffer,
+ * configuration object), which is a significant part of the cost of
+ * parsing small documents.
+ *<p>
+ * Pool is thread-safe, but readers it hands out are not: a reader is to
+ * be used by one thread at a time, and must not be used after it has been
+ * released. Readers are configured as per settings of the factory at the
+ * time they are constructed; pooled readers are not updated if factory
+ * settings are changed afterwards. Readers whose settings were changed
+ * by the caller (via {@link XMLStreamReader2#setProperty}) are not pooled,
+ * so that changes are not passed on to other callers.
+ *
+ * @since 5.0
+ */
+public class StreamReaderPool
+{
+    public final static int DEFAULT_MAX_POOLED = 16;
+
+    final WstxInputFactory mFactory;
+
+    final int mMaxPooled;
+
+    final ConcurrentLinkedQueue<BasicStreamReader> mReaders = new ConcurrentLinkedQueue<BasicStreamReader>();
+
+    /**
+     * Number of readers in {@link #mReaders}; tracked separately since
+     * size of the queue is not a constant-time operation.
+     */
+    final AtomicInteger mPooled = new AtomicInteger();
+
+    final AtomicLong mCreated = new AtomicLong();
+
+    final AtomicLong mReused = new AtomicLong();
+
+    /**
+     * @param maxPooled Maximum number of idle readers to keep; readers
+     *   released when pool is full are simply closed
+     */
+    protected StreamReaderPool(WstxInputFactory f, int maxPooled)
+    {
+        if (maxPooled < 1) {
+            throw new IllegalArgumentException("Illegal maximum pool size ("+maxPooled+"): has to be positive");
+        }
+        mFactory = f;
+        mMaxPooled = maxPooled;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Public API, acquiring and releasing readers
+    ///////////////////////////////////////////////////////////
+     */
+
+    public XMLStreamReader2 acquireReader(InputStream in)
+        throws XMLStreamException
+    {
+        BasicStreamReader sr = takeReader();
+        if (sr == null) {
+            mCreated.incrementAndGet();
+            return (XMLStreamReader2) mFactory.createXMLStreamReader(in);
+        }
+        sr.reset(in);
+        return sr;
+    }
+
+    public XMLStreamReader2 acquireReader(byte[] data, int offset, int len)
+        throws XMLStreamException
+    {
+        BasicStreamReader sr = takeReader();
+        if (sr == null) {
+            mCreated.incrementAndGet();
+            return mFactory.createSR(mFactory.createPrivateConfig(), (SystemId) null,
+                    StreamBootstrapper.getInstance(null, null, data, offset, offset+len),
+                    false, false);
+        }
+        sr.reset(data, offset, len);
+        return sr;
+    }
+
+    public XMLStreamReader2 acquireReader(Reader r)
+        throws XMLStreamException
+    {
+        BasicStreamReader sr = takeReader();
+        if (sr == null) {
+            mCreated.incrementAndGet();
+            return (XMLStreamReader2) mFactory.createXMLStreamReader(r);
+        }
+        sr.reset(r);
+        return sr;
+    }
+
+    /**
+     * Method to call when caller is done with a reader acquired from
+     * this pool: reader is closed (if it has not yet been closed), and
+     * kept for reuse if the pool is not full, and its settings have
+     * not been modified.
+     * Reader may not be accessed after calling this method.
+     */
+    public void releaseReader(XMLStreamReader2 sr)
+        throws XMLStreamException
+    {
+        // will throw exception if there's a problem, in which case we just won't pool it
+        sr.close();
+        if (!(sr instanceof BasicStreamReader)
+            || ((BasicStreamReader) sr).hasModifiedConfig()) {
+            return;
+        }
+        while (true) {
+            int count = mPooled.get();
+            if (count >= mMaxPooled) {
+                return;
+            }
+            if (mPooled.compareAndSet(count, count+1)) {
+                break;
+            }
+        }
+        /* Releasing same reader twice would lead to it being given to
+         * two callers; pool is small enough to check that cheaply.
+         */
+        if (mReaders.contains(sr)) {
+            mPooled.decrementAndGet();
+            return;
+        }
+        mReaders.offer((BasicStreamReader) sr);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Public API, statistics
+    ///////////////////////////////////////////////////////////
+     */
+
+    public int getMaxPooled() { return mMaxPooled; }
+
+    /**
+     * @return Number of idle readers currently pooled
+     */
+    public int getPooledCount() { return mPooled.get(); }
+
+    /**
+     * @return Number of readers constructed by pool, due to there
+     *   being no idle readers to reuse
+     */
+    public long getCreatedCount() { return mCreated.get(); }
+
+    /**
+     * @return Number of times an idle reader was reset and reused
+     */
+    public long getReusedCount() { return mReused.get(); }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private BasicStreamReader takeReader()
+    {
+        BasicStreamReader sr = mReaders.poll();
+        if (sr != null) {
+            mPooled.decrementAndGet();
+            mReused.incrementAndGet();
+        }
+        return sr;
+    }
+}
@@ -0,0 +1,197 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in file LICENSE, included with
+ * the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.stax;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.XMLStreamWriter2;
+
+import com.ctc.wstx.sw.BaseStreamWriter;
+
+/**
+ * Pool of stream writers created by a {@link WstxOutputFactory}: instead
+ * of constructing a new writer for each document, writers released
+ * back to the pool are reset (see
+ * {@link BaseStreamWriter#reset(OutputStream,String)}) and handed out
+ * again. This avoids re-creating writer objects and their internal
+ * structures (underlying xml writer, output element pool, configuration
+ * object), which is a significant part of the cost of serializing small
+ * documents, such as responses of a service.
+ *<p>
+ * Pool is thread-safe, but writers it hands out are not: a writer is to
+ * be used by one thread at a time, and must not be used after it has been
+ * released. Writers are configured as per settings of the factory at the
+ * time they are constructed; pooled writers are not updated if factory
+ * settings are changed afterwards. Writers whose settings were changed
+ * by the caller (via {@link XMLStreamWriter2#setProperty}) are not pooled,
+ * so that changes are not passed on to other callers.
+ *
+ * @since 5.0
+ */
+public class StreamWriterPool
+{
+    public final static int DEFAULT_MAX_POOLED = 16;
+
+    final WstxOutputFactory mFactory;
+
+    final int mMaxPooled;
+
+    final ConcurrentLinkedQueue<BaseStreamWriter> mWriters = new ConcurrentLinkedQueue<BaseStreamWriter>();
+
+    /**
+     * Number of writers in {@link #mWriters}; tracked separately since
+     * size of the queue is not a constant-time operation.
+     */
+    final AtomicInteger mPooled = new AtomicInteger();
+
+    final AtomicLong mCreated = new AtomicLong();
+
+    final AtomicLong mReused = new AtomicLong();
+
+    /**
+     * @param maxPooled Maximum number of idle writers to keep; writers
+     *   released when pool is full are simply closed
+     */
+    protected StreamWriterPool(WstxOutputFactory f, int maxPooled)
+    {
+        if (maxPooled < 1) {
+            throw new IllegalArgumentException("Illegal maximum pool size ("+maxPooled+"): has to be positive");
+        }
+        mFactory = f;
+        mMaxPooled = maxPooled;
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Public API, acquiring and releasing writers
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * @param enc Encoding to use for output; if null, default encoding
+     *   (UTF-8) is used
+     */
+    public XMLStreamWriter2 acquireWriter(OutputStream out, String enc)
+        throws XMLStreamException
+    {
+        BaseStreamWriter sw = takeWriter();
+        if (sw == null) {
+            mCreated.incrementAndGet();
+            return (XMLStreamWriter2) mFactory.createXMLStreamWriter(out, enc);
+        }
+        sw.reset(out, enc);
+        return sw;
+    }
+
+    public XMLStreamWriter2 acquireWriter(Writer w)
+        throws XMLStreamException
+    {
+        BaseStreamWriter sw = takeWriter();
+        if (sw == null) {
+            mCreated.incrementAndGet();
+            return (XMLStreamWriter2) mFactory.createXMLStreamWriter(w);
+        }
+        sw.reset(w);
+        return sw;
+    }
+
+    /**
+     * Method to call when caller is done with a writer acquired from
+     * this pool: writer is closed (if it has not yet been closed), and
+     * kept for reuse if the pool is not full, and its settings have
+     * not been modified.
+     * Writer may not be accessed after calling this method.
+     */
+    public void releaseWriter(XMLStreamWriter2 sw)
+        throws XMLStreamException
+    {
+        if (!(sw instanceof BaseStreamWriter)) {
+            sw.close();
+            return;
+        }
+        // will throw exception if there's a problem, in which case we just won't pool it
+        BaseStreamWriter bsw = (BaseStreamWriter) sw;
+        if (!bsw.isOutputClosed()) {
+            bsw.close();
+        }
+        if (bsw.hasModifiedConfig()) {
+            return;
+        }
+        while (true) {
+            int count = mPooled.get();
+            if (count >= mMaxPooled) {
+                return;
+            }
+            if (mPooled.compareAndSet(count, count+1)) {
+                break;
+            }
+        }
+        /* Releasing same writer twice would lead to it being given to
+         * two callers; pool is small enough to check that cheaply.
+         */
+        if (mWriters.contains(bsw)) {
+            mPooled.decrementAndGet();
+            return;
+        }
+        mWriters.offer(bsw);
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Public API, statistics
+    ///////////////////////////////////////////////////////////
+     */
+
+    public int getMaxPooled() { return mMaxPooled; }
+
+    /**
+     * @return Number of idle writers currently pooled
+     */
+    public int getPooledCount() { return mPooled.get(); }
+
+    /**
+     * @return Number of writers constructed by pool, due to there
+     *   being no idle writers to reuse
+     */
+    public long getCreatedCount() { return mCreated.get(); }
+
+    /**
+     * @return Number of times an idle writer was reset and reused
+     */
+    public long getReusedCount() { return mReused.get(); }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private BaseStreamWriter takeWriter()
+    {
+        BaseStreamWriter sw = mWriters.poll();
+        if (sw != null) {
+            mPooled.decrementAndGet();
+            mReused.incrementAndGet();
+        }
+        return sw;
+    }
+}
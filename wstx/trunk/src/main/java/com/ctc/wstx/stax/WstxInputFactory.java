@@ -17,6 +17,8 @@ package com.ctc.wstx.stax;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
 
 import javax.xml.stream.*;
 import javax.xml.stream.util.XMLEventAllocator;
@@ -36,6 +38,7 @@ import org.codehaus.stax2.ri.Stax2ReaderAdapter;
 import org.codehaus.stax2.ri.evt.Stax2EventReaderAdapter;
 import org.codehaus.stax2.ri.evt.Stax2FilteredEventReader;
 
+import com.ctc.wstx.api.EventTypeFilter;
 import com.ctc.wstx.api.ReaderConfig;
 import com.ctc.wstx.api.WstxInputProperties;
 import com.ctc.wstx.cfg.InputConfigFlags;
@@ -47,9 +50,13 @@ import com.ctc.wstx.evt.DefaultEventAllocator;
 import com.ctc.wstx.evt.WstxEventReader;
 import com.ctc.wstx.exc.WstxIOException;
 import com.ctc.wstx.io.*;
+import com.ctc.wstx.sr.AsyncStreamReader;
+import com.ctc.wstx.sr.BasicStreamReader;
 import com.ctc.wstx.sr.ValidatingStreamReader;
 import com.ctc.wstx.sr.ReaderCreator;
+import com.ctc.wstx.util.ByteNameTable;
 import com.ctc.wstx.util.DefaultXmlSymbolTable;
+import com.ctc.wstx.util.SharedSymbolTable;
 import com.ctc.wstx.util.SimpleCache;
 import com.ctc.wstx.util.SymbolTable;
 import com.ctc.wstx.util.URLUtil;
@@ -100,6 +107,13 @@ public class WstxInputFactory
      */
     protected final ReaderConfig mConfig;
 
+    /**
+     * Immutable snapshot of {@link #mConfig}, from which configuration
+     * objects of readers are copied; re-created lazily after settings
+     * of the factory have been changed.
+     */
+    protected volatile ReaderConfig mConfigSnapshot;
+
     // // // Stax - mandated objects:
 
     protected XMLEventAllocator mAllocator = null;
@@ -133,10 +147,24 @@ public class WstxInputFactory
     }
 
     /**
-     * Actual current 'parent' symbol table; concrete instances will be
-     * created from this instance using <code>makeChild</code> method
+     * Shared symbol table, from which concrete instances are created
+     * for readers, and into which their additions are merged back.
+     * Accessed without locking, so that concurrently used readers
+     * do not contend on the factory.
+     *<p>
+     * Each factory uses its own hash seed, so that distribution of
+     * symbols can not be predicted by content authors.
+     */
+    final SharedSymbolTable mSymbols = new SharedSymbolTable(
+            mRootSymbols.makeSeededChild(System.identityHashCode(this) ^ (int) System.nanoTime()),
+            MAX_SYMBOL_TABLE_SIZE, MAX_SYMBOL_TABLE_GENERATIONS);
+
+    /**
+     * Root table for canonicalizing names directly from their UTF-8
+     * encoded bytes; shared by readers like {@link #mSymbols}, and
+     * similarly bounded in size.
      */
-    private SymbolTable mSymbols = mRootSymbols;
+    final ByteNameTable mByteNames = new ByteNameTable(true, MAX_SYMBOL_TABLE_SIZE);
 
     /*
     ///////////////////////////////////////////////////////////
@@ -158,9 +186,20 @@ public class WstxInputFactory
      */
     public void addSymbol(String symbol)
     {
-        synchronized (mSymbols) {
-            mSymbols.findSymbol(symbol);
-        }
+        mSymbols.addSymbol(symbol);
+    }
+
+    /**
+     * Method that can be used to find out how many times symbols seen
+     * by a reader were not shared with other readers, because of
+     * excessive hash collisions (which usually indicates content that
+     * was constructed to cause them).
+     *
+     * @since 5.0
+     */
+    public long getSymbolTableOverflowCount()
+    {
+        return mSymbols.getOverflowCount();
     }
     
     /*
@@ -181,6 +220,11 @@ public class WstxInputFactory
         return (mDTDCache == null) ? null : mDTDCache.find(id);
     }
 
+    public SymbolTable createSymbolTable()
+    {
+        return mSymbols.makeChild();
+    }
+
     // // // Callbacks for updating shared information
 
     /**
@@ -192,32 +236,14 @@ public class WstxInputFactory
      * table was modified, ie new entry/ies were added in addition to
      * whatever was in root table.
      */
-    public synchronized void updateSymbolTable(SymbolTable t)
+    public void updateSymbolTable(SymbolTable t)
     {
-        SymbolTable curr = mSymbols;
-        /* Let's only add if table was direct descendant; this prevents
-         * siblings from keeping overwriting settings (multiple direct
-         * children have additional symbols added)
+        /* Only merged if table was derived from the current shared table;
+         * and table gets flushed if it grows too big (either in
+         * pathological cases with random names; or with very long running
+         * processes)
          */
-        if (t.isDirectChildOf(curr)) {
-            /* 07-Apr-2006, TSa: Actually, since huge symbol tables
-             *    might become hindrance more than benefit (either in
-             *    pathological cases with random names; or with very
-             *    long running processes), let's actually limit both
-             *    number of generations, and, more imporantly, maximum
-             *    size of the symbol table
-             */
-            if (t.size() > MAX_SYMBOL_TABLE_SIZE || 
-                t.version() > MAX_SYMBOL_TABLE_GENERATIONS) {
-                // If so, we'll reset from bare defaults
-                mSymbols = mRootSymbols;
-//System.err.println("DEBUG: !!!! XXXXX Symbol Table Flush: size: "+t.size()+"; version: "+t.version());
-            } else {
-                mSymbols.mergeChild(t);
-//System.err.println("Debug: new symbol table: size: "+t.size()+"; version: "+t.version());
-            }
-        }
-//else System.err.println("Debug: skipping symbol table update");
+        mSymbols.mergeChild(t);
     }
 
     public synchronized void addCachedDTD(DTDId id, DTDSubset extSubset)
@@ -241,9 +267,18 @@ public class WstxInputFactory
         return new Stax2FilteredEventReader(Stax2EventReaderAdapter.wrapIfNecessary(reader), filter);
     }
 
+    /**
+     * Note: if filter is an {@link EventTypeFilter}, and reader is
+     * a Woodstox stream reader, reader itself is also configured to
+     * skip rejected events within the document tree, so that they
+     * need not be fully parsed.
+     */
     public XMLStreamReader createFilteredReader(XMLStreamReader reader, StreamFilter filter)
         throws XMLStreamException
     {
+        if (filter instanceof EventTypeFilter && reader instanceof BasicStreamReader) {
+            ((BasicStreamReader) reader).setEventTypeFilter((EventTypeFilter) filter);
+        }
         Stax2FilteredStreamReader fr = new Stax2FilteredStreamReader(reader, filter);
         /* [WSTX-111] As per Stax 1.0 TCK, apparently the filtered
          *   reader is expected to be automatically forwarded to the first
@@ -470,6 +505,83 @@ public class WstxInputFactory
         return createSR(f, false, true);
     }
 
+    // // // Woodstox-specific factory methods
+
+    /**
+     * Factory method for constructing a stream reader that reads content
+     * from given {@link ByteBuffer}, starting from its current position,
+     * up to its limit. Position of the buffer itself is not modified.
+     * Heap buffers are parsed directly from the backing array; for direct
+     * (and memory-mapped) buffers, content is bulk-copied to the input
+     * buffer of the decoder.
+     */
+    public XMLStreamReader2 createXMLStreamReader(ByteBuffer buf)
+        throws XMLStreamException
+    {
+        ReaderConfig cfg = createPrivateConfig();
+        if (buf.hasArray()) {
+            int offset = buf.arrayOffset();
+            return createSR(cfg, (SystemId) null, StreamBootstrapper.getInstance
+                            (null, null, buf.array(), offset + buf.position(), offset + buf.limit()),
+                            false, false);
+        }
+        return createSR(cfg, (SystemId) null, StreamBootstrapper.getInstance
+                        (null, null, new ByteBufferInputStream(buf)), false, false);
+    }
+
+    /**
+     * Factory method for constructing a non-blocking stream reader, to
+     * which content is fed in chunks by the caller, instead of being
+     * read from an input stream. See {@link AsyncStreamReader} for details.
+     */
+    public AsyncStreamReader createAsyncXMLStreamReader()
+    {
+        return new AsyncStreamReader(this, createPrivateConfig());
+    }
+
+    /**
+     * Factory method for constructing a driver that parses streams of
+     * concatenated documents using multiple threads; see
+     * {@link ParallelDocumentParser} for details. Readers used for
+     * parsing documents are configured as per settings of this factory.
+     *
+     * @param exec Executor to use for parsing; if null, parser will use
+     *   a thread pool of its own
+     */
+    public ParallelDocumentParser createParallelDocumentParser(ExecutorService exec)
+    {
+        return new ParallelDocumentParser(this, exec);
+    }
+
+    /**
+     * Factory method for constructing a driver that parses a single
+     * large document, consisting of a long sequence of similar child
+     * elements of the root element, using multiple threads; see
+     * {@link ParallelRecordParser} for details.
+     *
+     * @param exec Executor to use for parsing; if null, parser will use
+     *   a thread pool of its own
+     */
+    public ParallelRecordParser createParallelRecordParser(ExecutorService exec)
+    {
+        return new ParallelRecordParser(this, exec);
+    }
+
+    /**
+     * Factory method for constructing a pool of stream readers, that
+     * resets and reuses readers released to it, instead of constructing
+     * new ones; see {@link StreamReaderPool} for details. Readers are
+     * configured as per settings of this factory.
+     *
+     * @param maxPooled Maximum number of idle readers pool retains
+     *
+     * @since 5.0
+     */
+    public StreamReaderPool createStreamReaderPool(int maxPooled)
+    {
+        return new StreamReaderPool(this, maxPooled);
+    }
+
     // // // Stax2 "Profile" mutators
 
     public void configureForXmlConformance()
@@ -613,6 +725,10 @@ public class WstxInputFactory
             throw new IllegalArgumentException("Null InputStream is not a valid argument");
         }
         ReaderConfig cfg = createPrivateConfig();
+        if (cfg.willReadAhead()) {
+            in = wrapForReadAhead(cfg, in, autoCloseInput);
+            autoCloseInput = true;
+        }
         if (enc == null || enc.length() == 0) {
             return createSR(cfg, systemId, StreamBootstrapper.getInstance
                             (null, systemId, in), forER, autoCloseInput);
@@ -623,9 +739,18 @@ public class WstxInputFactory
          *   streams). Would be better to let bootstrapper deal with it
          *   though:
          */
+        try {
+            // Compressed content has to be detected before decoding:
+            in = InflatingInputStream.construct(cfg, in);
+        } catch (IOException ioe) {
+            throw new WstxIOException(ioe);
+        }
         Reader r = DefaultInputResolver.constructOptimizedReader(cfg, in, false, enc);
-        return createSR(cfg, systemId, ReaderBootstrapper.getInstance
-                        (null, systemId, r, enc), forER, autoCloseInput);
+        InputBootstrapper bs = ReaderBootstrapper.getInstance(null, systemId, r, enc);
+        if (in instanceof InflatingInputStream) {
+            bs.setDecompressor((InflatingInputStream) in);
+        }
+        return createSR(cfg, systemId, bs, forER, autoCloseInput);
     }
 
     protected XMLStreamReader2 createSR(ReaderConfig cfg, URL src,
@@ -645,11 +770,28 @@ public class WstxInputFactory
     		InputStream in, boolean forER, boolean autoCloseInput)
         throws XMLStreamException
     {
+        if (cfg.willReadAhead()) {
+            in = wrapForReadAhead(cfg, in, autoCloseInput);
+            autoCloseInput = true;
+        }
         return doCreateSR(cfg, systemId,
 			  StreamBootstrapper.getInstance(null, systemId, in),
 			  forER, autoCloseInput);
     }
 
+    /**
+     * Helper method for wrapping given input stream so that its content
+     * is read ahead by a background task. Since the stream reader has to
+     * close the wrapper to stop the background task, closing of the actual
+     * input stream is decided by the wrapper, based on whether input
+     * is to be auto-closed.
+     */
+    private InputStream wrapForReadAhead(ReaderConfig cfg, InputStream in, boolean autoCloseInput)
+    {
+        boolean closeSource = autoCloseInput || cfg.willAutoCloseInput();
+        return new ReadAheadInputStream(cfg, in, closeSource, cfg.getReadAheadExecutor());
+    }
+
     protected XMLStreamReader2 createSR(SystemId systemId, Reader r,
     		boolean forER, boolean autoCloseInput)
         throws XMLStreamException
@@ -676,7 +818,9 @@ public class WstxInputFactory
                 }
             }
             final SystemId systemId = SystemId.construct(URLUtil.toURL(f));
-            return createSR(cfg, systemId, new FileInputStream(f), forER, autoCloseInput);
+            InputStream in = cfg.willMemoryMapFiles() ?
+                new MappedFileInputStream(f) : new FileInputStream(f);
+            return createSR(cfg, systemId, in, forER, autoCloseInput);
 
         } catch (IOException ie) {
             throw new WstxIOException(ie);
@@ -809,16 +953,38 @@ public class WstxInputFactory
             : DefaultEventAllocator.getFastInstance();
     }
 
+    /**
+     * Method that byte-based scanners call to get a table for
+     * canonicalizing names from their raw UTF-8 bytes. Returned table
+     * is a child of the table this factory shares between its readers;
+     * caller is to call {@link ByteNameTable#release} when done, to
+     * make names it added available to other readers.
+     *<p>
+     * Note: only public so that other woodstox components outside of
+     * this package can access it.
+     */
+    public ByteNameTable createByteNameTable()
+    {
+        return mByteNames.makeChild();
+    }
+
     /**
      * Method called to construct a copy of the factory's configuration
      * object, such that two will be unlinked (changes to one are not
      * reflect in the other).
+     * Copy is made from a snapshot of current settings, which is only
+     * re-created when settings have changed since the previous call.
      *<p>
      * Note: only public so that other woodstox components outside of
      * this package can access it.
      */
     public ReaderConfig createPrivateConfig()
     {
-        return mConfig.createNonShared(mSymbols.makeChild());
+        ReaderConfig snapshot = mConfigSnapshot;
+        if (snapshot == null || !snapshot.isSnapshotOf(mConfig)) {
+            snapshot = mConfig.createSnapshot();
+            mConfigSnapshot = snapshot;
+        }
+        return snapshot.createNonShared(createSymbolTable());
     }
 }
@@ -17,7 +17,6 @@ package com.ctc.wstx.stax;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
 
 import javax.xml.stream.XMLEventWriter;
@@ -41,10 +40,6 @@ import com.ctc.wstx.cfg.OutputConfigFlags;
 import com.ctc.wstx.dom.WstxDOMWrappingWriter;
 import com.ctc.wstx.exc.WstxIOException;
 import com.ctc.wstx.io.CharsetNames;
-import com.ctc.wstx.io.UTF8Writer;
-import com.ctc.wstx.sw.AsciiXmlWriter;
-import com.ctc.wstx.sw.BufferingXmlWriter;
-import com.ctc.wstx.sw.ISOLatin1XmlWriter;
 import com.ctc.wstx.sw.NonNsStreamWriter;
 import com.ctc.wstx.sw.RepairingNsStreamWriter;
 import com.ctc.wstx.sw.SimpleNsStreamWriter;
@@ -207,6 +202,27 @@ public class WstxOutputFactory
         mConfig.configureForSpeed();
     }
 
+    /*
+    ///////////////////////////////////////////////////////////
+    // Woodstox-specific factory methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Factory method for constructing a pool of stream writers, that
+     * resets and reuses writers released to it, instead of constructing
+     * new ones; see {@link StreamWriterPool} for details. Writers are
+     * configured as per settings of this factory.
+     *
+     * @param maxPooled Maximum number of idle writers pool retains
+     *
+     * @since 5.0
+     */
+    public StreamWriterPool createStreamWriterPool(int maxPooled)
+    {
+        return new StreamWriterPool(this, maxPooled);
+    }
+
     /*
     ///////////////////////////////////////////////////////////
     // Woodstox-specific configuration access
@@ -257,34 +273,17 @@ public class WstxOutputFactory
                     enc = CharsetNames.normalize(enc);
                 }
             }
-
-            try {
-                if (enc == CharsetNames.CS_UTF8) {
-                    w = new UTF8Writer(cfg, out, autoCloseOutput);
-                    xw = new BufferingXmlWriter(w, cfg, enc, autoCloseOutput, out, 16);
-                } else if (enc == CharsetNames.CS_ISO_LATIN1) {
-                    xw = new ISOLatin1XmlWriter(out, cfg, autoCloseOutput);
-                } else if (enc == CharsetNames.CS_US_ASCII) {
-                    xw = new AsciiXmlWriter(out, cfg, autoCloseOutput);
-                } else {
-                    w = new OutputStreamWriter(out, enc);
-                    xw = new BufferingXmlWriter(w, cfg, enc, autoCloseOutput, out, -1);
-                }
-            } catch (IOException ex) {
-                throw new XMLStreamException(ex);
-            }
         } else {
             // we may still be able to figure out the encoding:
             if (enc == null) {
                 enc = CharsetNames.findEncodingFor(w);
             }
-            try {
-                xw = new BufferingXmlWriter(w, cfg, enc, autoCloseOutput, null, -1);
-            } catch (IOException ex) {
-                throw new XMLStreamException(ex);
-            }
         }
-
+        try {
+            xw = XmlWriter.construct(cfg, out, w, enc, autoCloseOutput);
+        } catch (IOException ex) {
+            throw new XMLStreamException(ex);
+        }
         return createSW(enc, cfg, xw);
     }
 
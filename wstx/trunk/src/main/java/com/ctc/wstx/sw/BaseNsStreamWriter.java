@@ -121,6 +121,26 @@ public abstract class BaseNsStreamWriter
         mEmptyElementHandler = cfg.getEmptyElementHandler();
     }
 
+    @Override
+    protected void resetState()
+    {
+        super.resetState();
+        // Elements left open are recycled, and the root is cleared
+        SimpleOutputElement elem = mCurrElem;
+        while (!elem.isRoot()) {
+            SimpleOutputElement parent = elem.getParent();
+            if (mPoolSize < MAX_POOL_SIZE) {
+                elem.addToPool(mOutputElemPool);
+                mOutputElemPool = elem;
+                ++mPoolSize;
+            }
+            elem = parent;
+        }
+        elem.resetRoot();
+        mCurrElem = elem;
+        mRootNsContext = null;
+    }
+
     /*
     ////////////////////////////////////////////////////
     // XMLStreamWriter API
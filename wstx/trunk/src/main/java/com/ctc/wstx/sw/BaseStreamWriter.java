@@ -16,6 +16,7 @@
 package com.ctc.wstx.sw;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.text.MessageFormat;
 
@@ -41,6 +42,7 @@ import com.ctc.wstx.cfg.ErrorConsts;
 import com.ctc.wstx.cfg.OutputConfigFlags;
 import com.ctc.wstx.cfg.XmlConsts;
 import com.ctc.wstx.exc.*;
+import com.ctc.wstx.io.CharsetNames;
 import com.ctc.wstx.io.WstxInputLocation;
 import com.ctc.wstx.sr.StreamReaderImpl;
 import com.ctc.wstx.sr.AttributeCollector;
@@ -89,7 +91,7 @@ public abstract class BaseStreamWriter
     /**
      * Actual physical writer to output serialized XML content to
      */
-    protected final XmlWriter mWriter;
+    protected XmlWriter mWriter;
     
     /**
      * Intermediate buffer into which characters of a String can be
@@ -205,6 +207,18 @@ public abstract class BaseStreamWriter
     
     protected boolean mReturnNullForDefaultNamespace;
 
+    /**
+     * Flag set when output of the current document has been closed;
+     * used to avoid closing it again when writer is reset.
+     */
+    protected boolean mOutputClosed = false;
+
+    /**
+     * Flag set when settings of this writer are changed via
+     * {@link #setProperty}; such changes are kept when writer is reset.
+     */
+    protected boolean mConfigModified = false;
+
     /*
     ////////////////////////////////////////////////////
     // Life-cycle
@@ -229,6 +243,115 @@ public abstract class BaseStreamWriter
         mReturnNullForDefaultNamespace = mConfig.returnNullForDefaultNamespace();
     }
 
+    /*
+    ////////////////////////////////////////////////////
+    // Life-cycle, resetting for reuse
+    ////////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for resetting this writer so that it can be used for
+     * outputting a new document to given output stream. Current document
+     * (if any) is first closed, as if {@link #close} had been called,
+     * unless that has already been done; after which the writer is in
+     * the same state as a newly constructed one would be. Internal
+     * structures (such as output element pools, output buffers) are
+     * reused, instead of having to be re-created.
+     *<p>
+     * Configuration settings of the writer are retained; but validators
+     * added for the previous document are not.
+     *
+     * @param enc Encoding to use for output; if null, default encoding
+     *   (UTF-8) is used
+     *
+     * @since 5.0
+     */
+    public void reset(OutputStream out, String enc)
+        throws XMLStreamException
+    {
+        if (out == null) {
+            throw new IllegalArgumentException("Null OutputStream is not a valid argument");
+        }
+        enc = (enc == null) ? WstxOutputProperties.DEFAULT_OUTPUT_ENCODING
+            : CharsetNames.normalize(enc);
+        resetOutput(out, null, enc);
+    }
+
+    /**
+     * Method for resetting this writer so that it can be used for
+     * outputting a new document using given writer.
+     * See {@link #reset(OutputStream,String)} for details.
+     *
+     * @since 5.0
+     */
+    public void reset(Writer w)
+        throws XMLStreamException
+    {
+        if (w == null) {
+            throw new IllegalArgumentException("Null Writer is not a valid argument");
+        }
+        resetOutput(null, w, CharsetNames.findEncodingFor(w));
+    }
+
+    private void resetOutput(OutputStream out, Writer w, String enc)
+        throws XMLStreamException
+    {
+        if (!mOutputClosed) {
+            close();
+        }
+        try {
+            if (!mWriter.reset(out, w, enc)) {
+                // different kind of output (or encoding); need a new writer
+                boolean autoClose = mConfig.willAutoCloseOutput();
+                mWriter = XmlWriter.construct(mConfig, out, w, enc, autoClose);
+            }
+        } catch (IOException ie) {
+            throw new WstxIOException(ie);
+        }
+        mEncoding = enc;
+        resetState();
+    }
+
+    /**
+     * @return True if settings of this writer have been changed (via
+     *   {@link #setProperty}) since it was constructed; such writers
+     *   are not to be reused for documents of other callers, as reset
+     *   does not revert settings
+     *
+     * @since 5.0
+     */
+    public boolean hasModifiedConfig() {
+        return mConfigModified;
+    }
+
+    /**
+     * @return True if output of the current document has been closed
+     *   (and writer has not been reset since)
+     *
+     * @since 5.0
+     */
+    public boolean isOutputClosed() {
+        return mOutputClosed;
+    }
+
+    /**
+     * Method called to clear all document-specific state when the
+     * writer is reset; sub-classes that add such state need to override
+     * it (and call this implementation).
+     */
+    protected void resetState()
+    {
+        mOutputClosed = false;
+        resetValidationFlags();
+        mValidator = null;
+        mVldContent = XMLValidator.CONTENT_ALLOW_ANY_TEXT;
+        mState = STATE_PROLOG;
+        mAnyOutput = false;
+        mStartElementOpen = false;
+        mEmptyElement = false;
+        mDtdRootElem = null;
+    }
+
     /*
     ///////////////////////////////////////////////////////////
     // XMLStreamWriter API
@@ -949,6 +1072,7 @@ public abstract class BaseStreamWriter
         /* Note: can not call local method, since it'll return false for
          * recognized but non-mutable properties
          */
+        mConfigModified = true;
         return mConfig.setProperty(name, value);
     }
 
@@ -1442,6 +1566,7 @@ public abstract class BaseStreamWriter
             mCopyBuffer = null;
             mConfig.freeMediumCBuffer(buf);
         }
+        mOutputClosed = true;
         try {
             mWriter.close(forceRealClose);
         } catch (IOException ie) {
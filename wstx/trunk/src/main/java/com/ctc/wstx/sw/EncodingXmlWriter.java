@@ -93,7 +93,7 @@ public abstract class EncodingXmlWriter
      * Actual output stream to use for outputting encoded content as
      * bytes.
      */
-    private final OutputStream mOut;
+    private OutputStream mOut;
 
     protected byte[] mOutputBuffer;
 
@@ -131,6 +131,22 @@ public abstract class EncodingXmlWriter
         return mOutputPtr;
     }
 
+    public boolean reset(OutputStream out, Writer w, String enc)
+        throws IOException
+    {
+        if (out == null || !sameEncoding(mEncoding, enc)) {
+            return false;
+        }
+        mOut = out;
+        if (mOutputBuffer == null) {
+            mOutputBuffer = mConfig.allocFullBBuffer(DEFAULT_BUFFER_SIZE);
+        }
+        mOutputPtr = 0;
+        mSurrogate = 0;
+        resetState();
+        return true;
+    }
+
     /*
     ////////////////////////////////////////////////
     // Partial API implementation
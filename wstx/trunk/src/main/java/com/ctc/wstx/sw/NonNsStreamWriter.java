@@ -79,6 +79,16 @@ public class NonNsStreamWriter
         mElements = new StringVector(32);
     }
 
+    @Override
+    protected void resetState()
+    {
+        super.resetState();
+        mElements.clear(true);
+        if (mAttrNames != null) {
+            mAttrNames.clear();
+        }
+    }
+
     /*
     ////////////////////////////////////////////////////
     // XMLStreamWriter API
@@ -88,6 +88,15 @@ public final class RepairingNsStreamWriter
         mAutomaticNsPrefix = cfg.getAutomaticNsPrefix();
     }
 
+    @Override
+    protected void resetState()
+    {
+        super.resetState();
+        mAutoNsSeq = null;
+        mSuggestedDefNs = null;
+        mSuggestedPrefixes = null;
+    }
+
     /*
     ///////////////////////////////////////////////////////////
     // XMLStreamWriter API
@@ -139,6 +139,20 @@ public final class SimpleOutputElement
         return new SimpleOutputElement();
     }
 
+    /**
+     * Method called to clear all namespace bindings (and other state)
+     * of the virtual root element, when its writer is reset to output
+     * a new document.
+     */
+    protected void resetRoot()
+    {
+        mNsMapping = null;
+        mNsMapShared = false;
+        mDefaultNsURI = "";
+        mRootNsContext = null;
+        mAttrSet = null;
+    }
+
     /**
      * Simplest factory method, which gets called when a 1-argument
      * element output method is called. It is, then, assumed to
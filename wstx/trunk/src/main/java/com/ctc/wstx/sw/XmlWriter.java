@@ -17,6 +17,7 @@ package com.ctc.wstx.sw;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.text.MessageFormat;
 
@@ -32,6 +33,8 @@ import com.ctc.wstx.api.WstxOutputProperties;
 import com.ctc.wstx.cfg.ErrorConsts;
 import com.ctc.wstx.cfg.OutputConfigFlags;
 import com.ctc.wstx.exc.WstxIOException;
+import com.ctc.wstx.io.CharsetNames;
+import com.ctc.wstx.io.UTF8Writer;
 import com.ctc.wstx.io.WstxInputData;
 
 /**
@@ -186,6 +189,81 @@ public abstract class XmlWriter
         mAddSpaceAfterEmptyElem = (flags & OutputConfigFlags.CFG_ADD_SPACE_AFTER_EMPTY_ELEM) != 0;
         mUseDoubleQuotesInXmlDecl = (flags & OutputConfigFlags.CFG_USE_DOUBLE_QUOTES_IN_XML_DECL) != 0;
 
+        initEscapers();
+    }
+
+    /**
+     * Factory method for constructing the writer to use for outputting
+     * content to given output stream or writer.
+     *
+     * @param out Stream to output to, if not null; otherwise output
+     *   goes to <code>w</code>
+     * @param enc Canonical name of the encoding to use, if output
+     *   goes to a stream; or encoding the writer uses, if known
+     *
+     * @since 5.0
+     */
+    public static XmlWriter construct(WriterConfig cfg, OutputStream out, Writer w,
+                                      String enc, boolean autoCloseOutput)
+        throws IOException
+    {
+        if (w != null) {
+            return new BufferingXmlWriter(w, cfg, enc, autoCloseOutput, null, -1);
+        }
+        if (enc == CharsetNames.CS_UTF8) {
+            w = new UTF8Writer(cfg, out, autoCloseOutput);
+            return new BufferingXmlWriter(w, cfg, enc, autoCloseOutput, out, 16);
+        }
+        if (enc == CharsetNames.CS_ISO_LATIN1) {
+            return new ISOLatin1XmlWriter(out, cfg, autoCloseOutput);
+        }
+        if (enc == CharsetNames.CS_US_ASCII) {
+            return new AsciiXmlWriter(out, cfg, autoCloseOutput);
+        }
+        w = new OutputStreamWriter(out, enc);
+        return new BufferingXmlWriter(w, cfg, enc, autoCloseOutput, out, -1);
+    }
+
+    /**
+     * Method called by a stream writer that is being reset to output
+     * a new document, after output of the previous document has been
+     * closed. If this writer can output to the given stream or writer
+     * using the same encoding, it re-initializes its state (buffers,
+     * location, escaping writers) and returns true; otherwise it
+     * returns false, and caller needs to construct a new writer.
+     *
+     * @param out Stream to output to, if not null; otherwise output
+     *   goes to <code>w</code>
+     * @param enc Canonical name of the encoding to use, if output
+     *   goes to a stream; or encoding the writer uses, if known
+     *
+     * @since 5.0
+     */
+    public abstract boolean reset(OutputStream out, Writer w, String enc)
+        throws IOException;
+
+    /**
+     * Helper method sub-classes call from {@link #reset}, to clear
+     * state this base class has.
+     */
+    protected void resetState()
+        throws IOException
+    {
+        mXml11 = false;
+        mLocPastChars = 0;
+        mLocRowNr = 1;
+        mLocRowStartOffset = 0;
+        initEscapers();
+    }
+
+    protected static boolean sameEncoding(String enc1, String enc2)
+    {
+        return (enc1 == null) ? (enc2 == null) : enc1.equals(enc2);
+    }
+
+    private void initEscapers()
+        throws IOException
+    {
         // Has caller requested any custom text or attr value escaping?
 
         EscapingWriterFactory f = mConfig.getTextEscaperFactory();
@@ -0,0 +1,519 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in the file LICENSE which is
+ * included with the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.util;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Symbol table similar to {@link SymbolTable}, but keyed on raw UTF-8
+ * encoded bytes of names, instead of decoded characters. Bytes are packed
+ * into "quads" (ints that contain 4 bytes each, in big-endian order; last
+ * quad right-aligned), which are then hashed and compared as ints. This
+ * allows scanners that work on byte buffers to resolve names they have
+ * seen before to canonical (and optionally intern()ed) Strings, without
+ * decoding them to characters.
+ *<p>
+ * Usage pattern is similar to that of {@link SharedSymbolTable}: a root
+ * instance is created for a factory, and child instances are created
+ * from it for individual parsers (with {@link #makeChild}). Children are
+ * not thread-safe, and use copy-on-write for contents they share with the
+ * root; when done, they are released with {@link #release}, which
+ * publishes names added to the root (without locking) for later children
+ * to use. To keep memory usage bounded, root table is reset once it would
+ * grow beyond specified maximum number of names. Root tables themselves
+ * are only used for creating children, not for accessing names.
+ *<p>
+ * Note: empty names are not supported; all lookup methods require
+ * names of at least one byte (quad).
+ *
+ * @since 5.0
+ */
+public final class ByteNameTable
+{
+    final static int DEFAULT_TABLE_SIZE = 64;
+
+    /**
+     * Let's not grow main hash area beyond 64k entries; beyond that
+     * collision chains just grow longer.
+     */
+    final static int MAX_TABLE_SIZE = 0x10000;
+
+    final static Charset UTF8 = Charset.forName("UTF-8");
+
+    final static int MULT = 33;
+    final static int MULT2 = 65599;
+
+    /*
+    ////////////////////////////////////////
+    // Configuration
+    ////////////////////////////////////////
+     */
+
+    /**
+     * Root table this table was created from; null for root tables
+     */
+    final ByteNameTable mParent;
+
+    /**
+     * For root tables, current shared contents; null for child tables
+     */
+    final AtomicReference<TableInfo> mRootInfo;
+
+    final boolean mInternNames;
+
+    final int mMaxEntries;
+
+    /**
+     * Seed used for hash calculation, to make it harder to construct
+     * names that collide
+     */
+    final int mSeed;
+
+    /*
+    ////////////////////////////////////////
+    // Contents (for child tables)
+    ////////////////////////////////////////
+     */
+
+    /**
+     * Shared contents this table was created from (or last published);
+     * additions are only published if root still has these contents
+     */
+    TableInfo mBase;
+
+    Name[] mBuckets;
+
+    int mSize;
+
+    int mIndexMask;
+
+    int mSizeThreshold;
+
+    /**
+     * Whether bucket array is shared with the root table (or its
+     * published snapshot), and needs to be copied before modifications
+     */
+    boolean mShared;
+
+    /**
+     * Whether names have been added since this table was created (or
+     * released last time)
+     */
+    boolean mDirty;
+
+    /**
+     * Buffer used for packing names into quads
+     */
+    int[] mQuadBuffer;
+
+    /*
+    ////////////////////////////////////////
+    // Life-cycle
+    ////////////////////////////////////////
+     */
+
+    /**
+     * Constructor for creating a root table.
+     *
+     * @param internNames Whether names added are to be intern()ed
+     * @param maxEntries Maximum number of names root table retains: if
+     *   a child table with more names is released, root is reset to empty
+     */
+    public ByteNameTable(boolean internNames, int maxEntries)
+    {
+        mParent = null;
+        mInternNames = internNames;
+        mMaxEntries = maxEntries;
+        mSeed = System.identityHashCode(this);
+        mRootInfo = new AtomicReference<TableInfo>(TableInfo.createEmpty(DEFAULT_TABLE_SIZE));
+    }
+
+    private ByteNameTable(ByteNameTable parent, TableInfo info)
+    {
+        mParent = parent;
+        mInternNames = parent.mInternNames;
+        mMaxEntries = parent.mMaxEntries;
+        mSeed = parent.mSeed;
+        mRootInfo = null;
+        mBase = info;
+        mBuckets = info.mBuckets;
+        mSize = info.mSize;
+        mIndexMask = mBuckets.length - 1;
+        mSizeThreshold = (mBuckets.length >> 2) * 3;
+        mShared = true;
+        mDirty = false;
+    }
+
+    /**
+     * Method for constructing a child table, which contains all names
+     * of this root table. Child tables are not thread-safe, but any
+     * number of them can be created and used concurrently.
+     */
+    public ByteNameTable makeChild()
+    {
+        if (mParent != null) {
+            throw new IllegalStateException("Can only create child tables from root tables");
+        }
+        return new ByteNameTable(this, mRootInfo.get());
+    }
+
+    /**
+     * Method called by parsers when they are done with a child table:
+     * if any names were added, they are made available to later
+     * children (unless another child was released after this one was
+     * created, in which case additions are just dropped).
+     * Child table may still be used after release.
+     */
+    public void release()
+    {
+        if (mParent != null && mDirty) {
+            TableInfo info = new TableInfo(mBuckets, mSize);
+            mParent.mergeChild(mBase, info);
+            mBase = info;
+            mDirty = false;
+            // published arrays must not be modified any more:
+            mShared = true;
+        }
+    }
+
+    private void mergeChild(TableInfo base, TableInfo child)
+    {
+        if (child.mSize > mMaxEntries) {
+            child = TableInfo.createEmpty(DEFAULT_TABLE_SIZE);
+        }
+        mRootInfo.compareAndSet(base, child);
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Public API, accessors
+    ////////////////////////////////////////
+     */
+
+    /**
+     * @return Number of names in the table (for root tables, in the
+     *   current shared snapshot)
+     */
+    public int size() {
+        return (mParent == null) ? mRootInfo.get().mSize : mSize;
+    }
+
+    public boolean isDirty() { return mDirty; }
+
+    /*
+    ////////////////////////////////////////
+    // Public API, finding names
+    ////////////////////////////////////////
+     */
+
+    /**
+     * Method for finding names of 1 to 4 bytes.
+     *
+     * @return Name matching given quad, if one exists in the table;
+     *   null if not
+     */
+    public String findName(int q1)
+    {
+        int hash = calcHash(q1);
+        for (Name n = mBuckets[hash & mIndexMask]; n != null; n = n.mNext) {
+            if (n.mHash == hash && n.equals(q1)) {
+                return n.mName;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method for finding names of 5 to 8 bytes.
+     */
+    public String findName(int q1, int q2)
+    {
+        int hash = calcHash(q1, q2);
+        for (Name n = mBuckets[hash & mIndexMask]; n != null; n = n.mNext) {
+            if (n.mHash == hash && n.equals(q1, q2)) {
+                return n.mName;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method for finding names of any length.
+     *
+     * @param quads Quads of the name; only first <code>qlen</code>
+     *   entries are used
+     */
+    public String findName(int[] quads, int qlen)
+    {
+        if (qlen < 3) {
+            return (qlen == 1) ? findName(quads[0]) : findName(quads[0], quads[1]);
+        }
+        int hash = calcHash(quads, qlen);
+        for (Name n = mBuckets[hash & mIndexMask]; n != null; n = n.mNext) {
+            if (n.mHash == hash && n.equals(quads, qlen)) {
+                return n.mName;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Convenience method for finding name that is contained in given
+     * byte buffer as UTF-8 encoded bytes.
+     */
+    public String findName(byte[] buf, int start, int len)
+    {
+        int[] quads = quadBuffer(len);
+        return findName(quads, calcQuads(buf, start, len, quads));
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Public API, adding names
+    ////////////////////////////////////////
+     */
+
+    /**
+     * Method for adding a name; caller has decoded the name, and packed
+     * its bytes into quads.
+     *
+     * @return Canonical instance of the name (intern()ed, if table was
+     *   configured to intern names)
+     */
+    public String addName(String name, int[] quads, int qlen)
+    {
+        if (mParent == null) {
+            throw new IllegalStateException("Can not add names to root tables");
+        }
+        if (mInternNames) {
+            name = name.intern();
+        }
+        int hash;
+        if (qlen < 3) {
+            hash = (qlen == 1) ? calcHash(quads[0]) : calcHash(quads[0], quads[1]);
+        } else {
+            hash = calcHash(quads, qlen);
+        }
+        if (mSize >= mSizeThreshold && mBuckets.length < MAX_TABLE_SIZE) {
+            rehash();
+        } else if (mShared) {
+            mBuckets = Arrays.copyOf(mBuckets, mBuckets.length);
+            mShared = false;
+        }
+        int ix = hash & mIndexMask;
+        mBuckets[ix] = new Name(name, hash, Arrays.copyOf(quads, qlen), mBuckets[ix]);
+        ++mSize;
+        mDirty = true;
+        return name;
+    }
+
+    /**
+     * Convenience method for adding a name that is contained in given
+     * byte buffer as UTF-8 encoded bytes; or, if the name is already
+     * in the table, just returning it.
+     */
+    public String addName(byte[] buf, int start, int len)
+    {
+        int[] quads = quadBuffer(len);
+        int qlen = calcQuads(buf, start, len, quads);
+        String name = findName(quads, qlen);
+        if (name == null) {
+            name = addName(new String(buf, start, len, UTF8), quads, qlen);
+        }
+        return name;
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Public API, hashing
+    ////////////////////////////////////////
+     */
+
+    /**
+     * Method for packing given bytes into quads
+     *
+     * @param quads Array to pack bytes into; has to have room for
+     *   at least <code>(len + 3) / 4</code> quads
+     *
+     * @return Number of quads
+     */
+    public static int calcQuads(byte[] buf, int start, int len, int[] quads)
+    {
+        int qlen = 0;
+        int end = start + len;
+        int ptr = start;
+        for (int last = end - 4; ptr <= last; ptr += 4) {
+            quads[qlen++] = (buf[ptr] << 24) | ((buf[ptr+1] & 0xFF) << 16)
+                | ((buf[ptr+2] & 0xFF) << 8) | (buf[ptr+3] & 0xFF);
+        }
+        if (ptr < end) {
+            int q = buf[ptr++] & 0xFF;
+            while (ptr < end) {
+                q = (q << 8) | (buf[ptr++] & 0xFF);
+            }
+            quads[qlen++] = q;
+        }
+        return qlen;
+    }
+
+    public int calcHash(int q1)
+    {
+        int hash = q1 ^ mSeed;
+        hash += (hash >>> 16);
+        hash ^= (hash << 3);
+        hash += (hash >>> 12);
+        return hash;
+    }
+
+    public int calcHash(int q1, int q2)
+    {
+        int hash = q1;
+        hash += (hash >>> 15);
+        hash ^= (hash >>> 9);
+        hash += (q2 * MULT);
+        hash ^= mSeed;
+        hash += (hash >>> 16);
+        hash ^= (hash >>> 4);
+        hash += (hash << 3);
+        return hash;
+    }
+
+    /**
+     * Hash calculation for names of 3 or more quads.
+     */
+    public int calcHash(int[] quads, int qlen)
+    {
+        int hash = quads[0] ^ mSeed;
+        hash += (hash >>> 9);
+        hash += quads[1];
+        hash += (hash >>> 15);
+        hash *= MULT;
+        hash ^= quads[2];
+        hash += (hash >>> 4);
+        for (int i = 3; i < qlen; ++i) {
+            int next = quads[i];
+            hash += (next ^ (next >> 21));
+        }
+        hash *= MULT2;
+        hash += (hash >>> 19);
+        hash ^= (hash << 5);
+        return hash;
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Internal methods
+    ////////////////////////////////////////
+     */
+
+    private int[] quadBuffer(int byteLen)
+    {
+        int needed = (byteLen + 3) >> 2;
+        if (mQuadBuffer == null || mQuadBuffer.length < needed) {
+            mQuadBuffer = new int[Math.max(needed, 16)];
+        }
+        return mQuadBuffer;
+    }
+
+    private void rehash()
+    {
+        Name[] old = mBuckets;
+        int newSize = old.length << 1;
+        mBuckets = new Name[newSize];
+        mIndexMask = newSize - 1;
+        mSizeThreshold = (newSize >> 2) * 3;
+        mShared = false;
+        // Entries are immutable (may be shared), so need to re-create
+        for (int i = 0; i < old.length; ++i) {
+            for (Name n = old[i]; n != null; n = n.mNext) {
+                int ix = n.mHash & mIndexMask;
+                mBuckets[ix] = new Name(n.mName, n.mHash, n.mQuads, mBuckets[ix]);
+            }
+        }
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Helper classes
+    ////////////////////////////////////////
+     */
+
+    /**
+     * Immutable container for contents shared via root table
+     */
+    final static class TableInfo
+    {
+        final Name[] mBuckets;
+
+        final int mSize;
+
+        TableInfo(Name[] buckets, int size)
+        {
+            mBuckets = buckets;
+            mSize = size;
+        }
+
+        static TableInfo createEmpty(int size) {
+            return new TableInfo(new Name[size], 0);
+        }
+    }
+
+    /**
+     * Immutable entry of the table; also acts as a node in the collision
+     * chain.
+     */
+    final static class Name
+    {
+        final String mName;
+
+        final int mHash;
+
+        final int[] mQuads;
+
+        final Name mNext;
+
+        Name(String name, int hash, int[] quads, Name next)
+        {
+            mName = name;
+            mHash = hash;
+            mQuads = quads;
+            mNext = next;
+        }
+
+        boolean equals(int q1) {
+            return (mQuads.length == 1) && (mQuads[0] == q1);
+        }
+
+        boolean equals(int q1, int q2) {
+            return (mQuads.length == 2) && (mQuads[0] == q1) && (mQuads[1] == q2);
+        }
+
+        boolean equals(int[] quads, int qlen)
+        {
+            if (mQuads.length != qlen) {
+                return false;
+            }
+            for (int i = 0; i < qlen; ++i) {
+                if (mQuads[i] != quads[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.ctc.wstx.util;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -10,32 +11,60 @@ import java.util.Map;
  * This is usually used by improving intern()ing of things like namespace
  * URIs.
  *<p>
- * Note: that this class extends {@link LinkedHashMap} is an implementation
- * detail -- no code should ever directly call Map methods.
+ * Since the shared instance is used concurrently by all readers, entries
+ * are divided into a fixed number of stripes (selected by hash code),
+ * each guarded by its own lock, to reduce contention. Each stripe is
+ * bounded, and evicts its least recently used entry when full, so that
+ * frequently seen URIs stay cached even if there are lots of rarely
+ * used ones.
+ *<p>
+ * Number of hits, misses and evictions is tracked (per stripe, under
+ * the same lock as accesses) to help in sizing the cache.
+ *<p>
+ * Maximum size is divided between stripes as evenly as possible, so
+ * that the total never exceeds it; this does mean that with maximum
+ * sizes below the number of stripes (16), some stripes can hold no
+ * entries, and Strings that map to them are never cached.
+ *<p>
+ * Note: there is no factory property for the maximum size, since the
+ * shared instance is used by all readers of all factories; changing it
+ * via one factory would affect the others. Applications that need to
+ * tune it can call {@link #setMaxSize} on the shared instance.
  */
-@SuppressWarnings("serial")
-public final class InternCache extends LinkedHashMap<String,String>
+public final class InternCache
 {
     /**
-     * Let's create cache big enough to usually have enough space for
-     * all entries... (assuming NS URIs only)
+     * Let's use enough stripes to make contention unlikely even with
+     * plenty of concurrent readers; must be a power of two.
      */
-    private final static int DEFAULT_SIZE = 64;
+    private final static int STRIPE_COUNT = 16;
 
     /**
-     * Let's limit to hash area size of 1024.
+     * Default maximum number of entries; enough for typical namespace
+     * URI usage, while limiting memory usage for [WSTX-237].
      */
-    private final static int MAX_SIZE = 660;
+    public final static int DEFAULT_MAX_SIZE = 1024;
 
-    private final static InternCache sInstance = new InternCache();
+    private final static InternCache sInstance = new InternCache(DEFAULT_MAX_SIZE);
 
-    private InternCache() {
-        /* Let's also try to seriously minimize collisions... since
-         * collisions are likely to be more costly here, with longer
-         * Strings; so let's use 2/3 ratio (67%) instead of default
-         * (75%)
-         */
-        super(DEFAULT_SIZE, 0.6666f, false);
+    private final Stripe[] mStripes;
+
+    private volatile int mMaxSize;
+
+    /**
+     * Constructor for creating an instance separate from the shared one;
+     * usually {@link #getInstance} is used instead.
+     *
+     * @param maxSize Maximum number of entries to cache
+     */
+    public InternCache(int maxSize)
+    {
+        verifyMaxSize(maxSize);
+        mMaxSize = maxSize;
+        mStripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; ++i) {
+            mStripes[i] = new Stripe(stripeSize(maxSize, i));
+        }
     }
 
     public static InternCache getInstance() {
@@ -44,27 +73,187 @@ public final class InternCache extends LinkedHashMap<String,String>
 
     public String intern(String input)
     {
+        Stripe stripe = stripeFor(input);
         String result;
 
         /* Let's split sync block to help in edge cases like
          * [WSTX-220]
          */
-        synchronized (this) {
-            result = get(input);
-        }
-        if (result == null) {
-            result = input.intern();
-            synchronized (this) {
-                put(result, result);
+        synchronized (stripe) {
+            result = stripe.get(input);
+            if (result != null) {
+                ++stripe.mHits;
+                return result;
             }
+            ++stripe.mMisses;
+        }
+        result = input.intern();
+        synchronized (stripe) {
+            stripe.put(result, result);
         }
         return result;
     }
 
-    // We will force maximum size here (for [WSTX-237])
-    @Override protected boolean removeEldestEntry(Map.Entry<String,String> eldest)
+    /*
+    ///////////////////////////////////////////////////
+    // Configuration, statistics
+    ///////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for changing maximum number of entries cached; if new
+     * maximum is lower than current size, excess entries are evicted.
+     */
+    public void setMaxSize(int maxSize)
     {
-        return size() > MAX_SIZE;
+        verifyMaxSize(maxSize);
+        mMaxSize = maxSize;
+        for (int i = 0; i < STRIPE_COUNT; ++i) {
+            Stripe stripe = mStripes[i];
+            synchronized (stripe) {
+                stripe.mMaxSize = stripeSize(maxSize, i);
+                stripe.trim();
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * @return Number of entries currently cached
+     */
+    public int size()
+    {
+        int total = 0;
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                total += stripe.size();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return Number of calls to {@link #intern} that found the String
+     *   in the cache
+     */
+    public long getHitCount()
+    {
+        long total = 0L;
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                total += stripe.mHits;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return Number of calls to {@link #intern} that did not find the
+     *   String in the cache
+     */
+    public long getMissCount()
+    {
+        long total = 0L;
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                total += stripe.mMisses;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return Number of entries removed to make room for new ones
+     */
+    public long getEvictionCount()
+    {
+        long total = 0L;
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                total += stripe.mEvictions;
+            }
+        }
+        return total;
     }
-}
 
+    /*
+    ///////////////////////////////////////////////////
+    // Internal methods
+    ///////////////////////////////////////////////////
+     */
+
+    private Stripe stripeFor(String input)
+    {
+        int hash = input.hashCode();
+        // only lowest bits are used, so let's mix in higher ones:
+        hash ^= (hash >>> 16);
+        return mStripes[hash & (STRIPE_COUNT - 1)];
+    }
+
+    private static void verifyMaxSize(int maxSize)
+    {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Illegal maximum size ("+maxSize+"): has to be positive");
+        }
+    }
+
+    /**
+     * @return Maximum number of entries for the stripe with given index:
+     *   remainder of the division is given to the first stripes
+     */
+    private static int stripeSize(int maxSize, int index)
+    {
+        int size = maxSize / STRIPE_COUNT;
+        if (index < (maxSize % STRIPE_COUNT)) {
+            ++size;
+        }
+        return size;
+    }
+
+    /**
+     * Bounded LRU map used for a single stripe; all access is to be
+     * synchronized on the instance.
+     */
+    @SuppressWarnings("serial")
+    final static class Stripe extends LinkedHashMap<String,String>
+    {
+        int mMaxSize;
+
+        long mHits, mMisses, mEvictions;
+
+        Stripe(int maxSize)
+        {
+            /* Let's also try to seriously minimize collisions... since
+             * collisions are likely to be more costly here, with longer
+             * Strings; so let's use 2/3 ratio (67%) instead of default
+             * (75%). And access order, to evict least recently used
+             * entries.
+             */
+            super(Math.min(maxSize, 16), 0.6666f, true);
+            mMaxSize = maxSize;
+        }
+
+        void trim()
+        {
+            Iterator<String> it = keySet().iterator();
+            while (size() > mMaxSize) {
+                it.next();
+                it.remove();
+                ++mEvictions;
+            }
+        }
+
+        // We will force maximum size here (for [WSTX-237])
+        @Override protected boolean removeEldestEntry(Map.Entry<String,String> eldest)
+        {
+            if (size() > mMaxSize) {
+                ++mEvictions;
+                return true;
+            }
+            return false;
+        }
+    }
+}
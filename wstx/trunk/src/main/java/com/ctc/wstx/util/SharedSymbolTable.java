@@ -0,0 +1,169 @@
+/* Woodstox XML processor
+ *
+ * Copyright (c) 2004- Tatu Saloranta, tatu.saloranta@iki.fi
+ *
+ * Licensed under the License specified in the file LICENSE which is
+ * included with the source code.
+ * You may not use this file except in compliance with the License.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ctc.wstx.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Container for the "master" symbol table shared by all readers created
+ * by a factory, designed to be accessed concurrently without locking.
+ *<p>
+ * Instead of a single mutable master {@link SymbolTable} (from which
+ * child instances are created, and into which they are merged, both
+ * under a lock), this class holds a reference to an immutable snapshot
+ * table. Child tables are created from the current snapshot; since
+ * children use copy-on-write, they can look up all symbols known at the
+ * time without copying anything. When a child that has added new symbols
+ * is returned, a new snapshot is created from its contents, and
+ * published using an atomic compare-and-set: if another child was merged
+ * in the meantime, update is simply dropped, just as merging of sibling
+ * tables always has been.
+ *<p>
+ * To prevent unbounded growth (with pathological content, or very long
+ * running processes), table is reset to the initial snapshot once its
+ * size or number of generations exceeds given limits. Similarly, child
+ * tables in which a collision chain reached its maximum length (see
+ * {@link SymbolTable#hasOverflowed}) are never merged, so that content
+ * constructed to cause hash collisions can not degrade performance of
+ * other readers; such cases are counted, however.
+ *
+ * @since 5.0
+ */
+public final class SharedSymbolTable
+{
+    /**
+     * Initial snapshot, to which table gets reset when limits are exceeded
+     */
+    final SymbolTable mInitial;
+
+    final int mMaxSize;
+
+    final int mMaxGenerations;
+
+    /**
+     * Current snapshot; never modified after being published, only
+     * replaced.
+     */
+    final AtomicReference<SymbolTable> mCurrent;
+
+    /**
+     * Number of child tables that were not merged because of too many
+     * hash collisions.
+     */
+    final AtomicLong mOverflows = new AtomicLong();
+
+    /**
+     * @param initial Table to use as the initial snapshot; must not be
+     *   modified by caller after this call
+     * @param maxSize Maximum number of symbols to retain; if a merged
+     *   table has more, table is reset to its initial state
+     * @param maxGenerations Maximum number of merges (more exactly,
+     *   versions) before table is reset to its initial state
+     */
+    public SharedSymbolTable(SymbolTable initial, int maxSize, int maxGenerations)
+    {
+        mInitial = initial;
+        mMaxSize = maxSize;
+        mMaxGenerations = maxGenerations;
+        mCurrent = new AtomicReference<SymbolTable>(initial);
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Public API
+    ///////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for constructing a child table, which contains all symbols
+     * of the current snapshot. Returned instance is not thread-safe;
+     * it is to be used by a single reader, and passed back to
+     * {@link #mergeChild} when done.
+     */
+    public SymbolTable makeChild()
+    {
+        return mCurrent.get().makeSnapshotChild();
+    }
+
+    /**
+     * Method called to publish symbols added to given child table, if
+     * any, so that later children can use them.
+     *
+     * @return True if new symbols were published; false if not (either
+     *   nothing was added, table was not derived from current snapshot,
+     *   or it had too many hash collisions)
+     */
+    public boolean mergeChild(SymbolTable child)
+    {
+        if (child.hasOverflowed()) {
+            mOverflows.incrementAndGet();
+            return false;
+        }
+        SymbolTable curr = mCurrent.get();
+        /* Let's only add if table was direct descendant; this prevents
+         * siblings from keeping overwriting settings (multiple direct
+         * children have additional symbols added)
+         */
+        if (!child.isDirty() || !child.isDirectChildOf(curr)) {
+            return false;
+        }
+        SymbolTable next;
+        if (child.size() > mMaxSize || child.version() > mMaxGenerations) {
+            // If too big, we'll reset from bare defaults
+            next = mInitial;
+        } else {
+            if (child.size() <= curr.size()) { // nothing to add
+                return false;
+            }
+            next = child.makeSnapshot();
+        }
+        return mCurrent.compareAndSet(curr, next);
+    }
+
+    /**
+     * Method that can be used to ensure that specified symbol is
+     * contained in the shared table.
+     *
+     * @return Canonical instance of the symbol
+     */
+    public String addSymbol(String symbol)
+    {
+        while (true) {
+            SymbolTable child = makeChild();
+            String result = child.findSymbol(symbol);
+            // Either already there, successfully published, or never will be?
+            if (!child.isDirty() || mergeChild(child) || child.hasOverflowed()) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return Current snapshot; must not be modified by caller
+     */
+    public SymbolTable getSnapshot() {
+        return mCurrent.get();
+    }
+
+    /**
+     * @return Number of child tables that were not merged because a
+     *   collision chain reached its maximum length
+     */
+    public long getOverflowCount() {
+        return mOverflows.get();
+    }
+}
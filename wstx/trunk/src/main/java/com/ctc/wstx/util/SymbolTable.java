@@ -68,6 +68,15 @@ public class SymbolTable {
 
     protected static final String EMPTY_STRING = "";
 
+    /**
+     * Maximum length of a collision chain (not counting the primary
+     * entry): with well-behaved content chains are very short, so longer
+     * chains indicate content constructed to cause collisions. When
+     * reached, no more symbols are added to the chain (see
+     * {@link #hasOverflowed}).
+     */
+    public static final int MAX_COLL_CHAIN_LENGTH = 100;
+
     /*
     ////////////////////////////////////////
     // Configuration:
@@ -126,6 +135,13 @@ public class SymbolTable {
      */
     protected int mIndexMask;
 
+    /**
+     * Seed mixed in to hash codes when calculating index of a symbol,
+     * so that distribution of symbols is not predictable; shared by
+     * tables derived from the same master instance.
+     */
+    protected int mSeed;
+
     /*
     ////////////////////////////////////////
     // Information about concurrency
@@ -146,6 +162,13 @@ public class SymbolTable {
      */
     protected boolean mDirty;
 
+    /**
+     * Flag that indicates that a collision chain of this instance has
+     * reached its maximum length, and that symbols that would have been
+     * added to it were not.
+     */
+    protected boolean mOverflowed;
+
     /*
     ////////////////////////////////////////
     // Life-cycle:
@@ -230,9 +253,10 @@ public class SymbolTable {
      */
     private SymbolTable(boolean internStrings, String[] symbols,
                         Bucket[] buckets, int size, int sizeThreshold,
-                        int indexMask, int version)
+                        int indexMask, int seed, int version)
     {
         mInternStrings = internStrings;
+        mSeed = seed;
         mSymbols = symbols;
         mBuckets = buckets;
         mSize = size;
@@ -264,6 +288,7 @@ public class SymbolTable {
         final int size;
         final int sizeThreshold;
         final int indexMask;
+        final int seed;
         final int version;
 
         synchronized (this) {      
@@ -273,10 +298,52 @@ public class SymbolTable {
             size = mSize;
             sizeThreshold = mSizeThreshold;
             indexMask = mIndexMask;
+            seed = mSeed;
             version = mThisVersion+1;
         }
         return new SymbolTable(internStrings, symbols, buckets,
-                size, sizeThreshold, indexMask, version);
+                size, sizeThreshold, indexMask, seed, version);
+    }
+
+    /**
+     * Method for creating a child instance that uses given seed for
+     * distributing symbols; since this changes location of symbols,
+     * all symbols are copied to new arrays. Resulting instance is
+     * generally used as a new master instance.
+     *<p>
+     * Note: as with {@link #makeChild}, this instance is not modified.
+     */
+    public SymbolTable makeSeededChild(int seed)
+    {
+        SymbolTable t = makeChild();
+        t.mSeed = seed;
+        t.redistribute(t.mSymbols.length);
+        return t;
+    }
+
+    /**
+     * Unsynchronized variant of {@link #makeChild}, to be called on
+     * snapshot instances that are never modified after construction
+     * (see {@link SharedSymbolTable}).
+     */
+    SymbolTable makeSnapshotChild()
+    {
+        return new SymbolTable(mInternStrings, mSymbols, mBuckets,
+                mSize, mSizeThreshold, mIndexMask, mSeed, mThisVersion+1);
+    }
+
+    /**
+     * Method for constructing an immutable snapshot of contents of this
+     * (child) table, to be used as the parent of further children.
+     * As with {@link #mergeChild}, this instance will make copies of
+     * arrays if it is modified after the call, so that the snapshot
+     * is not changed.
+     */
+    SymbolTable makeSnapshot()
+    {
+        mDirty = false;
+        return new SymbolTable(mInternStrings, mSymbols, mBuckets,
+                mSize, mSizeThreshold, mIndexMask, mSeed, mThisVersion);
     }
 
     /**
@@ -336,6 +403,12 @@ public class SymbolTable {
 
     public boolean isDirty() { return mDirty; }
 
+    /**
+     * @return True if symbols were left out of this table because a
+     *   collision chain got too long; such tables should not be shared
+     */
+    public boolean hasOverflowed() { return mOverflowed; }
+
     public boolean isDirectChildOf(SymbolTable t)
     {
         /* Actually, this doesn't really prove it is a child (would have to
@@ -379,9 +452,9 @@ public class SymbolTable {
             return EMPTY_STRING;
         }
 
-        hash &= mIndexMask;
+        int index = indexFor(hash);
 
-        String sym = mSymbols[hash];
+        String sym = mSymbols[index];
 
         // Optimal case; checking existing primary symbol for hash index:
         if (sym != null) {
@@ -399,22 +472,23 @@ public class SymbolTable {
                 }
             }
             // How about collision bucket?
-            Bucket b = mBuckets[hash >> 1];
+            Bucket b = mBuckets[index >> 1];
             if (b != null) {
                 sym = b.find(buffer, start, len);
                 if (sym != null) {
                     return sym;
                 }
+                if (b.length() >= MAX_COLL_CHAIN_LENGTH) {
+                    return overflow(new String(buffer, start, len));
+                }
             }
         }
 
         // Need to expand?
         if (mSize >= mSizeThreshold) {
             rehash();
-            /* Need to recalc hash; rare occurence (index mask has been
-             * recalculated as part of rehash)
-             */
-            hash = calcHash(buffer, start, len) & mIndexMask;
+            // Need to recalc index; rare occurence (mask has changed)
+            index = indexFor(hash);
         } else if (!mDirty) {
             // Or perhaps we need to do copy-on-write?
             copyArrays();
@@ -427,10 +501,10 @@ public class SymbolTable {
             newSymbol = newSymbol.intern();
         }
         // Ok; do we need to add primary entry, or a bucket?
-        if (mSymbols[hash] == null) {
-            mSymbols[hash] = newSymbol;
+        if (mSymbols[index] == null) {
+            mSymbols[index] = newSymbol;
         } else {
-            int bix = hash >> 1;
+            int bix = index >> 1;
             mBuckets[bix] = new Bucket(newSymbol, mBuckets[bix]);
         }
 
@@ -447,7 +521,7 @@ public class SymbolTable {
         if (len < 1) {
             return EMPTY_STRING;
         }
-        hash &= mIndexMask;
+        hash = indexFor(hash);
 
         String sym = mSymbols[hash];
         // Optimal case; checking existing primary symbol for hash index:
@@ -490,7 +564,8 @@ public class SymbolTable {
             return EMPTY_STRING;
         }
 
-        int index = calcHash(str) & mIndexMask;
+        int hash = calcHash(str);
+        int index = indexFor(hash);
         String sym = mSymbols[index];
 
         // Optimal case; checking existing primary symbol for hash index:
@@ -515,16 +590,17 @@ public class SymbolTable {
                 if (sym != null) {
                     return sym;
                 }
+                if (b.length() >= MAX_COLL_CHAIN_LENGTH) {
+                    return overflow(str);
+                }
             }
         }
 
         // Need to expand?
         if (mSize >= mSizeThreshold) {
             rehash();
-            /* Need to recalc hash; rare occurence (index mask has been
-             * recalculated as part of rehash)
-             */
-            index = calcHash(str) & mIndexMask;
+            // Need to recalc index; rare occurence (mask has changed)
+            index = indexFor(hash);
         } else if (!mDirty) {
             // Or perhaps we need to do copy-on-write?
             copyArrays();
@@ -580,6 +656,34 @@ public class SymbolTable {
     //////////////////////////////////////////////////////////
      */
 
+    /**
+     * Method for calculating index of the primary entry for a symbol
+     * with given hash code: seed is mixed in, and bits shuffled, so that
+     * symbols whose hash codes only differ in higher bits do not
+     * necessarily collide.
+     */
+    private int indexFor(int hash)
+    {
+        hash ^= mSeed;
+        hash ^= (hash >>> 15);
+        hash += (hash << 3);
+        hash ^= (hash >>> 11);
+        return hash & mIndexMask;
+    }
+
+    /**
+     * Method called when a symbol would need to be added to a collision
+     * chain that is already at its maximum length: instead, symbol is
+     * just canonicalized using <code>String.intern()</code> (regardless
+     * of whether interning is enabled, to retain guarantee of equality
+     * comparability), and this instance marked as overflowed.
+     */
+    private String overflow(String str)
+    {
+        mOverflowed = true;
+        return str.intern();
+    }
+
     /**
      * Method called when copy-on-write is needed; generally when first
      * change is made to a derived symbol table.
@@ -603,17 +707,29 @@ public class SymbolTable {
      * entries.
      */
     private void rehash()
+    {
+        mSizeThreshold += mSizeThreshold;
+        redistribute(mSymbols.length + mSymbols.length);
+    }
+
+    /**
+     * Method for moving all entries to new arrays of given size, using
+     * current hash seed.
+     */
+    private void redistribute(int newSize)
     {
         int size = mSymbols.length;
-        int newSize = size + size;
         String[] oldSyms = mSymbols;
         Bucket[] oldBuckets = mBuckets;
         mSymbols = new String[newSize];
         mBuckets = new Bucket[newSize >> 1];
-        // Let's update index mask, threshold, now (needed for rehashing)
+        /* New arrays are private to this instance, so no copy-on-write
+         * is needed; and instance is now different from its parent
+         */
+        mDirty = true;
+        // Let's update index mask now (needed for rehashing)
         mIndexMask = newSize - 1;
-        mSizeThreshold += mSizeThreshold;
-        
+
         int count = 0; // let's do sanity check
 
         /* Need to do two loops, unfortunately, since spillover area is
@@ -623,7 +739,7 @@ public class SymbolTable {
             String symbol = oldSyms[i];
             if (symbol != null) {
                 ++count;
-                int index = calcHash(symbol) & mIndexMask;
+                int index = indexFor(calcHash(symbol));
                 if (mSymbols[index] == null) {
                     mSymbols[index] = symbol;
                 } else {
@@ -639,7 +755,7 @@ public class SymbolTable {
             while (b != null) {
                 ++count;
                 String symbol = b.getSymbol();
-                int index = calcHash(symbol) & mIndexMask;
+                int index = indexFor(calcHash(symbol));
                 if (mSymbols[index] == null) {
                     mSymbols[index] = symbol;
                 } else {
@@ -696,15 +812,22 @@ public class SymbolTable {
     static final class Bucket {
         private final String mSymbol;
         private final Bucket mNext;
+        private final int mLength;
 
         public Bucket(String symbol, Bucket next) {
             mSymbol = symbol;
             mNext = next;
+            mLength = (next == null) ? 1 : next.mLength+1;
         }
 
         public String getSymbol() { return mSymbol; }
         public Bucket getNext() { return mNext; }
 
+        /**
+         * @return Number of entries in the chain starting with this entry
+         */
+        public int length() { return mLength; }
+
         public String find(char[] buf, int start, int len) {
             String sym = mSymbol;
             Bucket b = mNext;
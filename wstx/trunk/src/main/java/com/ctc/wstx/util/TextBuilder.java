@@ -91,10 +91,12 @@ public final class TextBuilder
         }
         System.arraycopy(src, start, mBuffer, mBufferLen, len);
         mBufferLen += len;
+        mResultString = null;
     }
 
     public void setBufferSize(int newSize) {
         mBufferLen = newSize;
+        mResultString = null;
     }
 
     public char[] bufferFull(int needSpaceFor) {
@@ -0,0 +1,154 @@
+package wstxtest.io;
+
+import java.io.*;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+import junit.framework.TestCase;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.api.WstxOutputProperties;
+import com.ctc.wstx.io.SharedBufferRecyclerPool;
+import com.ctc.wstx.io.ThreadLocalBufferRecyclerPool;
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.ctc.wstx.stax.WstxOutputFactory;
+
+/**
+ * Unit tests for verifying buffer recycler pool implementations, and
+ * their configuration via factories.
+ */
+public class TestBufferRecyclerPool extends TestCase
+{
+    public void testSizeClasses()
+    {
+        SharedBufferRecyclerPool pool = new SharedBufferRecyclerPool(4, 1024 * 1024);
+        char[] c = pool.allocCharBuffer(4000);
+        // rounded up to size class
+        assertEquals(4096, c.length);
+        assertEquals(1L, pool.getMissCount());
+        pool.releaseCharBuffer(c);
+        assertEquals(8192L, pool.getPooledBytes());
+        // any request for that class gets the same buffer
+        assertSame(c, pool.allocCharBuffer(2049));
+        assertEquals(1L, pool.getHitCount());
+        assertEquals(0L, pool.getPooledBytes());
+
+        // but not requests for bigger buffers
+        pool.releaseCharBuffer(c);
+        assertNotSame(c, pool.allocCharBuffer(4097));
+
+        // Byte buffers are kept separate
+        byte[] b = pool.allocByteBuffer(10);
+        assertEquals(64, b.length);
+        pool.releaseByteBuffer(b);
+        assertSame(b, pool.allocByteBuffer(64));
+
+        // Odd-sized buffers go to the class below
+        pool.releaseByteBuffer(new byte[100]);
+        assertEquals(100, pool.allocByteBuffer(64).length);
+    }
+
+    public void testLimits()
+    {
+        SharedBufferRecyclerPool pool = new SharedBufferRecyclerPool(2, 10000);
+        pool.releaseByteBuffer(new byte[4096]);
+        pool.releaseByteBuffer(new byte[4096]);
+        assertEquals(8192L, pool.getPooledBytes());
+        // memory cap
+        pool.releaseByteBuffer(new byte[4096]);
+        assertEquals(8192L, pool.getPooledBytes());
+        assertEquals(1L, pool.getDropCount());
+        // too small, too big
+        pool.releaseByteBuffer(new byte[10]);
+        pool.releaseCharBuffer(new char[4 * 1024 * 1024]);
+        assertEquals(3L, pool.getDropCount());
+        // slots
+        pool.releaseByteBuffer(new byte[64]);
+        pool.releaseByteBuffer(new byte[64]);
+        pool.releaseByteBuffer(new byte[64]);
+        assertEquals(4L, pool.getDropCount());
+
+        // Buffer released again while still pooled must not be pooled twice
+        pool = new SharedBufferRecyclerPool(4, 10000);
+        byte[] b = new byte[64];
+        pool.releaseByteBuffer(b);
+        pool.releaseByteBuffer(b);
+        assertSame(b, pool.allocByteBuffer(64));
+        assertNotSame(b, pool.allocByteBuffer(64));
+    }
+
+    public void testConcurrent() throws Exception
+    {
+        final SharedBufferRecyclerPool pool = new SharedBufferRecyclerPool(8, 1024 * 1024);
+        final ArrayList<Throwable> problems = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; ++t) {
+            final byte marker = (byte) t;
+            threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 10000; ++i) {
+                                byte[] b = pool.allocByteBuffer(1000);
+                                Arrays.fill(b, marker);
+                                Thread.yield();
+                                // nobody else may have used it meanwhile
+                                for (byte x : b) {
+                                    assertEquals(marker, x);
+                                }
+                                pool.releaseByteBuffer(b);
+                            }
+                        } catch (Throwable e) {
+                            synchronized (problems) {
+                                problems.add(e);
+                            }
+                        }
+                    }
+                };
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(Collections.emptyList(), problems);
+        assertEquals(80000L, pool.getHitCount() + pool.getMissCount());
+        assertTrue(pool.getHitCount() > 0L);
+    }
+
+    public void testFactoryConfig() throws Exception
+    {
+        WstxInputFactory f = new WstxInputFactory();
+        assertTrue(f.getProperty(WstxInputProperties.P_BUFFER_RECYCLER_POOL) instanceof ThreadLocalBufferRecyclerPool);
+        SharedBufferRecyclerPool pool = new SharedBufferRecyclerPool();
+        f.setProperty(WstxInputProperties.P_BUFFER_RECYCLER_POOL, pool);
+        assertSame(pool, f.getProperty(WstxInputProperties.P_BUFFER_RECYCLER_POOL));
+
+        byte[] doc = "<root><a>text</a><b attr='x'>more text</b></root>".getBytes("UTF-8");
+        for (int i = 0; i < 3; ++i) {
+            XMLStreamReader sr = f.createXMLStreamReader(new ByteArrayInputStream(doc));
+            while (sr.hasNext()) {
+                sr.next();
+            }
+            sr.close();
+        }
+        assertTrue(pool.getMissCount() > 0L);
+        assertTrue(pool.getHitCount() > 0L);
+
+        WstxOutputFactory of = new WstxOutputFactory();
+        SharedBufferRecyclerPool outPool = new SharedBufferRecyclerPool();
+        of.setProperty(WstxOutputProperties.P_BUFFER_RECYCLER_POOL, outPool);
+        for (int i = 0; i < 3; ++i) {
+            StringWriter w = new StringWriter();
+            XMLStreamWriter sw = of.createXMLStreamWriter(w);
+            sw.writeStartElement("root");
+            sw.writeCharacters("text");
+            sw.writeEndElement();
+            sw.close();
+            assertEquals("<root>text</root>", w.toString());
+        }
+        assertTrue(outPool.getHitCount() > 0L);
+    }
+}
@@ -0,0 +1,113 @@
+package wstxtest.io;
+
+import java.io.*;
+
+import junit.framework.TestCase;
+
+import com.ctc.wstx.api.ReaderConfig;
+import com.ctc.wstx.cfg.XmlConsts;
+import com.ctc.wstx.io.UTF16Reader;
+
+/**
+ * Unit tests for verifying that the native UTF-16 decoder works as
+ * expected, including handling of surrogate pairs split across buffer
+ * boundaries.
+ */
+public class TestUTF16Reader extends TestCase
+{
+    final static String TEXT = "abc \u00E9t\u00E9 \u20AC \uD83D\uDE00 xyz \uD800\uDC00!";
+
+    public void testBothByteOrders() throws IOException
+    {
+        // Use tiny buffer sizes to get all kinds of splits
+        for (int bufLen = 4; bufLen < 12; ++bufLen) {
+            for (int charLen = 1; charLen < 4; ++charLen) {
+                assertEquals(TEXT, decode(reader(TEXT.getBytes("UTF-16BE"), bufLen, true), charLen));
+                assertEquals(TEXT, decode(reader(TEXT.getBytes("UTF-16LE"), bufLen, false), charLen));
+            }
+        }
+    }
+
+    public void testInvalidSurrogates() throws IOException
+    {
+        verifyInvalid("ab\uDC00c");
+        verifyInvalid("ab\uD800c");
+        verifyInvalid("ab\uD800");
+        verifyInvalid("\uFFFEab");
+    }
+
+    public void testXml11Linefeeds() throws IOException
+    {
+        UTF16Reader r = reader("a\u0085b\u2028c".getBytes("UTF-16BE"), 8, true);
+        r.setXmlCompliancy(XmlConsts.XML_V_11);
+        assertEquals("a\nb\nc", decode(r, 10));
+
+        // LSEP is a linefeed on its own: preceding \r is one as well
+        r = reader("a\r\u2028b".getBytes("UTF-16BE"), 8, true);
+        r.setXmlCompliancy(XmlConsts.XML_V_11);
+        assertEquals("a\n\nb", decode(r, 10));
+
+        r = reader("a\u0090b".getBytes("UTF-16BE"), 8, true);
+        r.setXmlCompliancy(XmlConsts.XML_V_11);
+        try {
+            decode(r, 10);
+            fail("Expected an exception for ctrl char in xml 1.1 mode");
+        } catch (CharConversionException e) {
+            ; // good
+        }
+    }
+
+    public void testOddByteCount() throws IOException
+    {
+        byte[] data = "abc".getBytes("UTF-16BE");
+        byte[] odd = new byte[data.length+1];
+        System.arraycopy(data, 0, odd, 0, data.length);
+        try {
+            decode(reader(odd, 16, true), 10);
+            fail("Expected an exception for truncated char");
+        } catch (CharConversionException e) {
+            ; // good
+        }
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////
+     */
+
+    private UTF16Reader reader(byte[] data, int bufLen, boolean bigEndian)
+    {
+        return new UTF16Reader(ReaderConfig.createFullDefaults(), new ByteArrayInputStream(data),
+                               new byte[bufLen], 0, 0, true, bigEndian);
+    }
+
+    private void verifyInvalid(String str) throws IOException
+    {
+        // Need to encode manually, since JDK would replace invalid chars
+        byte[] data = new byte[str.length() * 2];
+        for (int i = 0; i < str.length(); ++i) {
+            char c = str.charAt(i);
+            data[i+i] = (byte) (c >> 8);
+            data[i+i+1] = (byte) c;
+        }
+        try {
+            decode(reader(data, 6, true), 10);
+            fail("Expected an exception for invalid content");
+        } catch (CharConversionException e) {
+            ; // good
+        }
+    }
+
+    private String decode(Reader r, int charLen) throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[charLen];
+        int count;
+        while ((count = r.read(buf, 0, buf.length)) > 0) {
+            sb.append(buf, 0, count);
+        }
+        r.close();
+        return sb.toString();
+    }
+}
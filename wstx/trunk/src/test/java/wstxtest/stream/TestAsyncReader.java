@@ -0,0 +1,233 @@
+package wstxtest.stream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.*;
+
+import com.ctc.wstx.sr.AsyncStreamReader;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Unit tests for verifying that the non-blocking feeder-based reader
+ * produces exactly same events as the regular blocking reader, regardless
+ * of how content is split into chunks.
+ */
+public class TestAsyncReader
+    extends BaseStreamTest
+{
+    final static String DOC =
+        "<?xml version='1.0' encoding='UTF-8'?>\n"
+        +"<!DOCTYPE root [\n"
+        +"  <!ENTITY ent 'expanded > value'>\n"
+        +"  <!-- comment with ] and > in it -->\n"
+        +"  <!ATTLIST leaf b CDATA 'default'>\n"
+        +"]>\n"
+        +"<?proc instr?>\n"
+        +"<root xmlns='urn:x' attr=\"a > b\">\n"
+        +"  <leaf a='1'>text &amp; &ent; \u00E9t\u00E9 \uD83D\uDE00</leaf>\n"
+        +"  <!-- comment -->\n"
+        +"  <leaf><![CDATA[cdata <stuff> ]] ]]>after cdata</leaf>\n"
+        +"  <empty attr='/>'/>\r\n"
+        +"  <ns:elem xmlns:ns='urn:y' ns:attr='x'>\u20AC\u20AC\u20AC</ns:elem>\n"
+        +"</root>\n"
+        +"<!-- trailing -->\n";
+
+    public void testChunkedCoalescing() throws Exception
+    {
+        _testChunked(DOC, true);
+    }
+
+    public void testChunkedNonCoalescing() throws Exception
+    {
+        _testChunked(DOC, false);
+    }
+
+    public void testNoXmlDecl() throws Exception
+    {
+        _testChunked("<a>x<b/>y</a>", false);
+        _testChunked("\uFEFF<root><!-- c --><x a='&lt;&gt;'>&#65;&#x263A;</x><?pi?></root>", true);
+    }
+
+    public void testIncomplete() throws Exception
+    {
+        AsyncStreamReader sr = getWstxInputFactory().createAsyncXMLStreamReader();
+        assertEquals(AsyncStreamReader.EVENT_INCOMPLETE, sr.next());
+        assertTrue(sr.needMoreInput());
+        feed(sr, "<?xml version='1.0'?><root><a>text");
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("root", sr.getLocalName());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("a", sr.getLocalName());
+        // text not yet complete
+        assertEquals(AsyncStreamReader.EVENT_INCOMPLETE, sr.next());
+        assertEquals(AsyncStreamReader.EVENT_INCOMPLETE, sr.getEventType());
+        feed(sr, " more</a");
+        assertEquals(AsyncStreamReader.EVENT_INCOMPLETE, sr.next());
+        feed(sr, "></root>");
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("text more", sr.getText());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        // can not know if there's more epilog content, until told
+        assertEquals(AsyncStreamReader.EVENT_INCOMPLETE, sr.next());
+        sr.endOfInput();
+        assertTokenType(END_DOCUMENT, sr.next());
+        sr.close();
+    }
+
+    public void testUtf16Buffered() throws Exception
+    {
+        String doc = "<root><a>text</a></root>";
+        byte[] data = doc.getBytes("UTF-16");
+        AsyncStreamReader sr = getWstxInputFactory().createAsyncXMLStreamReader();
+        sr.feedInput(data, 0, data.length);
+        // can not parse incrementally, need all input
+        assertEquals(AsyncStreamReader.EVENT_INCOMPLETE, sr.next());
+        sr.endOfInput();
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("root", sr.getLocalName());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("text", sr.getText());
+        sr.close();
+    }
+
+    public void testCompleteWithoutEndOfInput() throws Exception
+    {
+        // Content decoded by JDK decoder (no byte offsets)
+        _testCompleteWithoutEndOfInput("<?xml version='1.0' encoding='GBK'?>"
+                +"<root><a>\u4e2d\u6587</a><b attr='\u6587'/></root>", "GBK");
+        // Entity expanded at the end of content fed
+        _testCompleteWithoutEndOfInput("<!DOCTYPE root [<!ENTITY ent 'x<a>y</a>z'>]>"
+                +"<root><b/>&ent;</root>", "UTF-8");
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////
+     */
+
+    /**
+     * Helper method for verifying that all events (except for END_DOCUMENT)
+     * are returned once complete document has been fed, without having
+     * to indicate end of input.
+     */
+    private void _testCompleteWithoutEndOfInput(String doc, String enc) throws Exception
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        setNamespaceAware(f, true);
+        setCoalescing(f, false);
+        byte[] data = doc.getBytes(enc);
+        String exp = collectEvents((XMLStreamReader2) f.createXMLStreamReader(new ByteArrayInputStream(data)));
+
+        AsyncStreamReader sr = f.createAsyncXMLStreamReader();
+        sr.feedInput(data, 0, data.length);
+        StringBuilder sb = new StringBuilder();
+        int type;
+        while ((type = sr.next()) != AsyncStreamReader.EVENT_INCOMPLETE) {
+            appendEvent(sr, type, sb);
+        }
+        // Only END_DOCUMENT should be missing
+        sr.endOfInput();
+        assertTokenType(END_DOCUMENT, sr.next());
+        appendEvent(sr, END_DOCUMENT, sb);
+        assertEquals(exp, sb.toString());
+        sr.close();
+    }
+
+    private void _testChunked(String doc, boolean coalescing) throws Exception
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.valueOf(coalescing));
+        setNamespaceAware(f, true);
+        byte[] data = doc.getBytes("UTF-8");
+
+        String exp = collectEvents((XMLStreamReader2) f.createXMLStreamReader(new ByteArrayInputStream(data)));
+        int[] chunks = { 1, 2, 3, 7, 19, 100, data.length };
+        for (int i = 0; i < chunks.length; ++i) {
+            AsyncStreamReader sr = f.createAsyncXMLStreamReader();
+            String act = collectAsync(sr, data, chunks[i]);
+            assertEquals("Events with chunk size "+chunks[i], exp, act);
+        }
+    }
+
+    private String collectAsync(AsyncStreamReader sr, byte[] data, int chunk)
+        throws XMLStreamException
+    {
+        StringBuilder sb = new StringBuilder();
+        int ptr = 0;
+        while (true) {
+            int type = sr.next();
+            if (type == AsyncStreamReader.EVENT_INCOMPLETE) {
+                if (ptr >= data.length) {
+                    sr.endOfInput();
+                } else {
+                    int len = Math.min(chunk, data.length - ptr);
+                    sr.feedInput(data, ptr, len);
+                    ptr += len;
+                }
+                continue;
+            }
+            appendEvent(sr, type, sb);
+            if (type == END_DOCUMENT) {
+                break;
+            }
+        }
+        sr.close();
+        return sb.toString();
+    }
+
+    private String collectEvents(XMLStreamReader2 sr)
+        throws XMLStreamException
+    {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int type = sr.next();
+            appendEvent(sr, type, sb);
+            if (type == END_DOCUMENT) {
+                break;
+            }
+        }
+        sr.close();
+        return sb.toString();
+    }
+
+    private void appendEvent(XMLStreamReader sr, int type, StringBuilder sb)
+    {
+        switch (type) {
+        case START_ELEMENT:
+            sb.append("SE:").append(sr.getName()).append('{');
+            for (int i = 0, len = sr.getAttributeCount(); i < len; ++i) {
+                sb.append(sr.getAttributeName(i)).append('=').append(sr.getAttributeValue(i)).append(';');
+            }
+            sb.append('}');
+            break;
+        case END_ELEMENT:
+            sb.append("EE:").append(sr.getName());
+            break;
+        case CHARACTERS:
+        case CDATA:
+        case SPACE:
+        case COMMENT:
+        case DTD:
+            sb.append(tokenTypeDesc(type)).append(':').append(sr.getText());
+            break;
+        case PROCESSING_INSTRUCTION:
+            sb.append("PI:").append(sr.getPITarget()).append('/').append(sr.getPIData());
+            break;
+        default:
+            sb.append(tokenTypeDesc(type));
+        }
+        sb.append('\n');
+    }
+
+    private void feed(AsyncStreamReader sr, String content)
+        throws Exception
+    {
+        byte[] data = content.getBytes("UTF-8");
+        sr.feedInput(data, 0, data.length);
+    }
+}
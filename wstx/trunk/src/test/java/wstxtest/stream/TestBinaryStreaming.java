@@ -0,0 +1,176 @@
+package wstxtest.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.typed.Base64Variant;
+import org.codehaus.stax2.typed.Base64Variants;
+import org.codehaus.stax2.typed.TypedXMLStreamException;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.sr.TypedStreamReader;
+
+/**
+ * Unit tests for verifying that base64 encoded element content streamed
+ * to an output stream or channel is the same as content accessed as
+ * a byte array, regardless of where input buffer boundaries fall, and
+ * also when content has constructs that need regular text handling.
+ */
+public class TestBinaryStreaming
+    extends BaseStreamTest
+{
+    public void testPlainContent() throws XMLStreamException
+    {
+        Random r = new Random(3);
+        Base64Variant[] variants = {
+            Base64Variants.MIME, Base64Variants.PEM,
+            Base64Variants.MODIFIED_FOR_URL
+        };
+        for (Base64Variant v : variants) {
+            for (int len = 0; len < 30000; len = (len * 3) + 1) {
+                byte[] data = new byte[len];
+                r.nextBytes(data);
+                String doc = "<root>\n<data>"+encode(v, data)+"</data>\n</root>";
+                for (int bufLen = 9; bufLen < 5000; bufLen *= 3) {
+                    String msg = "(variant "+v.getName()+", length "+len+", buffer length "+bufLen+")";
+                    TypedStreamReader sr = getReader(doc, bufLen);
+                    assertTokenType(START_ELEMENT, sr.nextTag());
+                    assertTokenType(START_ELEMENT, sr.nextTag());
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    assertEquals(msg, len, sr.readElementAsBinary(out, v));
+                    assertTrue(msg, Arrays.equals(data, out.toByteArray()));
+                    assertTokenType(END_ELEMENT, sr.getEventType());
+                    assertEquals("data", sr.getLocalName());
+                    assertTokenType(END_ELEMENT, sr.nextTag());
+                    assertEquals("root", sr.getLocalName());
+                    assertTokenType(END_DOCUMENT, sr.next());
+                }
+            }
+        }
+    }
+
+    public void testMixedContent() throws XMLStreamException
+    {
+        // "Woodstox rules!" in pieces
+        String doc = "<root><a>V29vZH<!-- x -->N0b3gg&#x63;nVsZXMh</a>"
+            +"<a><![CDATA[V29vZHN0]]>b3ggcnVsZXMh</a>"
+            +"<a>V29vZHN0<?pi?>b3ggcnVsZXMh</a>"
+            +"<a/><a></a></root>";
+        for (int bufLen = 8; bufLen < 60; bufLen += 3) {
+            TypedStreamReader sr = getReader(doc, bufLen);
+            assertTokenType(START_ELEMENT, sr.nextTag());
+            for (int i = 0; i < 3; ++i) {
+                assertTokenType(START_ELEMENT, sr.nextTag());
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(15L, sr.readElementAsBinary(out));
+                assertEquals("(buffer length "+bufLen+")", "Woodstox rules!", new String(out.toByteArray()));
+                assertTokenType(END_ELEMENT, sr.getEventType());
+            }
+            for (int i = 0; i < 2; ++i) {
+                assertTokenType(START_ELEMENT, sr.nextTag());
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                assertEquals(0L, sr.readElementAsBinary(out));
+                assertEquals(0, out.size());
+                assertTokenType(END_ELEMENT, sr.getEventType());
+            }
+            assertTokenType(END_ELEMENT, sr.nextTag());
+        }
+    }
+
+    public void testChannel() throws XMLStreamException
+    {
+        byte[] data = new byte[20000];
+        new Random(4).nextBytes(data);
+        String doc = "<root>"+encode(Base64Variants.MIME_NO_LINEFEEDS, data)+"</root>";
+        TypedStreamReader sr = getReader(doc, 1000);
+        assertTokenType(START_ELEMENT, sr.next());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(20000L, sr.readElementAsBinary(Channels.newChannel(out)));
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    public void testInvalid() throws XMLStreamException
+    {
+        // Incomplete last quartet
+        TypedStreamReader sr = getReader("<root>V29vZHN0b3g</root>", 4000);
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            sr.readElementAsBinary(new ByteArrayOutputStream());
+            fail("Expected an exception for incomplete content");
+        } catch (TypedXMLStreamException e) { }
+
+        // Illegal character
+        sr = getReader("<root>V29v*HN0</root>", 4000);
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            sr.readElementAsBinary(new ByteArrayOutputStream());
+            fail("Expected an exception for invalid character");
+        } catch (TypedXMLStreamException e) { }
+
+        // Not at START_ELEMENT
+        sr = getReader("<root>V29v</root>", 4000);
+        try {
+            sr.readElementAsBinary(new ByteArrayOutputStream());
+            fail("Expected an exception for wrong state");
+        } catch (IllegalStateException e) { }
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        try {
+            sr.readElementAsBinary(Channels.newChannel(new ByteArrayOutputStream()));
+            fail("Expected an exception for wrong state");
+        } catch (IllegalStateException e) { }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    /**
+     * Helper method for encoding given data, splitting lines at the
+     * maximum line length of the variant, using CRLFs as line feeds.
+     */
+    private String encode(Base64Variant v, byte[] data)
+    {
+        StringBuilder sb = new StringBuilder();
+        char[] quartet = new char[4];
+        int chunksPerLine = v.getMaxLineLength() / 4;
+        int chunks = 0;
+        int ptr = 0;
+        for (; ptr + 3 <= data.length; ptr += 3) {
+            int bits = ((data[ptr] & 0xFF) << 16) | ((data[ptr+1] & 0xFF) << 8) | (data[ptr+2] & 0xFF);
+            sb.append(quartet, 0, v.encodeBase64Chunk(bits, quartet, 0));
+            if (++chunks >= chunksPerLine) {
+                sb.append("\r\n");
+                chunks = 0;
+            }
+        }
+        int left = data.length - ptr;
+        if (left > 0) {
+            int bits = (data[ptr] & 0xFF) << 16;
+            if (left > 1) {
+                bits |= (data[ptr+1] & 0xFF) << 8;
+            }
+            sb.append(quartet, 0, v.encodeBase64Partial(bits, left, quartet, 0));
+        }
+        return sb.toString();
+    }
+
+    private TypedStreamReader getReader(String contents, int bufLen)
+        throws XMLStreamException
+    {
+        XMLInputFactory f = getNewInputFactory();
+        setNamespaceAware(f, true);
+        setCoalescing(f, false);
+        f.setProperty(WstxInputProperties.P_INPUT_BUFFER_LENGTH, Integer.valueOf(bufLen));
+        return (TypedStreamReader) f.createXMLStreamReader(new StringReader(contents));
+    }
+}
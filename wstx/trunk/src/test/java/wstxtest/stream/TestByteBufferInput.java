@@ -0,0 +1,140 @@
+package wstxtest.stream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.*;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.io.MappedFileInputStream;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Unit tests for verifying that {@link ByteBuffer}-based and memory-mapped
+ * file input work as expected.
+ */
+public class TestByteBufferInput
+    extends BaseStreamTest
+{
+    final static String DOC = "<?xml version='1.0' encoding='UTF-8'?>"
+        +"<root attr='\u00E9'>text: \u20AC<leaf /></root>";
+
+    public void testHeapBuffer() throws Exception
+    {
+        byte[] data = DOC.getBytes("UTF-8");
+        // Let's add some padding, to verify position and limit are honored
+        ByteBuffer bb = ByteBuffer.allocate(data.length + 20);
+        bb.position(7);
+        bb.put(data);
+        bb.flip();
+        bb.position(7);
+        _verifyDoc(getWstxInputFactory().createXMLStreamReader(bb));
+        // and should not have changed the position
+        assertEquals(7, bb.position());
+
+        // also, let's try a slice with non-zero array offset
+        ByteBuffer sliced = bb.slice();
+        assertTrue(sliced.arrayOffset() > 0);
+        _verifyDoc(getWstxInputFactory().createXMLStreamReader(sliced));
+    }
+
+    public void testDirectBuffer() throws Exception
+    {
+        byte[] data = DOC.getBytes("UTF-8");
+        ByteBuffer bb = ByteBuffer.allocateDirect(data.length);
+        bb.put(data);
+        bb.flip();
+        _verifyDoc(getWstxInputFactory().createXMLStreamReader(bb));
+        assertEquals(0, bb.position());
+    }
+
+    public void testMappedFile() throws Exception
+    {
+        File f = _writeTempFile(DOC);
+        WstxInputFactory ifact = getWstxInputFactory();
+        ifact.setProperty(WstxInputProperties.P_MEMORY_MAP_FILES, Boolean.TRUE);
+        assertEquals(Boolean.TRUE, ifact.getProperty(WstxInputProperties.P_MEMORY_MAP_FILES));
+        _verifyDoc(ifact.createXMLStreamReader(f));
+        f.delete();
+    }
+
+    /**
+     * Test to verify that remapping of windows works ok; uses a tiny
+     * window to get windows remapped multiple times.
+     */
+    public void testMappedWindows() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<root>");
+        for (int i = 0; i < 500; ++i) {
+            sb.append("<leaf id='").append(i).append("'>\u00E9\u20AC</leaf>");
+        }
+        sb.append("</root>");
+        String doc = sb.toString();
+        File f = _writeTempFile(doc);
+
+        // First: verify raw content
+        InputStream in = new MappedFileInputStream(f, 37);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[100];
+        int count;
+        assertEquals(0L, in.skip(0L));
+        bytes.write(in.read());
+        while ((count = in.read(buf)) > 0) {
+            bytes.write(buf, 0, count);
+        }
+        in.close();
+        assertEquals(doc, new String(bytes.toByteArray(), "UTF-8"));
+
+        // Then parse
+        in = new MappedFileInputStream(f, 37);
+        XMLStreamReader sr = getInputFactory().createXMLStreamReader(in);
+        assertTokenType(START_ELEMENT, sr.next());
+        int leaves = 0;
+        while (sr.next() != END_DOCUMENT) {
+            if (sr.getEventType() == START_ELEMENT) {
+                assertEquals(String.valueOf(leaves), sr.getAttributeValue(0));
+                assertEquals("\u00E9\u20AC", sr.getElementText());
+                ++leaves;
+            }
+        }
+        assertEquals(500, leaves);
+        sr.close();
+        in.close();
+        f.delete();
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////
+     */
+
+    private void _verifyDoc(XMLStreamReader sr)
+        throws XMLStreamException
+    {
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("root", sr.getLocalName());
+        assertEquals("\u00E9", sr.getAttributeValue(0));
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("text: \u20AC", getAndVerifyText(sr));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+        sr.close();
+    }
+
+    private File _writeTempFile(String doc)
+        throws IOException
+    {
+        File f = File.createTempFile("wstx", ".xml");
+        f.deleteOnExit();
+        OutputStream out = new FileOutputStream(f);
+        out.write(doc.getBytes("UTF-8"));
+        out.close();
+        return f;
+    }
+}
@@ -0,0 +1,156 @@
+package wstxtest.stream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.*;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Unit tests for verifying that byte offsets are properly reported
+ * for byte-based input that is decoded by Woodstox' own decoders,
+ * when tracking of byte offsets is enabled.
+ */
+public class TestByteOffsets
+    extends BaseStreamTest
+{
+    final static String CONTENT =
+        "<root attr='\u00E9t\u00E9'>\n"
+        +"<!-- comment: \u20AC\u20AC -->\n"
+        +"<leaf>abc \u00C4\u00D6 \uD83D\uDE00 xyz</leaf>\r\n"
+        +"<?proc \u4E2D\u6587?>"
+        +"<![CDATA[ \u0100\u0101\u0102 ]]>"
+        +"<leaf a='1' b=\"\u00DF\" />text\u2603\n"
+        +"</root>";
+
+    public void testUtf8Offsets() throws Exception
+    {
+        String doc = "<?xml version='1.0' encoding='UTF-8'?>"+buildDoc(50);
+        verifyOffsets(doc, "UTF-8", new byte[0]);
+    }
+
+    public void testUtf8OffsetsWithBOM() throws Exception
+    {
+        String doc = buildDoc(50);
+        verifyOffsets(doc, "UTF-8", new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF });
+    }
+
+    public void testUtf8Xml11Offsets() throws Exception
+    {
+        // NEL and LSEP are converted to linefeeds, but take 2 and 3 bytes
+        String doc = "<?xml version='1.1' encoding='UTF-8'?>"
+            +"<root>"+repeat("<a x='1\u0085'>\u00e9\u2028x\r\u0085y\r\u2028</a>\u0085<!--\u2028-->\n", 80)+"</root>";
+        verifyOffsets(doc, "UTF-8", new byte[0]);
+    }
+
+    public void testLatin1Offsets() throws Exception
+    {
+        String doc = "<?xml version='1.0' encoding='ISO-8859-1'?>"
+            +"<root>"+repeat("<a x='\u00E9\u00E8'>\u00C4\u00D6\u00DC</a>\n", 80)+"</root>";
+        verifyOffsets(doc, "ISO-8859-1", new byte[0]);
+    }
+
+    public void testUtf16Offsets() throws Exception
+    {
+        String doc = "<?xml version='1.0' encoding='UTF-16LE'?>"+buildDoc(20);
+        verifyOffsets(doc, "UTF-16LE", new byte[0]);
+        doc = buildDoc(20);
+        verifyOffsets(doc, "UTF-16BE", new byte[] { (byte) 0xFE, (byte) 0xFF });
+    }
+
+    public void testUtf32Offsets() throws Exception
+    {
+        String doc = "<?xml version='1.0' encoding='UTF-32BE'?>"+buildDoc(20);
+        verifyOffsets(doc, "UTF-32BE", new byte[0]);
+    }
+
+    public void testCharInputOffsets() throws Exception
+    {
+        XMLInputFactory f = getInputFactory();
+        XMLStreamReader2 sr = (XMLStreamReader2) f.createXMLStreamReader(new StringReader("<root />"));
+        assertTokenType(START_ELEMENT, sr.next());
+        LocationInfo li = sr.getLocationInfo();
+        assertEquals(-1L, li.getStartingByteOffset());
+        assertEquals(-1L, li.getEndingByteOffset());
+        sr.close();
+    }
+
+    public void testOffsetsNotTrackedByDefault() throws Exception
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        assertEquals(Boolean.FALSE, f.getProperty(WstxInputProperties.P_TRACK_BYTE_OFFSETS));
+        byte[] data = "<?xml version='1.0' encoding='UTF-8'?><root>\u00e9</root>".getBytes("UTF-8");
+        XMLStreamReader2 sr = (XMLStreamReader2) f.createXMLStreamReader(new ByteArrayInputStream(data));
+        assertTokenType(START_ELEMENT, sr.next());
+        LocationInfo li = sr.getLocationInfo();
+        assertEquals(-1L, li.getStartingByteOffset());
+        assertEquals(-1L, li.getEndingByteOffset());
+        sr.close();
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////
+     */
+
+    private void verifyOffsets(String doc, String enc, byte[] bom)
+        throws Exception
+    {
+        byte[] data = doc.getBytes(enc);
+        byte[] full = new byte[bom.length + data.length];
+        System.arraycopy(bom, 0, full, 0, bom.length);
+        System.arraycopy(data, 0, full, bom.length, data.length);
+
+        // Let's try both default and minimal buffer sizes
+        verifyOffsets(doc, enc, bom.length, full, 4000);
+        verifyOffsets(doc, enc, bom.length, full, 23);
+    }
+
+    private void verifyOffsets(String doc, String enc, int bomLen, byte[] data, int bufLen)
+        throws Exception
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        f.getConfig().setInputBufferLength(bufLen);
+        f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        f.setProperty(WstxInputProperties.P_TRACK_BYTE_OFFSETS, Boolean.TRUE);
+        XMLStreamReader2 sr = (XMLStreamReader2) f.createXMLStreamReader(new ByteArrayInputStream(data));
+        int count = 0;
+
+        while (sr.hasNext()) {
+            int type = sr.next();
+            LocationInfo li = sr.getLocationInfo();
+            long charStart = li.getStartingCharOffset();
+            long exp = bomLen + doc.substring(0, (int) charStart).getBytes(enc).length;
+            assertEquals("Starting byte offset of "+tokenTypeDesc(type)+" (char offset "+charStart+")",
+                         exp, li.getStartingByteOffset());
+            if (type != END_DOCUMENT) {
+                long charEnd = li.getEndingCharOffset();
+                exp = bomLen + doc.substring(0, (int) charEnd).getBytes(enc).length;
+                assertEquals("Ending byte offset of "+tokenTypeDesc(type)+" (char offset "+charEnd+")",
+                             exp, li.getEndingByteOffset());
+            }
+            ++count;
+        }
+        assertTrue(count > 10);
+        sr.close();
+    }
+
+    private String buildDoc(int count)
+    {
+        return "<doc>"+repeat(CONTENT, count)+"</doc>";
+    }
+
+    private String repeat(String str, int count)
+    {
+        StringBuilder sb = new StringBuilder(str.length() * count);
+        while (--count >= 0) {
+            sb.append(str);
+        }
+        return sb.toString();
+    }
+}
@@ -8,6 +8,8 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
+import org.codehaus.stax2.XMLStreamReader2;
+
 import com.ctc.wstx.api.WstxInputProperties;
 
 @SuppressWarnings("resource")
@@ -184,6 +186,60 @@ public class TestCharacterLimits
         }
     }
     
+    public void testLongTypedArray() throws Exception {
+        try {
+            XMLInputFactory factory = getNewInputFactory();
+            factory.setProperty(WstxInputProperties.P_MAX_TEXT_LENGTH, Integer.valueOf(50000));
+            XMLStreamReader2 xmlreader = (XMLStreamReader2) factory.createXMLStreamReader(createRepeatingReader("12 345 "));
+            assertEquals(XMLStreamReader.START_ELEMENT, xmlreader.next());
+            int[] values = new int[100];
+            while (xmlreader.readElementAsIntArray(values, 0, values.length) > 0) {
+            }
+            fail("Should have failed");
+        } catch (XMLStreamException ex) {
+            _verifyTextLimitException(ex);
+        }
+    }
+
+    public void testLongTypedArrayValue() throws Exception {
+        try {
+            XMLInputFactory factory = getNewInputFactory();
+            factory.setProperty(WstxInputProperties.P_MAX_TEXT_LENGTH, Integer.valueOf(50000));
+            XMLStreamReader2 xmlreader = (XMLStreamReader2) factory.createXMLStreamReader(createRepeatingReader("1234567890"));
+            assertEquals(XMLStreamReader.START_ELEMENT, xmlreader.next());
+            long[] values = new long[10];
+            while (xmlreader.readElementAsLongArray(values, 0, values.length) > 0) {
+            }
+            fail("Should have failed");
+        } catch (XMLStreamException ex) {
+            _verifyTextLimitException(ex);
+        }
+    }
+
+    /**
+     * @return Reader for an element with given text content repeated
+     *   without end
+     */
+    private Reader createRepeatingReader(final String content) {
+        return new Reader() {
+            StringReader sreader = new StringReader("<root>");
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                int i = sreader.read(cbuf, off, len);
+                if (i == -1) {
+                    sreader = new StringReader(content);
+                    i = sreader.read(cbuf, off, len);
+                }
+                return i;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+    }
+
     private Reader createLongReader(final String pre, final String post, final boolean ws) {
         final int max = Integer.MAX_VALUE;
         final StringBuffer start = new StringBuffer("<ns:element xmlns:ns=\"http://foo.com\">" + pre);
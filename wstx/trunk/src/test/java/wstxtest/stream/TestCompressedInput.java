@@ -0,0 +1,229 @@
+package wstxtest.stream;
+
+import java.io.*;
+import java.util.zip.*;
+
+import javax.xml.stream.*;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.io.InflatingInputStream;
+import com.ctc.wstx.sr.BasicStreamReader;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Unit tests for verifying handling of compressed (gzip, deflate) input;
+ * see {@link WstxInputProperties#P_INPUT_COMPRESSION}.
+ */
+public class TestCompressedInput
+    extends BaseStreamTest
+{
+    public void testDefault() throws Exception
+    {
+        assertSame(WstxInputProperties.COMPRESSION_NONE,
+                   getWstxInputFactory().getProperty(WstxInputProperties.P_INPUT_COMPRESSION));
+    }
+
+    public void testGzipAutoDetect() throws Exception
+    {
+        WstxInputFactory f = getAutoFactory();
+        assertSame(WstxInputProperties.COMPRESSION_AUTO,
+                   f.getProperty(WstxInputProperties.P_INPUT_COMPRESSION));
+        String xml = buildDoc(3000);
+        byte[] doc = gzip(xml.getBytes("UTF-8"));
+
+        verifyDoc(f.createXMLStreamReader(new ByteArrayInputStream(doc)), 3000);
+        verifyDoc(f.createXMLStreamReader(new ByteArrayInputStream(doc), "UTF-8"), 3000);
+        verifyDoc(f.createXMLStreamReader(new ByteArrayInputStream(doc), null), 3000);
+        // and block sources too
+        byte[] padded = new byte[doc.length + 10];
+        System.arraycopy(doc, 0, padded, 5, doc.length);
+        verifyDoc(f.createXMLStreamReader(new org.codehaus.stax2.io.Stax2ByteArraySource(padded, 5, doc.length)), 3000);
+    }
+
+    public void testGzipOtherEncoding() throws Exception
+    {
+        String xml = "<?xml version='1.0' encoding='UTF-16'?>"+buildDoc(100);
+        byte[] doc = gzip(xml.getBytes("UTF-16"));
+        verifyDoc(getAutoFactory().createXMLStreamReader(new ByteArrayInputStream(doc)), 100);
+    }
+
+    public void testMultiMemberGzip() throws Exception
+    {
+        byte[] xml = buildDoc(1000).getBytes("UTF-8");
+        int split = xml.length / 3;
+        byte[] a = gzip(copy(xml, 0, split));
+        byte[] b = gzip(copy(xml, split, xml.length));
+        byte[] doc = new byte[a.length + b.length];
+        System.arraycopy(a, 0, doc, 0, a.length);
+        System.arraycopy(b, 0, doc, a.length, b.length);
+        verifyDoc(getAutoFactory().createXMLStreamReader(new ByteArrayInputStream(doc)), 1000);
+    }
+
+    public void testExplicitDeflate() throws Exception
+    {
+        byte[] xml = buildDoc(1000).getBytes("UTF-8");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(bos);
+        out.write(xml);
+        out.close();
+        byte[] doc = bos.toByteArray();
+
+        WstxInputFactory f = getWstxInputFactory();
+        f.setProperty(WstxInputProperties.P_INPUT_COMPRESSION, WstxInputProperties.COMPRESSION_DEFLATE);
+        verifyDoc(f.createXMLStreamReader(new ByteArrayInputStream(doc)), 1000);
+        verifyDoc(f.createXMLStreamReader(new ByteArrayInputStream(doc), "UTF-8"), 1000);
+    }
+
+    public void testCounters() throws Exception
+    {
+        byte[] xml = buildDoc(5000).getBytes("UTF-8");
+        byte[] doc = gzip(xml);
+        WstxInputFactory f = getAutoFactory();
+        f.setProperty(WstxInputProperties.P_TRACK_BYTE_OFFSETS, Boolean.TRUE);
+        BasicStreamReader sr = (BasicStreamReader) f.createXMLStreamReader(new ByteArrayInputStream(doc));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTrue(sr.getCompressedBytesRead() > 0);
+        assertTrue(sr.getUncompressedBytesRead() > 0);
+        while (sr.next() != END_ELEMENT || sr.getDepth() > 1) { }
+        // Byte offsets refer to uncompressed content
+        assertEquals((long) xml.length, sr.getLocationInfo().getEndingByteOffset());
+        assertTokenType(END_DOCUMENT, sr.next());
+        assertEquals((long) doc.length, sr.getCompressedBytesRead());
+        assertEquals((long) xml.length, sr.getUncompressedBytesRead());
+        sr.close();
+
+        // And for uncompressed input, no counts
+        sr = (BasicStreamReader) getAutoFactory().createXMLStreamReader(new ByteArrayInputStream(xml));
+        assertEquals(-1L, sr.getCompressedBytesRead());
+        assertEquals(-1L, sr.getUncompressedBytesRead());
+        sr.close();
+    }
+
+    public void testCorruptContent() throws Exception
+    {
+        byte[] doc = gzip(buildDoc(1000).getBytes("UTF-8"));
+        // Let's mess up the CRC (starts 8 bytes from the end)
+        doc[doc.length-8] ^= 0x55;
+        verifyFailure(doc, "checksum mismatch");
+
+        // and then truncated content
+        doc = gzip(buildDoc(1000).getBytes("UTF-8"));
+        verifyFailure(copy(doc, 0, doc.length - 20), "Unexpected end");
+    }
+
+    public void testReleaseWithoutClose() throws Exception
+    {
+        byte[] doc = gzip(buildDoc(1000).getBytes("UTF-8"));
+        WstxInputFactory f = getAutoFactory();
+        InflatingInputStream in = (InflatingInputStream) InflatingInputStream.construct(f.getConfig(), new ByteArrayInputStream(doc));
+        assertEquals('<', in.read());
+        assertEquals('r', in.read());
+        long compressed = in.getCompressedBytesRead();
+        in.releaseResources();
+        assertEquals(compressed, in.getCompressedBytesRead());
+        assertEquals(2L, in.getUncompressedBytesRead());
+        try {
+            in.read();
+            fail("Expected an exception when reading after releasing resources");
+        } catch (IOException e) {
+            verifyException(e, "Stream closed");
+        }
+
+        // Stream readers release decompressor even if input is not closed
+        final boolean[] closed = new boolean[1];
+        InputStream src = new ByteArrayInputStream(doc) {
+            @Override
+            public void close() { closed[0] = true; }
+        };
+        BasicStreamReader sr = (BasicStreamReader) f.createXMLStreamReader(src);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        compressed = sr.getCompressedBytesRead();
+        sr.close();
+        assertFalse(closed[0]);
+        assertEquals(compressed, sr.getCompressedBytesRead());
+    }
+
+    public void testDisabled() throws Exception
+    {
+        byte[] doc = gzip(buildDoc(10).getBytes("UTF-8"));
+        WstxInputFactory f = getWstxInputFactory();
+        f.setProperty(WstxInputProperties.P_INPUT_COMPRESSION, WstxInputProperties.COMPRESSION_NONE);
+        try {
+            XMLStreamReader sr = f.createXMLStreamReader(new ByteArrayInputStream(doc));
+            while (sr.hasNext()) {
+                sr.next();
+            }
+            fail("Expected an exception for compressed content when decompression disabled");
+        } catch (XMLStreamException e) {
+            ; // fine
+        }
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Helper methods
+    ////////////////////////////////////////
+     */
+
+    private WstxInputFactory getAutoFactory()
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        f.setProperty(WstxInputProperties.P_INPUT_COMPRESSION, WstxInputProperties.COMPRESSION_AUTO);
+        return f;
+    }
+
+    private static String buildDoc(int count)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<root>");
+        for (int i = 0; i < count; ++i) {
+            sb.append("<leaf id='").append(i).append("'>value ").append(i).append("</leaf>");
+        }
+        sb.append("</root>");
+        return sb.toString();
+    }
+
+    private void verifyDoc(XMLStreamReader sr, int count) throws XMLStreamException
+    {
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("root", sr.getLocalName());
+        for (int i = 0; i < count; ++i) {
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals(String.valueOf(i), sr.getAttributeValue(0));
+            assertEquals("value "+i, sr.getElementText());
+        }
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+        sr.close();
+    }
+
+    private void verifyFailure(byte[] doc, String expMsg) throws Exception
+    {
+        try {
+            XMLStreamReader sr = getAutoFactory().createXMLStreamReader(new ByteArrayInputStream(doc));
+            while (sr.hasNext()) {
+                sr.next();
+            }
+            fail("Expected an exception for corrupt content");
+        } catch (XMLStreamException e) {
+            verifyException(e, expMsg);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bos);
+        out.write(data);
+        out.close();
+        return bos.toByteArray();
+    }
+
+    private static byte[] copy(byte[] data, int start, int end)
+    {
+        byte[] result = new byte[end - start];
+        System.arraycopy(data, start, result, 0, result.length);
+        return result;
+    }
+}
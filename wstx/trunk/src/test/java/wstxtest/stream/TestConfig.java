@@ -2,9 +2,12 @@ package wstxtest.stream;
 
 import javax.xml.stream.*;
 
+import org.codehaus.stax2.XMLInputFactory2;
 import org.codehaus.stax2.XMLStreamProperties;
 
+import com.ctc.wstx.api.ReaderConfig;
 import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
 
 /**
  * Set of unit tests that check how Woodstox handles white space in
@@ -93,6 +96,73 @@ public class TestConfig
                      ofact.getProperty(XMLStreamProperties.XSP_SUPPORTS_XML11));
     }
 
+    /**
+     * Unit test for verifying that reader configurations are copied from
+     * a snapshot that is only re-created when factory settings change,
+     * and that readers and factory do not see each other's changes.
+     */
+    public void testConfigSnapshots()
+        throws XMLStreamException
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        ReaderConfig cfg1 = f.createPrivateConfig();
+        ReaderConfig snapshot = f.getConfig().createSnapshot();
+        assertTrue(snapshot.isSnapshotOf(f.getConfig()));
+        ReaderConfig cfg2 = f.createPrivateConfig();
+        assertNotSame(cfg1, cfg2);
+        assertFalse(cfg1.isSnapshotOf(f.getConfig()));
+        assertEquals(f.getConfig().getInputBufferLength(), cfg2.getInputBufferLength());
+
+        // Changes to factory must invalidate snapshots, be seen by new readers
+        f.setProperty(WstxInputProperties.P_INPUT_BUFFER_LENGTH, Integer.valueOf(777));
+        f.setProperty(WstxInputProperties.P_DTD_RESOLVER, new DTDResolver());
+        assertFalse(snapshot.isSnapshotOf(f.getConfig()));
+        ReaderConfig cfg3 = f.createPrivateConfig();
+        assertEquals(777, cfg3.getInputBufferLength());
+        assertNotNull(cfg3.getDtdResolver());
+        // but not by existing ones
+        assertEquals(cfg1.getInputBufferLength(), cfg2.getInputBufferLength());
+        assertNull(cfg2.getDtdResolver());
+
+        f.setProperty(XMLInputFactory2.P_REPORT_PROLOG_WHITESPACE, Boolean.FALSE);
+        f.setProperty(WstxInputProperties.P_RETURN_NULL_FOR_DEFAULT_NAMESPACE, Boolean.TRUE);
+        ReaderConfig cfg4 = f.createPrivateConfig();
+        assertFalse(cfg4.willReportPrologWhitespace());
+        assertTrue(cfg4.returnNullForDefaultNamespace());
+
+        // And changes to reader configs must not leak into factory, or other readers
+        XMLResolver factoryR = new EntityResolver();
+        f.setProperty(WstxInputProperties.P_UNDECLARED_ENTITY_RESOLVER, factoryR);
+        ReaderConfig cfg5 = f.createPrivateConfig();
+        XMLResolver r = new EntityResolver();
+        cfg5.setUndeclaredEntityResolver(r);
+        cfg5.setInputBufferLength(999);
+        assertSame(r, cfg5.getUndeclaredEntityResolver());
+        assertSame(factoryR, f.getConfig().getUndeclaredEntityResolver());
+        ReaderConfig cfg6 = f.createPrivateConfig();
+        assertSame(factoryR, cfg6.getUndeclaredEntityResolver());
+        assertEquals(777, cfg6.getInputBufferLength());
+
+        // Direct changes via factory's config object must be seen as well
+        f.getConfig().setMaxElementDepth(13);
+        assertEquals(13, f.createPrivateConfig().getMaxElementDepth());
+        f.getConfig().doCoalesceText(true);
+        assertTrue(f.createPrivateConfig().willCoalesceText());
+        XMLReporter rep = new XMLReporter() {
+                public void report(String msg, String type, Object info, Location loc) { }
+            };
+        f.setXMLReporter(rep);
+        assertSame(rep, f.createPrivateConfig().getXMLReporter());
+
+        // including ones made via a retained reference, after readers were created
+        ReaderConfig factoryCfg = f.getConfig();
+        f.createPrivateConfig();
+        factoryCfg.setMaxAttributeSize(123);
+        assertEquals(123, f.createPrivateConfig().getMaxAttributeSize());
+        factoryCfg.setMaxTextLength(456);
+        assertEquals(456, f.createPrivateConfig().getMaxTextLength());
+    }
+
     /*
     //////////////////////////////////////////////////////
     // Internal methods
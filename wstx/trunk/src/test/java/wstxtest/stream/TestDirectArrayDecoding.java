@@ -0,0 +1,276 @@
+package wstxtest.stream;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+import org.codehaus.stax2.typed.TypedXMLStreamException;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.sr.TypedStreamReader;
+
+/**
+ * Unit tests for verifying that int and double arrays decoded directly
+ * from the input buffer (into arrays or NIO buffers) are decoded
+ * correctly, regardless of where input buffer boundaries fall, and
+ * also when content has constructs that need regular text handling.
+ */
+public class TestDirectArrayDecoding
+    extends BaseStreamTest
+{
+    public void testInts() throws XMLStreamException
+    {
+        Random r = new Random(1);
+        int[] exp = new int[500];
+        StringBuilder sb = new StringBuilder("<root>\n<ints> ");
+        for (int i = 0; i < exp.length; ++i) {
+            switch (i % 5) {
+            case 0:
+                exp[i] = r.nextInt();
+                break;
+            case 1:
+                exp[i] = r.nextInt(1000) - 500;
+                break;
+            default:
+                exp[i] = r.nextInt(100000);
+            }
+            String value = String.valueOf(exp[i]);
+            if ((i % 7) == 3 && exp[i] >= 0) {
+                value = "+00"+value;
+            }
+            sb.append(value).append(((i % 11) == 0) ? "\r\n" : ((i % 13) == 0) ? "\t" : " ");
+        }
+        sb.append("</ints>\n</root>");
+        String doc = sb.toString();
+
+        for (int bufLen = 8; bufLen < 200; bufLen += 7) {
+            for (int chunk = 1; chunk < 40; chunk += 9) {
+                XMLStreamReader2 sr = getReader(doc, bufLen);
+                assertTokenType(START_ELEMENT, sr.nextTag());
+                assertTokenType(START_ELEMENT, sr.nextTag());
+                int[] act = new int[exp.length + chunk];
+                int total = 0;
+                int count;
+                while ((count = sr.readElementAsIntArray(act, total, chunk)) > 0) {
+                    total += count;
+                }
+                assertEquals("(buffer length "+bufLen+")", exp.length, total);
+                for (int i = 0; i < exp.length; ++i) {
+                    assertEquals("(buffer length "+bufLen+", value #"+i+")", exp[i], act[i]);
+                }
+                assertTokenType(END_ELEMENT, sr.getEventType());
+                assertEquals("ints", sr.getLocalName());
+                // Linefeeds must have been counted
+                assertEquals(2 + (exp.length / 11) + 1, sr.getLocation().getLineNumber());
+                assertTokenType(END_ELEMENT, sr.nextTag());
+                assertTokenType(END_DOCUMENT, sr.next());
+            }
+        }
+    }
+
+    public void testDoubles() throws XMLStreamException
+    {
+        Random r = new Random(2);
+        String[] lexical = new String[400];
+        StringBuilder sb = new StringBuilder("<root><doubles>");
+        for (int i = 0; i < lexical.length; ++i) {
+            String value;
+            switch (i % 8) {
+            case 0:
+                value = String.valueOf(r.nextDouble());
+                break;
+            case 1:
+                value = String.valueOf((r.nextDouble() - 0.5) * 1e6);
+                break;
+            case 2:
+                value = String.valueOf(r.nextInt(100000) / 1000.0);
+                break;
+            case 3:
+                value = String.valueOf(Double.longBitsToDouble(r.nextLong()));
+                if (value.equals("NaN")) {
+                    value = "1.0";
+                }
+                break;
+            case 4:
+                value = (r.nextInt(2000) - 1000)+"."+r.nextInt(100)+"e"+(r.nextInt(40) - 20);
+                break;
+            case 5:
+                value = r.nextBoolean() ? "INF" : "-0";
+                break;
+            case 6:
+                value = "12345678901234567890.5";
+                break;
+            default:
+                value = "."+r.nextInt(1000)+"E+3";
+            }
+            lexical[i] = value;
+            sb.append(value).append(' ');
+        }
+        sb.append("</doubles></root>");
+        String doc = sb.toString();
+
+        for (int bufLen = 8; bufLen < 300; bufLen += 19) {
+            XMLStreamReader2 sr = getReader(doc, bufLen);
+            assertTokenType(START_ELEMENT, sr.nextTag());
+            assertTokenType(START_ELEMENT, sr.nextTag());
+            double[] act = new double[lexical.length];
+            int total = 0;
+            int count;
+            while ((count = sr.readElementAsDoubleArray(act, total, Math.min(17, act.length-total))) > 0) {
+                total += count;
+            }
+            assertEquals(lexical.length, total);
+            for (int i = 0; i < lexical.length; ++i) {
+                String lex = lexical[i];
+                double exp = lex.equals("INF") ? Double.POSITIVE_INFINITY : Double.parseDouble(lex);
+                assertEquals("(buffer length "+bufLen+", value '"+lex+"')",
+                        Double.doubleToLongBits(exp), Double.doubleToLongBits(act[i]));
+            }
+        }
+    }
+
+    public void testMixedContent() throws XMLStreamException
+    {
+        // Values are only split by white space (and comments, PIs)
+        String doc = "<root>1 2<!-- x -->3 4&#x35; 6<![CDATA[7 8]]>9 &#32;10\n"
+            +"<?pi?>11</root>";
+        int[] exp = { 1, 2, 3, 45, 67, 89, 10, 11 };
+        for (int bufLen = 8; bufLen < 50; bufLen += 3) {
+            for (int chunk = 1; chunk < 12; chunk += 3) {
+                XMLStreamReader2 sr = getReader(doc, bufLen);
+                assertTokenType(START_ELEMENT, sr.next());
+                int[] act = new int[exp.length + chunk];
+                int total = 0;
+                int count;
+                while ((count = sr.readElementAsIntArray(act, total, chunk)) > 0) {
+                    total += count;
+                }
+                assertEquals(exp.length, total);
+                for (int i = 0; i < exp.length; ++i) {
+                    assertEquals("(buffer length "+bufLen+", chunk "+chunk+")", exp[i], act[i]);
+                }
+                assertTokenType(END_ELEMENT, sr.getEventType());
+            }
+        }
+    }
+
+    public void testBuffers() throws XMLStreamException
+    {
+        StringBuilder sb = new StringBuilder("<root><a>");
+        for (int i = 0; i < 3000; ++i) {
+            sb.append(i).append(' ');
+        }
+        sb.append("</a><a>");
+        for (int i = 0; i < 3000; ++i) {
+            sb.append(i).append(".5 ");
+        }
+        sb.append("</a></root>");
+        String doc = sb.toString();
+
+        IntBuffer[] intBufs = {
+            IntBuffer.allocate(4000),
+            ByteBuffer.allocateDirect(4000 * 4).asIntBuffer(),
+            IntBuffer.wrap(new int[5000], 1000, 4000).slice()
+        };
+        for (IntBuffer ib : intBufs) {
+            DoubleBuffer db = ByteBuffer.allocateDirect(2500 * 8).asDoubleBuffer();
+            TypedStreamReader sr = (TypedStreamReader) getReader(doc, 100);
+            assertTokenType(START_ELEMENT, sr.nextTag());
+            assertTokenType(START_ELEMENT, sr.nextTag());
+            ib.position(7);
+            assertEquals(3000, sr.readElementAsIntArray(ib));
+            assertEquals(3007, ib.position());
+            assertEquals(-1, sr.readElementAsIntArray(ib));
+            ib.flip();
+            ib.position(7);
+            for (int i = 0; i < 3000; ++i) {
+                assertEquals(i, ib.get());
+            }
+            assertTokenType(START_ELEMENT, sr.nextTag());
+            // Buffer full before end of element
+            assertEquals(2500, sr.readElementAsDoubleArray(db));
+            assertEquals(0, sr.readElementAsDoubleArray(db));
+            db.flip();
+            for (int i = 0; i < 2500; ++i) {
+                assertEquals(i + 0.5, db.get());
+            }
+            db.clear();
+            assertEquals(500, sr.readElementAsDoubleArray(db));
+            assertEquals(2500.5, db.get(0));
+            assertEquals(-1, sr.readElementAsDoubleArray(db));
+            assertTokenType(END_ELEMENT, sr.getEventType());
+        }
+    }
+
+    public void testTextAccessAfterPartialRead() throws XMLStreamException
+    {
+        String doc = "<root><a>1 2 3 4</a><a>5 6 7</a></root>";
+        XMLStreamReader2 sr = getReader(doc, 4000);
+        assertTokenType(START_ELEMENT, sr.nextTag());
+        assertTokenType(START_ELEMENT, sr.nextTag());
+        int[] act = new int[2];
+        assertEquals(2, sr.readElementAsIntArray(act, 0, 2));
+        assertEquals(2, act[1]);
+        // Remaining text is still accessible
+        assertTokenType(CHARACTERS, sr.getEventType());
+        assertEquals(" 3 4", getAndVerifyText(sr));
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals(2, sr.readElementAsIntArray(act, 0, 2));
+        // or can be skipped
+        assertTokenType(END_ELEMENT, sr.next());
+        assertEquals("a", sr.getLocalName());
+        assertTokenType(END_ELEMENT, sr.next());
+    }
+
+    public void testInvalid() throws XMLStreamException
+    {
+        XMLStreamReader2 sr = getReader("<root>1 2 x3 4</root>", 4000);
+        assertTokenType(START_ELEMENT, sr.next());
+        int[] act = new int[4];
+        try {
+            sr.readElementAsIntArray(act, 0, 4);
+            fail("Expected an exception for invalid value");
+        } catch (TypedXMLStreamException e) {
+            assertEquals("x3", e.getLexical());
+        }
+
+        sr = getReader("<root>1 2 \u0001 4</root>", 4000);
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            sr.readElementAsIntArray(act, 0, 4);
+            fail("Expected an exception for invalid character");
+        } catch (XMLStreamException e) {
+            assertFalse(e instanceof TypedXMLStreamException);
+        }
+
+        sr = getReader("<root>1 2 3", 4000);
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            sr.readElementAsIntArray(act, 0, 4);
+            sr.next();
+            fail("Expected an exception for unexpected EOF");
+        } catch (XMLStreamException e) { }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private XMLStreamReader2 getReader(String contents, int bufLen)
+        throws XMLStreamException
+    {
+        XMLInputFactory f = getNewInputFactory();
+        setNamespaceAware(f, true);
+        setCoalescing(f, false);
+        f.setProperty(WstxInputProperties.P_INPUT_BUFFER_LENGTH, Integer.valueOf(bufLen));
+        return (XMLStreamReader2) f.createXMLStreamReader(new StringReader(contents));
+    }
+}
@@ -0,0 +1,177 @@
+package wstxtest.stream;
+
+import java.io.StringReader;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+import org.codehaus.stax2.typed.TypedXMLStreamException;
+
+import com.ctc.wstx.api.EventTypeFilter;
+import com.ctc.wstx.api.WstxInputProperties;
+
+/**
+ * Unit tests for verifying that typed element and attribute values
+ * decoded directly from the input buffer are the same as ones
+ * decoded via regular text accumulation, regardless of where input
+ * buffer boundaries fall.
+ */
+public class TestDirectTypedDecoding
+    extends BaseStreamTest
+{
+    final static String XML =
+        "<root>"
+        +"<i>123</i><i> -45\t</i><i>\n  6\n</i><i>7<!-- x -->8</i><i>&#57;</i>\n"
+        +"<l>9876543210</l><b>true</b><b> 0 </b><b><![CDATA[1]]></b>\n"
+        +"<d>-1.5e3</d><d>NaN</d><d>0.25</d>"
+        +"<a x='42' y=' 7 ' z='&#x31;0'/>"
+        +"</root>";
+
+    public void testValues() throws XMLStreamException
+    {
+        // Use very short input buffers too, to test boundary conditions
+        for (int bufLen = 8; bufLen < 60; bufLen += 3) {
+            _testValues(bufLen, false);
+            _testValues(bufLen, true);
+        }
+        _testValues(4000, false);
+        _testValues(4000, true);
+    }
+
+    public void testLocation() throws XMLStreamException
+    {
+        XMLStreamReader2 sr = getReader("<root>\n  <i>12</i><i>3</i></root>", 4000, false);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals(12, sr.getElementAsInt());
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        assertEquals("i", sr.getLocalName());
+        assertEquals(2, sr.getLocation().getLineNumber());
+        assertEquals(8, sr.getLocation().getColumnNumber());
+        assertEquals(14, sr.getLocationInfo().getStartingCharOffset());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals(3, sr.getElementAsInt());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    public void testInvalid() throws XMLStreamException
+    {
+        XMLStreamReader2 sr = getReader("<root><i>12x</i><i></i><i>1</j></root>", 4000, false);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            sr.getElementAsInt();
+            fail("Expected an exception for invalid value");
+        } catch (TypedXMLStreamException e) {
+            assertEquals("12x", e.getLexical());
+        }
+        // Can still continue with regular access
+        assertEquals("12x", sr.getElementText());
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            sr.getElementAsInt();
+            fail("Expected an exception for empty value");
+        } catch (TypedXMLStreamException e) { }
+        assertEquals("", sr.getElementText());
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            sr.getElementAsInt();
+            fail("Expected an exception for mismatched end tag");
+        } catch (XMLStreamException e) {
+            assertFalse(e instanceof TypedXMLStreamException);
+        }
+    }
+
+    public void testWhitespaceOnly() throws XMLStreamException
+    {
+        XMLStreamReader2 sr = getReader("<root><i> \t </i></root>", 4000, false);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            sr.getElementAsInt();
+            fail("Expected an exception for whitespace-only value");
+        } catch (TypedXMLStreamException e) {
+            // lexical value is trimmed, same as with regular decoding
+            assertEquals("", e.getLexical());
+        }
+    }
+
+    public void testFiltered() throws XMLStreamException
+    {
+        // With text events filtered out, element has no visible content
+        XMLInputFactory f = getNewInputFactory();
+        XMLStreamReader2 sr = getReader("<root><i>12</i><i>3</i></root>", 4000, false);
+        f.createFilteredReader(sr, new EventTypeFilter
+                (EventTypeFilter.maskOf(START_ELEMENT, END_ELEMENT), false));
+        // (filtered reader has already skipped to the root element)
+        assertTokenType(START_ELEMENT, sr.getEventType());
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            int value = sr.getElementAsInt();
+            fail("Expected an exception for filtered-out value, got "+value);
+        } catch (TypedXMLStreamException e) {
+            assertEquals("", e.getLexical());
+        }
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        assertEquals("i", sr.getLocalName());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("i", sr.getLocalName());
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private void _testValues(int bufLen, boolean lazyAttrs) throws XMLStreamException
+    {
+        String msg = "(buffer length "+bufLen+")";
+        XMLStreamReader2 sr = getReader(XML, bufLen, lazyAttrs);
+        assertTokenType(START_ELEMENT, sr.next());
+        int[] ints = { 123, -45, 6, 78, 9 };
+        for (int i = 0; i < ints.length; ++i) {
+            assertTokenType(START_ELEMENT, sr.nextTag());
+            assertEquals(msg, ints[i], sr.getElementAsInt());
+            assertTokenType(END_ELEMENT, sr.getEventType());
+            assertEquals("i", sr.getLocalName());
+        }
+        assertTokenType(START_ELEMENT, sr.nextTag());
+        assertEquals(msg, 9876543210L, sr.getElementAsLong());
+        boolean[] bools = { true, false, true };
+        for (int i = 0; i < bools.length; ++i) {
+            assertTokenType(START_ELEMENT, sr.nextTag());
+            assertEquals(msg, bools[i], sr.getElementAsBoolean());
+            assertEquals("b", sr.getLocalName());
+        }
+        assertTokenType(START_ELEMENT, sr.nextTag());
+        assertEquals(msg, -1500.0, sr.getElementAsDouble());
+        assertTokenType(START_ELEMENT, sr.nextTag());
+        assertTrue(msg, Double.isNaN(sr.getElementAsDouble()));
+        assertTokenType(START_ELEMENT, sr.nextTag());
+        assertEquals(msg, 0.25, sr.getElementAsDouble());
+
+        assertTokenType(START_ELEMENT, sr.nextTag());
+        assertEquals(msg, 7, sr.getAttributeAsInt(1));
+        assertEquals(msg, 42, sr.getAttributeAsInt(0));
+        assertEquals(msg, 10, sr.getAttributeAsInt(2));
+        assertEquals(msg, "42", sr.getAttributeValue(0));
+        assertTokenType(END_ELEMENT, sr.nextTag());
+        assertTokenType(END_ELEMENT, sr.nextTag());
+        assertEquals("root", sr.getLocalName());
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    private XMLStreamReader2 getReader(String contents, int bufLen, boolean lazyAttrs)
+        throws XMLStreamException
+    {
+        XMLInputFactory f = getNewInputFactory();
+        setNamespaceAware(f, true);
+        setCoalescing(f, false);
+        f.setProperty(WstxInputProperties.P_LAZY_ATTRIBUTE_VALUES, Boolean.valueOf(lazyAttrs));
+        f.setProperty(WstxInputProperties.P_INPUT_BUFFER_LENGTH, Integer.valueOf(bufLen));
+        return (XMLStreamReader2) f.createXMLStreamReader(new StringReader(contents));
+    }
+}
@@ -109,6 +109,59 @@ public class TestEncodingDetection
         }
     }
 
+    /**
+     * Test for verifying that other single-byte encodings (ones that
+     * use table-based decoding) work as expected
+     */
+    public void testOtherSingleByte()
+        throws Exception
+    {
+        String[] encs = new String[] { "windows-1252", "ISO-8859-15", "ISO-8859-2", "KOI8-R" };
+        String[] texts = new String[] { "\u20AC and \u2030 and \u017D\u2026", "\u20ACuro: \u0160\u0161\u017D\u017E\u0152\u0153\u0178", "\u0141\u00F3d\u017A, Praha: \u010D\u0161\u017E", "\u041F\u0440\u0438\u0432\u0435\u0442, \u043C\u0438\u0440" };
+
+        for (int i = 0; i < encs.length; ++i) {
+            String xml = "<?xml version='1.0' encoding='"+encs[i]+"'?>"
+                +"<root attr='"+texts[i]+"'>"+texts[i]+"</root>";
+            XMLStreamReader sr = getReader(xml.getBytes(encs[i]));
+            assertEquals(encs[i], sr.getCharacterEncodingScheme());
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals(texts[i], sr.getAttributeValue(0));
+            assertTokenType(CHARACTERS, sr.next());
+            assertEquals(texts[i], getAndVerifyText(sr));
+            assertTokenType(END_ELEMENT, sr.next());
+            sr.close();
+        }
+    }
+
+    public void testUnmappedSingleByte()
+        throws Exception
+    {
+        // 0x81 is not mapped in windows-1252; decoded as replacement char
+        byte[] b = "<?xml version='1.0' encoding='windows-1252'?><root>x?</root>".getBytes("windows-1252");
+        b[b.length - 8] = (byte) 0x81;
+        XMLStreamReader sr = getReader(b);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("x\uFFFD", getAndVerifyText(sr));
+        sr.close();
+    }
+
+    public void testXml11CtrlCharSingleByte()
+        throws Exception
+    {
+        // 0x86 is a C1 control char in ISO-8859-2; not allowed as is in xml 1.1
+        byte[] b = "<?xml version='1.1' encoding='ISO-8859-2'?><root>x?</root>".getBytes("ISO-8859-2");
+        b[b.length - 8] = (byte) 0x86;
+        XMLStreamReader sr = getReader(b);
+        try {
+            assertTokenType(START_ELEMENT, sr.next());
+            sr.next();
+            getAndVerifyText(sr);
+            fail("Expected an exception for xml 1.1 control char");
+        } catch (XMLStreamException e) {
+            verifyException(e, "Invalid byte 0x86");
+        }
+    }
 
     /*
     /////////////////////////////////////////
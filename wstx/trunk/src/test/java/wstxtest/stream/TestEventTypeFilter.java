@@ -0,0 +1,160 @@
+package wstxtest.stream;
+
+import java.io.StringReader;
+
+import javax.xml.stream.*;
+
+import com.ctc.wstx.api.EventTypeFilter;
+import com.ctc.wstx.api.WstxInputProperties;
+
+/**
+ * Unit tests for verifying that {@link EventTypeFilter}s, when used
+ * with Woodstox stream readers, produce the same events as they
+ * would with generic filtering.
+ */
+public class TestEventTypeFilter
+    extends BaseStreamTest
+{
+    final static String XML =
+        "<?xml version='1.0'?>\n"
+        +"<!-- prolog --><?pi prolog?>\n"
+        +"<soap:Envelope xmlns:soap='http://schemas.xmlsoap.org/soap/envelope/'>\n"
+        +"  <!-- header -->\n"
+        +"  <soap:Body>\n"
+        +"    <m:op xmlns:m='urn:m'>\n"
+        +"      <m:arg>value &amp; more</m:arg>\n"
+        +"      <?hint some?>  <m:arg><![CDATA[ ]]>&#32;<![CDATA[cdata]]></m:arg>\n"
+        +"      <m:arg><![CDATA[  ]]> \n\t</m:arg>\n"
+        +"      <m:arg>a<!-- x -->b<?pi?>c</m:arg>\n"
+        +"    </m:op>\n"
+        +"  </soap:Body>\n"
+        +"</soap:Envelope><!-- epilog -->";
+
+    public void testDataOnly() throws XMLStreamException
+    {
+        _testFilter(EventTypeFilter.dataOnly());
+    }
+
+    public void testTypeMasks() throws XMLStreamException
+    {
+        int all = EventTypeFilter.ALL_TYPES;
+        _testFilter(new EventTypeFilter(all & ~EventTypeFilter.maskOf(COMMENT), false));
+        _testFilter(new EventTypeFilter(all & ~EventTypeFilter.maskOf(CHARACTERS, CDATA), false));
+        _testFilter(new EventTypeFilter(all & ~EventTypeFilter.maskOf(PROCESSING_INSTRUCTION, START_ELEMENT), true));
+        _testFilter(new EventTypeFilter(EventTypeFilter.maskOf(START_ELEMENT, END_ELEMENT), false));
+        _testFilter(new EventTypeFilter(all, true));
+    }
+
+    public void testReaderSkips() throws XMLStreamException
+    {
+        XMLInputFactory f = getFactory(true, 4000);
+        XMLStreamReader sr = f.createXMLStreamReader(new StringReader(XML));
+        XMLStreamReader fr = f.createFilteredReader(sr, EventTypeFilter.dataOnly());
+        // Prolog events are filtered by the wrapper, not by the reader
+        assertTokenType(START_ELEMENT, fr.next());
+        assertEquals("Envelope", fr.getLocalName());
+        // but within tree the reader itself skips comments and indentation
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("Body", sr.getLocalName());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("value & more", getAndVerifyText(sr));
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("  cdata", getAndVerifyText(sr));
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("a", getAndVerifyText(sr));
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("b", getAndVerifyText(sr));
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("c", getAndVerifyText(sr));
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, fr.next());
+        assertEquals("Envelope", fr.getLocalName());
+        assertTokenType(END_DOCUMENT, fr.next());
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private void _testFilter(EventTypeFilter filter) throws XMLStreamException
+    {
+        for (int i = 0; i < 4; ++i) {
+            boolean coalescing = (i & 1) != 0;
+            int bufLen = ((i & 2) == 0) ? 4000 : 7;
+            XMLInputFactory f = getFactory(coalescing, bufLen);
+            String exp = collectEvents(f.createFilteredReader(f.createXMLStreamReader(new StringReader(XML)),
+                    new GenericFilter(filter)));
+            String act = collectEvents(f.createFilteredReader(f.createXMLStreamReader(new StringReader(XML)),
+                    filter));
+            assertEquals("(coalescing: "+coalescing+", buffer length "+bufLen+")", exp, act);
+        }
+    }
+
+    private String collectEvents(XMLStreamReader sr) throws XMLStreamException
+    {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int type = sr.getEventType();
+            sb.append(tokenTypeDesc(type));
+            switch (type) {
+            case START_ELEMENT:
+            case END_ELEMENT:
+                sb.append('<').append(sr.getLocalName()).append('>');
+                break;
+            case CHARACTERS:
+            case CDATA:
+            case SPACE:
+            case COMMENT:
+                sb.append('[').append(sr.getText()).append(']');
+                break;
+            case PROCESSING_INSTRUCTION:
+                sb.append('[').append(sr.getPITarget()).append(']');
+                break;
+            }
+            sb.append('\n');
+            if (!sr.hasNext()) {
+                break;
+            }
+            sr.next();
+        }
+        return sb.toString();
+    }
+
+    private XMLInputFactory getFactory(boolean coalescing, int bufLen)
+        throws XMLStreamException
+    {
+        XMLInputFactory f = getNewInputFactory();
+        setNamespaceAware(f, true);
+        setCoalescing(f, coalescing);
+        f.setProperty(WstxInputProperties.P_INPUT_BUFFER_LENGTH, Integer.valueOf(bufLen));
+        return f;
+    }
+
+    /**
+     * Filter that delegates to given filter, but that the reader does not
+     * recognize.
+     */
+    final static class GenericFilter
+        implements StreamFilter
+    {
+        final StreamFilter mFilter;
+
+        GenericFilter(StreamFilter f) { mFilter = f; }
+
+        public boolean accept(XMLStreamReader r) {
+            return mFilter.accept(r);
+        }
+    }
+}
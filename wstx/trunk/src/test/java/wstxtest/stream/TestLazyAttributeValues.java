@@ -0,0 +1,177 @@
+package wstxtest.stream;
+
+import java.io.StringReader;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.sr.StreamReaderImpl;
+
+/**
+ * Unit tests for verifying that lazily expanded attribute values
+ * (see {@link WstxInputProperties#P_LAZY_ATTRIBUTE_VALUES}) are the
+ * same as regularly parsed ones, and that well-formedness problems
+ * are still reported for start elements that contain them.
+ */
+public class TestLazyAttributeValues
+    extends BaseStreamTest
+{
+    final static String XML =
+        "<root xmlns:x='urn:x' a='simple' b=\"with 'quotes' &amp; &lt;refs&gt; &quot;\">\n"
+        +"<leaf c='&#65;&#x42;&#x10000;!' d='line\r\nfeeds\rand\ttabs\n'"
+        +" e='' x:f='with &#32;entity' g=\"&apos;>\" />\n"
+        +"<leaf c='a very long value that may well span input buffer boundaries' d='last' />\n"
+        +"<leaf x:h='1' i=' 2 ' j='3 4\n5'/>\n"
+        +"</root>";
+
+    public void testValues() throws XMLStreamException
+    {
+        // Use very short input buffers too, to test boundary conditions
+        for (int bufLen = 8; bufLen < 60; bufLen += 3) {
+            _testValues(XML, bufLen, true);
+            _testValues(XML, bufLen, false);
+        }
+        _testValues(XML, 4000, true);
+        _testValues(XML, 4000, false);
+    }
+
+    public void testGeneralEntities() throws XMLStreamException
+    {
+        // Values with general entities are parsed regularly
+        String doc = "<!DOCTYPE root [\n"
+            +"<!ENTITY ent 'entity value'>\n"
+            +"]>\n"
+            +"<root a='with &ent; and &amp;' b='&ent;' c='&lt;&ent;&gt;' />";
+        _testValues(doc, 4000, true);
+        XMLStreamReader2 sr = getReader(doc, true, true, 4000);
+        assertTokenType(DTD, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("with entity value and &", sr.getAttributeValue(0));
+        assertEquals("<entity value>", sr.getAttributeValue(2));
+    }
+
+    public void testAccessOrder() throws XMLStreamException
+    {
+        for (int i = 0; i < 4; ++i) {
+            XMLStreamReader2 sr = getReader(XML, true, true, 4000);
+            assertTokenType(START_ELEMENT, sr.next());
+            assertTokenType(CHARACTERS, sr.next());
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals(5, sr.getAttributeCount());
+            assertTrue(((StreamReaderImpl) sr).getAttributeCollector().hasRawValues());
+            // access in different orders, and in different ways
+            switch (i) {
+            case 0:
+                for (int ix = 4; ix >= 0; --ix) {
+                    verifyLeafAttr(sr, ix);
+                }
+                break;
+            case 1:
+                assertEquals("", sr.getAttributeValue(null, "e"));
+                assertEquals("with  entity", sr.getAttributeValue("urn:x", "f"));
+                assertEquals("AB\uD800\uDC00!", sr.getAttributeValue(null, "c"));
+                // Plain access does not need to expand all values
+                assertTrue(((StreamReaderImpl) sr).getAttributeCollector().hasRawValues());
+                break;
+            case 2: // typed access expands all values
+                try {
+                    sr.getAttributeAsInt(0);
+                    fail("Expected an exception for non-numeric value");
+                } catch (XMLStreamException e) { }
+                assertFalse(((StreamReaderImpl) sr).getAttributeCollector().hasRawValues());
+                for (int ix = 0; ix < 5; ++ix) {
+                    verifyLeafAttr(sr, ix);
+                }
+                break;
+            case 3:
+                for (int ix = 0; ix < 5; ++ix) {
+                    verifyLeafAttr(sr, ix);
+                }
+                break;
+            }
+            assertTokenType(END_ELEMENT, sr.next());
+            assertTokenType(CHARACTERS, sr.next());
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals("last", sr.getAttributeValue(1));
+            assertEquals(6, sr.getLocation().getLineNumber());
+            assertTokenType(END_ELEMENT, sr.next());
+            assertTokenType(CHARACTERS, sr.next());
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals(1, sr.getAttributeAsInt(0));
+            assertEquals(2, sr.getAttributeAsInt(1));
+            int[] ints = sr.getAttributeAsIntArray(2);
+            assertEquals(3, ints.length);
+            assertEquals("3 4 5", sr.getAttributeValue(2));
+            sr.close();
+        }
+    }
+
+    public void testInvalidValues() throws XMLStreamException
+    {
+        _testInvalid("<root attr='<' />");
+        _testInvalid("<root attr='\u0001' />");
+        _testInvalid("<root attr='&#0;' />");
+        _testInvalid("<root attr='&#x1G;' />");
+        _testInvalid("<root attr='&undeclared;' />");
+        _testInvalid("<root a='1' attr='&amp' />");
+        _testInvalid("<root attr='1' attr='2' />");
+        _testInvalid("<root attr='value />");
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private void _testValues(String doc, int bufLen, boolean nsAware) throws XMLStreamException
+    {
+        XMLStreamReader2 eager = getReader(doc, false, nsAware, bufLen);
+        XMLStreamReader2 lazy = getReader(doc, true, nsAware, bufLen);
+        while (eager.hasNext()) {
+            int type = eager.next();
+            assertTokenType(type, lazy.next());
+            assertEquals(eager.getLocation().getLineNumber(), lazy.getLocation().getLineNumber());
+            assertEquals(eager.getLocation().getColumnNumber(), lazy.getLocation().getColumnNumber());
+            if (type == START_ELEMENT) {
+                int count = eager.getAttributeCount();
+                assertEquals(count, lazy.getAttributeCount());
+                for (int i = 0; i < count; ++i) {
+                    assertEquals(eager.getAttributeLocalName(i), lazy.getAttributeLocalName(i));
+                    assertEquals("(buffer length "+bufLen+")", eager.getAttributeValue(i), lazy.getAttributeValue(i));
+                }
+            }
+        }
+        assertFalse(lazy.hasNext());
+    }
+
+    private void verifyLeafAttr(XMLStreamReader sr, int index)
+    {
+        String[] exp = { "AB\uD800\uDC00!", "line feeds and tabs ", "",
+                         "with  entity", "'>" };
+        assertEquals(exp[index], sr.getAttributeValue(index));
+    }
+
+    private void _testInvalid(String doc) throws XMLStreamException
+    {
+        XMLStreamReader2 sr = getReader(doc, true, true, 4000);
+        try {
+            sr.next();
+            fail("Expected an exception for malformed content in: "+doc);
+        } catch (XMLStreamException e) { }
+    }
+
+    private XMLStreamReader2 getReader(String contents, boolean lazy, boolean nsAware, int bufLen)
+        throws XMLStreamException
+    {
+        XMLInputFactory f = getNewInputFactory();
+        setNamespaceAware(f, nsAware);
+        setCoalescing(f, false);
+        setSupportDTD(f, true);
+        f.setProperty(WstxInputProperties.P_LAZY_ATTRIBUTE_VALUES, Boolean.valueOf(lazy));
+        f.setProperty(WstxInputProperties.P_INPUT_BUFFER_LENGTH, Integer.valueOf(bufLen));
+        return (XMLStreamReader2) f.createXMLStreamReader(new StringReader(contents));
+    }
+}
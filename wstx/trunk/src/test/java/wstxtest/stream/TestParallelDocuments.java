@@ -0,0 +1,319 @@
+package wstxtest.stream;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.stax.ParallelDocumentParser;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Unit tests for verifying that {@link ParallelDocumentParser} splits
+ * streams of concatenated documents correctly, and delivers results
+ * as expected.
+ */
+public class TestParallelDocuments
+    extends BaseStreamTest
+{
+    public void testOrdered() throws Exception
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            ParallelDocumentParser p = getWstxInputFactory().createParallelDocumentParser(exec);
+            p.setMaxPendingDocuments(8);
+            assertTrue(p.isOrdered());
+            byte[] input = buildInput(500).getBytes("UTF-8");
+            Collector c = new Collector();
+            // Let's feed input in small chunks, to test boundary handling
+            assertEquals(500L, p.parse(new ChunkedStream(input, 37), new IdHandler(), c));
+            assertEquals(500, c.mResults.size());
+            for (int i = 0; i < 500; ++i) {
+                assertEquals("doc"+i, c.mResults.get(i));
+            }
+            assertEquals(0, c.mFailures.size());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    public void testUnordered() throws Exception
+    {
+        ParallelDocumentParser p = getWstxInputFactory().createParallelDocumentParser(null);
+        p.setOrdered(false);
+        byte[] input = buildInput(300).getBytes("UTF-8");
+        Collector c = new Collector();
+        assertEquals(300L, p.parse(new ByteArrayInputStream(input), new IdHandler(), c));
+        assertEquals(300, c.mResults.size());
+        HashSet<String> ids = new HashSet<String>(c.mResults);
+        for (int i = 0; i < 300; ++i) {
+            assertTrue(ids.contains("doc"+i));
+        }
+        assertEquals(0, c.mFailures.size());
+    }
+
+    public void testFailure() throws Exception
+    {
+        String input = "<root id='doc0'/>\n<root id='doc1'><a></b></root>\n<root id='doc2'>x</root>";
+        ParallelDocumentParser p = getWstxInputFactory().createParallelDocumentParser(null);
+        Collector c = new Collector();
+        assertEquals(3L, p.parse(new ByteArrayInputStream(input.getBytes("UTF-8")), new FullHandler(), c));
+        assertEquals(Arrays.asList(new String[] { "doc0", "doc2" }), c.mResults);
+        assertEquals(1, c.mFailures.size());
+        assertEquals(Long.valueOf(1L), c.mFailures.get(0));
+    }
+
+    public void testCallbackFailure() throws Exception
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            ParallelDocumentParser p = getWstxInputFactory().createParallelDocumentParser(exec);
+            byte[] input = buildInput(200).getBytes("UTF-8");
+            final CountingHandler h = new CountingHandler();
+            Collector c = new Collector() {
+                    @Override
+                    public void documentParsed(long index, String result) {
+                        if (index == 10L) {
+                            throw new IllegalStateException("Callback failure");
+                        }
+                        super.documentParsed(index, result);
+                    }
+                };
+            try {
+                p.parse(new ByteArrayInputStream(input), h, c);
+                fail("Expected an exception from callback");
+            } catch (IllegalStateException e) {
+                verifyException(e, "Callback failure");
+            }
+            assertEquals(10, c.mResults.size());
+            // No tasks may be running after parse() returns
+            assertEquals(0, h.mRunning.get());
+            int handled = h.mHandled.get();
+            Thread.sleep(50L);
+            assertEquals(handled, h.mHandled.get());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    public void testReaderReuse() throws Exception
+    {
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            ParallelDocumentParser p = getWstxInputFactory().createParallelDocumentParser(exec);
+            byte[] input = buildInput(100).getBytes("UTF-8");
+            final Set<XMLStreamReader2> readers = Collections.synchronizedSet
+                (Collections.newSetFromMap(new IdentityHashMap<XMLStreamReader2,Boolean>()));
+            ParallelDocumentParser.DocumentHandler<String> h = new ParallelDocumentParser.DocumentHandler<String>() {
+                public String handleDocument(XMLStreamReader2 sr, long index)
+                    throws XMLStreamException
+                {
+                    readers.add(sr);
+                    sr.nextTag();
+                    return sr.getAttributeValue(null, "id");
+                }
+            };
+            Collector c = new Collector();
+            assertEquals(100L, p.parse(new ByteArrayInputStream(input), h, c));
+            for (int i = 0; i < 100; ++i) {
+                assertEquals("doc"+i, c.mResults.get(i));
+            }
+            // Single worker thread, so one reader should do
+            assertEquals(1, readers.size());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    public void testConcurrentParse() throws Exception
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            final ParallelDocumentParser p = getWstxInputFactory().createParallelDocumentParser(exec);
+            p.setMaxPendingDocuments(4);
+            final byte[] input2 = buildInput(200).getBytes("UTF-8");
+            final Collector c2 = new Collector();
+            final Throwable[] problem = new Throwable[1];
+            Thread t = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            assertEquals(200L, p.parse(new ChunkedStream(input2, 53), new IdHandler(), c2));
+                        } catch (Throwable e) {
+                            problem[0] = e;
+                        }
+                    }
+                });
+            t.start();
+            byte[] input = buildInput(300).getBytes("UTF-8");
+            Collector c = new Collector();
+            assertEquals(300L, p.parse(new ChunkedStream(input, 37), new IdHandler(), c));
+            t.join();
+            assertNull(problem[0]);
+            // Both runs must get all of their own results, in order
+            assertEquals(300, c.mResults.size());
+            for (int i = 0; i < 300; ++i) {
+                assertEquals("doc"+i, c.mResults.get(i));
+            }
+            assertEquals(200, c2.mResults.size());
+            for (int i = 0; i < 200; ++i) {
+                assertEquals("doc"+i, c2.mResults.get(i));
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    public void testTrailingContent() throws Exception
+    {
+        ParallelDocumentParser p = getWstxInputFactory().createParallelDocumentParser(null);
+
+        // Comments, PIs and white space after the last document are fine
+        Collector c = new Collector();
+        String input = "<root id='doc0'/><root id='doc1'/>\n<!-- end --><?pi?>\n";
+        assertEquals(2L, p.parse(new ByteArrayInputStream(input.getBytes("UTF-8")), new FullHandler(), c));
+        assertEquals(2, c.mResults.size());
+
+        // but not incomplete documents
+        c = new Collector();
+        input = "<root id='doc0'/><root id='doc1'><a>";
+        assertEquals(2L, p.parse(new ByteArrayInputStream(input.getBytes("UTF-8")), new FullHandler(), c));
+        assertEquals(1, c.mResults.size());
+        assertEquals(1, c.mFailures.size());
+    }
+
+    public void testNonAsciiEncoding() throws Exception
+    {
+        ParallelDocumentParser p = getWstxInputFactory().createParallelDocumentParser(null);
+        byte[] input = "<root id='doc0'/>".getBytes("UTF-16");
+        try {
+            p.parse(new ByteArrayInputStream(input), new IdHandler(), new Collector());
+            fail("Expected an exception for UTF-16 input");
+        } catch (XMLStreamException e) {
+            verifyException(e, "ASCII-compatible");
+        }
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Helper methods, classes
+    ////////////////////////////////////////
+     */
+
+    private static String buildInput(int count)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            if ((i % 3) == 0) {
+                sb.append("<?xml version='1.0' encoding='UTF-8'?>");
+            }
+            sb.append("<root id='doc").append(i).append("'>");
+            if ((i % 5) == 0) {
+                sb.append("<!-- comment with <root> in it --><![CDATA[</root>]]>");
+            }
+            sb.append("<leaf attr='>'>text ").append(i).append("</leaf></root>\n");
+            if ((i % 7) == 0) {
+                sb.append("<!-- between documents -->\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Handler that just returns the id of the root element
+     */
+    final static class IdHandler
+        implements ParallelDocumentParser.DocumentHandler<String>
+    {
+        public String handleDocument(XMLStreamReader2 sr, long index)
+            throws XMLStreamException
+        {
+            assertEquals(START_DOCUMENT, sr.getEventType());
+            sr.nextTag();
+            return sr.getAttributeValue(null, "id");
+        }
+    }
+
+    /**
+     * Handler that reads the whole document
+     */
+    final static class FullHandler
+        implements ParallelDocumentParser.DocumentHandler<String>
+    {
+        public String handleDocument(XMLStreamReader2 sr, long index)
+            throws XMLStreamException
+        {
+            sr.nextTag();
+            String id = sr.getAttributeValue(null, "id");
+            while (sr.hasNext()) {
+                sr.next();
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Handler that keeps track of number of documents handled, and
+     * handler calls in progress
+     */
+    final static class CountingHandler
+        implements ParallelDocumentParser.DocumentHandler<String>
+    {
+        final AtomicInteger mRunning = new AtomicInteger();
+        final AtomicInteger mHandled = new AtomicInteger();
+
+        public String handleDocument(XMLStreamReader2 sr, long index)
+            throws XMLStreamException
+        {
+            mRunning.incrementAndGet();
+            try {
+                sr.nextTag();
+                String id = sr.getAttributeValue(null, "id");
+                try {
+                    Thread.sleep(1L);
+                } catch (InterruptedException ie) { }
+                mHandled.incrementAndGet();
+                return id;
+            } finally {
+                mRunning.decrementAndGet();
+            }
+        }
+    }
+
+    static class Collector
+        implements ParallelDocumentParser.ResultCallback<String>
+    {
+        final ArrayList<String> mResults = new ArrayList<String>();
+        final ArrayList<Long> mFailures = new ArrayList<Long>();
+
+        public void documentParsed(long index, String result) {
+            mResults.add(result);
+        }
+
+        public void documentFailed(long index, XMLStreamException e) {
+            mFailures.add(Long.valueOf(index));
+        }
+    }
+
+    /**
+     * Stream that returns at most given number of bytes per read call
+     */
+    final static class ChunkedStream
+        extends ByteArrayInputStream
+    {
+        final int mChunk;
+
+        ChunkedStream(byte[] data, int chunk) {
+            super(data);
+            mChunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, mChunk));
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package wstxtest.stream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.stax.ParallelRecordParser;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Unit tests for verifying that {@link ParallelRecordParser} splits
+ * record-oriented documents correctly, and produces same results as
+ * sequential parsing would.
+ */
+public class TestParallelRecords
+    extends BaseStreamTest
+{
+    public void testSimple() throws Exception
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            ParallelRecordParser p = getWstxInputFactory().createParallelRecordParser(exec);
+            p.setMinChunkSize(100);
+            p.setMaxPendingChunks(3);
+            byte[] input = buildInput(1000, false).getBytes("UTF-8");
+            Collector c = new Collector();
+            assertEquals(1000L, p.parse(ByteBuffer.wrap(input), "r:record", new IdHandler(), c));
+            verifyResults(c, 1000);
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    /**
+     * Test to verify that split points within comments, CDATA sections
+     * and nested elements are detected and handled
+     */
+    public void testTrickySplits() throws Exception
+    {
+        ParallelRecordParser p = getWstxInputFactory().createParallelRecordParser(null);
+        p.setMinChunkSize(50);
+        byte[] input = buildInput(700, true).getBytes("UTF-8");
+        Collector c = new Collector();
+        assertEquals(700L, p.parse(ByteBuffer.wrap(input), "r:record", new IdHandler(), c));
+        verifyResults(c, 700);
+
+        // Direct buffers are read differently, so let's test those too
+        ByteBuffer bb = ByteBuffer.allocateDirect(input.length);
+        bb.put(input);
+        bb.flip();
+        c = new Collector();
+        assertEquals(700L, p.parse(bb, "r:record", new IdHandler(), c));
+        verifyResults(c, 700);
+        assertEquals(0, bb.position());
+    }
+
+    public void testFile() throws Exception
+    {
+        File f = File.createTempFile("wstx-records", ".xml");
+        f.deleteOnExit();
+        OutputStream out = new FileOutputStream(f);
+        out.write(buildInput(500, true).getBytes("UTF-8"));
+        out.close();
+
+        ParallelRecordParser p = getWstxInputFactory().createParallelRecordParser(null);
+        p.setMinChunkSize(200);
+        Collector c = new Collector();
+        assertEquals(500L, p.parse(f, "r:record", new IdHandler(), c));
+        verifyResults(c, 500);
+        f.delete();
+    }
+
+    /**
+     * Small documents, and ones that can not be split, are to be
+     * parsed sequentially.
+     */
+    public void testSequential() throws Exception
+    {
+        ParallelRecordParser p = getWstxInputFactory().createParallelRecordParser(null);
+        Collector c = new Collector();
+        // Default minimum chunk size is much larger than this document
+        assertEquals(20L, p.parse(ByteBuffer.wrap(buildInput(20, true).getBytes("UTF-8")),
+                                  "r:record", new IdHandler(), c));
+        verifyResults(c, 20);
+
+        // and UTF-16 can not be split
+        p.setMinChunkSize(10);
+        c = new Collector();
+        assertEquals(50L, p.parse(ByteBuffer.wrap(buildInput(50, false).replace("UTF-8", "UTF-16").getBytes("UTF-16")),
+                                  "r:record", new IdHandler(), c));
+        verifyResults(c, 50);
+    }
+
+    /**
+     * With DTD validation enabled, document has to be parsed (and
+     * validated) as a whole, not one chunk at a time.
+     */
+    public void testValidating() throws Exception
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        setValidating(f, true);
+        ParallelRecordParser p = f.createParallelRecordParser(null);
+        p.setMinChunkSize(100);
+        Collector c = new Collector();
+        assertEquals(300L, p.parse(ByteBuffer.wrap(buildValidatedInput(300, false).getBytes("UTF-8")),
+                                   "record", new PlainIdHandler(), c));
+        verifyResults(c, 300);
+
+        // Duplicate ids in different chunks must be caught as well
+        c = new Collector();
+        try {
+            p.parse(ByteBuffer.wrap(buildValidatedInput(300, true).getBytes("UTF-8")),
+                    "record", new PlainIdHandler(), c);
+            fail("Expected a validation exception for duplicate id");
+        } catch (XMLStreamException e) {
+            verifyException(e, "r5");
+        }
+    }
+
+    public void testFailure() throws Exception
+    {
+        ParallelRecordParser p = getWstxInputFactory().createParallelRecordParser(null);
+        p.setMinChunkSize(100);
+        String doc = buildInput(300, false);
+        // Let's break a record near the end
+        int ix = doc.indexOf("id='r250'");
+        doc = doc.substring(0, ix) + "id='r250' id='dup'" + doc.substring(ix + 9);
+        Collector c = new Collector();
+        try {
+            p.parse(ByteBuffer.wrap(doc.getBytes("UTF-8")), "r:record", new IdHandler(), c);
+            fail("Expected an exception for duplicate attribute");
+        } catch (XMLStreamException e) {
+            verifyException(e, "duplicate");
+        }
+        // all records before the broken one should have been delivered
+        assertTrue(c.mResults.size() <= 250);
+        for (int i = 0; i < c.mResults.size(); ++i) {
+            assertEquals("r"+i, c.mResults.get(i));
+        }
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Helper methods, classes
+    ////////////////////////////////////////
+     */
+
+    /**
+     * @param tricky Whether to add content that contains things that look
+     *   like record start tags
+     */
+    private static String buildInput(int count, boolean tricky)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+        sb.append("<!-- records follow --><data xmlns:r='urn:records' xmlns='urn:default'>\n");
+        sb.append("<header><r:record id='not-a-record' /></header>\n");
+        for (int i = 0; i < count; ++i) {
+            sb.append("<r:record id='r").append(i).append("'>");
+            sb.append("<value>").append(i).append("</value>");
+            if (tricky) {
+                switch (i % 5) {
+                case 0:
+                    sb.append("<!-- <r:record id='comment'> -->");
+                    break;
+                case 1:
+                    sb.append("<![CDATA[<r:record id='cdata'>]]>");
+                    break;
+                case 2:
+                    sb.append("<nested><r:record id='nested'/></nested>");
+                    break;
+                case 3:
+                    sb.append("<?pi <r:record id='pi'>?>");
+                    break;
+                default: // same prefix, different name
+                    sb.append("<r:recordx id='other' />");
+                }
+            }
+            sb.append("</r:record>\n");
+        }
+        sb.append("</data>\n<!-- end --><?pi?>\n");
+        return sb.toString();
+    }
+
+    /**
+     * @param dupId Whether the last record is to have same id as an
+     *   earlier record
+     */
+    private static String buildValidatedInput(int count, boolean dupId)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+        sb.append("<!DOCTYPE data [\n");
+        sb.append("<!ELEMENT data (header, record*)>\n");
+        sb.append("<!ELEMENT header EMPTY>\n");
+        sb.append("<!ELEMENT record (value)>\n");
+        sb.append("<!ATTLIST record id ID #REQUIRED>\n");
+        sb.append("<!ELEMENT value (#PCDATA)>\n");
+        sb.append("]>\n<data><header/>\n");
+        for (int i = 0; i < count; ++i) {
+            String id = (dupId && i == count-1) ? "r5" : ("r"+i);
+            sb.append("<record id='").append(id).append("'><value>").append(i).append("</value></record>\n");
+        }
+        sb.append("</data>\n");
+        return sb.toString();
+    }
+
+    private static void verifyResults(Collector c, int count)
+    {
+        assertEquals(count, c.mResults.size());
+        for (int i = 0; i < count; ++i) {
+            assertEquals("r"+i, c.mResults.get(i));
+        }
+    }
+
+    /**
+     * Handler that verifies namespace binding of the record, and returns
+     * its id, reading only part of the record
+     */
+    final static class IdHandler
+        implements ParallelRecordParser.RecordHandler<String>
+    {
+        public String handleRecord(XMLStreamReader2 sr)
+            throws XMLStreamException
+        {
+            assertEquals(START_ELEMENT, sr.getEventType());
+            assertEquals("urn:records", sr.getNamespaceURI());
+            String id = sr.getAttributeValue(null, "id");
+            sr.nextTag();
+            assertEquals("urn:default", sr.getNamespaceURI());
+            assertEquals("value", sr.getLocalName());
+            return id;
+        }
+    }
+
+    /**
+     * Handler that just returns id of the record
+     */
+    final static class PlainIdHandler
+        implements ParallelRecordParser.RecordHandler<String>
+    {
+        public String handleRecord(XMLStreamReader2 sr)
+            throws XMLStreamException
+        {
+            assertEquals(START_ELEMENT, sr.getEventType());
+            return sr.getAttributeValue(null, "id");
+        }
+    }
+
+    final static class Collector
+        implements ParallelRecordParser.RecordCallback<String>
+    {
+        final ArrayList<String> mResults = new ArrayList<String>();
+
+        long mNextIndex = 0L;
+
+        public void recordParsed(long index, String result) {
+            assertEquals(mNextIndex++, index);
+            mResults.add(result);
+        }
+    }
+}
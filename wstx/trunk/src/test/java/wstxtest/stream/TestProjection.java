@@ -0,0 +1,186 @@
+package wstxtest.stream;
+
+import java.io.StringReader;
+
+import javax.xml.stream.*;
+
+import com.ctc.wstx.api.ProjectionPaths;
+import com.ctc.wstx.api.WstxInputProperties;
+
+/**
+ * Unit tests for verifying that projection (see
+ * {@link WstxInputProperties#P_PROJECTION_PATHS}) only reports events
+ * from matching sub-trees, and their ancestors.
+ */
+public class TestProjection
+    extends BaseStreamTest
+{
+    final static String FEED =
+        "<?xml version='1.0'?>\n"
+        +"<!-- prolog -->"
+        +"<feed xmlns='http://www.w3.org/2005/Atom' xmlns:x='urn:x'>\n"
+        +"  <title>Feed</title>\n"
+        +"  <entry id='1'>\n"
+        +"    <title>First</title>\n"
+        +"    <content><title>not this</title><![CDATA[ <title> ]]></content>\n"
+        +"    <x:price>1.5</x:price>\n"
+        +"  </entry>\n"
+        +"  <!-- comment --><?pi data?>\n"
+        +"  <entry id='2'><title>Second <b>bold</b></title><x:price/></entry>\n"
+        +"  <other><x:price>3</x:price></other>\n"
+        +"</feed>";
+
+    public void testChildPath() throws XMLStreamException
+    {
+        XMLStreamReader sr = getReader(FEED, ProjectionPaths.compile("/feed/entry/title"));
+        assertTokenType(COMMENT, sr.next());
+        assertElem(sr, START_ELEMENT, "feed", 1);
+        assertElem(sr, START_ELEMENT, "entry", 2);
+        assertEquals("1", sr.getAttributeValue(null, "id"));
+        assertElem(sr, START_ELEMENT, "title", 3);
+        assertEquals("First", sr.getElementText());
+        assertElem(sr, END_ELEMENT, "entry", 2);
+        assertElem(sr, START_ELEMENT, "entry", 2);
+        assertElem(sr, START_ELEMENT, "title", 3);
+        // everything within matching sub-tree is reported
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("Second ", getAndVerifyText(sr));
+        assertElem(sr, START_ELEMENT, "b", 4);
+        assertTokenType(CHARACTERS, sr.next());
+        assertElem(sr, END_ELEMENT, "b", 4);
+        assertElem(sr, END_ELEMENT, "title", 3);
+        assertElem(sr, END_ELEMENT, "entry", 2);
+        assertElem(sr, END_ELEMENT, "feed", 1);
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    public void testDescendantPath() throws XMLStreamException
+    {
+        // Elements that are only traversed due to descendant step are not reported
+        XMLStreamReader sr = getReader(FEED, ProjectionPaths.compile("//{urn:x}price"));
+        assertTokenType(COMMENT, sr.next());
+        assertElem(sr, START_ELEMENT, "price", 3);
+        assertEquals("urn:x", sr.getNamespaceURI());
+        assertEquals("1.5", sr.getElementText());
+        assertElem(sr, START_ELEMENT, "price", 3);
+        assertElem(sr, END_ELEMENT, "price", 3);
+        assertElem(sr, START_ELEMENT, "price", 3);
+        assertEquals("3", sr.getElementText());
+        assertTokenType(END_DOCUMENT, sr.next());
+
+        // but those that match steps are
+        sr = getReader(FEED, ProjectionPaths.compile("//{urn:x}price", "/feed/title"));
+        assertTokenType(COMMENT, sr.next());
+        assertElem(sr, START_ELEMENT, "feed", 1);
+        assertElem(sr, START_ELEMENT, "title", 2);
+        assertEquals("Feed", sr.getElementText());
+        assertElem(sr, START_ELEMENT, "price", 3);
+        assertEquals("1.5", sr.getElementText());
+        assertElem(sr, START_ELEMENT, "price", 3);
+        assertElem(sr, END_ELEMENT, "price", 3);
+        assertElem(sr, START_ELEMENT, "price", 3);
+        assertEquals("3", sr.getElementText());
+        assertElem(sr, END_ELEMENT, "feed", 1);
+        assertTokenType(END_DOCUMENT, sr.next());
+
+        sr = getReader(FEED, ProjectionPaths.compile("/feed//{urn:x}price"));
+        assertTokenType(COMMENT, sr.next());
+        assertElem(sr, START_ELEMENT, "feed", 1);
+        assertElem(sr, START_ELEMENT, "price", 3);
+        assertEquals("1.5", sr.getElementText());
+        assertElem(sr, START_ELEMENT, "price", 3);
+        assertElem(sr, END_ELEMENT, "price", 3);
+        assertElem(sr, START_ELEMENT, "price", 3);
+        assertEquals("3", sr.getElementText());
+        assertElem(sr, END_ELEMENT, "feed", 1);
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    public void testNoMatches() throws XMLStreamException
+    {
+        // Namespace must match, when specified
+        XMLStreamReader sr = getReader(FEED, ProjectionPaths.compile("/{}feed//title"));
+        assertTokenType(COMMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+
+        // and ancestors are reported even if there are no actual matches
+        sr = getReader("<a><b><c/>text</b><b><c><d>x</d></c></b><e/></a>",
+                ProjectionPaths.compile("/a/*/*/d"));
+        assertElem(sr, START_ELEMENT, "a", 1);
+        assertElem(sr, START_ELEMENT, "b", 2);
+        assertElem(sr, START_ELEMENT, "c", 3);
+        assertElem(sr, END_ELEMENT, "c", 3);
+        assertElem(sr, END_ELEMENT, "b", 2);
+        assertElem(sr, START_ELEMENT, "b", 2);
+        assertElem(sr, START_ELEMENT, "c", 3);
+        assertElem(sr, START_ELEMENT, "d", 4);
+        assertEquals("x", sr.getElementText());
+        assertElem(sr, END_ELEMENT, "c", 3);
+        assertElem(sr, END_ELEMENT, "b", 2);
+        assertElem(sr, START_ELEMENT, "e", 2);
+        assertElem(sr, END_ELEMENT, "e", 2);
+        assertElem(sr, END_ELEMENT, "a", 1);
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    public void testPathsAsStrings() throws XMLStreamException
+    {
+        XMLInputFactory f = getNewInputFactory();
+        setCoalescing(f, false);
+        f.setProperty(WstxInputProperties.P_PROJECTION_PATHS, new String[] { "/feed/entry/title" });
+        assertTrue(f.getProperty(WstxInputProperties.P_PROJECTION_PATHS) instanceof ProjectionPaths);
+        XMLStreamReader sr = f.createXMLStreamReader(new StringReader(FEED));
+        int count = 0;
+        while (sr.hasNext()) {
+            if (sr.next() == START_ELEMENT && "title".equals(sr.getLocalName())) {
+                ++count;
+            }
+        }
+        assertEquals(2, count);
+    }
+
+    public void testMalformedSkipped() throws XMLStreamException
+    {
+        XMLStreamReader sr = getReader("<root><a><b></a></root>", ProjectionPaths.compile("/root/c"));
+        assertElem(sr, START_ELEMENT, "root", 1);
+        try {
+            sr.next();
+            fail("Expected an exception for malformed content");
+        } catch (XMLStreamException e) { }
+    }
+
+    public void testInvalidPaths()
+    {
+        String[] invalid = { "", "a/b", "/a//", "///a", "/{urn:x}", "/{urn:x" };
+        for (String path : invalid) {
+            try {
+                ProjectionPaths.compile(path);
+                fail("Expected an exception for path '"+path+"'");
+            } catch (IllegalArgumentException e) { }
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private void assertElem(XMLStreamReader sr, int type, String localName, int depth)
+        throws XMLStreamException
+    {
+        assertTokenType(type, sr.next());
+        assertEquals(localName, sr.getLocalName());
+        assertEquals(depth, ((org.codehaus.stax2.XMLStreamReader2) sr).getDepth());
+    }
+
+    private XMLStreamReader getReader(String contents, ProjectionPaths paths)
+        throws XMLStreamException
+    {
+        XMLInputFactory f = getNewInputFactory();
+        setNamespaceAware(f, true);
+        setCoalescing(f, false);
+        f.setProperty(WstxInputProperties.P_PROJECTION_PATHS, paths);
+        return f.createXMLStreamReader(new StringReader(contents));
+    }
+}
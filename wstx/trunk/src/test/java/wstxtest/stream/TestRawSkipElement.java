@@ -0,0 +1,161 @@
+package wstxtest.stream;
+
+import java.io.StringReader;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import com.ctc.wstx.api.WstxInputProperties;
+
+/**
+ * Unit tests for verifying that "raw" skipping of element content
+ * (see {@link WstxInputProperties#P_RAW_SKIP_ELEMENT}) works the same
+ * as regular skipping for well-formed content, and catches the
+ * well-formedness problems it is expected to catch.
+ */
+public class TestRawSkipElement
+    extends BaseStreamTest
+{
+    final static String XML =
+        "<root xmlns='urn:a'>\n"
+        +"<skip attr='x>y' other=\"/>\" xmlns:ns='urn:b'>\n"
+        +"  <ns:skip>text &amp; &#65; more\r\n"
+        +"    <![CDATA[ </skip> <foo> ]] ]]]>\n"
+        +"    <!-- </skip> <bar> - -->\n"
+        +"    <?pi </skip> > ? ?>\n"
+        +"    <skip><skip/><skip x='1'/><a\n b='c'\n/></skip  >\n"
+        +"  </ns:skip>\n"
+        +"</skip>\n"
+        +"<next attr='1'>text</next><empty/>"
+        +"</root>";
+
+    public void testSkipping() throws XMLStreamException
+    {
+        // Use very short input buffers too, to test boundary conditions
+        for (int bufLen = 8; bufLen < 40; bufLen += 5) {
+            _testSkipping(bufLen, false);
+            _testSkipping(bufLen, true);
+        }
+        _testSkipping(4000, false);
+        _testSkipping(4000, true);
+    }
+
+    public void testSkipEmpty() throws XMLStreamException
+    {
+        XMLStreamReader2 sr = getReader("<root><a/><b></b></root>", true, 4000);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        sr.skipElement();
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        assertEquals("a", sr.getLocalName());
+        assertTokenType(START_ELEMENT, sr.next());
+        sr.skipElement();
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        assertEquals("b", sr.getLocalName());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    public void testInvalidContent() throws XMLStreamException
+    {
+        // Mismatched tags
+        _testInvalid("<root><a><b></a></b></root>");
+        _testInvalid("<root><a><b></bb></a></root>");
+        _testInvalid("<root><a></b></root>");
+        // Broken markup
+        _testInvalid("<root><a><!-- -- --></a></root>");
+        _testInvalid("<root><a><![CDATX[ ]]></a></root>");
+        _testInvalid("<root><a><!DOCTYPE x></a></root>");
+        _testInvalid("<root><a><b attr='<'/></a></root>");
+        _testInvalid("<root><a>< b/></a></root>");
+        _testInvalid("<root><a>\u0001</a></root>");
+        _testInvalid("<root><a>1, 2 & 3\t[ok]\u0002</a></root>");
+        // Unexpected EOF
+        _testInvalid("<root><a><b>");
+        _testInvalid("<root><a><b attr='...");
+        _testInvalid("<root><a><!-- ...");
+    }
+
+    public void testLimits() throws XMLStreamException
+    {
+        XMLInputFactory f = getConfiguredFactory(true, 4000);
+        f.setProperty(WstxInputProperties.P_MAX_ELEMENT_DEPTH, Integer.valueOf(4));
+        XMLStreamReader sr = f.createXMLStreamReader(new StringReader("<r><a><b><c><d/></c></b></a></r>"));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            ((XMLStreamReader2) sr).skipElement();
+            fail("Expected an exception for too deep nesting");
+        } catch (XMLStreamException e) {
+            verifyException(e, "Element Depth");
+        }
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private void _testSkipping(int bufLen, boolean raw) throws XMLStreamException
+    {
+        XMLStreamReader2 sr = getReader(XML, raw, bufLen);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(CHARACTERS, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("skip", sr.getLocalName());
+        assertEquals(2, sr.getDepth());
+        sr.skipElement();
+        assertTokenType(END_ELEMENT, sr.getEventType());
+        assertEquals("skip", sr.getLocalName());
+        assertEquals("urn:a", sr.getNamespaceURI());
+        assertEquals(2, sr.getDepth());
+        assertEquals(11, sr.getLocation().getLineNumber());
+        assertEquals(1, sr.getLocation().getColumnNumber());
+
+        assertTokenType(CHARACTERS, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("next", sr.getLocalName());
+        assertEquals(12, sr.getLocation().getLineNumber());
+        assertEquals("1", sr.getAttributeValue(null, "attr"));
+        assertEquals("text", sr.getElementText());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("empty", sr.getLocalName());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertEquals("root", sr.getLocalName());
+        // and "ns" binding of skipped element should not be visible
+        assertNull(sr.getNamespaceContext().getNamespaceURI("ns"));
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    private void _testInvalid(String doc) throws XMLStreamException
+    {
+        XMLStreamReader2 sr = getReader(doc, true, 4000);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        try {
+            sr.skipElement();
+            fail("Expected an exception for malformed content in: "+doc);
+        } catch (XMLStreamException e) { }
+    }
+
+    private XMLInputFactory getConfiguredFactory(boolean raw, int bufLen)
+        throws XMLStreamException
+    {
+        XMLInputFactory f = getNewInputFactory();
+        setNamespaceAware(f, true);
+        setCoalescing(f, false);
+        f.setProperty(WstxInputProperties.P_RAW_SKIP_ELEMENT, Boolean.valueOf(raw));
+        f.setProperty(WstxInputProperties.P_INPUT_BUFFER_LENGTH, Integer.valueOf(bufLen));
+        return f;
+    }
+
+    private XMLStreamReader2 getReader(String contents, boolean raw, int bufLen)
+        throws XMLStreamException
+    {
+        XMLInputFactory f = getConfiguredFactory(raw, bufLen);
+        return (XMLStreamReader2) f.createXMLStreamReader(new StringReader(contents));
+    }
+}
@@ -0,0 +1,227 @@
+package wstxtest.stream;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+import javax.xml.stream.*;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Unit tests for verifying that the background read-ahead of input
+ * streams (enabled by {@link WstxInputProperties#P_READ_AHEAD}) works
+ * as expected.
+ */
+public class TestReadAhead
+    extends BaseStreamTest
+{
+    public void testSimple() throws Exception
+    {
+        WstxInputFactory f = getReadAheadFactory(null);
+        assertEquals(Boolean.TRUE, f.getProperty(WstxInputProperties.P_READ_AHEAD));
+        byte[] doc = buildDoc(2000).getBytes("UTF-8");
+        // Let's use a slow stream that returns little data at a time
+        verifyDoc(f.createXMLStreamReader(new ChunkedStream(doc, 17, -1)), 2000);
+        verifyDoc(f.createXMLStreamReader(new ChunkedStream(doc, 17, -1), "UTF-8"), 2000);
+    }
+
+    public void testWithExecutor() throws Exception
+    {
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            WstxInputFactory f = getReadAheadFactory(exec);
+            assertSame(exec, f.getProperty(WstxInputProperties.P_READ_AHEAD_EXECUTOR));
+            byte[] doc = buildDoc(500).getBytes("UTF-8");
+            for (int i = 0; i < 5; ++i) {
+                verifyDoc(f.createXMLStreamReader(new ByteArrayInputStream(doc)), 500);
+            }
+        } finally {
+            exec.shutdown();
+        }
+        assertTrue(exec.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    public void testExceptionPropagation() throws Exception
+    {
+        WstxInputFactory f = getReadAheadFactory(null);
+        byte[] doc = buildDoc(2000).getBytes("UTF-8");
+        XMLStreamReader sr = f.createXMLStreamReader(new ChunkedStream(doc, 100, 5000));
+        try {
+            while (sr.hasNext()) {
+                sr.next();
+            }
+            fail("Expected an exception");
+        } catch (XMLStreamException e) {
+            verifyException(e, "Simulated failure");
+        }
+    }
+
+    public void testCloseEarly() throws Exception
+    {
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        WstxInputFactory f = getReadAheadFactory(exec);
+        byte[] doc = buildDoc(20000).getBytes("UTF-8");
+        ChunkedStream in = new ChunkedStream(doc, 1000, -1);
+        XMLStreamReader sr = f.createXMLStreamReader(in);
+        assertTokenType(START_ELEMENT, sr.next());
+        sr.close();
+        // Should have stopped the background task...
+        exec.shutdown();
+        assertTrue(exec.awaitTermination(5, TimeUnit.SECONDS));
+        // but not closed the stream, since auto-closing not enabled
+        assertFalse(in.mClosed);
+    }
+
+    public void testCloseStopsTask() throws Exception
+    {
+        WstxInputFactory f = getReadAheadFactory(null);
+        BlockingStream in = new BlockingStream("<root><a/>".getBytes("UTF-8"));
+        XMLStreamReader sr = f.createXMLStreamReader(in);
+        assertTokenType(START_ELEMENT, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        // Background task is now blocked reading more content
+        while (!in.mReading) {
+            Thread.sleep(1L);
+        }
+        sr.close();
+        // close must have stopped the task, and waited for it
+        assertFalse(in.mReading);
+        int reads = in.mReads;
+        Thread.sleep(50L);
+        assertEquals(reads, in.mReads);
+        assertFalse(in.mClosed);
+    }
+
+    /*
+    ////////////////////////////////////////
+    // Helper methods, classes
+    ////////////////////////////////////////
+     */
+
+    private WstxInputFactory getReadAheadFactory(Executor exec)
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        f.setProperty(WstxInputProperties.P_READ_AHEAD, Boolean.TRUE);
+        if (exec != null) {
+            f.setProperty(WstxInputProperties.P_READ_AHEAD_EXECUTOR, exec);
+        }
+        f.getConfig().setInputBufferLength(200);
+        return f;
+    }
+
+    private String buildDoc(int count)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<root>");
+        for (int i = 0; i < count; ++i) {
+            sb.append("<leaf id='").append(i).append("'>t\u00E9xt \u20AC</leaf>");
+        }
+        sb.append("</root>");
+        return sb.toString();
+    }
+
+    private void verifyDoc(XMLStreamReader sr, int count)
+        throws XMLStreamException
+    {
+        assertTokenType(START_ELEMENT, sr.next());
+        for (int i = 0; i < count; ++i) {
+            assertTokenType(START_ELEMENT, sr.next());
+            assertEquals(String.valueOf(i), sr.getAttributeValue(0));
+            assertEquals("t\u00E9xt \u20AC", sr.getElementText());
+        }
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+        sr.close();
+    }
+
+    /**
+     * Stream that returns given content, and then blocks until interrupted
+     */
+    final static class BlockingStream extends InputStream
+    {
+        final byte[] mData;
+        volatile boolean mReading = false;
+        volatile int mReads = 0;
+        boolean mClosed = false;
+
+        public BlockingStream(byte[] data)
+        {
+            mData = data;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) < 1) ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public synchronized int read(byte[] buf, int off, int len) throws IOException
+        {
+            if (mReads++ == 0) {
+                System.arraycopy(mData, 0, buf, off, mData.length);
+                return mData.length;
+            }
+            mReading = true;
+            try {
+                while (true) {
+                    wait();
+                }
+            } catch (InterruptedException ie) {
+                throw new InterruptedIOException();
+            } finally {
+                mReading = false;
+            }
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+        }
+    }
+
+    final static class ChunkedStream extends InputStream
+    {
+        final byte[] mData;
+        final int mChunk;
+        final int mFailAt;
+        int mPtr = 0;
+        boolean mClosed = false;
+
+        public ChunkedStream(byte[] data, int chunk, int failAt)
+        {
+            mData = data;
+            mChunk = chunk;
+            mFailAt = failAt;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) < 1) ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException
+        {
+            if (mFailAt >= 0 && mPtr >= mFailAt) {
+                throw new IOException("Simulated failure");
+            }
+            int count = Math.min(Math.min(len, mChunk), mData.length - mPtr);
+            if (count <= 0) {
+                return -1;
+            }
+            System.arraycopy(mData, mPtr, buf, off, count);
+            mPtr += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package wstxtest.stream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.*;
+
+import com.ctc.wstx.sr.BasicStreamReader;
+import com.ctc.wstx.stax.StreamReaderPool;
+import com.ctc.wstx.stax.WstxInputFactory;
+
+/**
+ * Unit tests for verifying that stream readers can be reset to parse
+ * new documents, and that reader pools work as expected.
+ */
+public class TestReaderReset
+    extends BaseStreamTest
+{
+    final static String DOC1 = "<?xml version='1.0' encoding='UTF-8' standalone='yes'?>"
+        +"<!DOCTYPE root [ <!ENTITY ent 'expanded'> ]>"
+        +"<root xmlns='urn:a' attr='1'>&ent;<leaf xmlns:x='urn:x' x:a='b'/></root>";
+
+    final static String DOC2 = "<doc><child>text</child></doc>";
+
+    public void testResetAfterFullParse() throws Exception
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        BasicStreamReader sr = (BasicStreamReader) constructStreamReader(f, DOC1);
+        _verifyDoc1(sr);
+
+        sr.reset(DOC2.getBytes("UTF-8"), 0, DOC2.length());
+        _verifyDoc2(sr);
+
+        sr.reset(new StringReader(DOC1));
+        _verifyDoc1(sr);
+        sr.reset(new ByteArrayInputStream(DOC2.getBytes("UTF-8")));
+        _verifyDoc2(sr);
+    }
+
+    public void testResetMidDocument() throws Exception
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        BasicStreamReader sr = (BasicStreamReader) constructStreamReader(f, DOC1);
+        // Let's stop inside nested element, with namespace bindings
+        while (sr.next() != START_ELEMENT || !"leaf".equals(sr.getLocalName())) { }
+        assertEquals(2, sr.getDepth());
+
+        byte[] data = ("xx"+DOC2+"yy").getBytes("UTF-8");
+        sr.reset(data, 2, DOC2.length());
+        _verifyDoc2(sr);
+
+        // and errors in one document should not affect the next one
+        sr.reset(new StringReader("<root><a></b></root>"));
+        try {
+            streamThrough(sr);
+            fail("Expected an exception for mismatched end tag");
+        } catch (XMLStreamException e) { }
+        sr.reset(new StringReader(DOC1));
+        _verifyDoc1(sr);
+    }
+
+    public void testPool() throws Exception
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        StreamReaderPool pool = f.createStreamReaderPool(2);
+        byte[] data = DOC1.getBytes("UTF-8");
+
+        XMLStreamReader2 sr1 = pool.acquireReader(data, 0, data.length);
+        XMLStreamReader2 sr2 = pool.acquireReader(new StringReader(DOC2));
+        XMLStreamReader2 sr3 = pool.acquireReader(new ByteArrayInputStream(data));
+        assertEquals(3L, pool.getCreatedCount());
+        _verifyDoc1(sr1);
+        _verifyDoc2(sr2);
+        pool.releaseReader(sr1);
+        pool.releaseReader(sr2);
+        // pool is full
+        pool.releaseReader(sr3);
+        assertEquals(2, pool.getPooledCount());
+
+        XMLStreamReader2 sr = pool.acquireReader(new StringReader(DOC2));
+        assertSame(sr1, sr);
+        _verifyDoc2(sr);
+        assertEquals(1L, pool.getReusedCount());
+        pool.releaseReader(sr);
+        // releasing twice must not make it available twice
+        pool.releaseReader(sr);
+        assertEquals(2, pool.getPooledCount());
+        assertNotSame(pool.acquireReader(new StringReader(DOC2)),
+                      pool.acquireReader(new StringReader(DOC2)));
+        assertEquals(3L, pool.getCreatedCount());
+    }
+
+    public void testPoolWithModifiedReader() throws Exception
+    {
+        WstxInputFactory f = getWstxInputFactory();
+        f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        StreamReaderPool pool = f.createStreamReaderPool(2);
+
+        XMLStreamReader2 sr = pool.acquireReader(new StringReader(DOC2));
+        _verifyDoc2(sr);
+        pool.releaseReader(sr);
+        assertEquals(1, pool.getPooledCount());
+        sr = pool.acquireReader(new StringReader(DOC2));
+        sr.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        pool.releaseReader(sr);
+        // changed settings must not be passed to next caller
+        assertEquals(0, pool.getPooledCount());
+        sr = pool.acquireReader(new StringReader(DOC2));
+        assertEquals(Boolean.FALSE, sr.getProperty(XMLInputFactory.IS_COALESCING));
+        assertEquals(2L, pool.getCreatedCount());
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private void _verifyDoc1(XMLStreamReader2 sr) throws XMLStreamException
+    {
+        assertTokenType(START_DOCUMENT, sr.getEventType());
+        assertEquals("1.0", sr.getVersion());
+        assertTrue(sr.standaloneSet());
+        assertTokenType(DTD, sr.next());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("root", sr.getLocalName());
+        assertEquals("urn:a", sr.getNamespaceURI());
+        assertEquals(1, sr.getDepth());
+        assertEquals("1", sr.getAttributeValue(null, "attr"));
+        assertTokenType(CHARACTERS, sr.next());
+        assertEquals("expanded", getAndVerifyText(sr));
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("leaf", sr.getLocalName());
+        assertEquals("b", sr.getAttributeValue("urn:x", "a"));
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+
+    private void _verifyDoc2(XMLStreamReader2 sr) throws XMLStreamException
+    {
+        assertTokenType(START_DOCUMENT, sr.getEventType());
+        assertNull(sr.getVersion());
+        assertFalse(sr.standaloneSet());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("doc", sr.getLocalName());
+        assertEquals("", sr.getNamespaceURI());
+        assertEquals(0, sr.getNamespaceCount());
+        assertEquals(1, sr.getLocation().getLineNumber());
+        assertEquals(1, sr.getLocation().getColumnNumber());
+        assertTokenType(START_ELEMENT, sr.next());
+        assertEquals("child", sr.getLocalName());
+        assertEquals(2, sr.getDepth());
+        assertEquals("text", sr.getElementText());
+        assertTokenType(END_ELEMENT, sr.next());
+        assertTokenType(END_DOCUMENT, sr.next());
+    }
+}
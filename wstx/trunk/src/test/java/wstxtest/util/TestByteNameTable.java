@@ -0,0 +1,159 @@
+package wstxtest.util;
+
+import junit.framework.TestCase;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.ctc.wstx.util.ByteNameTable;
+
+/**
+ * Simple unit tests for testing {@link ByteNameTable}.
+ */
+public class TestByteNameTable
+    extends TestCase
+{
+    public TestByteNameTable(String name) {
+        super(name);
+    }
+
+    public void testQuads()
+    {
+        int[] quads = new int[4];
+        byte[] b = bytes("abcdefghi");
+        assertEquals(3, ByteNameTable.calcQuads(b, 0, b.length, quads));
+        assertEquals(0x61626364, quads[0]);
+        assertEquals(0x65666768, quads[1]);
+        assertEquals(0x69, quads[2]);
+        // and with offset; partial quad is right-aligned
+        assertEquals(1, ByteNameTable.calcQuads(b, 6, 3, quads));
+        assertEquals(0x676869, quads[0]);
+        // bytes with high bit
+        b = new byte[] { (byte) 0xC3, (byte) 0xA4 };
+        assertEquals(1, ByteNameTable.calcQuads(b, 0, 2, quads));
+        assertEquals(0xC3A4, quads[0]);
+    }
+
+    public void testFindAndAdd()
+    {
+        ByteNameTable root = new ByteNameTable(true, 1000);
+        ByteNameTable t = root.makeChild();
+        String[] names = new String[] {
+            "a", "ab", "abcd", "abcde", "abcdefgh", "abcdefghi",
+            "ns:element", "a-rather-long-element-name-that-takes-many-quads",
+            "\u00e4\u00f6", "\u4e2d\u6587\u540d"
+        };
+        for (String name : names) {
+            byte[] b = bytes(name);
+            assertNull(t.findName(b, 0, b.length));
+            String added = t.addName(b, 0, b.length);
+            assertEquals(name, added);
+            // names are to be intern()ed
+            assertSame(name.intern(), added);
+        }
+        assertEquals(names.length, t.size());
+        for (String name : names) {
+            // let's use offset, to make sure it's handled
+            byte[] b = bytes("xx"+name);
+            assertSame(name.intern(), t.findName(b, 2, b.length-2));
+        }
+        // Prefixes and such must not match
+        byte[] b = bytes("abc");
+        assertNull(t.findName(b, 0, b.length));
+        b = bytes("abcdefg");
+        assertNull(t.findName(b, 0, b.length));
+    }
+
+    public void testRehash()
+    {
+        ByteNameTable t = new ByteNameTable(false, 100000).makeChild();
+        for (int i = 0; i < 5000; ++i) {
+            t.addName(bytes("name"+i), 0, bytes("name"+i).length);
+        }
+        assertEquals(5000, t.size());
+        for (int i = 0; i < 5000; ++i) {
+            byte[] b = bytes("name"+i);
+            assertEquals("name"+i, t.findName(b, 0, b.length));
+        }
+    }
+
+    public void testSharing()
+    {
+        ByteNameTable root = new ByteNameTable(true, 1000);
+        ByteNameTable child1 = root.makeChild();
+        ByteNameTable child2 = root.makeChild();
+        addName(child1, "first");
+        child1.release();
+        assertEquals(1, root.size());
+
+        // sibling was created before first was released, so will be dropped
+        addName(child2, "second");
+        addName(child2, "third");
+        child2.release();
+        assertEquals(1, root.size());
+
+        ByteNameTable child3 = root.makeChild();
+        assertEquals("first", findName(child3, "first"));
+        assertNull(findName(child3, "second"));
+
+        // Released table can still be used, without affecting root
+        addName(child1, "fourth");
+        assertEquals(1, root.size());
+        assertNull(findName(root.makeChild(), "fourth"));
+        // and released again
+        child1.release();
+        assertEquals(2, root.size());
+    }
+
+    public void testSizeLimit()
+    {
+        ByteNameTable root = new ByteNameTable(true, 10);
+        ByteNameTable child = root.makeChild();
+        for (int i = 0; i < 10; ++i) {
+            addName(child, "name"+i);
+        }
+        child.release();
+        assertEquals(10, root.size());
+        child = root.makeChild();
+        addName(child, "name10");
+        child.release();
+        // too big: must have been flushed
+        assertEquals(0, root.size());
+    }
+
+    public void testFactory()
+    {
+        WstxInputFactory f = new WstxInputFactory();
+        ByteNameTable t = f.createByteNameTable();
+        addName(t, "root");
+        t.release();
+        assertEquals("root", findName(f.createByteNameTable(), "root"));
+        // and different factories do not share
+        assertNull(findName(new WstxInputFactory().createByteNameTable(), "root"));
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////
+     */
+
+    private static String addName(ByteNameTable t, String name)
+    {
+        byte[] b = bytes(name);
+        return t.addName(b, 0, b.length);
+    }
+
+    private static String findName(ByteNameTable t, String name)
+    {
+        byte[] b = bytes(name);
+        return t.findName(b, 0, b.length);
+    }
+
+    private static byte[] bytes(String str)
+    {
+        try {
+            return str.getBytes("UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
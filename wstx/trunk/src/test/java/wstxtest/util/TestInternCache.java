@@ -0,0 +1,118 @@
+package wstxtest.util;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.ctc.wstx.util.InternCache;
+
+/**
+ * Simple unit tests for testing {@link InternCache}.
+ */
+public class TestInternCache
+    extends TestCase
+{
+    public TestInternCache(String name) {
+        super(name);
+    }
+
+    public void testIntern()
+    {
+        InternCache cache = new InternCache(100);
+        String uri = new String("http://foo.com/ns");
+        String result = cache.intern(uri);
+        assertSame("http://foo.com/ns", result);
+        assertEquals(0L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+        assertSame(result, cache.intern(new String("http://foo.com/ns")));
+        assertEquals(1L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    public void testEviction()
+    {
+        InternCache cache = new InternCache(32);
+        assertEquals(32, cache.getMaxSize());
+        for (int i = 0; i < 1000; ++i) {
+            cache.intern("urn:ns"+i);
+        }
+        assertTrue(cache.size() <= 32);
+        assertEquals(1000L - cache.size(), cache.getEvictionCount());
+        assertEquals(1000L, cache.getMissCount());
+
+        // Least recently used entries are evicted first
+        cache = new InternCache(32);
+        String hot = "urn:hot";
+        cache.intern(hot);
+        for (int i = 0; i < 1000; ++i) {
+            cache.intern("urn:ns"+i);
+            cache.intern(hot);
+        }
+        assertEquals("hits", 1000L, cache.getHitCount());
+
+        // and lowering size gets entries evicted
+        cache.setMaxSize(1);
+        assertEquals(1, cache.getMaxSize());
+        assertTrue(cache.size() <= 1);
+        for (int i = 0; i < 100; ++i) {
+            cache.intern("urn:other"+i);
+        }
+        assertTrue(cache.size() <= 1);
+    }
+
+    /**
+     * Maximum size is to be kept as requested, and never exceeded, even
+     * if it is not a multiple of the number of stripes
+     */
+    public void testOddSizes()
+    {
+        for (int max = 1; max < 40; max += 3) {
+            InternCache cache = new InternCache(max);
+            assertEquals(max, cache.getMaxSize());
+            for (int i = 0; i < 500; ++i) {
+                cache.intern("urn:ns"+i);
+            }
+            assertTrue("size "+cache.size()+" > "+max, cache.size() <= max);
+            cache.setMaxSize(max + 1);
+            assertEquals(max + 1, cache.getMaxSize());
+        }
+        try {
+            new InternCache(1).setMaxSize(0);
+            fail("Expected an exception for non-positive size");
+        } catch (IllegalArgumentException e) { }
+    }
+
+    public void testConcurrent() throws Exception
+    {
+        final InternCache cache = new InternCache(64);
+        final ArrayList<Throwable> problems = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 5000; ++i) {
+                                String uri = "urn:ns"+(i % 200);
+                                assertSame(uri.intern(), cache.intern(uri));
+                            }
+                        } catch (Throwable e) {
+                            synchronized (problems) {
+                                problems.add(e);
+                            }
+                        }
+                    }
+                };
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(Collections.emptyList(), problems);
+        assertEquals(8L * 5000L, cache.getHitCount() + cache.getMissCount());
+        assertTrue(cache.size() <= 64);
+    }
+}
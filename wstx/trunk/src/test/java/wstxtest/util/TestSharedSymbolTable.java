@@ -0,0 +1,144 @@
+package wstxtest.util;
+
+import java.io.StringReader;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+import junit.framework.TestCase;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.ctc.wstx.util.SharedSymbolTable;
+import com.ctc.wstx.util.SymbolTable;
+
+/**
+ * Simple unit tests for testing {@link SharedSymbolTable}, both
+ * directly, and as used by input factory.
+ */
+public class TestSharedSymbolTable
+    extends TestCase
+{
+    public TestSharedSymbolTable(String name) {
+        super(name);
+    }
+
+    public void testMerge()
+    {
+        SymbolTable root = new SymbolTable(true);
+        root.findSymbol("root");
+        SharedSymbolTable shared = new SharedSymbolTable(root.makeChild(), 1000, 100);
+
+        SymbolTable child1 = shared.makeChild();
+        SymbolTable child2 = shared.makeChild();
+        // Unmodified child is not merged
+        assertFalse(shared.mergeChild(child1));
+
+        String a = findSymbol(child1, "a");
+        assertTrue(shared.mergeChild(child1));
+        // and sibling can not be merged any more
+        findSymbol(child2, "b");
+        assertFalse(shared.mergeChild(child2));
+
+        // But new children see symbols of merged one
+        SymbolTable child3 = shared.makeChild();
+        assertSame(a, findSymbolIfExists(child3, "a"));
+        assertSame("root", findSymbolIfExists(child3, "root"));
+        assertNull(findSymbolIfExists(child3, "b"));
+
+        // Merged child may still be modified, without affecting snapshot
+        findSymbol(child1, "c");
+        assertNull(findSymbolIfExists(shared.makeChild(), "c"));
+    }
+
+    public void testLimits()
+    {
+        SymbolTable root = new SymbolTable(true);
+        SharedSymbolTable shared = new SharedSymbolTable(root.makeChild(), 10, 100);
+        for (int i = 0; i < 10; ++i) {
+            assertNotNull(shared.addSymbol("sym"+i));
+        }
+        assertEquals(10, shared.getSnapshot().size());
+        // One more, and table is to be flushed
+        shared.addSymbol("sym10");
+        assertEquals(0, shared.getSnapshot().size());
+    }
+
+    public void testConcurrentAdd() throws Exception
+    {
+        final SharedSymbolTable shared = new SharedSymbolTable(new SymbolTable(true).makeChild(), 10000, 100000);
+        final int THREADS = 8;
+        final int SYMBOLS = 200;
+        Thread[] threads = new Thread[THREADS];
+        final ArrayList<Throwable> problems = new ArrayList<Throwable>();
+
+        for (int t = 0; t < THREADS; ++t) {
+            final int id = t;
+            threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < SYMBOLS; ++i) {
+                                String sym = shared.addSymbol("t"+id+"-"+i);
+                                // all symbols are interned
+                                assertSame(sym, ("t"+id+"-"+i).intern());
+                            }
+                        } catch (Throwable e) {
+                            synchronized (problems) {
+                                problems.add(e);
+                            }
+                        }
+                    }
+                };
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(Collections.emptyList(), problems);
+        // With explicit adds, nothing gets lost
+        SymbolTable snapshot = shared.getSnapshot();
+        assertEquals(THREADS * SYMBOLS, snapshot.size());
+        for (int t = 0; t < THREADS; ++t) {
+            for (int i = 0; i < SYMBOLS; ++i) {
+                assertNotNull(findSymbolIfExists(snapshot, "t"+t+"-"+i));
+            }
+        }
+    }
+
+    /**
+     * Test to verify that names seen by readers are shared via
+     * the factory
+     */
+    public void testFactorySharing() throws Exception
+    {
+        WstxInputFactory f = new WstxInputFactory();
+        XMLStreamReader sr = f.createXMLStreamReader(new StringReader("<uniqueRootName uniqueAttrName='1' />"));
+        while (sr.hasNext()) {
+            sr.next();
+        }
+        sr.close();
+        SymbolTable symbols = f.createPrivateConfig().getSymbols();
+        assertNotNull(findSymbolIfExists(symbols, "uniqueRootName"));
+        assertNotNull(findSymbolIfExists(symbols, "uniqueAttrName"));
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////
+     */
+
+    private static String findSymbol(SymbolTable t, String str)
+    {
+        char[] ch = str.toCharArray();
+        return t.findSymbol(ch, 0, ch.length, SymbolTable.calcHash(ch, 0, ch.length));
+    }
+
+    private static String findSymbolIfExists(SymbolTable t, String str)
+    {
+        char[] ch = str.toCharArray();
+        return t.findSymbolIfExists(ch, 0, ch.length, SymbolTable.calcHash(ch, 0, ch.length));
+    }
+}
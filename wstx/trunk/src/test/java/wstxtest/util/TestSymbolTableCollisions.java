@@ -0,0 +1,155 @@
+package wstxtest.util;
+
+import java.io.StringReader;
+import java.util.*;
+
+import javax.xml.stream.*;
+
+import junit.framework.TestCase;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.ctc.wstx.util.SharedSymbolTable;
+import com.ctc.wstx.util.SymbolTable;
+
+/**
+ * Unit tests for verifying that {@link SymbolTable} copes with names
+ * constructed to have identical hash codes.
+ */
+public class TestSymbolTableCollisions
+    extends TestCase
+{
+    public TestSymbolTableCollisions(String name) {
+        super(name);
+    }
+
+    public void testSeededChild()
+    {
+        SymbolTable root = new SymbolTable(false);
+        List<String> syms = new ArrayList<String>();
+        for (int i = 0; i < 200; ++i) {
+            syms.add(root.findSymbol("sym"+i));
+        }
+        SymbolTable seeded = root.makeSeededChild(0x12345678);
+        assertEquals(200, seeded.size());
+        for (String sym : syms) {
+            // must retain same instances
+            assertSame(sym, findSymbolIfExists(seeded, sym));
+        }
+        // and can be added to, rehashed
+        for (int i = 200; i < 1000; ++i) {
+            findSymbol(seeded, "sym"+i);
+        }
+        assertEquals(1000, seeded.size());
+        assertSame(syms.get(10), findSymbolIfExists(seeded, "sym10"));
+        assertFalse(seeded.hasOverflowed());
+    }
+
+    public void testCollisionChainCap()
+    {
+        // non-interning, to verify names still are canonical
+        SymbolTable t = new SymbolTable(false).makeChild();
+        List<String> names = collidingNames(9);
+        for (String name : names) {
+            String sym = findSymbol(t, name);
+            assertEquals(name, sym);
+            // need to get the same instance again
+            assertSame(sym, findSymbol(t, name));
+            assertSame(sym, t.findSymbol(name));
+        }
+        assertTrue(t.hasOverflowed());
+        assertTrue(t.size() < names.size());
+        assertTrue(t.size() <= SymbolTable.MAX_COLL_CHAIN_LENGTH + 1);
+    }
+
+    public void testOverflowNotShared()
+    {
+        SharedSymbolTable shared = new SharedSymbolTable(new SymbolTable(true).makeChild(), 10000, 1000);
+        SymbolTable child = shared.makeChild();
+        for (String name : collidingNames(8)) {
+            findSymbol(child, name);
+        }
+        assertTrue(child.hasOverflowed());
+        assertFalse(shared.mergeChild(child));
+        assertEquals(1L, shared.getOverflowCount());
+        assertEquals(0, shared.getSnapshot().size());
+
+        // explicit adds need to complete as well, without growing chain
+        for (String name : collidingNames(8)) {
+            assertSame(name.intern(), shared.addSymbol(name));
+        }
+        assertTrue(shared.getSnapshot().size() <= SymbolTable.MAX_COLL_CHAIN_LENGTH + 1);
+    }
+
+    public void testFactoryOverflow() throws Exception
+    {
+        WstxInputFactory f = new WstxInputFactory();
+        // Regular documents do not overflow
+        parse(f, "<root><a>x</a><b attr='1' /></root>");
+        assertEquals(0L, f.getSymbolTableOverflowCount());
+
+        StringBuilder sb = new StringBuilder("<root>");
+        List<String> names = collidingNames(8);
+        for (String name : names) {
+            sb.append("<").append(name).append(">");
+        }
+        for (int i = names.size(); --i >= 0; ) {
+            sb.append("</").append(names.get(i)).append(">");
+        }
+        sb.append("</root>");
+        assertEquals(names.size() + 1, parse(f, sb.toString()));
+        assertEquals(1L, f.getSymbolTableOverflowCount());
+
+        // but symbols of regular documents are still shared
+        parse(f, "<root><sharedName /></root>");
+        assertNotNull(findSymbolIfExists(f.createPrivateConfig().getSymbols(), "sharedName"));
+    }
+
+    /*
+    ///////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////
+     */
+
+    /**
+     * Method for constructing 2^count distinct names that all have the
+     * same hash code (since "Aa" and "BB" do)
+     */
+    private static List<String> collidingNames(int count)
+    {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0, end = (1 << count); i < end; ++i) {
+            StringBuilder sb = new StringBuilder("n");
+            for (int bit = 0; bit < count; ++bit) {
+                sb.append(((i & (1 << bit)) == 0) ? "Aa" : "BB");
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    private static int parse(WstxInputFactory f, String doc)
+        throws XMLStreamException
+    {
+        XMLStreamReader sr = f.createXMLStreamReader(new StringReader(doc));
+        int elems = 0;
+        while (sr.hasNext()) {
+            if (sr.next() == XMLStreamConstants.START_ELEMENT) {
+                ++elems;
+            }
+        }
+        sr.close();
+        return elems;
+    }
+
+    private static String findSymbol(SymbolTable t, String str)
+    {
+        char[] ch = str.toCharArray();
+        return t.findSymbol(ch, 0, ch.length, SymbolTable.calcHash(ch, 0, ch.length));
+    }
+
+    private static String findSymbolIfExists(SymbolTable t, String str)
+    {
+        char[] ch = str.toCharArray();
+        return t.findSymbolIfExists(ch, 0, ch.length, SymbolTable.calcHash(ch, 0, ch.length));
+    }
+}
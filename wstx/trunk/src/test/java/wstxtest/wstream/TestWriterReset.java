@@ -0,0 +1,168 @@
+package wstxtest.wstream;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+import org.codehaus.stax2.XMLStreamProperties;
+import org.codehaus.stax2.XMLStreamWriter2;
+
+import com.ctc.wstx.api.WstxOutputProperties;
+import com.ctc.wstx.sw.BaseStreamWriter;
+import com.ctc.wstx.stax.StreamWriterPool;
+import com.ctc.wstx.stax.WstxOutputFactory;
+
+/**
+ * Unit tests for verifying that stream writers can be reset to output
+ * new documents, and that writer pools work as expected.
+ */
+public class TestWriterReset
+    extends BaseWriterTest
+{
+    public void testResetNsWriters() throws Exception
+    {
+        _testReset(false);
+        _testReset(true);
+    }
+
+    public void testResetNonNsWriter() throws Exception
+    {
+        WstxOutputFactory f = new WstxOutputFactory();
+        f.setProperty(XMLStreamProperties.XSP_NAMESPACE_AWARE, Boolean.FALSE);
+        StringWriter strw = new StringWriter();
+        BaseStreamWriter sw = (BaseStreamWriter) f.createXMLStreamWriter(strw);
+        sw.writeStartElement("root");
+        sw.writeStartElement("leaf");
+
+        strw = new StringWriter();
+        sw.reset(strw);
+        sw.writeStartElement("root");
+        sw.writeEndElement();
+        sw.close();
+        assertEquals("<root/>", strw.toString());
+    }
+
+    public void testResetEncodings() throws Exception
+    {
+        WstxOutputFactory f = new WstxOutputFactory();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BaseStreamWriter sw = (BaseStreamWriter) f.createXMLStreamWriter(bytes, "UTF-8");
+        _writeDoc(sw, "\u00E9");
+        assertEquals("<root>\u00E9</root>", bytes.toString("UTF-8"));
+
+        // same kind of output
+        bytes = new ByteArrayOutputStream();
+        sw.reset(bytes, "UTF-8");
+        _writeDoc(sw, "\u20AC");
+        assertEquals("<root>\u20AC</root>", bytes.toString("UTF-8"));
+
+        // different encoding
+        bytes = new ByteArrayOutputStream();
+        sw.reset(bytes, "US-ASCII");
+        _writeDoc(sw, "\u20AC");
+        assertEquals("<root>&#x20ac;</root>", bytes.toString("US-ASCII"));
+
+        // and then a Writer
+        StringWriter strw = new StringWriter();
+        sw.reset(strw);
+        _writeDoc(sw, "x");
+        assertEquals("<root>x</root>", strw.toString());
+    }
+
+    public void testPool() throws Exception
+    {
+        WstxOutputFactory f = new WstxOutputFactory();
+        StreamWriterPool pool = f.createStreamWriterPool(1);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        XMLStreamWriter2 sw1 = pool.acquireWriter(bytes, null);
+        StringWriter strw = new StringWriter();
+        XMLStreamWriter2 sw2 = pool.acquireWriter(strw);
+        assertEquals(2L, pool.getCreatedCount());
+        _writeDoc(sw1, "a");
+        _writeDoc(sw2, "b");
+        pool.releaseWriter(sw1);
+        pool.releaseWriter(sw2);
+        assertEquals(1, pool.getPooledCount());
+        assertEquals("<root>a</root>", bytes.toString("UTF-8"));
+        assertEquals("<root>b</root>", strw.toString());
+
+        strw = new StringWriter();
+        XMLStreamWriter2 sw = pool.acquireWriter(strw);
+        assertSame(sw1, sw);
+        assertEquals(1L, pool.getReusedCount());
+        _writeDoc(sw, "c");
+        pool.releaseWriter(sw);
+        assertEquals("<root>c</root>", strw.toString());
+        // releasing twice must not make it available twice
+        pool.releaseWriter(sw);
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    public void testPoolWithModifiedWriter() throws Exception
+    {
+        WstxOutputFactory f = new WstxOutputFactory();
+        StreamWriterPool pool = f.createStreamWriterPool(1);
+
+        XMLStreamWriter2 sw = pool.acquireWriter(new StringWriter());
+        sw.setProperty(WstxOutputProperties.P_OUTPUT_CDATA_AS_TEXT, Boolean.TRUE);
+        _writeDoc(sw, "a");
+        pool.releaseWriter(sw);
+        // changed settings must not be passed to next caller
+        assertEquals(0, pool.getPooledCount());
+        sw = pool.acquireWriter(new StringWriter());
+        assertEquals(Boolean.FALSE, sw.getProperty(WstxOutputProperties.P_OUTPUT_CDATA_AS_TEXT));
+        assertEquals(2L, pool.getCreatedCount());
+        _writeDoc(sw, "b");
+        pool.releaseWriter(sw);
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    /*
+    ///////////////////////////////////////////////////////////
+    // Helper methods
+    ///////////////////////////////////////////////////////////
+     */
+
+    private void _testReset(boolean repairing) throws Exception
+    {
+        WstxOutputFactory f = new WstxOutputFactory();
+        f.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.valueOf(repairing));
+        StringWriter strw = new StringWriter();
+        BaseStreamWriter sw = (BaseStreamWriter) f.createXMLStreamWriter(strw);
+        sw.setPrefix("x", "urn:x");
+        sw.writeStartElement("x", "root", "urn:x");
+        sw.writeNamespace("x", "urn:x");
+        sw.writeStartElement("x", "leaf", "urn:x");
+        // leave document unfinished; reset should close it
+        strw = new StringWriter();
+        sw.reset(strw);
+        // binding from previous document must not be visible
+        assertNull(sw.getPrefix("urn:x"));
+        sw.writeStartElement("root");
+        sw.writeStartElement("leaf");
+        sw.writeEndElement();
+        sw.writeEndElement();
+        sw.close();
+        assertEquals("<root><leaf/></root>", strw.toString());
+
+        // and also should be able to write namespaced content again
+        strw = new StringWriter();
+        sw.reset(strw);
+        sw.writeStartElement("y", "root", "urn:y");
+        sw.writeNamespace("y", "urn:y");
+        sw.writeEndElement();
+        sw.close();
+        assertEquals("<y:root xmlns:y=\"urn:y\"/>", strw.toString());
+    }
+
+    private void _writeDoc(XMLStreamWriter sw, String text)
+        throws XMLStreamException
+    {
+        sw.writeStartElement("root");
+        sw.writeCharacters(text);
+        sw.writeEndElement();
+        sw.writeEndDocument();
+        sw.close();
+    }
+}